@@ -0,0 +1,176 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
+import org.firstinspires.ftc.teamcode.auto.OpenCVLoader;
+import org.firstinspires.ftc.teamcode.auto.RecognitionCLI;
+import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
+import org.opencv.core.Size;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Entry point for the benchmarks. The Benchmarks/src directory is a
+// separate module, Benchmarks/Benchmarks.iml, that depends on the main
+// module; it is not part of the recognition application itself. Add it to
+// the project once with File > New > Module from Existing Sources and set
+// the path variable OPENCV_JAR to the OpenCV jar; the Benchmarks run
+// configuration then builds and runs it.
+//
+// Command line: [--suite=micro|macro|files|all] [--resolutions=640x480,1280x720,1920x1080]
+//   [--warmup=n] [--iterations=n] [--filter=text] [--alliance=RED|BLUE]
+//   [--log_level=d|v|vv] [--debug_images] [--stage_timing] [--fork=true|false]
+//
+// micro - the ImageUtils, WatershedUtils and RecognitionWindowUtils primitives
+//   on synthetic frames at each resolution.
+// macro - every recognition path on synthetic frames at each resolution.
+// files - every action in every test case directory under the working
+//   directory (Files/) whose image is present.
+//
+// Debug images are discarded unless --debug_images is on the command line;
+// the log level defaults to d to keep logging out of the measurements.
+// The results are written to the console and to BenchmarkResults.csv in
+// the benchmarks subdirectory of the working directory.
+//
+// With --suite=all each suite runs in a JVM of its own, with the same JVM
+// options and class path, so that the JIT profile built up by one suite
+// does not skew the next. The parent collects the results of the suites
+// into one BenchmarkResults.csv; the stage timings of each suite are kept
+// as StageTiming_<suite>.csv. --fork=false runs all of the suites in this
+// JVM, as does a single suite.
+public class BenchmarkMain {
+
+    private static final String TAG = BenchmarkMain.class.getSimpleName();
+
+    public static final String RESULTS_FILENAME = "BenchmarkResults.csv";
+
+    private static final List<String> SUITES = List.of("micro", "macro", "files");
+
+    public static void main(String[] pArgs) throws Exception {
+        Map<String, String> namedParameters = RecognitionCLI.parseNamedParameters(pArgs);
+
+        String suite = namedParameters.getOrDefault("suite", "all");
+        if (!suite.equals("all") && !SUITES.contains(suite))
+            throw new AutonomousRobotException(TAG, "Invalid suite " + suite);
+
+        List<Size> resolutions = new ArrayList<>(Arrays.asList(SyntheticFrames.STANDARD_RESOLUTIONS));
+        String resolutionsParameter = namedParameters.get("resolutions"); // optional
+        if (resolutionsParameter != null) {
+            resolutions.clear();
+            for (String oneResolution : resolutionsParameter.split(","))
+                resolutions.add(SyntheticFrames.parseResolution(oneResolution));
+        }
+
+        int warmupIterations = Integer.parseInt(namedParameters.getOrDefault("warmup", "10"));
+        int measuredIterations = Integer.parseInt(namedParameters.getOrDefault("iterations", "30"));
+        String filter = namedParameters.get("filter"); // optional
+
+        // The distance transform requires an alliance.
+        RobotConstants.Alliance alliance = RobotConstants.Alliance.valueOf(namedParameters.getOrDefault("alliance", "RED"));
+
+        String workingDirectory = WorkingDirectory.getWorkingDirectory() + "/";
+        String outputDirectory = workingDirectory + "benchmarks/";
+        File outputDirFile = new File(outputDirectory);
+        if (!outputDirFile.isDirectory() && !outputDirFile.mkdirs())
+            throw new AutonomousRobotException(TAG, "Unable to create the output directory " + outputDirectory);
+
+        if (suite.equals("all") && Boolean.parseBoolean(namedParameters.getOrDefault("fork", "true"))) {
+            runForked(pArgs, outputDirectory);
+            return;
+        }
+
+        OpenCVLoader.load();
+
+        RobotLogCommon.initialize(RobotLogCommon.LogIdentifier.TEST_LOG, outputDirectory);
+        RobotLogCommon.setMostDetailedLogLevel(RobotLogCommon.CommonLogLevel.valueOf(namedParameters.getOrDefault("log_level", "d")));
+        if (namedParameters.containsKey("debug_images"))
+            DebugImageCommon.initialize((tag, message) -> System.out.println(tag + " " + message),
+                    DebugImageCommon.WriterOptions.fromNamedParameters(namedParameters));
+        if (namedParameters.containsKey("stage_timing"))
+            StageTimer.enable();
+
+        RobotLogCommon.c(TAG, "Suite " + suite + ", warmup " + warmupIterations + ", iterations " + measuredIterations);
+        BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measuredIterations, filter);
+        System.out.println(BenchmarkRunner.SUMMARY_HEADER);
+        try {
+            if (suite.equals("micro") || suite.equals("all"))
+                for (Size oneResolution : resolutions)
+                    PrimitiveBenchmarks.run(runner, oneResolution, outputDirectory);
+
+            if (suite.equals("macro") || suite.equals("all"))
+                for (Size oneResolution : resolutions)
+                    RecognitionPathBenchmarks.runSynthetic(runner, oneResolution, alliance, outputDirectory);
+
+            if (suite.equals("files") || suite.equals("all"))
+                RecognitionPathBenchmarks.runTestCases(runner, workingDirectory, alliance);
+        } finally {
+            for (BenchmarkRunner.BenchmarkResult oneResult : runner.getResults())
+                RobotLogCommon.c(TAG, oneResult.toSummaryLine());
+
+            runner.writeCsv(outputDirectory + RESULTS_FILENAME);
+            System.out.println("Wrote " + outputDirectory + RESULTS_FILENAME);
+
+            StageTimer.report(outputDirectory + StageTimer.STAGE_TIMING_FILENAME);
+            RobotLogCommon.closeLog();
+            DebugImageCommon.close(DebugImageCommon.DrainOnClose.ALL);
+        }
+    }
+
+    // Run each suite in a child JVM, one after the other, and combine
+    // their results.
+    private static void runForked(String[] pArgs, String pOutputDirectory) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkMain.class.getName());
+        for (String oneArg : pArgs)
+            if (!oneArg.startsWith("--suite=") && !oneArg.startsWith("--fork="))
+                command.add(oneArg);
+
+        Path resultsPath = Paths.get(pOutputDirectory + RESULTS_FILENAME);
+        Path stageTimingPath = Paths.get(pOutputDirectory + StageTimer.STAGE_TIMING_FILENAME);
+        List<String> combinedResults = new ArrayList<>();
+        List<String> failedSuites = new ArrayList<>();
+        for (String oneSuite : SUITES) {
+            List<String> suiteCommand = new ArrayList<>(command);
+            suiteCommand.add("--suite=" + oneSuite);
+            Files.deleteIfExists(resultsPath);
+            Files.deleteIfExists(stageTimingPath);
+
+            System.out.println(TAG + " Forking a JVM for the " + oneSuite + " suite");
+            int exitCode = new ProcessBuilder(suiteCommand).inheritIO().start().waitFor();
+            if (exitCode != 0)
+                failedSuites.add(oneSuite + " (exit code " + exitCode + ")");
+
+            if (Files.exists(resultsPath)) {
+                List<String> suiteResults = Files.readAllLines(resultsPath);
+                if (!suiteResults.isEmpty())
+                    combinedResults.addAll(combinedResults.isEmpty() ? suiteResults : suiteResults.subList(1, suiteResults.size()));
+            }
+
+            if (Files.exists(stageTimingPath))
+                Files.move(stageTimingPath, Paths.get(pOutputDirectory + "StageTiming_" + oneSuite + ".csv"),
+                        StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Files.write(resultsPath, combinedResults);
+        System.out.println("Wrote " + resultsPath);
+        if (!failedSuites.isEmpty())
+            throw new AutonomousRobotException(TAG, "Benchmark suites failed: " + failedSuites);
+    }
+
+}
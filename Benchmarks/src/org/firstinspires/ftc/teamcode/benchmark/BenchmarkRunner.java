@@ -0,0 +1,120 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Minimal benchmark harness in the spirit of JMH: each operation is run
+// for a number of untimed warmup iterations so that the JIT has compiled
+// the Java side and OpenCV has allocated its internal buffers, and then
+// for a number of timed iterations. Every timed iteration is kept so that
+// the results report percentiles and not just the mean.
+//
+// The value returned by each operation is consumed so that the JIT can't
+// discard the work. If the value is a Mat it is released immediately so
+// that native memory doesn't pile up waiting for the garbage collector.
+public class BenchmarkRunner {
+
+    // One unit of work to be timed.
+    @FunctionalInterface
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    // The results of one benchmark. The timings are in nanoseconds.
+    public static class BenchmarkResult {
+        public final String group; // micro, macro, or files
+        public final String name;
+        public final String frame; // e.g. 640x480 or an image file name
+        public final StageTimer.StageSummary summary;
+
+        public BenchmarkResult(String pGroup, String pName, String pFrame, StageTimer.StageSummary pSummary) {
+            group = pGroup;
+            name = pName;
+            frame = pFrame;
+            summary = pSummary;
+        }
+
+        public double meanNanos() {
+            return (double) summary.totalNanos / summary.count;
+        }
+
+        public String toSummaryLine() {
+            return String.format("%-6s %-56s %-28s %6d %10.3f %10.3f %10.3f %10.3f", group, name, frame, summary.count,
+                    meanNanos() / 1_000_000.0, summary.minNanos / 1_000_000.0,
+                    summary.p50Nanos / 1_000_000.0, summary.p99Nanos / 1_000_000.0);
+        }
+    }
+
+    public static final String SUMMARY_HEADER = String.format("%-6s %-56s %-28s %6s %10s %10s %10s %10s",
+            "group", "benchmark", "frame", "iters", "mean ms", "min ms", "p50 ms", "p99 ms");
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final String filter; // run only benchmarks whose names contain this; may be null
+    private final List<BenchmarkResult> results = new ArrayList<>();
+    private volatile Object sink; // defeats dead-code elimination
+
+    public BenchmarkRunner(int pWarmupIterations, int pMeasuredIterations, String pFilter) {
+        if (pMeasuredIterations < 1)
+            throw new IllegalArgumentException("At least one measured iteration is required");
+
+        warmupIterations = Math.max(0, pWarmupIterations);
+        measuredIterations = pMeasuredIterations;
+        filter = pFilter;
+    }
+
+    // Warm up and then time pOperation. The result is printed to the console
+    // as soon as it is available and is retained for writeCsv. Returns null
+    // if the benchmark is excluded by the filter.
+    public BenchmarkResult run(String pGroup, String pName, String pFrame, Operation pOperation) throws Exception {
+        if (filter != null && !pName.contains(filter))
+            return null;
+
+        for (int i = 0; i < warmupIterations; i++)
+            consume(pOperation.run());
+
+        long[] samples = new long[measuredIterations];
+        for (int i = 0; i < measuredIterations; i++) {
+            long start = System.nanoTime();
+            Object value = pOperation.run();
+            samples[i] = System.nanoTime() - start;
+            consume(value);
+        }
+
+        BenchmarkResult result = new BenchmarkResult(pGroup, pName, pFrame, new StageTimer.StageSummary(pName, samples));
+        results.add(result);
+        System.out.println(result.toSummaryLine());
+        return result;
+    }
+
+    public List<BenchmarkResult> getResults() {
+        return results;
+    }
+
+    // Write all of the results collected so far with times in nanoseconds.
+    public void writeCsv(String pCsvFilename) throws IOException {
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(pCsvFilename)))) {
+            csv.println("group,benchmark,frame,iterations,mean_ns,min_ns,p50_ns,p99_ns,max_ns");
+            for (BenchmarkResult oneResult : results)
+                csv.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%.0f,%d,%d,%d,%d",
+                        oneResult.group, oneResult.name, oneResult.frame, oneResult.summary.count,
+                        oneResult.meanNanos(), oneResult.summary.minNanos, oneResult.summary.p50Nanos,
+                        oneResult.summary.p99Nanos, oneResult.summary.maxNanos));
+        }
+    }
+
+    private void consume(Object pValue) {
+        sink = pValue;
+        if (pValue instanceof Mat mat)
+            mat.release();
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
+import org.firstinspires.ftc.teamcode.auto.vision.ConnectedBlobs;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageUtils;
+import org.firstinspires.ftc.teamcode.auto.vision.RecognitionWindowUtils;
+import org.firstinspires.ftc.teamcode.auto.vision.WatershedRegions;
+import org.firstinspires.ftc.teamcode.auto.vision.WatershedUtils;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Micro-benchmarks for the image processing primitives that the
+// recognition paths are built from. The inputs for each primitive are
+// prepared once per resolution, outside of the timed region, from a
+// SyntheticFrame so that only the primitive itself is measured.
+public class PrimitiveBenchmarks {
+
+    public static final String GROUP = "micro";
+
+    public static void run(BenchmarkRunner pRunner, Size pResolution, String pOutputDir) throws Exception {
+        String frameLabel = SyntheticFrames.label(pResolution);
+        String preamble = pOutputDir + "micro_" + frameLabel;
+
+        Mat bgr = SyntheticFrames.createBGR(pResolution);
+        Mat gray = new Mat();
+        Imgproc.cvtColor(bgr, gray, Imgproc.COLOR_BGR2GRAY);
+        Mat hsv = new Mat();
+        Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+
+        // A binary image with a realistic number of contours.
+        Mat thresholded = new Mat();
+        Imgproc.threshold(gray, thresholded, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+        List<MatOfPoint> contours = new ArrayList<>();
+        Imgproc.findContours(thresholded, contours, new Mat(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        // The inputs to the watershed as prepared by WatershedRecognition.watershedCoinsHybrid.
+        Mat sharp = ImageUtils.sharpen(bgr, preamble);
+        Mat sharpGray = new Mat();
+        Imgproc.cvtColor(sharp, sharpGray, Imgproc.COLOR_BGR2GRAY);
+        Mat watershedBinary = new Mat();
+        Imgproc.threshold(sharpGray, watershedBinary, 100, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+        Mat watershedMarkers = WatershedUtils.applyWatershedHybrid(watershedBinary, bgr, sharp, 100, preamble, "");
+
+        VisionParameters.ImageParameters imageParameters = SyntheticParameters.getImageParameters(pResolution);
+        double minArea = pResolution.area() / 2000;
+
+        pRunner.run(GROUP, "ImageUtils.getSingleChannelMedian", frameLabel,
+                () -> ImageUtils.getSingleChannelMedian(gray));
+        pRunner.run(GROUP, "ImageUtils.getSingleChannelMedian.masked", frameLabel,
+                () -> ImageUtils.getSingleChannelMedian(gray, thresholded));
+        pRunner.run(GROUP, "ImageUtils.getSingleChannelMedian.stride4", frameLabel,
+                () -> ImageUtils.getSingleChannelMedian(gray, 4));
+        pRunner.run(GROUP, "ImageUtils.applyInRange", frameLabel,
+                () -> ImageUtils.applyInRange(hsv, 20, 40, 100, 100));
+        pRunner.run(GROUP, "ImageUtils.applyInRange.hueWraparound", frameLabel,
+                () -> ImageUtils.applyInRange(hsv, 170, 10, 100, 100));
+        pRunner.run(GROUP, "ImageUtils.performInRange", frameLabel,
+                () -> ImageUtils.performInRange(bgr, SyntheticParameters.getGoldCubeParameters(pResolution).hsvParameters, preamble, ""));
+        pRunner.run(GROUP, "ImageUtils.performInRange.hueWraparound", frameLabel,
+                () -> ImageUtils.performInRange(bgr, new VisionParameters.HSVParameters("red", 170, 10, 150, 100, 150, 100), preamble, ""));
+        pRunner.run(GROUP, "ImageUtils.performThresholdOnGray", frameLabel,
+                () -> ImageUtils.performThresholdOnGray(gray, 150, 175, preamble, ""));
+        pRunner.run(GROUP, "ImageUtils.sortContoursByArea", frameLabel + "/" + contours.size() + "c",
+                () -> ImageUtils.sortContoursByArea(contours));
+        pRunner.run(GROUP, "ImageUtils.filterContours", frameLabel,
+                () -> ImageUtils.filterContours(thresholded, thresholded.rows(), thresholded.cols(), minArea, preamble, "").filteredBinaryOutput);
+        pRunner.run(GROUP, "ImageUtils.getLargestContour", frameLabel,
+                () -> ImageUtils.getLargestContour(bgr, thresholded, preamble));
+        pRunner.run(GROUP, "ConnectedBlobs.getLargest", frameLabel, () -> {
+            ConnectedBlobs blobs = ConnectedBlobs.analyze(thresholded);
+            blobs.release();
+            return blobs.getBoundingRect(blobs.getLargest());
+        });
+        pRunner.run(GROUP, "ConnectedBlobs.getMask", frameLabel, () -> {
+            ConnectedBlobs blobs = ConnectedBlobs.analyze(thresholded);
+            Mat mask = blobs.getMask(minArea);
+            blobs.release();
+            return mask;
+        });
+        pRunner.run(GROUP, "WatershedUtils.applyWatershedHybrid", frameLabel,
+                () -> WatershedUtils.applyWatershedHybrid(watershedBinary, bgr, sharp, 100, preamble, ""));
+        pRunner.run(GROUP, "WatershedUtils.invertWhiteBackground", frameLabel,
+                () -> WatershedUtils.invertWhiteBackground(bgr));
+        pRunner.run(GROUP, "WatershedUtils.colorWatershedRegions", frameLabel,
+                () -> WatershedUtils.colorWatershedRegions(watershedMarkers));
+        pRunner.run(GROUP, "WatershedRegions.analyze", frameLabel,
+                () -> WatershedRegions.analyze(watershedMarkers, bgr, 2).count);
+        pRunner.run(GROUP, "RecognitionWindowUtils.lookThroughWindowsAtPixelCount", frameLabel,
+                () -> RecognitionWindowUtils.lookThroughWindowsAtPixelCount(thresholded, 2000, bgr, preamble,
+                        SyntheticParameters.getRecognitionWindowMapping(imageParameters)));
+
+        for (Mat oneMat : List.of(bgr, gray, hsv, thresholded, sharp, sharpGray, watershedBinary, watershedMarkers))
+            oneMat.release();
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.auto.BatchRunner;
+import org.firstinspires.ftc.teamcode.auto.RecognitionAction;
+import org.firstinspires.ftc.teamcode.auto.RecognitionRunner;
+import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.vision.*;
+import org.firstinspires.ftc.teamcode.auto.xml.*;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.io.File;
+import java.time.LocalDateTime;
+
+// Macro-benchmarks: complete recognitions, from getImage through the
+// result, for every value of every *RecognitionPath enum. On synthetic
+// frames each path is run at each resolution with the SyntheticParameters;
+// on the test cases under Files/ each action is run as configured in its
+// RobotAction.xml.
+//
+// Debug images are written to the output directory according to the log
+// level, as they would be in a normal run, so the timings include the
+// cost of queueing the images and of any images written directly.
+public class RecognitionPathBenchmarks {
+
+    public static final String MACRO_GROUP = "macro";
+    public static final String FILES_GROUP = "files";
+
+    // Use a fixed time stamp so that repeated iterations overwrite their
+    // debug images instead of filling up the output directory.
+    private static final LocalDateTime FRAME_TIME = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    public static void runSynthetic(BenchmarkRunner pRunner, Size pResolution, RobotConstants.Alliance pAlliance,
+                                    String pOutputDir) throws Exception {
+        String frameLabel = SyntheticFrames.label(pResolution);
+        Mat frame = SyntheticFrames.createBGR(pResolution);
+        ImageProvider imageProvider = new SharedImage(Pair.create(frame, FRAME_TIME));
+        VisionParameters.ImageParameters imageParameters = SyntheticParameters.getImageParameters(pResolution);
+
+        GoldCubeRecognition goldCubeRecognition = new GoldCubeRecognition(pOutputDir, pAlliance);
+        GoldCubeParameters goldCubeParameters = SyntheticParameters.getGoldCubeParameters(pResolution);
+        for (GoldCubeRecognition.GoldCubeRecognitionPath onePath : GoldCubeRecognition.GoldCubeRecognitionPath.values())
+            pRunner.run(MACRO_GROUP, "GoldCubeRecognition." + onePath, frameLabel,
+                    () -> goldCubeRecognition.recognizeGoldCubeWebcam(imageProvider, imageParameters, goldCubeParameters, onePath));
+
+        SampleContoursRecognition sampleContoursRecognition = new SampleContoursRecognition(pOutputDir, pAlliance);
+        SampleContoursParameters sampleContoursParameters = SyntheticParameters.getSampleContoursParameters();
+        for (SampleContoursRecognition.SampleContoursRecognitionPath onePath : SampleContoursRecognition.SampleContoursRecognitionPath.values())
+            pRunner.run(MACRO_GROUP, "SampleContoursRecognition." + onePath, frameLabel,
+                    () -> sampleContoursRecognition.recognizeSampleContours(imageProvider, imageParameters, sampleContoursParameters, onePath));
+
+        LABRecognition labRecognition = new LABRecognition(pOutputDir);
+        LABTesterParameters labTesterParameters = SyntheticParameters.getLABTesterParameters();
+        for (LABRecognition.LABRecognitionPath onePath : LABRecognition.LABRecognitionPath.values())
+            pRunner.run(MACRO_GROUP, "LABRecognition." + onePath, frameLabel,
+                    () -> labRecognition.testLAB(imageProvider, imageParameters, labTesterParameters, onePath));
+
+        WatershedRecognition watershedRecognition = new WatershedRecognition(pOutputDir);
+        for (WatershedRecognition.WatershedRecognitionPath onePath : WatershedRecognition.WatershedRecognitionPath.values())
+            pRunner.run(MACRO_GROUP, "WatershedRecognition." + onePath, frameLabel,
+                    () -> watershedRecognition.performWatershed(imageProvider, imageParameters, onePath));
+
+        DistanceTransformRecognition distanceTransformRecognition = new DistanceTransformRecognition(pAlliance, pOutputDir);
+        DistanceParameters distanceParameters = SyntheticParameters.getDistanceParameters();
+        RecognitionWindowMapping recognitionWindowMapping = SyntheticParameters.getRecognitionWindowMapping(imageParameters);
+        for (DistanceTransformRecognition.DistanceTransformRecognitionPath onePath : DistanceTransformRecognition.DistanceTransformRecognitionPath.values())
+            pRunner.run(MACRO_GROUP, "DistanceTransformRecognition." + onePath, frameLabel,
+                    () -> distanceTransformRecognition.performDistanceTransform(imageProvider, imageParameters, onePath,
+                            distanceParameters, recognitionWindowMapping));
+
+        // ColorChannelRecognition has no recognition path enum yet.
+        ColorChannelRecognition colorChannelRecognition = new ColorChannelRecognition(pAlliance, pOutputDir);
+        pRunner.run(MACRO_GROUP, "ColorChannelRecognition.splitColorChannels", frameLabel,
+                () -> colorChannelRecognition.splitColorChannels(imageProvider, imageParameters));
+
+        frame.release();
+    }
+
+    // Run every action of every test case under pWorkingDirectory against
+    // the image named in the action. Actions whose image isn't present are
+    // skipped with a message. Debug images go to the test case directory,
+    // as they do in a normal run.
+    public static void runTestCases(BenchmarkRunner pRunner, String pWorkingDirectory,
+                                    RobotConstants.Alliance pAlliance) throws Exception {
+        for (String oneTestCase : BatchRunner.findTestCases(pWorkingDirectory)) {
+            String fullTestCaseDir = pWorkingDirectory + oneTestCase + "/";
+            RecognitionRunner.PreparedTestCase preparedTestCase = RecognitionRunner.prepareTestCase(fullTestCaseDir, pAlliance);
+            for (RecognitionAction oneAction : preparedTestCase.actions) {
+                String imagePath = fullTestCaseDir + oneAction.imageParameters.image_source;
+                if (!new File(imagePath).isFile()) {
+                    System.out.println("Skipping " + oneTestCase + "/" + oneAction.actionName + ": no image " + imagePath);
+                    continue;
+                }
+
+                Pair<Mat, LocalDateTime> image = new FileImage(imagePath).getImage();
+                if (image == null) {
+                    System.out.println("Skipping " + oneTestCase + "/" + oneAction.actionName + ": could not open " + imagePath);
+                    continue;
+                }
+
+                ImageProvider imageProvider = new SharedImage(image);
+                String frameLabel = oneAction.imageParameters.image_source + " " + image.first.cols() + "x" + image.first.rows();
+                pRunner.run(FILES_GROUP, oneTestCase + "/" + oneAction.actionName, frameLabel,
+                        () -> oneAction.recognize(imageProvider));
+                image.first.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Deterministic BGR test frames for the benchmarks. Every frame has the
+// same layout scaled to its resolution so that the time for a recognition
+// path can be compared across resolutions:
+//   a white band across the top with off-white "cards" on it (for the
+//   watershed cards paths, which look for pure white background pixels);
+//   a noisy gray-green field with a gold cube, a red sample, a blue sample
+//   and a row of gray "coins" (for the color, grayscale and coins paths).
+// The frames aren't meant to be recognized successfully, only to give
+// each path a realistic amount of work.
+public class SyntheticFrames {
+
+    public static final Size[] STANDARD_RESOLUTIONS = {
+            new Size(640, 480), new Size(1280, 720), new Size(1920, 1080)
+    };
+
+    private static final int RANDOM_SEED = 12345;
+
+    public static String label(Size pResolution) {
+        return (int) pResolution.width + "x" + (int) pResolution.height;
+    }
+
+    // Parse a resolution of the form 640x480.
+    public static Size parseResolution(String pResolution) {
+        String[] dimensions = pResolution.trim().toLowerCase().split("x");
+        if (dimensions.length != 2)
+            throw new IllegalArgumentException("Invalid resolution " + pResolution);
+        return new Size(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+    }
+
+    public static Mat createBGR(Size pResolution) {
+        int width = (int) pResolution.width;
+        int height = (int) pResolution.height;
+
+        // Noisy field so that the medians and thresholds have real data to work on.
+        Core.setRNGSeed(RANDOM_SEED);
+        Mat frame = new Mat(height, width, CvType.CV_8UC3, new Scalar(70, 110, 90));
+        Mat noise = new Mat(height, width, CvType.CV_16SC3);
+        Core.randn(noise, 0, 12);
+        Core.add(frame, noise, frame, new Mat(), CvType.CV_8UC3);
+        noise.release();
+
+        // White band with cards across the top quarter of the frame.
+        int bandHeight = height / 4;
+        Imgproc.rectangle(frame, new Point(0, 0), new Point(width - 1, bandHeight), new Scalar(255, 255, 255), Imgproc.FILLED);
+        int cardWidth = width / 10;
+        for (int i = 0; i < 5; i++) {
+            int left = (width / 20) + i * (cardWidth + width / 12);
+            Imgproc.rectangle(frame, new Point(left, bandHeight / 6), new Point(left + cardWidth, bandHeight - bandHeight / 6),
+                    new Scalar(245, 245, 248), Imgproc.FILLED);
+            Imgproc.circle(frame, new Point(left + cardWidth / 2.0, bandHeight / 2.0), cardWidth / 5,
+                    new Scalar(40, 40, 200), Imgproc.FILLED);
+        }
+
+        // Gold cube, red sample and blue sample in the middle of the field.
+        int objectSize = height / 6;
+        int objectTop = (height * 2) / 5;
+        Imgproc.rectangle(frame, new Point(width / 8.0, objectTop), new Point(width / 8.0 + objectSize, objectTop + objectSize),
+                new Scalar(20, 190, 225), Imgproc.FILLED);
+        Imgproc.rectangle(frame, new Point(width * 0.45, objectTop), new Point(width * 0.45 + objectSize * 2, objectTop + objectSize / 2.0),
+                new Scalar(35, 35, 210), Imgproc.FILLED);
+        Imgproc.rectangle(frame, new Point(width * 0.75, objectTop), new Point(width * 0.75 + objectSize * 2, objectTop + objectSize / 2.0),
+                new Scalar(200, 80, 30), Imgproc.FILLED);
+
+        // A row of touching coins near the bottom; touching objects are what
+        // the watershed is for.
+        int coinRadius = height / 16;
+        List<Point> coinCenters = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            coinCenters.add(new Point(width / 6.0 + i * coinRadius * 1.8, height - coinRadius * 2.0));
+        for (Point oneCenter : coinCenters)
+            Imgproc.circle(frame, oneCenter, coinRadius, new Scalar(170, 175, 180), Imgproc.FILLED);
+
+        return frame;
+    }
+
+    public static Mat createGray(Size pResolution) {
+        Mat bgr = createBGR(pResolution);
+        Mat gray = new Mat();
+        Imgproc.cvtColor(bgr, gray, Imgproc.COLOR_BGR2GRAY);
+        bgr.release();
+        return gray;
+    }
+
+}
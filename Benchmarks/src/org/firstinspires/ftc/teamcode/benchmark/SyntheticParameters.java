@@ -0,0 +1,72 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.xml.*;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+import java.util.EnumMap;
+
+// Recognition parameters to go with the SyntheticFrames. These take the
+// place of the XML files in a test case directory so that every
+// recognition path can be run at any resolution. The values are typical
+// of those in the test cases; the ROI is the full frame.
+public class SyntheticParameters {
+
+    public static VisionParameters.ImageParameters getImageParameters(Size pResolution) {
+        int width = (int) pResolution.width;
+        int height = (int) pResolution.height;
+        return new VisionParameters.ImageParameters("synthetic_" + SyntheticFrames.label(pResolution) + ".png",
+                width, height, new Rect(0, 0, width, height));
+    }
+
+    public static GoldCubeParameters getGoldCubeParameters(Size pResolution) {
+        double frameArea = pResolution.area();
+        return new GoldCubeParameters(new VisionParameters.GrayParameters(150, 175),
+                new VisionParameters.HSVParameters("yellow", 20, 40, 150, 100, 150, 100),
+                new GoldCubeParameters.BoundingBoxCriteria(frameArea / 200, frameArea / 4));
+    }
+
+    public static SampleContoursParameters getSampleContoursParameters() {
+        return new SampleContoursParameters(
+                new SampleContoursParameters.RGBChannelGrayscaleParameters(
+                        new VisionParameters.GrayParameters(150, 175),
+                        new VisionParameters.GrayParameters(150, 175)),
+                new SampleContoursParameters.HSVColorParameters(
+                        new VisionParameters.HSVParameters("blue", 100, 130, 150, 100, 150, 100)));
+    }
+
+    public static LABTesterParameters getLABTesterParameters() {
+        return new LABTesterParameters(new VisionParameters.GrayParameters(150, 175),
+                new VisionParameters.LABParameters(25.0, 90.0, 20.0, 80.0, 20.0, 80.0));
+    }
+
+    // The same values as in Files/distance/DistanceParameters.xml.
+    public static DistanceParameters getDistanceParameters() {
+        return new DistanceParameters(
+                new DistanceParameters.ColorChannelBrightSpotParameters(
+                        new VisionParameters.GrayParameters(150, 175),
+                        new VisionParameters.GrayParameters(150, 200)),
+                new DistanceParameters.ColorChannelPixelCountParameters(
+                        new VisionParameters.GrayParameters(150, 175), 2000,
+                        new VisionParameters.GrayParameters(150, 200), 1000));
+    }
+
+    // LEFT and RIGHT windows split the ROI in the same proportion as in
+    // Files/distance/RobotAction.xml.
+    public static RecognitionWindowMapping getRecognitionWindowMapping(VisionParameters.ImageParameters pImageParameters) {
+        Rect roi = pImageParameters.image_roi;
+        int leftWidth = (roi.width * 180) / 505;
+        EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> recognitionWindows =
+                new EnumMap<>(RobotConstants.RecognitionWindow.class);
+        recognitionWindows.put(RobotConstants.RecognitionWindow.LEFT,
+                Pair.create(new Rect(0, 0, leftWidth, roi.height), RobotConstants.ObjectLocation.LEFT));
+        recognitionWindows.put(RobotConstants.RecognitionWindow.RIGHT,
+                Pair.create(new Rect(leftWidth, 0, roi.width - leftWidth, roi.height), RobotConstants.ObjectLocation.CENTER));
+        recognitionWindows.put(RobotConstants.RecognitionWindow.WINDOW_NPOS,
+                Pair.create(new Rect(0, 0, 0, 0), RobotConstants.ObjectLocation.RIGHT));
+        return new RecognitionWindowMapping(pImageParameters, recognitionWindows);
+    }
+
+}
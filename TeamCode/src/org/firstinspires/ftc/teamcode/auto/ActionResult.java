@@ -0,0 +1,29 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+// The outcome of running one action from a test case.
+public class ActionResult {
+    public final String testCase;
+    public final String actionName; // may be empty if the action could not be read
+    public final String imageFilename; // may be empty if the action could not be read
+    public final RobotConstants.RecognitionResults recognitionResults;
+    public final long elapsedNanos; // wall-clock time
+    public final String errorMessage; // null if no exception was thrown
+
+    public ActionResult(String pTestCase, String pActionName, String pImageFilename,
+                        RobotConstants.RecognitionResults pRecognitionResults,
+                        long pElapsedNanos, String pErrorMessage) {
+        testCase = pTestCase;
+        actionName = pActionName;
+        imageFilename = pImageFilename;
+        recognitionResults = pRecognitionResults;
+        elapsedNanos = pElapsedNanos;
+        errorMessage = pErrorMessage;
+    }
+
+    // One line for the run summary.
+    public String toSummaryLine() {
+        return String.format("%-32s %-16s %-28s %10.1f ms%s", testCase, actionName, recognitionResults,
+                elapsedNanos / 1_000_000.0, errorMessage == null ? "" : "  " + errorMessage);
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Headless regression testing: run the actions in every test case
+// directory under the working directory without a JavaFX window.
+// The directory structure is the same as that for RecognitionDispatcher:
+// Files
+//     test_case_1
+//         RobotAction.xml
+//     test_case_2
+//         RobotAction.xml
+// The test cases and their actions run concurrently on a bounded pool of
+// worker threads sized to the number of cores. At the end of the run one
+// summary line per action is written to the log and to the console.
+//
+// Command line: [--alliance=RED|BLUE] [--threads=n] [--log_level=d] [--stage_timing] [--mat_tracking] [--mat_budget=bytes]
+//   [--debug_threads=n] [--debug_queue_mb=n] [--debug_overflow=BLOCK|DROP_OLDEST|DROP_NEWEST]
+//   [--debug_format=PNG|PNM|RAW] [--debug_level_format=level:format,...] [--debug_preview_scale=f]
+//   [--debug_archive=path]
+//
+//## RobotLogCommon and the log level are shared by the whole process,
+// so the <log_level> in each test case's RobotAction.xml is ignored
+// in favor of the optional --log_level argument.
+public class BatchRunner {
+
+    private static final String TAG = BatchRunner.class.getSimpleName();
+
+    public static void main(String[] pArgs) {
+        Map<String, String> namedParameters = RecognitionCLI.parseNamedParameters(pArgs);
+
+        RobotConstants.Alliance alliance = RobotConstants.Alliance.NONE;
+        String allianceParameter = namedParameters.get("alliance"); // optional
+        if (allianceParameter != null)
+            alliance = RobotConstants.Alliance.valueOf(allianceParameter);
+
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        String threadsParameter = namedParameters.get("threads"); // optional
+        if (threadsParameter != null)
+            numThreads = Integer.parseInt(threadsParameter);
+
+        OpenCVLoader.load();
+        String workingDirectory = WorkingDirectory.getWorkingDirectory() + "/";
+        RobotLogCommon.initialize(RobotLogCommon.LogIdentifier.TEST_LOG, workingDirectory);
+
+        String logLevelParameter = namedParameters.get("log_level"); // optional
+        if (logLevelParameter != null)
+            RobotLogCommon.setMostDetailedLogLevel(RobotLogCommon.CommonLogLevel.valueOf(logLevelParameter));
+
+        DebugImageCommon.initialize((tag, message) -> System.out.println(tag + " " + message),
+                DebugImageCommon.WriterOptions.fromNamedParameters(namedParameters));
+        RobotLogCommon.c(TAG, "Alliance " + alliance);
+
+        // Per-stage latency instrumentation is off unless requested.
+        if (namedParameters.containsKey("stage_timing"))
+            StageTimer.enable();
+
+        // Tracking of native Mat memory is off unless requested. A budget
+        // in bytes per frame fails any action that leaks more than that.
+        if (namedParameters.containsKey("mat_tracking") || namedParameters.containsKey("mat_budget"))
+            MatTracker.enable(Long.parseLong(namedParameters.getOrDefault("mat_budget", String.valueOf(MatTracker.NO_BUDGET))));
+
+        List<String> testCases = findTestCases(workingDirectory);
+        RobotLogCommon.c(TAG, "Found " + testCases.size() + " test cases; running on " + numThreads + " threads");
+
+        List<ActionResult> results = runTestCases(workingDirectory, testCases, alliance, numThreads);
+        writeSummary(results);
+
+        StageTimer.report(workingDirectory + StageTimer.STAGE_TIMING_FILENAME);
+        MatTracker.report(workingDirectory + MatTracker.MAT_TRACKING_FILENAME);
+        RobotLogCommon.closeLog();
+        DebugImageCommon.close(DebugImageCommon.DrainOnClose.ALL);
+    }
+
+    // Returns the names of all subdirectories of the working directory
+    // that contain a RobotAction.xml file, in alphabetical order.
+    public static List<String> findTestCases(String pWorkingDirectory) {
+        List<String> testCases = new ArrayList<>();
+        File[] subdirectories = new File(pWorkingDirectory).listFiles(File::isDirectory);
+        if (subdirectories == null)
+            throw new AutonomousRobotException(TAG, "Unable to list the working directory " + pWorkingDirectory);
+
+        Arrays.sort(subdirectories);
+        for (File oneSubdirectory : subdirectories) {
+            if (new File(oneSubdirectory, RobotConstants.ACTION_FILENAME).isFile())
+                testCases.add(oneSubdirectory.getName());
+        }
+
+        return testCases;
+    }
+
+    // Runs all test cases on a fixed pool of threads and returns the results,
+    // one per action, in the same order as the test cases. The actions of
+    // all of the test cases share the pool so a test case with several
+    // actions is spread across threads just like separate test cases are.
+    public static List<ActionResult> runTestCases(String pWorkingDirectory, List<String> pTestCases,
+                                                  RobotConstants.Alliance pAlliance, int pNumThreads) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, pNumThreads));
+        try {
+            List<CompletableFuture<List<ActionResult>>> futures = new ArrayList<>();
+            for (String oneTestCase : pTestCases)
+                futures.add(RecognitionRunner.submitTestCase(pWorkingDirectory, oneTestCase, pAlliance, executor));
+
+            List<ActionResult> results = new ArrayList<>();
+            for (CompletableFuture<List<ActionResult>> oneFuture : futures)
+                results.addAll(oneFuture.join()); // never completes exceptionally
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void writeSummary(List<ActionResult> pResults) {
+        Map<RobotConstants.RecognitionResults, Integer> totals = new HashMap<>();
+        long totalNanos = 0;
+        RobotLogCommon.c(TAG, "Batch summary");
+        for (ActionResult oneResult : pResults) {
+            String summaryLine = oneResult.toSummaryLine();
+            RobotLogCommon.c(TAG, summaryLine);
+            System.out.println(summaryLine);
+            totals.merge(oneResult.recognitionResults, 1, Integer::sum);
+            totalNanos += oneResult.elapsedNanos;
+        }
+
+        String totalsLine = "Actions " + pResults.size() + ", results " + totals +
+                String.format(", total of per-action times %.1f ms", totalNanos / 1_000_000.0);
+        RobotLogCommon.c(TAG, totalsLine);
+        System.out.println(totalsLine);
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.auto.xml.ConfigSnapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Compiles the RobotAction.xml and the parameter files of one or more test
+// cases into a ConfigSnapshot in each test case directory, so that
+// RecognitionRunner.prepareTestCase can skip XML parsing at startup. The
+// XML files are validated as they are compiled. A snapshot becomes stale
+// as soon as one of its source files changes, in which case the XML files
+// are parsed as usual until the snapshot is compiled again.
+//
+// Command line: test_case ... | --all
+//   --all compile every test case under the working directory
+public class ConfigSnapshotCompiler {
+
+    private static final String TAG = ConfigSnapshotCompiler.class.getSimpleName();
+
+    public static void main(String[] pArgs) {
+        Map<String, String> namedParameters = RecognitionCLI.parseNamedParameters(pArgs);
+        String workingDirectory = WorkingDirectory.getWorkingDirectory() + "/";
+
+        List<String> testCases = new ArrayList<>();
+        if (namedParameters.containsKey("all"))
+            testCases.addAll(BatchRunner.findTestCases(workingDirectory));
+        else {
+            for (String oneArg : pArgs)
+                if (!oneArg.startsWith("--"))
+                    testCases.add(oneArg);
+        }
+
+        if (testCases.isEmpty()) {
+            System.out.println(TAG + " Missing test case name");
+            return;
+        }
+
+        RobotLogCommon.initialize(RobotLogCommon.LogIdentifier.TEST_LOG, workingDirectory);
+        int failed = 0;
+        for (String oneTestCase : testCases) {
+            try {
+                ConfigSnapshot.compile(workingDirectory + oneTestCase + "/");
+                System.out.println(TAG + " Compiled " + oneTestCase);
+            } catch (AutonomousRobotException | IOException ex) {
+                System.out.println(TAG + " Unable to compile " + oneTestCase + ": " + ex.getMessage());
+                failed++;
+            }
+        }
+
+        System.out.println(TAG + " Compiled " + (testCases.size() - failed) + " of " + testCases.size() + " test case(s)");
+        RobotLogCommon.closeLog();
+    }
+
+}
@@ -0,0 +1,267 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// A single append-only file that holds all of the encoded debug images of a
+// run in place of one file per image. Each image is appended through a
+// FileChannel as a self-describing record; on close an index of the name,
+// offset and length of every image is appended after the last record.
+// Layout, all integers big-endian:
+// header  - 5 bytes "IJARC", 1 byte version
+// records - int name length, name (UTF-8), long data length, data
+// index   - int count, then per image: int name length, name, long data
+//           offset, long data length
+// trailer - long offset of the index, 5 bytes "IJIDX"
+//
+// The data of a record is the complete encoded file, e.g. a PNG or a
+// RawImageFile, and the name is the filename that the image would have
+// been written to. If the run ends without a close the archive has no
+// index; Reader then rebuilds the index by walking the records and ignores
+// a partial record at the end.
+//
+// Any number of threads may append concurrently. DebugImageArchiveExtractor
+// lists the images in an archive and extracts them to files.
+public class DebugImageArchive implements AutoCloseable {
+
+    private static final String TAG = DebugImageArchive.class.getSimpleName();
+
+    private static final byte[] HEADER_MAGIC = "IJARC".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRAILER_MAGIC = "IJIDX".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = HEADER_MAGIC.length + 1;
+    private static final int TRAILER_LENGTH = Long.BYTES + TRAILER_MAGIC.length;
+
+    // The location of one image in the archive.
+    public static class Entry {
+        public final String name;
+        public final long offset; // of the data
+        public final long length;
+
+        public Entry(String pName, long pOffset, long pLength) {
+            name = pName;
+            offset = pOffset;
+            length = pLength;
+        }
+    }
+
+    private final Path archivePath;
+    private final FileChannel channel;
+    private final List<Entry> index = new ArrayList<>(); // protected by this
+    private long position; // protected by this
+    private boolean closed = false; // protected by this
+
+    // Create a new archive; an existing file is truncated.
+    public DebugImageArchive(Path pArchivePath) throws IOException {
+        archivePath = pArchivePath;
+        channel = FileChannel.open(pArchivePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(HEADER_MAGIC).put((byte) VERSION).flip();
+        writeFully(new ByteBuffer[]{header});
+        position = HEADER_LENGTH;
+    }
+
+    public Path getPath() {
+        return archivePath;
+    }
+
+    // Append one encoded image. The record is written with a single
+    // gathering write so records from different threads never interleave.
+    public synchronized void append(String pName, byte[] pData) throws IOException {
+        if (closed)
+            throw new AutonomousRobotException(TAG, "Archive " + archivePath + " is closed");
+
+        byte[] name = pName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer recordHeader = ByteBuffer.allocate(Integer.BYTES + name.length + Long.BYTES);
+        recordHeader.putInt(name.length).put(name).putLong(pData.length).flip();
+        long dataOffset = position + recordHeader.remaining();
+        writeFully(new ByteBuffer[]{recordHeader, ByteBuffer.wrap(pData)});
+
+        index.add(new Entry(pName, dataOffset, pData.length));
+        position = dataOffset + pData.length;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    // Append the index and the trailer and close the file.
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(indexBytes);
+            indexOut.writeInt(index.size());
+            for (Entry oneEntry : index) {
+                byte[] name = oneEntry.name.getBytes(StandardCharsets.UTF_8);
+                indexOut.writeInt(name.length);
+                indexOut.write(name);
+                indexOut.writeLong(oneEntry.offset);
+                indexOut.writeLong(oneEntry.length);
+            }
+            indexOut.writeLong(position);
+            indexOut.write(TRAILER_MAGIC);
+            writeFully(new ByteBuffer[]{ByteBuffer.wrap(indexBytes.toByteArray())});
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer[] pBuffers) throws IOException {
+        while (pBuffers[pBuffers.length - 1].hasRemaining())
+            channel.write(pBuffers);
+    }
+
+    // Random access to the images in an archive.
+    public static class Reader implements AutoCloseable {
+        private final Path archivePath;
+        private final FileChannel channel;
+        private final List<Entry> entries;
+        private final boolean indexed; // false if the index was rebuilt
+
+        public Reader(Path pArchivePath) throws IOException {
+            archivePath = pArchivePath;
+            channel = FileChannel.open(pArchivePath, StandardOpenOption.READ);
+            try {
+                ByteBuffer header = readAt(0, HEADER_LENGTH);
+                byte[] magic = new byte[HEADER_MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, HEADER_MAGIC))
+                    throw new AutonomousRobotException(TAG, pArchivePath + " is not a debug image archive");
+
+                int version = Byte.toUnsignedInt(header.get());
+                if (version != VERSION)
+                    throw new AutonomousRobotException(TAG, pArchivePath + ": unsupported version " + version);
+
+                List<Entry> fromIndex = readIndex();
+                indexed = fromIndex != null;
+                entries = Collections.unmodifiableList(indexed ? fromIndex : scanRecords());
+            } catch (IOException | RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        // True if the archive was closed cleanly and the index was read
+        // from the file.
+        public boolean isIndexed() {
+            return indexed;
+        }
+
+        // Returns the first entry with the name or null.
+        public Entry find(String pName) {
+            for (Entry oneEntry : entries)
+                if (oneEntry.name.equals(pName))
+                    return oneEntry;
+            return null;
+        }
+
+        public byte[] readBytes(Entry pEntry) throws IOException {
+            return readAt(pEntry.offset, (int) pEntry.length).array();
+        }
+
+        // Decode an image; the format follows from the extension of its name.
+        public Mat readImage(Entry pEntry) throws IOException {
+            byte[] data = readBytes(pEntry);
+            if (pEntry.name.endsWith(RawImageFile.FILE_EXTENSION))
+                return RawImageFile.read(new ByteArrayInputStream(data), archivePath + ":" + pEntry.name);
+
+            MatOfByte encoded = new MatOfByte(data);
+            Mat image = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_UNCHANGED);
+            encoded.release();
+            if (image.empty())
+                throw new AutonomousRobotException(TAG, "Unable to decode " + archivePath + ":" + pEntry.name);
+            return image;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        // Returns null if there is no valid trailer.
+        private List<Entry> readIndex() throws IOException {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_LENGTH + Integer.BYTES + TRAILER_LENGTH)
+                return null;
+
+            ByteBuffer trailer = readAt(fileSize - TRAILER_LENGTH, TRAILER_LENGTH);
+            long indexOffset = trailer.getLong();
+            byte[] magic = new byte[TRAILER_MAGIC.length];
+            trailer.get(magic);
+            if (!Arrays.equals(magic, TRAILER_MAGIC) || indexOffset < HEADER_LENGTH ||
+                    indexOffset > fileSize - TRAILER_LENGTH)
+                return null;
+
+            ByteBuffer indexBuffer = readAt(indexOffset, (int) (fileSize - TRAILER_LENGTH - indexOffset));
+            int count = indexBuffer.getInt();
+            List<Entry> fromIndex = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[indexBuffer.getInt()];
+                indexBuffer.get(name);
+                fromIndex.add(new Entry(new String(name, StandardCharsets.UTF_8), indexBuffer.getLong(), indexBuffer.getLong()));
+            }
+
+            return fromIndex;
+        }
+
+        // Walk the records of an archive that has no index. A record that
+        // runs past the end of the file was cut off and is ignored.
+        private List<Entry> scanRecords() throws IOException {
+            List<Entry> scanned = new ArrayList<>();
+            long fileSize = channel.size();
+            long recordOffset = HEADER_LENGTH;
+            while (recordOffset + Integer.BYTES <= fileSize) {
+                int nameLength = readAt(recordOffset, Integer.BYTES).getInt();
+                long lengthOffset = recordOffset + Integer.BYTES + nameLength;
+                if (nameLength < 0 || lengthOffset + Long.BYTES > fileSize)
+                    break;
+
+                long dataLength = readAt(lengthOffset, Long.BYTES).getLong();
+                long dataOffset = lengthOffset + Long.BYTES;
+                if (dataLength < 0 || dataOffset + dataLength > fileSize)
+                    break;
+
+                byte[] name = readAt(recordOffset + Integer.BYTES, nameLength).array();
+                scanned.add(new Entry(new String(name, StandardCharsets.UTF_8), dataOffset, dataLength));
+                recordOffset = dataOffset + dataLength;
+            }
+
+            return scanned;
+        }
+
+        private ByteBuffer readAt(long pOffset, int pLength) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(pLength);
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, pOffset + buffer.position()) < 0)
+                    throw new AutonomousRobotException(TAG, "Unexpected end of " + archivePath);
+            return buffer.flip();
+        }
+    }
+
+}
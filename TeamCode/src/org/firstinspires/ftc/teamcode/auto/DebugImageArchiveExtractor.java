@@ -0,0 +1,81 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+// Lists or extracts the images in a DebugImageArchive.
+// By default each image is written to the filename under which it was
+// archived, i.e. where DebugImageCommon would have written it without an
+// archive. With --out all of the images are written to a single directory
+// under their simple filenames. With --png every image is converted to PNG
+// as it is extracted (see DebugImageTranscoder).
+//
+// Command line: --archive=path [--list] [--out=dir] [--match=substring] [--png]
+public class DebugImageArchiveExtractor {
+
+    private static final String TAG = DebugImageArchiveExtractor.class.getSimpleName();
+
+    public static void main(String[] pArgs) throws IOException {
+        Map<String, String> namedParameters = RecognitionCLI.parseNamedParameters(pArgs);
+
+        String archiveParameter = namedParameters.get("archive");
+        if (archiveParameter == null)
+            throw new AutonomousRobotException(TAG, "Missing required parameter --archive");
+
+        String outParameter = namedParameters.get("out"); // optional
+        String matchParameter = namedParameters.get("match"); // optional
+        boolean listOnly = namedParameters.containsKey("list");
+        boolean convertToPNG = namedParameters.containsKey("png");
+
+        if (convertToPNG)
+            OpenCVLoader.load();
+
+        int extracted = 0;
+        try (DebugImageArchive.Reader reader = new DebugImageArchive.Reader(Paths.get(archiveParameter))) {
+            if (!reader.isIndexed())
+                System.out.println(TAG + " " + archiveParameter + " has no index; it was not closed cleanly");
+
+            for (DebugImageArchive.Entry oneEntry : reader.getEntries()) {
+                if (matchParameter != null && !oneEntry.name.contains(matchParameter))
+                    continue;
+
+                if (listOnly) {
+                    System.out.println(oneEntry.name + " " + oneEntry.length);
+                    continue;
+                }
+
+                Path outputPath = outParameter == null ? Paths.get(oneEntry.name) :
+                        Paths.get(outParameter).resolve(Paths.get(oneEntry.name).getFileName());
+                if (outputPath.getParent() != null)
+                    Files.createDirectories(outputPath.getParent());
+
+                if (!convertToPNG || oneEntry.name.endsWith(".png"))
+                    Files.write(outputPath, reader.readBytes(oneEntry));
+                else {
+                    String filename = outputPath.toString();
+                    String pngFilename = filename.substring(0, filename.lastIndexOf('.')) + ".png";
+                    Mat image = reader.readImage(oneEntry);
+                    Mat pngImage = DebugImageTranscoder.toPNGCompatible(image);
+                    if (!Imgcodecs.imwrite(pngFilename, pngImage))
+                        throw new AutonomousRobotException(TAG, "Unable to write " + pngFilename);
+
+                    if (pngImage != image)
+                        pngImage.release();
+                    image.release();
+                }
+                extracted++;
+            }
+        }
+
+        if (!listOnly)
+            System.out.println(TAG + " Extracted " + extracted + " image(s) from " + archiveParameter);
+    }
+
+}
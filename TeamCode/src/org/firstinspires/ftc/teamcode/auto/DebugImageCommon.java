@@ -1,125 +1,636 @@
 package org.firstinspires.ftc.teamcode.auto;
 
-import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Threading;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 // Class that supports the writing out of OpenCV Mats to the local file system.
-// This class has no notion of output levels the way that RobotLogCommon does.
-// Users should rely on the logging level to control access to this class.
-// For example:
-// if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.v)) {
-//    String fullFilename = pOutputFilenamePreamble + "_THR" + pFilenameSuffix + ".png";
-//    DebugImageCommon.writeImage(fullFilename, thresholded);
-//    RobotLogCommon.d(TAG, "Writing " + fullFilename);
-// }
+// Debug images are written at a RobotLogCommon output level; if the level
+// is not loggable the call returns after a single check. For example:
+// DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG,
+//         pOutputFilenamePreamble + "_THR" + pFilenameSuffix + ".png", thresholded);
+// An image that exists only for display, e.g. contours drawn on a copy of
+// the ROI, should be rendered by the DebugImageWriter from a snapshot of
+// its source so that the recognition thread pays only for the copy, and
+// nothing at all if the level is not loggable:
+// DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_CON.png",
+//         pImageROI, roi -> {
+//             ShapeDrawing.drawShapeContours(contours, roi);
+//             return roi;
+//         });
+// A display image that needs more than one Mat of the caller can be
+// supplied instead; the Supplier runs on the calling thread, but only if
+// the level is loggable.
+//
+// writeImage queues a snapshot of the image, so the caller may go on
+// drawing on or otherwise modifying the image after the call.
+//
+// The images are encoded and written by a pool of DebugImageWriter
+// threads. The queue lock is held only to add or remove an entry, never
+// while an image is being encoded, so the recognition threads are not
+// held up by PNG compression. The queue is bounded by the total number of
+// bytes in the queued Mats; when an image would exceed the budget the
+// OverflowPolicy decides whether the recognition thread waits for room
+// (BLOCK, the default, which never loses an image), the oldest queued
+// images are discarded (DROP_OLDEST) or the new image is discarded
+// (DROP_NEWEST). The queue depth and the number of images written and
+// dropped are available from getStatistics() and are logged on close.
+//
+// The ImageFormat determines how the images are encoded. PNG is the most
+// expensive by far: at 1920x1080 BGR OpenCV's default PNG encoding takes
+// about 10 times as long as an uncompressed PPM or a raw dump. The
+// filenames passed to writeImage always end in ".png"; for the other
+// formats the extension is replaced when the image is written. The raw
+// dumps can be converted to PNG after the run with DebugImageTranscoder.
+// The format may be chosen per output level, e.g. PNG for the images at
+// level d and RAW for the much more numerous images at v and vv.
+// A preview scale of less than 1 downscales the snapshot of every image
+// when it is queued, which reduces the memory held by the queue as well as
+// the cost of encoding.
+//
+// With an archive path all of the images of the run are appended to a
+// single DebugImageArchive instead of being written as separate files;
+// the name of each image in the archive is the filename it would
+// otherwise have been written to. DebugImageArchiveExtractor extracts
+// them after the run.
 public class DebugImageCommon {
 
     private static final String TAG = DebugImageCommon.class.getSimpleName();
 
     public enum DrainOnClose {ALL, NONE}
 
+    public enum OverflowPolicy {BLOCK, DROP_OLDEST, DROP_NEWEST}
+
+    // PNG  - OpenCV's default PNG encoding. Setting an explicit PNG
+    //        compression level, even 0 or 1, measured slower than the default.
+    // PNM  - uncompressed PGM (1 channel) or PPM (3 channels) for 8-bit
+    //        images; any other type is written as PNG.
+    // RAW  - an uncompressed RawImageFile with the extension ".ijraw"; any
+    //        Mat type.
+    public enum ImageFormat {PNG, PNM, RAW}
+
+    // Configuration of the writer. The defaults apply to any
+    // parameter that is missing from the command line:
+    // [--debug_threads=n] [--debug_queue_mb=n] [--debug_overflow=BLOCK|DROP_OLDEST|DROP_NEWEST]
+    // [--debug_format=PNG|PNM|RAW] [--debug_level_format=level:format,...] e.g. v:RAW,vv:RAW
+    // [--debug_preview_scale=f] (0 < f <= 1) [--debug_archive=path]
+    public static class WriterOptions {
+        public static final int DEFAULT_ENCODER_THREADS = 2;
+        public static final long DEFAULT_MAX_QUEUED_BYTES = 256L * 1024 * 1024;
+
+        public final int encoderThreads;
+        public final long maxQueuedBytes;
+        public final OverflowPolicy overflowPolicy;
+        public final ImageFormat imageFormat;
+        public final Map<RobotLogCommon.CommonLogLevel, ImageFormat> levelFormats; // overrides imageFormat
+        public final double previewScale;
+        public final String archivePath; // null for separate files
+
+        public WriterOptions(int pEncoderThreads, long pMaxQueuedBytes, OverflowPolicy pOverflowPolicy,
+                             ImageFormat pImageFormat, Map<RobotLogCommon.CommonLogLevel, ImageFormat> pLevelFormats,
+                             double pPreviewScale, String pArchivePath) {
+            if (!(pPreviewScale > 0 && pPreviewScale <= 1))
+                throw new AutonomousRobotException(TAG, "Preview scale must be greater than 0 and at most 1");
+
+            encoderThreads = Math.max(1, pEncoderThreads);
+            maxQueuedBytes = pMaxQueuedBytes;
+            overflowPolicy = pOverflowPolicy;
+            imageFormat = pImageFormat;
+            levelFormats = pLevelFormats.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new EnumMap<>(pLevelFormats));
+            previewScale = pPreviewScale;
+            archivePath = pArchivePath;
+        }
+
+        public static WriterOptions getDefault() {
+            return new WriterOptions(DEFAULT_ENCODER_THREADS, DEFAULT_MAX_QUEUED_BYTES, OverflowPolicy.BLOCK,
+                    ImageFormat.PNG, Collections.emptyMap(), 1.0, null);
+        }
+
+        public ImageFormat getImageFormat(RobotLogCommon.CommonLogLevel pLevel) {
+            return levelFormats.getOrDefault(pLevel, imageFormat);
+        }
+
+        public static WriterOptions fromNamedParameters(Map<String, String> pNamedParameters) {
+            int encoderThreads = DEFAULT_ENCODER_THREADS;
+            String threadsParameter = pNamedParameters.get("debug_threads"); // optional
+            if (threadsParameter != null)
+                encoderThreads = Integer.parseInt(threadsParameter);
+
+            long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+            String queueParameter = pNamedParameters.get("debug_queue_mb"); // optional
+            if (queueParameter != null)
+                maxQueuedBytes = Long.parseLong(queueParameter) * 1024 * 1024;
+
+            OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+            String overflowParameter = pNamedParameters.get("debug_overflow"); // optional
+            if (overflowParameter != null)
+                overflowPolicy = OverflowPolicy.valueOf(overflowParameter.toUpperCase());
+
+            ImageFormat imageFormat = ImageFormat.PNG;
+            String formatParameter = pNamedParameters.get("debug_format"); // optional
+            if (formatParameter != null)
+                imageFormat = ImageFormat.valueOf(formatParameter.toUpperCase());
+
+            Map<RobotLogCommon.CommonLogLevel, ImageFormat> levelFormats = new EnumMap<>(RobotLogCommon.CommonLogLevel.class);
+            String levelFormatParameter = pNamedParameters.get("debug_level_format"); // optional
+            if (levelFormatParameter != null)
+                for (String oneLevelFormat : levelFormatParameter.split(",")) {
+                    String[] levelAndFormat = oneLevelFormat.split(":");
+                    if (levelAndFormat.length != 2)
+                        throw new AutonomousRobotException(TAG, "Expected level:format in --debug_level_format, got " + oneLevelFormat);
+                    levelFormats.put(RobotLogCommon.CommonLogLevel.valueOf(levelAndFormat[0].trim()),
+                            ImageFormat.valueOf(levelAndFormat[1].trim().toUpperCase()));
+                }
+
+            double previewScale = 1.0;
+            String scaleParameter = pNamedParameters.get("debug_preview_scale"); // optional
+            if (scaleParameter != null)
+                previewScale = Double.parseDouble(scaleParameter);
+
+            String archivePath = pNamedParameters.get("debug_archive"); // optional
+
+            return new WriterOptions(encoderThreads, maxQueuedBytes, overflowPolicy, imageFormat, levelFormats,
+                    previewScale, archivePath);
+        }
+    }
+
+    // A snapshot of the state of the writer.
+    public static class WriterStatistics {
+        public final int queueDepth;
+        public final long queuedBytes;
+        public final int maxQueueDepth;
+        public final long written;
+        public final long dropped;
+
+        public WriterStatistics(int pQueueDepth, long pQueuedBytes, int pMaxQueueDepth, long pWritten, long pDropped) {
+            queueDepth = pQueueDepth;
+            queuedBytes = pQueuedBytes;
+            maxQueueDepth = pMaxQueueDepth;
+            written = pWritten;
+            dropped = pDropped;
+        }
+
+        @Override
+        public String toString() {
+            return "Debug images written " + written + ", dropped " + dropped + ", queued " + queueDepth +
+                    " (" + queuedBytes + " bytes), maximum queue depth " + maxQueueDepth;
+        }
+    }
+
+    // An image on the queue together with its format and its size when
+    // it was queued. If render is not null the image is the snapshot of
+    // the source of the image that is to be written.
+    private static class QueuedImage {
+        private final String fullFilename;
+        private final Mat image;
+        private final ImageFormat format;
+        private final long bytes;
+        private final UnaryOperator<Mat> render;
+
+        QueuedImage(String pFullFilename, Mat pImage, ImageFormat pFormat, long pBytes, UnaryOperator<Mat> pRender) {
+            fullFilename = pFullFilename;
+            image = pImage;
+            format = pFormat;
+            bytes = pBytes;
+            render = pRender;
+        }
+    }
+
     private static BiConsumer<String, String> logger;
-    private static CompletableFuture<Void> imageWriterFuture;
-    private static final LinkedBlockingQueue<Pair<String, Mat>> imageQueue = new LinkedBlockingQueue<>();
-    private static final Lock imageWriterLock = new ReentrantLock();
-    private static final Condition imageWriterCondition = imageWriterLock.newCondition();
-    private static boolean imageWriterNotification = false; // protected by imageQueueLock
+    private static WriterOptions writerOptions = WriterOptions.getDefault();
+    private static DebugImageArchive archive; // null for separate files
+    private static final List<CompletableFuture<Void>> imageWriterFutures = new ArrayList<>();
+    private static volatile boolean running = false;
+
+    private static final Lock imageQueueLock = new ReentrantLock();
+    private static final Condition imageQueueNotEmpty = imageQueueLock.newCondition();
+    private static final Condition imageQueueNotFull = imageQueueLock.newCondition();
+    private static final ArrayDeque<QueuedImage> imageQueue = new ArrayDeque<>(); // protected by imageQueueLock
+    private static long queuedBytes = 0; // protected by imageQueueLock
+    private static int maxQueueDepth = 0; // protected by imageQueueLock
     private static boolean closeImageWriter = false; // protected by imageQueueLock
     private static DrainOnClose writeFilesOnClose = DrainOnClose.NONE; // protected by imageQueueLock
 
+    // Free snapshot buffers keyed by rows, columns and type.
+    private static final Map<Long, ArrayDeque<Mat>> snapshotPool = new HashMap<>(); // protected by imageQueueLock
+    private static long pooledBytes = 0; // protected by imageQueueLock
+
+    private static final AtomicLong imagesWritten = new AtomicLong();
+    private static final AtomicLong imagesDropped = new AtomicLong();
+
     // Use a Consumer<String> to accommodate System.out.println, the
     // FTC RobotLog, or the Android log.
     public static synchronized boolean initialize(BiConsumer<String, String> pLogger) {
-        if (imageWriterFuture != null)
+        return initialize(pLogger, WriterOptions.getDefault());
+    }
+
+    public static synchronized boolean initialize(BiConsumer<String, String> pLogger, WriterOptions pWriterOptions) {
+        if (running)
             return true; // already initialized
 
         logger = pLogger;
+        writerOptions = pWriterOptions;
+        imageQueueLock.lock();
         try {
-            // Controlled startup of the DebugImageWriter thread.
-            CountDownLatch imageWriterLatch = new CountDownLatch(1);
-            imageWriterFuture = Threading.launchAsync(new DebugImageWriter(imageWriterLatch));
-            imageWriterLatch.await(); // wait for the DebugImageWriter to start
-            logger.accept(TAG, " DebugImageWriter up and running");
+            discardQueuedImages(); // left over from a failed shutdown
+            maxQueueDepth = 0;
+            closeImageWriter = false;
+            writeFilesOnClose = DrainOnClose.NONE;
+        } finally {
+            imageQueueLock.unlock();
+        }
+        imagesWritten.set(0);
+        imagesDropped.set(0);
+
+        try {
+            archive = writerOptions.archivePath == null ? null : new DebugImageArchive(Paths.get(writerOptions.archivePath));
+
+            // Controlled startup of the DebugImageWriter threads.
+            CountDownLatch imageWriterLatch = new CountDownLatch(writerOptions.encoderThreads);
+            for (int i = 0; i < writerOptions.encoderThreads; i++)
+                imageWriterFutures.add(Threading.launchAsync(new DebugImageWriter(imageWriterLatch)));
+            imageWriterLatch.await(); // wait for the DebugImageWriters to start
+            running = true;
+            logger.accept(TAG, " " + writerOptions.encoderThreads + " DebugImageWriter(s) up and running; queue limit " +
+                    writerOptions.maxQueuedBytes + " bytes, overflow policy " + writerOptions.overflowPolicy +
+                    ", format " + writerOptions.imageFormat +
+                    (writerOptions.levelFormats.isEmpty() ? "" : " " + writerOptions.levelFormats) + ", preview scale " + writerOptions.previewScale +
+                    (archive == null ? "" : ", archive " + archive.getPath()));
             return true;
         } catch (Throwable throwable) {
-            imageWriterFuture = null;
+            stopWriters(DrainOnClose.NONE);
+            closeArchive();
             logger.accept(TAG, " Error in DebugImageWriter initialization; writing of files is disabled");
             return false;
         }
     }
 
-    // Even though the BlockingQueue is thread-safe there's a warning about drainTo:
-    // "A failure encountered while attempting to add elements to collection c
-    // [during the drainTo] may result in elements being in neither, either or both
-    // collections when the associated exception is thrown."
-    public static synchronized void writeImage(String pFullFilename, Mat pImage) {
-        if (imageWriterFuture == null)
+    // Enqueue a snapshot of an image for writing. The pixels are copied into
+    // a pooled buffer when the image is queued, so the caller keeps
+    // ownership of pImage and may go on modifying it (or the frame that it
+    // is a view of) without racing the DebugImageWriters. Once the pool has
+    // warmed up the copy is a plain memcpy with no native allocation. No
+    // copy is made if the image is dropped by the OverflowPolicy. Depending
+    // on the OverflowPolicy this method may wait for room in the queue.
+    // With a preview scale the snapshot is the downscaled image and the
+    // queue budget applies to the downscaled size.
+    public static void writeImage(String pFullFilename, Mat pImage) {
+        writeImage(pFullFilename, pImage, writerOptions.imageFormat, null);
+    }
+
+    // Write a debug image at an output level. If pLevel is not loggable
+    // nothing else happens; otherwise the image is queued as above in the
+    // format for pLevel and the filename it will be written to is logged
+    // at pLevel.
+    public static void writeImage(RobotLogCommon.CommonLogLevel pLevel, String pTag, String pFullFilename, Mat pImage) {
+        if (!running || !RobotLogCommon.isLoggable(pLevel))
+            return;
+
+        queueImage(pLevel, pTag, pFullFilename, pImage, null);
+    }
+
+    // Write a debug image that is rendered from pSource, e.g. by drawing
+    // on it or by normalizing it for display. If pLevel is loggable a
+    // snapshot of pSource is queued as above and pRender is called later
+    // on a DebugImageWriter thread with the snapshot. pRender may draw on
+    // the snapshot and return it or return a new Mat, which is released
+    // after it has been written. pRender must not use any other Mat that
+    // the caller may modify or release, including contours: copy them with
+    // ShapeDrawing.snapshotContours, if isWritable(pLevel), and capture
+    // the copy instead. The snapshot is always taken at
+    // full size so that pRender can use the coordinates of pSource; the
+    // preview scale is applied to the rendered image.
+    public static void writeImage(RobotLogCommon.CommonLogLevel pLevel, String pTag, String pFullFilename,
+                                  Mat pSource, UnaryOperator<Mat> pRender) {
+        if (!running || !RobotLogCommon.isLoggable(pLevel))
             return;
 
-        // Enqueue the image for writing out a file.
-        imageWriterLock.lock();
+        queueImage(pLevel, pTag, pFullFilename, pSource, pRender);
+    }
+
+    // True if an image written at pLevel would be queued, i.e. the writers
+    // are running and pLevel is loggable. For work that is only needed to
+    // build a debug image.
+    public static boolean isWritable(RobotLogCommon.CommonLogLevel pLevel) {
+        return running && RobotLogCommon.isLoggable(pLevel);
+    }
+
+    // Write a debug image that is built by pImage on the calling thread,
+    // but only if pLevel is loggable. Use this form when the image can't
+    // be rendered from a single source. The Mat returned by pImage belongs
+    // to DebugImageCommon and is released after it has been queued.
+    public static void writeImage(RobotLogCommon.CommonLogLevel pLevel, String pTag, String pFullFilename,
+                                  Supplier<Mat> pImage) {
+        if (!running || !RobotLogCommon.isLoggable(pLevel))
+            return;
+
+        Mat image = pImage.get();
+        queueImage(pLevel, pTag, pFullFilename, image, null);
+        image.release();
+    }
+
+    private static void queueImage(RobotLogCommon.CommonLogLevel pLevel, String pTag, String pFullFilename,
+                                   Mat pImage, UnaryOperator<Mat> pRender) {
+        ImageFormat format = writerOptions.getImageFormat(pLevel);
+        writeImage(pFullFilename, pImage, format, pRender);
+        String message = "Writing " + formatFilename(pFullFilename, pImage, format);
+        switch (pLevel) {
+            case d -> RobotLogCommon.d(pTag, message);
+            case v -> RobotLogCommon.v(pTag, message);
+            case vv -> RobotLogCommon.vv(pTag, message);
+            default -> RobotLogCommon.c(pTag, message);
+        }
+    }
+
+    private static void writeImage(String pFullFilename, Mat pImage, ImageFormat pFormat, UnaryOperator<Mat> pRender) {
+        if (!running)
+            return;
+
+        Size snapshotSize = pRender == null ? snapshotSize(pImage) : pImage.size();
+        int snapshotRows = (int) snapshotSize.height;
+        int snapshotCols = (int) snapshotSize.width;
+        long imageBytes = (long) snapshotRows * snapshotCols * pImage.elemSize();
+        long snapshotKey = snapshotKey(snapshotRows, snapshotCols, pImage.type());
+        Mat snapshot;
+        imageQueueLock.lock();
         try {
-            imageQueue.add(Pair.create(pFullFilename, pImage));
-            imageWriterNotification = true;
-            closeImageWriter = false;
-            imageWriterCondition.signal();
+            if (closeImageWriter)
+                return;
+
+            // An image that is larger than the whole budget is accepted
+            // into an empty queue so that it is never lost under BLOCK.
+            while (!imageQueue.isEmpty() && queuedBytes + imageBytes > writerOptions.maxQueuedBytes) {
+                switch (writerOptions.overflowPolicy) {
+                    case BLOCK -> {
+                        imageQueueNotFull.await();
+                        if (closeImageWriter)
+                            return;
+                    }
+                    case DROP_OLDEST -> {
+                        QueuedImage oldest = imageQueue.removeFirst();
+                        queuedBytes -= oldest.bytes;
+                        recycleSnapshot(oldest.image);
+                        imagesDropped.incrementAndGet();
+                    }
+                    case DROP_NEWEST -> {
+                        imagesDropped.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+
+            // Reserve the room in the queue and take a buffer for the
+            // snapshot; the copy itself is made after the lock is released.
+            queuedBytes += imageBytes;
+            ArrayDeque<Mat> freeBuffers = snapshotPool.get(snapshotKey);
+            snapshot = (freeBuffers == null || freeBuffers.isEmpty()) ? null : freeBuffers.pop();
+            if (snapshot != null)
+                pooledBytes -= imageBytes;
+        } catch (InterruptedException iex) {
+            imagesDropped.incrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
         } finally {
-            imageWriterLock.unlock();
+            imageQueueLock.unlock();
+        }
+
+        if (snapshot == null)
+            snapshot = new Mat(snapshotRows, snapshotCols, pImage.type());
+        if (snapshotRows == pImage.rows() && snapshotCols == pImage.cols())
+            pImage.copyTo(snapshot);
+        else
+            Imgproc.resize(pImage, snapshot, snapshotSize, 0, 0, previewInterpolation(pImage));
+
+        imageQueueLock.lock();
+        try {
+            imageQueue.addLast(new QueuedImage(pFullFilename, snapshot, pFormat, imageBytes, pRender));
+            maxQueueDepth = Math.max(maxQueueDepth, imageQueue.size());
+            imageQueueNotEmpty.signal();
+        } finally {
+            imageQueueLock.unlock();
+        }
+    }
+
+    // Return a snapshot buffer to the pool unless the pool already holds
+    // as many bytes as the queue may.
+    private static void recycleSnapshot(Mat pSnapshot) { // must be protected by imageQueueLock
+        long bytes = pSnapshot.total() * pSnapshot.elemSize();
+        if (pooledBytes + bytes > writerOptions.maxQueuedBytes) {
+            pSnapshot.release();
+            return;
         }
+
+        snapshotPool.computeIfAbsent(snapshotKey(pSnapshot.rows(), pSnapshot.cols(), pSnapshot.type()),
+                k -> new ArrayDeque<>()).push(pSnapshot);
+        pooledBytes += bytes;
+    }
+
+    private static long snapshotKey(int pRows, int pCols, int pType) {
+        return ((long) pRows << 40) | ((long) pCols << 16) | pType;
+    }
+
+    private static Size snapshotSize(Mat pImage) {
+        double scale = writerOptions.previewScale;
+        if (scale == 1.0)
+            return pImage.size();
+
+        return new Size(Math.max(1, Math.round(pImage.cols() * scale)), Math.max(1, Math.round(pImage.rows() * scale)));
+    }
+
+    // Only nearest-neighbor resizing supports every depth; it also keeps
+    // the labels in a marker image intact.
+    private static int previewInterpolation(Mat pImage) {
+        int depth = CvType.depth(pImage.type());
+        return (depth == CvType.CV_8S || depth == CvType.CV_32S) ? Imgproc.INTER_NEAREST : Imgproc.INTER_AREA;
+    }
+
+    // Run the render function of a queued image and apply the preview
+    // scale to the result. Returns null if the rendering failed.
+    private static Mat renderImage(QueuedImage pImageEntry) {
+        Mat rendered;
+        try {
+            rendered = pImageEntry.render.apply(pImageEntry.image);
+        } catch (RuntimeException rex) {
+            logger.accept(TAG, " Unable to render " + pImageEntry.fullFilename + ": " + rex);
+            return null;
+        }
+
+        Size previewSize = snapshotSize(rendered);
+        if (previewSize.width == rendered.cols() && previewSize.height == rendered.rows())
+            return rendered;
+
+        Mat preview = new Mat();
+        Imgproc.resize(rendered, preview, previewSize, 0, 0, previewInterpolation(rendered));
+        if (rendered != pImageEntry.image)
+            rendered.release();
+        return preview;
+    }
+
+    // Encode one image in the configured format and write it to its own
+    // file or append it to the archive.
+    private static void encodeImage(String pFullFilename, Mat pImage, ImageFormat pFormat) {
+        String filename = formatFilename(pFullFilename, pImage, pFormat);
+        try {
+            boolean raw = filename.endsWith(RawImageFile.FILE_EXTENSION);
+            if (archive == null) {
+                if (raw)
+                    RawImageFile.write(Paths.get(filename), pImage);
+                else
+                    Imgcodecs.imwrite(filename, pImage);
+                return;
+            }
+
+            byte[] encoded;
+            if (raw) {
+                ByteArrayOutputStream rawBytes = new ByteArrayOutputStream((int) (pImage.total() * pImage.elemSize()) + 64);
+                RawImageFile.write(rawBytes, pImage);
+                encoded = rawBytes.toByteArray();
+            } else {
+                MatOfByte encodedMat = new MatOfByte();
+                Imgcodecs.imencode(filename.substring(filename.lastIndexOf('.')), pImage, encodedMat);
+                encoded = encodedMat.toArray();
+                encodedMat.release();
+            }
+            archive.append(filename, encoded);
+        } catch (IOException iox) {
+            logger.accept(TAG, " Unable to write " + filename + ": " + iox.getMessage());
+        }
+    }
+
+    // The filename with the extension of the configured format.
+    private static String formatFilename(String pFullFilename, Mat pImage, ImageFormat pFormat) {
+        String baseFilename = pFullFilename.endsWith(".png") ?
+                pFullFilename.substring(0, pFullFilename.length() - ".png".length()) : pFullFilename;
+        return switch (pFormat) {
+            case PNG -> pFullFilename;
+            case PNM -> {
+                if (pImage.type() == CvType.CV_8UC1)
+                    yield baseFilename + ".pgm";
+                if (pImage.type() == CvType.CV_8UC3)
+                    yield baseFilename + ".ppm";
+                yield pFullFilename;
+            }
+            case RAW -> baseFilename + RawImageFile.FILE_EXTENSION;
+        };
     }
 
-    // Close DebugImageCommon and the associated DebugImageWriter thread.
+    public static WriterStatistics getStatistics() {
+        imageQueueLock.lock();
+        try {
+            return new WriterStatistics(imageQueue.size(), queuedBytes, maxQueueDepth,
+                    imagesWritten.get(), imagesDropped.get());
+        } finally {
+            imageQueueLock.unlock();
+        }
+    }
+
+    // Close DebugImageCommon and the associated DebugImageWriter threads.
     public static synchronized void close() {
         close(DrainOnClose.NONE); // default; exit immediately
     }
 
     // For testing, write out all queued files.
     public static synchronized void close(DrainOnClose pWriteFiles) {
-        if (imageWriterFuture == null)
+        if (!running)
+            return;
+
+        running = false;
+        stopWriters(pWriteFiles);
+        closeArchive();
+        logger.accept(TAG, " " + getStatistics());
+    }
+
+    private static void closeArchive() {
+        if (archive == null)
             return;
 
-        // Signal the DebugImageWriter to exit.
         try {
-            Objects.requireNonNull(imageWriterLock).lock();
+            archive.close();
+            logger.accept(TAG, " Wrote " + archive.size() + " image(s) to " + archive.getPath());
+        } catch (IOException iox) {
+            logger.accept(TAG, " Unable to close " + archive.getPath() + ": " + iox.getMessage());
+        }
+        archive = null;
+    }
+
+    // Signal the DebugImageWriters to exit and wait for them.
+    private static void stopWriters(DrainOnClose pWriteFiles) {
+        imageQueueLock.lock();
+        try {
             writeFilesOnClose = pWriteFiles;
-            imageWriterNotification = true;
             closeImageWriter = true;
-            imageWriterCondition.signal();
+            imageQueueNotEmpty.signalAll();
+            imageQueueNotFull.signalAll();
         } finally {
-            imageWriterLock.unlock();
+            imageQueueLock.unlock();
         }
 
-        // Check if the DebugImageWriter has shut down cleanly.
+        // Check if the DebugImageWriters have shut down cleanly.
+        for (CompletableFuture<Void> oneFuture : imageWriterFutures) {
+            try {
+                // Use a timeout value so that we never get hung up here.
+                Threading.getFutureCompletion(oneFuture);
+            } catch (Throwable t) {
+                // Our Threading.launchAsync method ensures that shutdownNow is called on
+                // the executor in which the CompletableFuture is running.
+                logger.accept(TAG, " Exception during shutdown of DebugImageWriter");
+                logger.accept(TAG, " Error " + t);
+            }
+        }
+
+        // After a clean shutdown we can remove all traces of the DebugImageWriters.
+        logger.accept(TAG, " DebugImageWriter threads completed");
+        imageWriterFutures.clear();
+
+        // Anything still on the queue, e.g. after DrainOnClose.NONE, will
+        // never be written.
+        imageQueueLock.lock();
         try {
-            // Use a timeout value so that we never get hung up here.
-            Threading.getFutureCompletion(imageWriterFuture);
-
-            // After a clean shutdown we can remove all traces of the DebugImageWriter.
-            logger.accept(TAG, " DebugImageWriter thread completed successfully");
-        } catch (Throwable t) {
-            // Our Threading.launchAsync method ensures that shutdownNow is called on
-            // the executor in which the CompletableFuture is running.
-            logger.accept(TAG, " Exception during shutdown of DebugImageWriter");
-            logger.accept(TAG, " Error " + t);
+            discardQueuedImages();
         } finally {
-            imageWriterFuture = null;
+            imageQueueLock.unlock();
         }
     }
 
-    // Separate thread that writes OpenCV images out to the local file system.
+    // Count the images on the queue as dropped and release their snapshots.
+    private static void discardQueuedImages() { // must be protected by imageQueueLock
+        for (QueuedImage oneImageEntry : imageQueue) {
+            oneImageEntry.image.release();
+            imagesDropped.incrementAndGet();
+        }
+
+        imageQueue.clear();
+        queuedBytes = 0;
+    }
+
+    // One of the threads that write OpenCV images out to the local file system.
     private static class DebugImageWriter implements Callable<Void> {
         private final CountDownLatch countDownLatch;
 
@@ -128,45 +639,50 @@ public class DebugImageCommon {
         }
 
         public Void call() {
-            ArrayList<Pair<String, Mat>> drain = new ArrayList<>();
-
             // Use a countdown latch to signal that the CompletableFuture is started.
             countDownLatch.countDown();
             while (true) {
+                QueuedImage oneImageEntry;
+                imageQueueLock.lock();
                 try {
-                    Objects.requireNonNull(imageWriterLock).lock();
-                    while (!imageWriterNotification)
-                        Objects.requireNonNull(imageWriterCondition).await();
+                    while (imageQueue.isEmpty() && !closeImageWriter)
+                        imageQueueNotEmpty.await();
 
-                    imageWriterNotification = false;
-
-                    // If there is a request to close the DebugImageWriter, give up immediately.
-                    if (closeImageWriter && writeFilesOnClose == DrainOnClose.NONE) {
-                        logger.accept(TAG, " Closing the DebugImageWriter with " + imageQueue.size() + " entries on the queue");
+                    // If there is a request to close the DebugImageWriter, give up immediately
+                    // unless the queued images are to be written first.
+                    if (closeImageWriter && (writeFilesOnClose == DrainOnClose.NONE || imageQueue.isEmpty())) {
+                        if (!imageQueue.isEmpty())
+                            logger.accept(TAG, " Closing a DebugImageWriter with " + imageQueue.size() + " entries on the queue");
                         return null;
                     }
 
-                    // This is the normal path.
-                    // Drain one or more entries from the queue to a local collection
-                    // and then write them out *after* the lock is released.
-                    Objects.requireNonNull(imageQueue).drainTo(drain); // must be protected by a lock
-                    for (Pair<String, Mat> oneImageEntry : drain) {
-                        Imgcodecs.imwrite(oneImageEntry.first, oneImageEntry.second);
-                    }
-
-                    drain.clear();
+                    oneImageEntry = imageQueue.removeFirst();
+                    queuedBytes -= oneImageEntry.bytes;
+                    imageQueueNotFull.signalAll();
+                } catch (InterruptedException iex) {  // await() can throw InterruptedException
+                    return null; // DebugImageWriter will exit
+                } finally {
+                    imageQueueLock.unlock();
+                }
 
-                    if (closeImageWriter)
-                        return null;
+                // Render, encode and write the image *after* the lock is released.
+                Mat image = oneImageEntry.render == null ? oneImageEntry.image : renderImage(oneImageEntry);
+                if (image == null)
+                    imagesDropped.incrementAndGet();
+                else {
+                    encodeImage(oneImageEntry.fullFilename, image, oneImageEntry.format);
+                    imagesWritten.incrementAndGet();
+                    if (image != oneImageEntry.image)
+                        image.release();
+                }
 
-                } catch (InterruptedException iex) {  // await() can throw InterruptedException
-                    break; // DebugImageWriter will exit
+                imageQueueLock.lock();
+                try {
+                    recycleSnapshot(oneImageEntry.image);
                 } finally {
-                    Objects.requireNonNull(imageWriterLock).unlock();
+                    imageQueueLock.unlock();
                 }
             }
-
-            return null;
         }
     }
 
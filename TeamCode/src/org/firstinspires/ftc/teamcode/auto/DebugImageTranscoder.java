@@ -0,0 +1,103 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Offline conversion to PNG of the debug images that were written with
+// the fast formats of DebugImageCommon (see DebugImageCommon.ImageFormat).
+// Every raw dump (.ijraw) under the directory, and optionally every PGM
+// and PPM file, is converted to a PNG file with the same name and the
+// extension ".png".
+//
+// A raw dump of a type that PNG can't hold is converted first: CV_32S
+// (e.g. watershed markers) and CV_32F/CV_64F (e.g. a distance transform)
+// are normalized to the full range of CV_8U, and CV_16S and CV_8S are
+// converted to CV_8U with saturation.
+//
+// Command line: [--dir=path] [--pnm] [--delete]
+//   --dir    the directory to search; defaults to the working directory
+//   --pnm    also convert .pgm and .ppm files
+//   --delete delete each source file after it has been converted
+public class DebugImageTranscoder {
+
+    private static final String TAG = DebugImageTranscoder.class.getSimpleName();
+
+    public static void main(String[] pArgs) throws IOException {
+        Map<String, String> namedParameters = RecognitionCLI.parseNamedParameters(pArgs);
+
+        String directory = WorkingDirectory.getWorkingDirectory();
+        String dirParameter = namedParameters.get("dir"); // optional
+        if (dirParameter != null)
+            directory = dirParameter;
+
+        boolean includePNM = namedParameters.containsKey("pnm");
+        boolean deleteSource = namedParameters.containsKey("delete");
+
+        OpenCVLoader.load();
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(Paths.get(directory))) {
+            sources = files.filter(Files::isRegularFile)
+                    .filter(file -> isSource(file, includePNM))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        int converted = 0;
+        for (Path oneSource : sources) {
+            String filename = oneSource.toString();
+            String pngFilename = filename.substring(0, filename.lastIndexOf('.')) + ".png";
+            Mat image = filename.endsWith(RawImageFile.FILE_EXTENSION) ?
+                    RawImageFile.read(oneSource) : Imgcodecs.imread(filename, Imgcodecs.IMREAD_UNCHANGED);
+            if (image.empty())
+                throw new AutonomousRobotException(TAG, "Unable to read " + filename);
+
+            Mat pngImage = toPNGCompatible(image);
+            if (!Imgcodecs.imwrite(pngFilename, pngImage))
+                throw new AutonomousRobotException(TAG, "Unable to write " + pngFilename);
+
+            if (pngImage != image)
+                pngImage.release();
+            image.release();
+
+            if (deleteSource)
+                Files.delete(oneSource);
+            converted++;
+        }
+
+        System.out.println(TAG + " Converted " + converted + " file(s) under " + directory);
+    }
+
+    private static boolean isSource(Path pFile, boolean pIncludePNM) {
+        String filename = pFile.getFileName().toString();
+        return filename.endsWith(RawImageFile.FILE_EXTENSION) ||
+                (pIncludePNM && (filename.endsWith(".pgm") || filename.endsWith(".ppm")));
+    }
+
+    // PNG holds CV_8U and CV_16U with 1, 3 or 4 channels.
+    static Mat toPNGCompatible(Mat pImage) {
+        int depth = CvType.depth(pImage.type());
+        if (depth == CvType.CV_8U || depth == CvType.CV_16U)
+            return pImage;
+
+        Mat pngImage = new Mat();
+        if (depth == CvType.CV_32S || depth == CvType.CV_32F || depth == CvType.CV_64F)
+            Core.normalize(pImage, pngImage, 0, 255, Core.NORM_MINMAX, CvType.CV_8U);
+        else
+            pImage.convertTo(pngImage, CvType.CV_8U);
+        return pngImage;
+    }
+
+}
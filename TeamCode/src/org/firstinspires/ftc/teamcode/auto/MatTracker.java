@@ -0,0 +1,246 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Opt-in tracking of the native memory held by the Mats that the vision
+// helpers (ImageUtils, WatershedUtils) create and return. Usage:
+// return MatTracker.track(thresholded);
+// ... and, around one recognition on one thread:
+// MatTracker.beginFrame();
+// ... recognize ...
+// MatTracker.endFrame(actionName);
+//
+// At the end of the frame every tracked Mat is in one of three states:
+// released (its native data has been freed), handed off (handOff() has
+// been called because another component now owns it) or outstanding.
+// DebugImageCommon copies the images it queues so the caller still owns
+// a Mat that has been written as a debug image. The
+// outstanding native bytes are logged per allocation site, i.e. the helper
+// and the line in the recognition path that called it, and accumulated for
+// report(). If a budget has been set and the outstanding bytes for the frame
+// exceed it endFrame() throws an AutonomousRobotException, which fails the
+// action.
+//
+// When tracking is disabled (the default) every method returns after a
+// single volatile read. Recognitions may run concurrently; each thread
+// tracks its own frame.
+public class MatTracker {
+
+    private static final String TAG = MatTracker.class.getSimpleName();
+
+    public static final String MAT_TRACKING_FILENAME = "MatTracking.csv";
+    public static final long NO_BUDGET = -1;
+
+    private static volatile boolean enabled = false;
+    private static volatile long budgetBytesPerFrame = NO_BUDGET;
+
+    // The Mats tracked on this thread; null if no frame is open.
+    private static final ThreadLocal<List<TrackedMat>> frameMats = new ThreadLocal<>();
+
+    // Totals over all frames keyed by recognition and then allocation site.
+    private static final Map<String, AtomicLong> framesPerRecognition = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, SiteTotals>> totals = new ConcurrentHashMap<>();
+
+    private static class TrackedMat {
+        private final Mat mat;
+        private final String site;
+        private boolean handedOff = false;
+
+        TrackedMat(Mat pMat, String pSite) {
+            mat = pMat;
+            site = pSite;
+        }
+    }
+
+    private static class SiteTotals {
+        private long mats;
+        private long bytes;
+        private long maxBytesPerFrame;
+
+        synchronized void add(long pMats, long pBytes) {
+            mats += pMats;
+            bytes += pBytes;
+            maxBytesPerFrame = Math.max(maxBytesPerFrame, pBytes);
+        }
+    }
+
+    // pBudgetBytesPerFrame may be NO_BUDGET.
+    public static void enable(long pBudgetBytesPerFrame) {
+        budgetBytesPerFrame = pBudgetBytesPerFrame;
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void beginFrame() {
+        if (!enabled)
+            return;
+
+        frameMats.set(new ArrayList<>());
+    }
+
+    // Record a Mat created by a helper. Returns pMat so that the call can
+    // wrap a return statement. A Mat that is already tracked, e.g. because
+    // one helper returns the result of another, is recorded only once.
+    public static Mat track(Mat pMat) {
+        if (!enabled)
+            return pMat;
+
+        List<TrackedMat> mats = frameMats.get();
+        if (mats == null || pMat == null || find(mats, pMat) != null)
+            return pMat;
+
+        mats.add(new TrackedMat(pMat, allocationSite()));
+        return pMat;
+    }
+
+    // Ownership of pMat has passed to another component.
+    public static void handOff(Mat pMat) {
+        if (!enabled)
+            return;
+
+        List<TrackedMat> mats = frameMats.get();
+        if (mats == null)
+            return;
+
+        TrackedMat tracked = find(mats, pMat);
+        if (tracked != null)
+            tracked.handedOff = true;
+    }
+
+    // Report the outstanding native memory of the frame and close it.
+    // Returns the number of outstanding bytes. Throws if a budget has been
+    // set and the frame exceeded it.
+    public static long endFrame(String pRecognition) {
+        if (!enabled)
+            return 0;
+
+        List<TrackedMat> mats = frameMats.get();
+        frameMats.remove();
+        if (mats == null)
+            return 0;
+
+        int released = 0;
+        int handedOff = 0;
+        long outstandingBytes = 0;
+        Map<String, long[]> outstandingBySite = new LinkedHashMap<>(); // site -> {mats, bytes}
+        for (TrackedMat oneMat : mats) {
+            if (oneMat.handedOff)
+                handedOff++;
+            else if (oneMat.mat.dataAddr() == 0)
+                released++;
+            else {
+                long bytes = oneMat.mat.total() * oneMat.mat.elemSize();
+                long[] site = outstandingBySite.computeIfAbsent(oneMat.site, k -> new long[2]);
+                site[0]++;
+                site[1] += bytes;
+                outstandingBytes += bytes;
+            }
+        }
+
+        framesPerRecognition.computeIfAbsent(pRecognition, k -> new AtomicLong()).incrementAndGet();
+        Map<String, SiteTotals> recognitionTotals = totals.computeIfAbsent(pRecognition, k -> new ConcurrentHashMap<>());
+        for (Map.Entry<String, long[]> oneSite : outstandingBySite.entrySet())
+            recognitionTotals.computeIfAbsent(oneSite.getKey(), k -> new SiteTotals())
+                    .add(oneSite.getValue()[0], oneSite.getValue()[1]);
+
+        RobotLogCommon.d(TAG, pRecognition + ": Mats tracked " + mats.size() + ", released " + released +
+                ", handed off " + handedOff + ", outstanding native bytes " + outstandingBytes);
+        for (Map.Entry<String, long[]> oneSite : outstandingBySite.entrySet())
+            RobotLogCommon.d(TAG, "  " + oneSite.getKey() + ": " + oneSite.getValue()[1] +
+                    " bytes in " + oneSite.getValue()[0] + " Mat(s)");
+
+        long budget = budgetBytesPerFrame;
+        if (budget != NO_BUDGET && outstandingBytes > budget)
+            throw new AutonomousRobotException(TAG, pRecognition + " leaked " + outstandingBytes +
+                    " native bytes, budget " + budget + "; largest site " +
+                    outstandingBySite.entrySet().stream().max(Map.Entry.comparingByValue((a, b) -> Long.compare(a[1], b[1])))
+                            .map(Map.Entry::getKey).orElse(""));
+
+        return outstandingBytes;
+    }
+
+    // Close the frame without reporting, e.g. after a recognition has failed.
+    public static void discardFrame() {
+        if (!enabled)
+            return;
+
+        frameMats.remove();
+    }
+
+    // Log the outstanding native memory per recognition and allocation site
+    // over all frames and write it to a CSV file. Does nothing if tracking
+    // is disabled.
+    public static void report(String pCsvFilename) {
+        if (!enabled)
+            return;
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(pCsvFilename)))) {
+            csv.println("recognition,site,frames,mats,total_bytes,mean_bytes_per_frame,max_bytes_per_frame");
+            for (String oneRecognition : totals.keySet().stream().sorted().collect(Collectors.toList())) {
+                long frames = framesPerRecognition.get(oneRecognition).get();
+                for (Map.Entry<String, SiteTotals> oneSite : totals.get(oneRecognition).entrySet()) {
+                    SiteTotals siteTotals = oneSite.getValue();
+                    RobotLogCommon.c(TAG, String.format(Locale.ROOT,
+                            "%s %s: %d Mat(s) in %d frame(s), mean %.0f bytes per frame, max %d",
+                            oneRecognition, oneSite.getKey(), siteTotals.mats, frames,
+                            (double) siteTotals.bytes / frames, siteTotals.maxBytesPerFrame));
+                    csv.println(String.format(Locale.ROOT, "%s,\"%s\",%d,%d,%d,%.0f,%d", oneRecognition, oneSite.getKey(),
+                            frames, siteTotals.mats, siteTotals.bytes, (double) siteTotals.bytes / frames,
+                            siteTotals.maxBytesPerFrame));
+                }
+            }
+            RobotLogCommon.c(TAG, "Wrote native Mat tracking to " + pCsvFilename);
+        } catch (IOException iox) {
+            // Don't let a reporting failure mask the results of the run.
+            RobotLogCommon.c(TAG, "Unable to write " + pCsvFilename + ": " + iox.getMessage());
+        }
+    }
+
+    private static TrackedMat find(List<TrackedMat> pMats, Mat pMat) {
+        for (TrackedMat oneMat : pMats)
+            if (oneMat.mat == pMat)
+                return oneMat;
+        return null;
+    }
+
+    // The helper that created the Mat and the line that called the helper,
+    // e.g. "ImageUtils.performInRange <- GoldCubeRecognition.colorPathWebcam:97".
+    private static String allocationSite() {
+        List<StackWalker.StackFrame> frames = StackWalker.getInstance().walk(stack -> stack
+                .dropWhile(frame -> frame.getClassName().equals(MatTracker.class.getName()))
+                .limit(2)
+                .collect(Collectors.toList()));
+
+        if (frames.isEmpty())
+            return "unknown";
+
+        String site = simpleName(frames.get(0)) + "." + frames.get(0).getMethodName();
+        if (frames.size() > 1)
+            site += " <- " + simpleName(frames.get(1)) + "." + frames.get(1).getMethodName() + ":" + frames.get(1).getLineNumber();
+        return site;
+    }
+
+    private static String simpleName(StackWalker.StackFrame pFrame) {
+        String className = pFrame.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+}
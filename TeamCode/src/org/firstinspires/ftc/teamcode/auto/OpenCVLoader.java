@@ -0,0 +1,21 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.opencv.core.Core;
+
+// Loads the OpenCV native library exactly once per process, independent
+// of JavaFX. All entry points - RecognitionDispatcher, RecognitionCLI,
+// BatchRunner - and library callers should go through here.
+public class OpenCVLoader {
+
+    private static boolean openCVInitialized = false;
+
+    public static synchronized boolean load() {
+        if (openCVInitialized)
+            return true;
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // IntelliJ only
+        openCVInitialized = true; // IntelliJ only
+        return true;
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// An uncompressed dump of a Mat with a small header. Writing one costs
+// little more than the file system write itself, so it is the fastest
+// format for debug images; DebugImageTranscoder converts the dumps to PNG
+// after the run. Layout, all integers big-endian:
+// magic   - 5 bytes "IJRAW"
+// version - 1 byte
+// rows, cols, type - 3 ints; type is the OpenCV type, e.g. CV_8UC3
+// data    - rows * cols * elemSize bytes in row-major order; elements of
+//           more than one byte are little-endian.
+public class RawImageFile {
+
+    private static final String TAG = RawImageFile.class.getSimpleName();
+
+    public static final String FILE_EXTENSION = ".ijraw";
+
+    private static final byte[] MAGIC = "IJRAW".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    public static void write(Path pPath, Mat pImage) throws IOException {
+        try (OutputStream out = Files.newOutputStream(pPath)) {
+            write(out, pImage);
+        }
+    }
+
+    // Writes the header and the data to pOut but does not close it.
+    public static void write(OutputStream pOut, Mat pImage) throws IOException {
+        Mat image = pImage.isContinuous() ? pImage : pImage.clone();
+        try {
+            DataOutputStream out = new DataOutputStream(pOut);
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(image.rows());
+            out.writeInt(image.cols());
+            out.writeInt(image.type());
+            writeData(out, image);
+            out.flush();
+        } finally {
+            if (image != pImage)
+                image.release();
+        }
+    }
+
+    public static Mat read(Path pPath) throws IOException {
+        try (InputStream in = Files.newInputStream(pPath)) {
+            return read(in, pPath.toString());
+        }
+    }
+
+    // pSource identifies the stream in error messages.
+    public static Mat read(InputStream pIn, String pSource) throws IOException {
+        DataInputStream in = new DataInputStream(pIn);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new AutonomousRobotException(TAG, pSource + " is not a raw image file");
+
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new AutonomousRobotException(TAG, pSource + ": unsupported version " + version);
+
+        int rows = in.readInt();
+        int cols = in.readInt();
+        int type = in.readInt();
+        Mat image = new Mat(rows, cols, type);
+        readData(in, image);
+        return image;
+    }
+
+    private static void writeData(OutputStream pOut, Mat pImage) throws IOException {
+        int elements = (int) (pImage.total() * pImage.channels());
+        switch (CvType.depth(pImage.type())) {
+            case CvType.CV_8U, CvType.CV_8S -> {
+                byte[] data = new byte[elements];
+                pImage.get(0, 0, data);
+                pOut.write(data);
+            }
+            case CvType.CV_16U, CvType.CV_16S -> {
+                short[] data = new short[elements];
+                pImage.get(0, 0, data);
+                ByteBuffer buffer = littleEndian(elements * 2);
+                buffer.asShortBuffer().put(data);
+                pOut.write(buffer.array());
+            }
+            case CvType.CV_32S -> {
+                int[] data = new int[elements];
+                pImage.get(0, 0, data);
+                ByteBuffer buffer = littleEndian(elements * 4);
+                buffer.asIntBuffer().put(data);
+                pOut.write(buffer.array());
+            }
+            case CvType.CV_32F -> {
+                float[] data = new float[elements];
+                pImage.get(0, 0, data);
+                ByteBuffer buffer = littleEndian(elements * 4);
+                buffer.asFloatBuffer().put(data);
+                pOut.write(buffer.array());
+            }
+            case CvType.CV_64F -> {
+                double[] data = new double[elements];
+                pImage.get(0, 0, data);
+                ByteBuffer buffer = littleEndian(elements * 8);
+                buffer.asDoubleBuffer().put(data);
+                pOut.write(buffer.array());
+            }
+            default -> throw new AutonomousRobotException(TAG, "Unsupported Mat type " + CvType.typeToString(pImage.type()));
+        }
+    }
+
+    private static void readData(InputStream pIn, Mat pImage) throws IOException {
+        int elements = (int) (pImage.total() * pImage.channels());
+        int byteCount = (int) (pImage.total() * pImage.elemSize());
+        byte[] bytes = pIn.readNBytes(byteCount);
+        if (bytes.length != byteCount)
+            throw new AutonomousRobotException(TAG, "Raw image file is truncated");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        switch (CvType.depth(pImage.type())) {
+            case CvType.CV_8U, CvType.CV_8S -> pImage.put(0, 0, bytes);
+            case CvType.CV_16U, CvType.CV_16S -> {
+                short[] data = new short[elements];
+                buffer.asShortBuffer().get(data);
+                pImage.put(0, 0, data);
+            }
+            case CvType.CV_32S -> {
+                int[] data = new int[elements];
+                buffer.asIntBuffer().get(data);
+                pImage.put(0, 0, data);
+            }
+            case CvType.CV_32F -> {
+                float[] data = new float[elements];
+                buffer.asFloatBuffer().get(data);
+                pImage.put(0, 0, data);
+            }
+            case CvType.CV_64F -> {
+                double[] data = new double[elements];
+                buffer.asDoubleBuffer().get(data);
+                pImage.put(0, 0, data);
+            }
+            default -> throw new AutonomousRobotException(TAG, "Unsupported Mat type " + CvType.typeToString(pImage.type()));
+        }
+    }
+
+    private static ByteBuffer littleEndian(int pBytes) {
+        return ByteBuffer.allocate(pBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
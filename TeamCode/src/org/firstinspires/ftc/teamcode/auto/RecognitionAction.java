@@ -0,0 +1,196 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.xml.RobotXMLElement;
+import org.firstinspires.ftc.ftcdevcommon.xml.XPathAccess;
+import org.firstinspires.ftc.teamcode.auto.vision.*;
+import org.firstinspires.ftc.teamcode.auto.xml.*;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.util.function.Supplier;
+
+// A single action from the TEST OpMode of a test case's RobotAction.xml
+// that has been prepared for execution: the parameters for the action
+// have been read from their XML files and the recognition path has been
+// selected. Nothing here depends on JavaFX so the same per-action code
+// serves the RecognitionDispatcher and the headless BatchRunner.
+//## The recognizers must treat the image they get from the ImageProvider
+// as read-only because it may be shared with other actions running
+// concurrently on the same frame.
+public class RecognitionAction {
+
+    private static final String TAG = RecognitionAction.class.getSimpleName();
+
+    // Runs the recognition for an action against the image supplied
+    // by an ImageProvider.
+    @FunctionalInterface
+    public interface Recognizer {
+        RobotConstants.RecognitionResults recognize(ImageProvider pImageProvider) throws InterruptedException;
+    }
+
+    public final String actionName;
+    public final VisionParameters.ImageParameters imageParameters;
+    public final String displayTitle;
+    private final Recognizer recognizer;
+
+    private RecognitionAction(String pActionName, VisionParameters.ImageParameters pImageParameters,
+                              String pDisplayTitle, Recognizer pRecognizer) {
+        actionName = pActionName;
+        imageParameters = pImageParameters;
+        displayTitle = pDisplayTitle;
+        recognizer = pRecognizer;
+    }
+
+    // Perform image recognition on the image named in the <image_parameters>
+    // element of the action.
+    public RobotConstants.RecognitionResults recognize(String pFullTestCaseDir) throws InterruptedException {
+        return recognizer.recognize(new FileImage(pFullTestCaseDir + imageParameters.image_source));
+    }
+
+    // Perform image recognition on an image from any source.
+    public RobotConstants.RecognitionResults recognize(ImageProvider pImageProvider) throws InterruptedException {
+        return recognizer.recognize(pImageProvider);
+    }
+
+    // Read the parameters for a single action and select its recognition path.
+    // The parameter files are read from the test case directory; debug images
+    // are written to pOutputDir, which may be the test case directory itself.
+    // The parameter objects come from the ConfigCache, so a parameter file
+    // that has not changed since an earlier action or run is not parsed again.
+    // If pConfigWatcher is not null the parameter files are reloaded when
+    // they change; each call to recognize() then uses the parameters that
+    // are current when the call starts.
+    public static RecognitionAction prepare(String pFullTestCaseDir, String pOutputDir, RobotConstants.Alliance pAlliance,
+                                            String pRobotActionFilename, RobotXMLElement pActionElement,
+                                            ConfigWatcher pConfigWatcher)
+            throws XPathExpressionException {
+
+        // Set up XPath access to the current action.
+        XPathAccess actionXPath = new XPathAccess(pActionElement);
+        String actionName = pActionElement.getRobotXMLElementName().toUpperCase();
+        RobotLogCommon.d(TAG, "Preparing action " + actionName);
+
+        // Every action has an <image_parameters> element in the RobotAction XML file.
+        VisionParameters.ImageParameters imageParameters =
+                RobotActionXML.getImageParameters(pActionElement);
+
+        // Make sure that this tester is reading the image from a file.
+        if (!(imageParameters.image_source.endsWith(".png") ||
+                imageParameters.image_source.endsWith(".jpg")))
+            throw new AutonomousRobotException(TAG, "Invalid image file name");
+
+        switch (actionName) {
+            // Reference implementation for the standard gold cube.
+            case "FIND_GOLD_CUBE" -> {
+                // Read the parameters for gold cube recognition from the xml file.
+                Supplier<GoldCubeParameters> goldCubeParameters = pConfigWatcher != null ? pConfigWatcher.getGoldCubeParameters() :
+                        fixed(ConfigCache.getGoldCubeParameters(pFullTestCaseDir));
+
+                // Get the recognition path from the XML file.
+                String recognitionPathString = actionXPath.getRequiredText("gold_cube_recognition/recognition_path");
+                GoldCubeRecognition.GoldCubeRecognitionPath goldCubeRecognitionPath =
+                        GoldCubeRecognition.GoldCubeRecognitionPath.valueOf(recognitionPathString.toUpperCase());
+
+                RobotLogCommon.d(TAG, "Recognition path " + goldCubeRecognitionPath);
+
+                GoldCubeRecognition goldCubeRecognition = new GoldCubeRecognition(pOutputDir, pAlliance);
+                return new RecognitionAction(actionName, imageParameters, "Test gold cube recognition",
+                        imageProvider -> goldCubeRecognition.recognizeGoldCubeWebcam(imageProvider, imageParameters,
+                                goldCubeParameters.get(), goldCubeRecognitionPath));
+            }
+
+            case "SAMPLE_CONTOURS" -> {
+                // Read the parameters for sample contours recognition from the xml file.
+                Supplier<SampleContoursParameters> sampleContoursParameters = pConfigWatcher != null ? pConfigWatcher.getSampleContoursParameters() :
+                        fixed(ConfigCache.getSampleContoursParameters(pFullTestCaseDir));
+
+                // Get the recognition path from the XML file.
+                String recognitionPathString = actionXPath.getRequiredText("rectangle_recognition/recognition_path");
+                SampleContoursRecognition.SampleContoursRecognitionPath sampleContoursRecognitionPath =
+                        SampleContoursRecognition.SampleContoursRecognitionPath.valueOf(recognitionPathString.toUpperCase());
+
+                RobotLogCommon.d(TAG, "Recognition path " + sampleContoursRecognitionPath);
+
+                SampleContoursRecognition sampleRecognition = new SampleContoursRecognition(pOutputDir, pAlliance);
+                return new RecognitionAction(actionName, imageParameters, "Test sample rectangle recognition",
+                        imageProvider -> sampleRecognition.recognizeSampleContours(imageProvider, imageParameters,
+                                sampleContoursParameters.get(), sampleContoursRecognitionPath));
+            }
+
+            // Proof-of-concept test with the L*a*b* color space.
+            case "LAB" -> {
+                // Read the parameters for L*a*b* recognition from the xml file.
+                Supplier<LABTesterParameters> labTesterParameters = pConfigWatcher != null ? pConfigWatcher.getLABTesterParameters() :
+                        fixed(ConfigCache.getLABTesterParameters(pFullTestCaseDir));
+
+                // Get the recognition path from the XML file.
+                String recognitionPathString = actionXPath.getRequiredText("lab_recognition/recognition_path");
+                LABRecognition.LABRecognitionPath labRecognitionPath =
+                        LABRecognition.LABRecognitionPath.valueOf(recognitionPathString.toUpperCase());
+
+                RobotLogCommon.d(TAG, "Recognition path " + labRecognitionPath);
+
+                LABRecognition labRecognition = new LABRecognition(pOutputDir);
+                return new RecognitionAction(actionName, imageParameters, "Test OpenCV L*a*b* thresholding",
+                        imageProvider -> labRecognition.testLAB(imageProvider, imageParameters,
+                                labTesterParameters.get(), labRecognitionPath));
+            }
+
+            case "WATERSHED" -> {
+                // Get the recognition path from the XML file.
+                String recognitionPathString = actionXPath.getRequiredText("watershed_recognition/recognition_path");
+                WatershedRecognition.WatershedRecognitionPath watershedRecognitionPath =
+                        WatershedRecognition.WatershedRecognitionPath.valueOf(recognitionPathString.toUpperCase());
+
+                RobotLogCommon.d(TAG, "Recognition path " + watershedRecognitionPath);
+
+                WatershedRecognition watershedRecognition = new WatershedRecognition(pOutputDir);
+                return new RecognitionAction(actionName, imageParameters, "Test OpenCV Watershed",
+                        imageProvider -> watershedRecognition.performWatershed(imageProvider, imageParameters,
+                                watershedRecognitionPath));
+            }
+
+            case "DISTANCE" -> {
+                Supplier<DistanceParameters> distanceParameters = pConfigWatcher != null ? pConfigWatcher.getDistanceParameters() :
+                        fixed(ConfigCache.getDistanceParameters(pFullTestCaseDir));
+
+                // Get the recognition path from the XML file.
+                String recognitionPathString = actionXPath.getRequiredText("distance_recognition/recognition_path");
+                DistanceTransformRecognition.DistanceTransformRecognitionPath distanceRecognitionPath =
+                        DistanceTransformRecognition.DistanceTransformRecognitionPath.valueOf(recognitionPathString.toUpperCase());
+
+                RobotLogCommon.d(TAG, "Recognition path " + distanceRecognitionPath);
+
+                // The mapping comes from the action element that has already been read.
+                RecognitionWindowMapping opModeRecognitionWindowMapping = ConfigCache.getRecognitionWindowMapping(pRobotActionFilename,
+                        RobotConstants.OpMode.TEST, pActionElement);
+
+                DistanceTransformRecognition distanceTransformRecognition = new DistanceTransformRecognition(pAlliance, pOutputDir);
+                return new RecognitionAction(actionName, imageParameters, "Test standard OpenCV Watershed",
+                        imageProvider -> distanceTransformRecognition.performDistanceTransform(imageProvider, imageParameters,
+                                distanceRecognitionPath, distanceParameters.get(), opModeRecognitionWindowMapping));
+            }
+
+            case "COLOR_CHANNELS" -> {
+                // Get the recognition path from the XML file.
+                String recognitionPathString = actionXPath.getRequiredText("color_channel_recognition/recognition_path");
+                //**TODO later ColorChannelRecognition.ChannelRecognitionPath colorChannelRecognitionPath =
+                //        ColorChannelRecognition.ChannelRecognitionPath.valueOf(recognitionPathString.toUpperCase());
+                //RobotLogCommon.d(TAG, "Recognition path " + hsvChannelRecognitionPath);
+
+                ColorChannelRecognition colorChannelRecognition = new ColorChannelRecognition(pAlliance, pOutputDir);
+                return new RecognitionAction(actionName, imageParameters, "Test color channel splitting",
+                        imageProvider -> colorChannelRecognition.splitColorChannels(imageProvider, imageParameters));
+            }
+
+            default -> throw new AutonomousRobotException(TAG, "Unrecognized image recognition action");
+        }
+    }
+
+    // Parameters that are not reloaded.
+    private static <T> Supplier<T> fixed(T pParameters) {
+        return () -> pParameters;
+    }
+
+}
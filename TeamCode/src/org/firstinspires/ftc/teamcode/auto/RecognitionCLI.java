@@ -0,0 +1,108 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import javafx.application.Application;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Plain command line entry point for running the actions in one test
+// case; one result line is written per action. JavaFX is only touched if --display is on the command line,
+// in which case control passes to the RecognitionDispatcher.
+//
+// Command line: test_case [--alliance=RED|BLUE] [--stage_timing] [--mat_tracking] [--mat_budget=bytes]
+//   [--debug_threads=n] [--debug_queue_mb=n] [--debug_overflow=BLOCK|DROP_OLDEST|DROP_NEWEST]
+//   [--debug_format=PNG|PNM|RAW] [--debug_level_format=level:format,...] [--debug_preview_scale=f]
+//   [--debug_archive=path] [--display]
+// The recognition results are written to the console; the process exit
+// code is 1 if any recognition failed with an internal error.
+public class RecognitionCLI {
+
+    private static final String TAG = RecognitionCLI.class.getSimpleName();
+
+    public static void main(String[] pArgs) throws Exception {
+        Map<String, String> namedParameters = parseNamedParameters(pArgs);
+        if (namedParameters.containsKey("display")) {
+            Application.launch(RecognitionDispatcher.class, pArgs);
+            return;
+        }
+
+        // Get the name of the test case directory as the first unnamed argument.
+        String testCase = null;
+        for (String oneArg : pArgs) {
+            if (!oneArg.startsWith("--")) {
+                testCase = oneArg;
+                break;
+            }
+        }
+
+        if (testCase == null) {
+            System.out.println(TAG + " Missing test case name");
+            return;
+        }
+
+        RobotConstants.Alliance alliance = RobotConstants.Alliance.NONE;
+        String allianceParameter = namedParameters.get("alliance"); // optional
+        if (allianceParameter != null)
+            alliance = RobotConstants.Alliance.valueOf(allianceParameter);
+
+        OpenCVLoader.load();
+        String fullTestCaseDir = WorkingDirectory.getWorkingDirectory() + "/" + testCase + "/";
+        RobotLogCommon.initialize(RobotLogCommon.LogIdentifier.TEST_LOG, fullTestCaseDir);
+        DebugImageCommon.initialize((tag, message) -> System.out.println(tag + " " + message),
+                DebugImageCommon.WriterOptions.fromNamedParameters(namedParameters));
+        RobotLogCommon.c(TAG, "Alliance " + alliance);
+
+        // Per-stage latency instrumentation is off unless requested.
+        if (namedParameters.containsKey("stage_timing"))
+            StageTimer.enable();
+
+        // Tracking of native Mat memory is off unless requested. A budget
+        // in bytes per frame fails any action that leaks more than that.
+        if (namedParameters.containsKey("mat_tracking") || namedParameters.containsKey("mat_budget"))
+            MatTracker.enable(Long.parseLong(namedParameters.getOrDefault("mat_budget", String.valueOf(MatTracker.NO_BUDGET))));
+
+        List<ActionResult> results;
+        try {
+            RecognitionRunner.PreparedTestCase preparedTestCase = RecognitionRunner.prepareTestCase(fullTestCaseDir, alliance);
+            RobotLogCommon.setMostDetailedLogLevel(preparedTestCase.logLevel);
+            RobotLogCommon.d(TAG, "Executing " + preparedTestCase.actions.size() + " action(s)");
+
+            results = RecognitionRunner.runActions(testCase, fullTestCaseDir, preparedTestCase.actions);
+            for (ActionResult oneResult : results) {
+                RobotLogCommon.c(TAG, oneResult.toSummaryLine());
+                System.out.println(oneResult.toSummaryLine());
+            }
+        } finally {
+            StageTimer.report(fullTestCaseDir + StageTimer.STAGE_TIMING_FILENAME);
+            MatTracker.report(fullTestCaseDir + MatTracker.MAT_TRACKING_FILENAME);
+            RobotLogCommon.closeLog();
+            DebugImageCommon.close(DebugImageCommon.DrainOnClose.ALL);
+        }
+
+        for (ActionResult oneResult : results)
+            if (oneResult.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR)
+                System.exit(1);
+    }
+
+    // Collect arguments of the form --name=value, the same form that
+    // JavaFX Application.Parameters.getNamed() accepts.
+    public static Map<String, String> parseNamedParameters(String[] pArgs) {
+        Map<String, String> namedParameters = new HashMap<>();
+        for (String oneArg : pArgs) {
+            if (!oneArg.startsWith("--"))
+                continue;
+
+            int equalsIndex = oneArg.indexOf('=');
+            if (equalsIndex < 0)
+                namedParameters.put(oneArg.substring(2), "");
+            else
+                namedParameters.put(oneArg.substring(2, equalsIndex), oneArg.substring(equalsIndex + 1));
+        }
+
+        return namedParameters;
+    }
+
+}
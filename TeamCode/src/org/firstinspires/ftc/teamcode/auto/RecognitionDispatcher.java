@@ -4,6 +4,8 @@ import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -11,26 +13,18 @@ import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
-import org.firstinspires.ftc.ftcdevcommon.xml.RobotXMLElement;
-import org.firstinspires.ftc.ftcdevcommon.xml.XPathAccess;
-import org.firstinspires.ftc.teamcode.auto.vision.*;
-import org.firstinspires.ftc.teamcode.auto.xml.*;
-import org.firstinspires.ftc.teamcode.auto.xml.RecognitionWindowMapping;
-import org.firstinspires.ftc.teamcode.auto.xml.RecognitionWindowMappingXML;
-import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
-import org.opencv.core.Core;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageUtils;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
 
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class RecognitionDispatcher extends Application {
 
@@ -50,8 +44,7 @@ public class RecognitionDispatcher extends Application {
     private static final boolean openCVInitialized;
 
     static {
-        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // IntelliJ only
-        openCVInitialized = true; // IntelliJ only
+        openCVInitialized = OpenCVLoader.load();
     }
 
 // The directory structure looks like this:
@@ -92,7 +85,8 @@ public class RecognitionDispatcher extends Application {
         RobotLogCommon.initialize(RobotLogCommon.LogIdentifier.TEST_LOG, fullTestCaseDir);
 
         //**TEST asynchronous writing of OpenCV debug images.
-        DebugImageCommon.initialize((tag, message) -> System.out.println(tag + " " + message));
+        DebugImageCommon.initialize((tag, message) -> System.out.println(tag + " " + message),
+                DebugImageCommon.WriterOptions.fromNamedParameters(namedParameters));
 
         // Check the contents of a frequently used optional command line argument.
         RobotConstants.Alliance alliance = RobotConstants.Alliance.NONE;
@@ -102,269 +96,72 @@ public class RecognitionDispatcher extends Application {
 
         RobotLogCommon.c(TAG, "Alliance " + alliance);
 
-        // Each test case directory has its own RobotAction.xml, in which there
-        // is a single OpMode TEST. Under this OpMode the <actions> element must
-        // contain a single child element, whose name is that of the action
-        // (test case).
-        String robotActionFilename = fullTestCaseDir + RobotConstants.ACTION_FILENAME;
-        RobotActionXML robotActionXML = new RobotActionXML(robotActionFilename);
-        RobotActionXML.RobotActionData actionData = robotActionXML.getOpModeData("TEST");
-        if (actionData.actionElements.size() != 1)
-            throw new AutonomousRobotException(TAG, "TEST OpMode must contain a single action");
+        // Per-stage latency instrumentation is off unless requested.
+        if (namedParameters.containsKey("stage_timing"))
+            StageTimer.enable();
 
-        RobotLogCommon.setMostDetailedLogLevel(actionData.logLevel);
-        List<RobotXMLElement> actionElements = actionData.actionElements;
+        // Tracking of native Mat memory is off unless requested. A budget
+        // in bytes per frame fails any action that leaks more than that.
+        if (namedParameters.containsKey("mat_tracking") || namedParameters.containsKey("mat_budget"))
+            MatTracker.enable(Long.parseLong(namedParameters.getOrDefault("mat_budget", String.valueOf(MatTracker.NO_BUDGET))));
 
-        // Set up XPath access to the current action.
-        RobotXMLElement actionElement = actionElements.getFirst();
-        XPathAccess actionXPath = new XPathAccess(actionElement);
-
-        String actionName = actionElement.getRobotXMLElementName().toUpperCase();
-        RobotLogCommon.d(TAG, "Executing action " + actionName);
+        // Read the parameters for the actions in the test case and select
+        // their recognition paths.
+        RecognitionRunner.PreparedTestCase preparedTestCase = RecognitionRunner.prepareTestCase(fullTestCaseDir, alliance);
+        RobotLogCommon.setMostDetailedLogLevel(preparedTestCase.logLevel);
+        RobotLogCommon.d(TAG, "Executing " + preparedTestCase.actions.size() + " action(s)");
 
         // Initialize the JavaFX display.
         stage = pStage;
         field = new Pane();
 
-        String imageFilename;
-        switch (actionName) {
-            // Reference implementation for the standard gold cube.
-            case "FIND_GOLD_CUBE" -> {
-                // Read the parameters for gold cube recognition from the xml file.
-                GoldCubeParametersXML goldCubeParametersXML = new GoldCubeParametersXML(fullTestCaseDir);
-                GoldCubeParameters goldCubeParameters = goldCubeParametersXML.getGoldCubeParameters();
-
-                // Get the <image_parameters> for the gold cube from the RobotAction XML file.
-                VisionParameters.ImageParameters goldCubeImageParameters =
-                        robotActionXML.getImageParametersFromXPath(actionElement, "image_parameters");
-
-                // Make sure that this tester is reading the image from a file.
-                if (!(goldCubeImageParameters.image_source.endsWith(".png") ||
-                        goldCubeImageParameters.image_source.endsWith(".jpg")))
-                    throw new AutonomousRobotException(TAG, "Invalid image file name");
-
-                imageFilename = goldCubeImageParameters.image_source;
-                ImageProvider fileImage = new FileImage(fullTestCaseDir + goldCubeImageParameters.image_source);
-
-                // Perform image recognition.
-                // Get the recognition path from the XML file.
-                String recognitionPathString = actionXPath.getRequiredText("gold_cube_recognition/recognition_path");
-                GoldCubeRecognition.GoldCubeRecognitionPath goldCubeRecognitionPath =
-                        GoldCubeRecognition.GoldCubeRecognitionPath.valueOf(recognitionPathString.toUpperCase());
-
-                RobotLogCommon.d(TAG, "Recognition path " + goldCubeRecognitionPath);
-
-                // Perform image recognition.
-                GoldCubeRecognition goldCubeRecognition = new GoldCubeRecognition(fullTestCaseDir, alliance);
-                RobotConstants.RecognitionResults goldCubeReturn =
-                        goldCubeRecognition.recognizeGoldCubeWebcam(fileImage, goldCubeImageParameters, goldCubeParameters, goldCubeRecognitionPath);
-
-                displayResults(fullTestCaseDir + goldCubeImageParameters.image_source,
-                        buildResultsOnlyDisplayText(imageFilename, goldCubeReturn),
-                        "Test gold cube recognition");
-            }
-
-            case "SAMPLE_CONTOURS" -> {
-                // Read the parameters for sample contours recognition from the xml file.
-                SampleContoursParametersXML sampleContoursParametersXML = new SampleContoursParametersXML(fullTestCaseDir);
-                SampleContoursParameters sampleContoursParameters = sampleContoursParametersXML.getSampleContoursParameters();
-
-                // Get the <image_parameters> for the samples from the RobotAction XML file.
-                VisionParameters.ImageParameters sampleImageParameters =
-                        robotActionXML.getImageParametersFromXPath(actionElement, "image_parameters");
-
-                // Make sure that this tester is reading the image from a file.
-                if (!(sampleImageParameters.image_source.endsWith(".png") ||
-                        sampleImageParameters.image_source.endsWith(".jpg")))
-                    throw new AutonomousRobotException(TAG, "Invalid image file name");
-
-                imageFilename = sampleImageParameters.image_source;
-                ImageProvider fileImage = new FileImage(fullTestCaseDir + sampleImageParameters.image_source);
-
-                // Perform image recognition.
-                // Get the recognition path from the XML file.
-                String recognitionPathString = actionXPath.getRequiredText("rectangle_recognition/recognition_path");
-                SampleContoursRecognition.SampleContoursRecognitionPath sampleContoursRecognitionPath =
-                        SampleContoursRecognition.SampleContoursRecognitionPath.valueOf(recognitionPathString.toUpperCase());
-
-                RobotLogCommon.d(TAG, "Recognition path " + sampleContoursRecognitionPath);
-
-                // Perform image recognition.
-                SampleContoursRecognition sampleRecognition = new SampleContoursRecognition(fullTestCaseDir, alliance);
-                RobotConstants.RecognitionResults rectangleReturn =
-                        sampleRecognition.recognizeSampleContours(fileImage, sampleImageParameters,
-                                sampleContoursParameters, sampleContoursRecognitionPath);
-
-                displayResults(fullTestCaseDir + sampleImageParameters.image_source,
-                        buildResultsOnlyDisplayText(imageFilename, rectangleReturn),
-                        "Test sample rectangle recognition");
-            }
-
-            // Proof-of-concept test with the L*a*b* color space.
-            case "LAB" -> {
-                // Read the parameters for gold cube recognition from the xml file.
-                LABTesterParametersXML labTesterParametersXML = new LABTesterParametersXML(fullTestCaseDir);
-                LABTesterParameters labTesterParameters = labTesterParametersXML.getLABTesterParameters();
-
-                // Get the <image_parameters> for the L*a*b* test from the RobotAction XML file.
-                VisionParameters.ImageParameters labImageParameters =
-                        robotActionXML.getImageParametersFromXPath(actionElement, "image_parameters");
-
-                // Make sure that this tester is reading the image from a file.
-                if (!(labImageParameters.image_source.endsWith(".png") ||
-                        labImageParameters.image_source.endsWith(".jpg")))
-                    throw new AutonomousRobotException(TAG, "Invalid image file name");
-
-                imageFilename = labImageParameters.image_source;
-                ImageProvider fileImage = new FileImage(fullTestCaseDir + labImageParameters.image_source);
-
-                // Perform image recognition.
-                // Get the recognition path from the XML file.
-                String recognitionPathString = actionXPath.getRequiredText("lab_recognition/recognition_path");
-                LABRecognition.LABRecognitionPath labRecognitionPath =
-                        LABRecognition.LABRecognitionPath.valueOf(recognitionPathString.toUpperCase());
-
-                RobotLogCommon.d(TAG, "Recognition path " + labRecognitionPath);
-
-                // Perform image recognition.
-                LABRecognition labRecognition = new LABRecognition(fullTestCaseDir);
-                RobotConstants.RecognitionResults labReturn =
-                        labRecognition.testLAB(fileImage, labImageParameters, labTesterParameters, labRecognitionPath);
-
-                displayResults(fullTestCaseDir + imageFilename,
-                        buildResultsOnlyDisplayText(imageFilename, labReturn),
-                        "Test OpenCV L*a*b* thresholding");
-            }
-
-            case "WATERSHED" -> {
-                // Get the <image_parameters> for the playing cards or coins from the RobotAction XML file.
-                VisionParameters.ImageParameters watershedImageParameters =
-                        robotActionXML.getImageParametersFromXPath(actionElement, "image_parameters");
-
-                // Make sure that this tester is reading the image from a file.
-                if (!(watershedImageParameters.image_source.endsWith(".png") ||
-                        watershedImageParameters.image_source.endsWith(".jpg")))
-                    throw new AutonomousRobotException(TAG, "Invalid image file name");
-
-                imageFilename = watershedImageParameters.image_source;
-                ImageProvider fileImage = new FileImage(fullTestCaseDir + watershedImageParameters.image_source);
-
-                // Perform image recognition.
-                // Get the recognition path from the XML file.
-                String recognitionPathString = actionXPath.getRequiredText("watershed_recognition/recognition_path");
-                WatershedRecognition.WatershedRecognitionPath watershedRecognitionPath =
-                        WatershedRecognition.WatershedRecognitionPath.valueOf(recognitionPathString.toUpperCase());
-
-                RobotLogCommon.d(TAG, "Recognition path " + watershedRecognitionPath);
-
-                // Perform image recognition.
-                WatershedRecognition watershedRecognition = new WatershedRecognition(fullTestCaseDir);
-                RobotConstants.RecognitionResults watershedStdReturn =
-                        watershedRecognition.performWatershed(fileImage, watershedImageParameters, watershedRecognitionPath);
-
-                displayResults(fullTestCaseDir + imageFilename,
-                        buildResultsOnlyDisplayText(imageFilename, watershedStdReturn),
-                        "Test OpenCV Watershed");
-            }
-
-            case "DISTANCE" -> {
-                DistanceParametersXML distanceParametersXML = new DistanceParametersXML(fullTestCaseDir);
-                DistanceParameters distanceParameters = distanceParametersXML.getDistanceParameters();
-
-                // Get the <image_parameters> for the playing cards from the RobotAction XML file.
-                VisionParameters.ImageParameters distanceImageParameters =
-                        robotActionXML.getImageParametersFromXPath(actionElement, "image_parameters");
-
-                // Make sure that this tester is reading the image from a file.
-                if (!(distanceImageParameters.image_source.endsWith(".png") ||
-                        distanceImageParameters.image_source.endsWith(".jpg")))
-                    throw new AutonomousRobotException(TAG, "Invalid image file name");
-
-                imageFilename = distanceImageParameters.image_source;
-                ImageProvider fileImage = new FileImage(fullTestCaseDir + distanceImageParameters.image_source);
-
-                // Get the recognition path from the XML file.
-                String recognitionPathString = actionXPath.getRequiredText("distance_recognition/recognition_path");
-                DistanceTransformRecognition.DistanceTransformRecognitionPath distanceRecognitionPath =
-                        DistanceTransformRecognition.DistanceTransformRecognitionPath.valueOf(recognitionPathString.toUpperCase());
-
-                RobotLogCommon.d(TAG, "Recognition path " + distanceRecognitionPath);
-
-                RecognitionWindowMappingXML recognitionWindowMappingXML = new RecognitionWindowMappingXML(robotActionFilename);
-                RecognitionWindowMapping opModeRecognitionWindowMapping =
-                        recognitionWindowMappingXML.collectRecognitionWindowMapping(RobotConstants.OpMode.TEST, actionName);
-
-                if (opModeRecognitionWindowMapping == null)
-                    throw new AutonomousRobotException(TAG, "Action element " + actionName + " not found under OpMode TEST");
-
-                // Perform image recognition.
-                DistanceTransformRecognition distanceTransformRecognition = new DistanceTransformRecognition(alliance, fullTestCaseDir);
-                RobotConstants.RecognitionResults distanceReturn =
-                        distanceTransformRecognition.performDistanceTransform(fileImage, distanceImageParameters,
-                                distanceRecognitionPath, distanceParameters, opModeRecognitionWindowMapping);
-
-                displayResults(fullTestCaseDir + imageFilename,
-                        buildResultsOnlyDisplayText(imageFilename, distanceReturn),
-                        "Test standard OpenCV Watershed");
-            }
-
-            case "COLOR_CHANNELS" -> {
-                // Get the <image_parameters> from the RobotAction XML file.
-                VisionParameters.ImageParameters hsvcImageParameters =
-                        robotActionXML.getImageParametersFromXPath(actionElement, "image_parameters");
-
-                // Make sure that this tester is reading the image from a file.
-                if (!(hsvcImageParameters.image_source.endsWith(".png") ||
-                        hsvcImageParameters.image_source.endsWith(".jpg")))
-                    throw new AutonomousRobotException(TAG, "Invalid image file name");
-
-                imageFilename = hsvcImageParameters.image_source;
-                ImageProvider fileImage = new FileImage(fullTestCaseDir + hsvcImageParameters.image_source);
-
-                // Perform image recognition.
-                // Get the recognition path from the XML file.
-                String recognitionPathString = actionXPath.getRequiredText("color_channel_recognition/recognition_path");
-                //**TODO later ColorChannelRecognition.ChannelRecognitionPath colorChannelRecognitionPath =
-                //        ColorChannelRecognition.ChannelRecognitionPath.valueOf(recognitionPathString.toUpperCase());
-                //RobotLogCommon.d(TAG, "Recognition path " + hsvChannelRecognitionPath);
-
-                // Perform image recognition.
-                ColorChannelRecognition colorChannelRecognition = new ColorChannelRecognition(alliance, fullTestCaseDir);
-                RobotConstants.RecognitionResults hsvChannelReturn =
-                        colorChannelRecognition.splitColorChannels(fileImage, hsvcImageParameters);
-
-                displayResults(fullTestCaseDir + imageFilename,
-                        buildResultsOnlyDisplayText(imageFilename, hsvChannelReturn),
-                        "Test color channel splitting");
-            }
-
-            default -> throw new AutonomousRobotException(TAG, "Unrecognized image recognition action");
-        }
-
+        // Perform image recognition. Each image is decoded only once and is
+        // shared read-only by the actions.
+        Map<String, CompletableFuture<Pair<Mat, LocalDateTime>>> decodedImages = new HashMap<>();
+        List<ActionResult> results = RecognitionRunner.runActions(testCase, fullTestCaseDir, preparedTestCase.actions, decodedImages);
+
+        // Display the image of the first action with the results of all.
+        // The recognizers have not modified the image.
+        RecognitionAction firstAction = preparedTestCase.actions.getFirst();
+        String imageFilename = firstAction.imageParameters.image_source;
+        CompletableFuture<Pair<Mat, LocalDateTime>> decodedImage = decodedImages.get(imageFilename);
+        Mat originalImage = decodedImage.isCompletedExceptionally() ?
+                ImageUtils.loadImage(fullTestCaseDir + imageFilename) : // throws with a sensible message
+                decodedImage.join().first;
+        String title = preparedTestCase.actions.size() == 1 ? firstAction.displayTitle :
+                "Test " + preparedTestCase.actions.size() + " actions";
+        displayResults(originalImage, buildResultsOnlyDisplayText(imageFilename, results), title);
+
+        StageTimer.report(fullTestCaseDir + StageTimer.STAGE_TIMING_FILENAME);
+        MatTracker.report(fullTestCaseDir + MatTracker.MAT_TRACKING_FILENAME);
         RobotLogCommon.closeLog();
         //**TEST asynchronous writing of OpenCV debug images.
-        DebugImageCommon.close();
+        DebugImageCommon.close(DebugImageCommon.DrainOnClose.ALL);
     }
 
-    private String buildResultsOnlyDisplayText(String pImageFilename, RobotConstants.RecognitionResults pRecognitionReturn) {
-        return "Image: " +
-                pImageFilename +
-                '\n' +
-                pRecognitionReturn +
-                '\n';
-    }
+    private String buildResultsOnlyDisplayText(String pImageFilename, List<ActionResult> pResults) {
+        StringBuilder displayText = new StringBuilder("Image: " + pImageFilename + '\n');
+        for (ActionResult oneResult : pResults) {
+            if (pResults.size() > 1)
+                displayText.append(oneResult.actionName).append(' ');
+            displayText.append(oneResult.recognitionResults).append('\n');
+        }
 
-    private void displayResults(Mat pImageMat, String pResultText, String pTitle) {
-        // From https://stackoverflow.com/questions/27755171/display-opencv-mat-with-javafx
-        MatOfByte byteMat = new MatOfByte();
-        Imgcodecs.imencode(".png", pImageMat, byteMat);
-        Image image = new Image(new ByteArrayInputStream(byteMat.toArray()));
-        displayResults(image, pResultText, pTitle);
+        return displayText.toString();
     }
 
-    private void displayResults(String pImageFile, String pResultText, String pTitle) throws FileNotFoundException {
-        InputStream stream = new FileInputStream(pImageFile);
-        Image image = new Image(stream);
+    // Convert the BGR Mat directly into a JavaFX Image without
+    // encoding and decoding an intermediate PNG.
+    private void displayResults(Mat pImageMat, String pResultText, String pTitle) {
+        Mat bgraMat = new Mat();
+        Imgproc.cvtColor(pImageMat, bgraMat, Imgproc.COLOR_BGR2BGRA);
+        byte[] bgraBytes = new byte[(int) (bgraMat.total() * bgraMat.channels())];
+        bgraMat.get(0, 0, bgraBytes);
+
+        WritableImage image = new WritableImage(bgraMat.cols(), bgraMat.rows());
+        image.getPixelWriter().setPixels(0, 0, bgraMat.cols(), bgraMat.rows(),
+                PixelFormat.getByteBgraInstance(), bgraBytes, 0, bgraMat.cols() * 4);
+        bgraMat.release();
         displayResults(image, pResultText, pTitle);
     }
 
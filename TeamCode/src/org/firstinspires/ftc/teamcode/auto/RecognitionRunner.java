@@ -0,0 +1,226 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.xml.RobotXMLElement;
+import org.firstinspires.ftc.teamcode.auto.vision.FileImage;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageProvider;
+import org.firstinspires.ftc.teamcode.auto.vision.SharedImage;
+import org.firstinspires.ftc.teamcode.auto.xml.ConfigSnapshot;
+import org.firstinspires.ftc.teamcode.auto.xml.ConfigWatcher;
+import org.firstinspires.ftc.teamcode.auto.xml.RobotActionStAX;
+import org.firstinspires.ftc.teamcode.auto.xml.RobotActionXML;
+import org.opencv.core.Mat;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Library API for running the recognitions in a test case without JavaFX.
+// The caller is responsible for initializing RobotLogCommon and, if debug
+// images are wanted, DebugImageCommon. For example:
+// RecognitionRunner.PreparedTestCase testCase =
+//    RecognitionRunner.prepareTestCase(fullTestCaseDir, RobotConstants.Alliance.NONE);
+// List<ActionResult> results = RecognitionRunner.runActions(testCaseName, fullTestCaseDir, testCase.actions);
+public class RecognitionRunner {
+
+    private static final String TAG = RecognitionRunner.class.getSimpleName();
+
+    // The actions of a test case together with the log level from the
+    // TEST OpMode of the test case's RobotAction.xml.
+    public static class PreparedTestCase {
+        public final RobotLogCommon.CommonLogLevel logLevel;
+        public final List<RecognitionAction> actions;
+
+        public PreparedTestCase(RobotLogCommon.CommonLogLevel pLogLevel, List<RecognitionAction> pActions) {
+            logLevel = pLogLevel;
+            actions = pActions;
+        }
+    }
+
+    // Each test case directory has its own RobotAction.xml, in which there
+    // is a single OpMode TEST. Under this OpMode the <actions> element must
+    // contain at least one child element, whose name is that of the action.
+    // If there is more than one action then each action writes its debug
+    // images to its own subdirectory of the test case directory, e.g.
+    // 01_find_gold_cube, so that actions on the same image don't collide.
+    public static PreparedTestCase prepareTestCase(String pFullTestCaseDir, RobotConstants.Alliance pAlliance)
+            throws XPathExpressionException, ParserConfigurationException, SAXException, IOException {
+        return prepareTestCase(pFullTestCaseDir, pAlliance, null);
+    }
+
+    // As above but, if pConfigWatcher is not null, with hot reload of the
+    // parameter files in the test case directory; see ConfigWatcher.
+    public static PreparedTestCase prepareTestCase(String pFullTestCaseDir, RobotConstants.Alliance pAlliance,
+                                                   ConfigWatcher pConfigWatcher)
+            throws XPathExpressionException, ParserConfigurationException, SAXException, IOException {
+        OpenCVLoader.load();
+
+        // Use the precompiled configuration if it is still fresh; see
+        // ConfigSnapshotCompiler.
+        String robotActionFilename = pFullTestCaseDir + RobotConstants.ACTION_FILENAME;
+        RobotActionXML.RobotActionData actionData;
+        ConfigSnapshot snapshot = ConfigSnapshot.load(pFullTestCaseDir);
+        if (snapshot != null) {
+            snapshot.primeConfigCache();
+            actionData = snapshot.robotActionData;
+        } else
+            actionData = RobotActionStAX.getOpModeData(robotActionFilename, "TEST");
+
+        if (actionData.actionElements.isEmpty())
+            throw new AutonomousRobotException(TAG, "TEST OpMode must contain at least one action");
+
+        List<RecognitionAction> actions = new ArrayList<>();
+        boolean multipleActions = actionData.actionElements.size() > 1;
+        for (int i = 0; i < actionData.actionElements.size(); i++) {
+            RobotXMLElement actionElement = actionData.actionElements.get(i);
+            String outputDir = pFullTestCaseDir;
+            if (multipleActions) {
+                outputDir = pFullTestCaseDir + String.format("%02d_", i + 1) +
+                        actionElement.getRobotXMLElementName().toLowerCase() + "/";
+                File outputDirFile = new File(outputDir);
+                if (!outputDirFile.isDirectory() && !outputDirFile.mkdirs())
+                    throw new AutonomousRobotException(TAG, "Unable to create the output directory " + outputDir);
+            }
+
+            actions.add(RecognitionAction.prepare(pFullTestCaseDir, outputDir, pAlliance,
+                    robotActionFilename, actionElement, pConfigWatcher));
+        }
+
+        return new PreparedTestCase(actionData.logLevel, actions);
+    }
+
+    // Prepare and run all of the actions in a test case concurrently and
+    // return one result per action in the order of the actions.
+    public static List<ActionResult> runTestCase(String pWorkingDirectory, String pTestCase, RobotConstants.Alliance pAlliance) {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return submitTestCase(pWorkingDirectory, pTestCase, pAlliance, executor).join();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Prepare a test case and run its actions on the executor. The returned
+    // future never completes exceptionally; a test case that can't be
+    // prepared yields a single RECOGNITION_INTERNAL_ERROR result.
+    public static CompletableFuture<List<ActionResult>> submitTestCase(String pWorkingDirectory, String pTestCase,
+                                                                       RobotConstants.Alliance pAlliance, Executor pExecutor) {
+        long startTime = System.nanoTime();
+        String fullTestCaseDir = pWorkingDirectory + pTestCase + "/";
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return prepareTestCase(fullTestCaseDir, pAlliance);
+                    } catch (XPathExpressionException | ParserConfigurationException | SAXException | IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, pExecutor)
+                .thenCompose(preparedTestCase -> {
+                    List<CompletableFuture<ActionResult>> futures =
+                            submitActions(pTestCase, fullTestCaseDir, preparedTestCase.actions, pExecutor);
+                    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                            .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+                })
+                .exceptionally(ex -> List.of(failedTestCase(pTestCase, System.nanoTime() - startTime,
+                        ex.getCause() != null ? ex.getCause() : ex)));
+    }
+
+    // Run the actions of a prepared test case concurrently on a pool that
+    // is discarded afterwards.
+    public static List<ActionResult> runActions(String pTestCase, String pFullTestCaseDir, List<RecognitionAction> pActions) {
+        return runActions(pTestCase, pFullTestCaseDir, pActions, new HashMap<>());
+    }
+
+    // As above but the caller supplies the map of image filename to decoded
+    // image and so has access to the images after the actions have run.
+    public static List<ActionResult> runActions(String pTestCase, String pFullTestCaseDir, List<RecognitionAction> pActions,
+                                                Map<String, CompletableFuture<Pair<Mat, LocalDateTime>>> pDecodedImages) {
+        int numThreads = Math.min(pActions.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        try {
+            List<CompletableFuture<ActionResult>> futures =
+                    submitActions(pTestCase, pFullTestCaseDir, pActions, executor, pDecodedImages);
+            List<ActionResult> results = new ArrayList<>();
+            for (CompletableFuture<ActionResult> oneFuture : futures)
+                results.add(oneFuture.join());
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Decode each distinct image named in the <image_parameters> of the
+    // actions exactly once and run every action that uses that image as
+    // soon as it is available. The decoded image is shared read-only among
+    // the actions. None of the returned futures completes exceptionally;
+    // failures are reported as RECOGNITION_INTERNAL_ERROR.
+    //
+    // The tasks never block waiting for each other so the executor may be
+    // shared with other test cases, as in the BatchRunner.
+    public static List<CompletableFuture<ActionResult>> submitActions(String pTestCase, String pFullTestCaseDir,
+                                                                      List<RecognitionAction> pActions, Executor pExecutor) {
+        return submitActions(pTestCase, pFullTestCaseDir, pActions, pExecutor, new HashMap<>());
+    }
+
+    private static List<CompletableFuture<ActionResult>> submitActions(String pTestCase, String pFullTestCaseDir,
+                                                                       List<RecognitionAction> pActions, Executor pExecutor,
+                                                                       Map<String, CompletableFuture<Pair<Mat, LocalDateTime>>> pDecodedImages) {
+        List<CompletableFuture<ActionResult>> futures = new ArrayList<>();
+        for (RecognitionAction oneAction : pActions) {
+            String imageFilename = oneAction.imageParameters.image_source;
+            CompletableFuture<Pair<Mat, LocalDateTime>> decodedImage = pDecodedImages.computeIfAbsent(imageFilename,
+                    filename -> CompletableFuture.supplyAsync(() -> decodeImage(pFullTestCaseDir + filename), pExecutor));
+
+            futures.add(decodedImage
+                    .thenApplyAsync(image -> runAction(pTestCase, oneAction, new SharedImage(image)), pExecutor)
+                    .exceptionally(ex -> failedAction(pTestCase, oneAction, 0, ex.getCause() != null ? ex.getCause() : ex)));
+        }
+
+        return futures;
+    }
+
+    // Run one action against an image from any source. Never throws.
+    public static ActionResult runAction(String pTestCase, RecognitionAction pAction, ImageProvider pImageProvider) {
+        long startTime = System.nanoTime();
+        MatTracker.beginFrame();
+        try {
+            RobotConstants.RecognitionResults recognitionResults = pAction.recognize(pImageProvider);
+            MatTracker.endFrame(pAction.actionName); // throws if the action exceeded its native memory budget
+            return new ActionResult(pTestCase, pAction.actionName, pAction.imageParameters.image_source,
+                    recognitionResults, System.nanoTime() - startTime, null);
+        } catch (Exception ex) {
+            MatTracker.discardFrame();
+            return failedAction(pTestCase, pAction, System.nanoTime() - startTime, ex);
+        }
+    }
+
+    private static Pair<Mat, LocalDateTime> decodeImage(String pImagePath) {
+        Pair<Mat, LocalDateTime> image = new FileImage(pImagePath).getImage();
+        if (image == null)
+            throw new AutonomousRobotException(TAG, "Could not find or open the image " + pImagePath);
+        return image;
+    }
+
+    private static ActionResult failedTestCase(String pTestCase, long pElapsedNanos, Throwable pThrowable) {
+        RobotLogCommon.c(TAG, "Test case " + pTestCase + " failed: " + pThrowable);
+        return new ActionResult(pTestCase, "", "", RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR,
+                pElapsedNanos, pThrowable.toString());
+    }
+
+    private static ActionResult failedAction(String pTestCase, RecognitionAction pAction, long pElapsedNanos, Throwable pThrowable) {
+        RobotLogCommon.c(TAG, "Test case " + pTestCase + ", action " + pAction.actionName + " failed: " + pThrowable);
+        return new ActionResult(pTestCase, pAction.actionName, pAction.imageParameters.image_source,
+                RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR, pElapsedNanos, pThrowable.toString());
+    }
+
+}
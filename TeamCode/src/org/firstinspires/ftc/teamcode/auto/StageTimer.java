@@ -0,0 +1,236 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Lightweight per-stage latency instrumentation for the recognition paths.
+// Usage:
+// long stageStart = StageTimer.start();
+// ... the stage ...
+// StageTimer.stop("ImageUtils.sharpen", stageStart);
+//
+// When the timer is disabled (the default) start() returns 0 without
+// reading the clock and stop() returns after a single volatile read.
+// When it is enabled the elapsed times of each stage go into a histogram
+// of fixed size (see StageSamples), so the memory used does not grow with
+// the length of the run; the count, total, min and max are exact and the
+// p50 and p99 are within 1% of the true values. Stages may nest, e.g. the total
+// for GoldCubeRecognition.recognizeGoldCubeWebcam includes the time for
+// ImageUtils.performInRange, so the totals do not add up to the run time.
+// Recognitions may run concurrently; all methods are thread-safe.
+public class StageTimer {
+
+    private static final String TAG = StageTimer.class.getSimpleName();
+
+    public static final String STAGE_TIMING_FILENAME = "StageTiming.csv";
+
+    private static volatile boolean enabled = false;
+    private static final Map<String, StageSamples> stages = new ConcurrentHashMap<>();
+
+    // Elapsed times for a single stage in a log-linear histogram: times
+    // below SUB_BUCKETS ns have a bucket each and every power of two above
+    // that is split into SUB_BUCKETS buckets of equal width, so the width
+    // of a bucket is at most 1/SUB_BUCKETS of the times in it. Times of
+    // MAX_TRACKED_NANOS (about 18 minutes) or more share the last bucket.
+    private static class StageSamples {
+        private static final int SUB_BUCKET_BITS = 6;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_TRACKED_BITS = 40;
+        private static final long MAX_TRACKED_NANOS = (1L << MAX_TRACKED_BITS) - 1;
+        private static final int NUM_BUCKETS = (MAX_TRACKED_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final long[] buckets = new long[NUM_BUCKETS];
+        private int count = 0;
+        private long totalNanos = 0;
+        private long minNanos = Long.MAX_VALUE;
+        private long maxNanos = Long.MIN_VALUE;
+
+        synchronized void add(long pElapsedNanos) {
+            buckets[bucketIndex(pElapsedNanos)]++;
+            count++;
+            totalNanos += pElapsedNanos;
+            minNanos = Math.min(minNanos, pElapsedNanos);
+            maxNanos = Math.max(maxNanos, pElapsedNanos);
+        }
+
+        // Returns null if there are no samples.
+        synchronized StageSummary summarize(String pStage) {
+            if (count == 0)
+                return null;
+
+            return new StageSummary(pStage, count, totalNanos, minNanos,
+                    percentile(50), percentile(99), maxNanos);
+        }
+
+        // Nearest-rank percentile: the midpoint of the bucket that holds
+        // the sample of that rank, kept within the exact min and max.
+        private long percentile(int pPercentile) {
+            long rank = Math.max(1, (long) Math.ceil(pPercentile / 100.0 * count));
+            long seen = 0;
+            int index = 0;
+            while (index < NUM_BUCKETS - 1) {
+                seen += buckets[index];
+                if (seen >= rank)
+                    break;
+                index++;
+            }
+
+            return Math.max(minNanos, Math.min(maxNanos, bucketMidpoint(index)));
+        }
+
+        private static int bucketIndex(long pNanos) {
+            long nanos = Math.max(0, Math.min(pNanos, MAX_TRACKED_NANOS));
+            if (nanos < SUB_BUCKETS)
+                return (int) nanos;
+
+            int shift = (63 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        private static long bucketMidpoint(int pIndex) {
+            if (pIndex < SUB_BUCKETS)
+                return pIndex;
+
+            int shift = pIndex / SUB_BUCKETS - 1;
+            long low = (long) (SUB_BUCKETS + pIndex % SUB_BUCKETS) << shift;
+            return low + ((1L << shift) - 1) / 2;
+        }
+    }
+
+    // Summary of one stage for reporting.
+    public static class StageSummary {
+        public final String stage;
+        public final int count;
+        public final long totalNanos;
+        public final long minNanos;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        public StageSummary(String pStage, long[] pSamples) {
+            stage = pStage;
+            long[] sorted = pSamples.clone();
+            Arrays.sort(sorted);
+            count = sorted.length;
+            long total = 0;
+            for (long oneSample : sorted)
+                total += oneSample;
+            totalNanos = total;
+            minNanos = sorted[0];
+            p50Nanos = percentile(sorted, 50);
+            p99Nanos = percentile(sorted, 99);
+            maxNanos = sorted[count - 1];
+        }
+
+        private StageSummary(String pStage, int pCount, long pTotalNanos, long pMinNanos,
+                             long pP50Nanos, long pP99Nanos, long pMaxNanos) {
+            stage = pStage;
+            count = pCount;
+            totalNanos = pTotalNanos;
+            minNanos = pMinNanos;
+            p50Nanos = pP50Nanos;
+            p99Nanos = pP99Nanos;
+            maxNanos = pMaxNanos;
+        }
+
+        // Nearest-rank percentile of a sorted, non-empty array.
+        private static long percentile(long[] pSorted, int pPercentile) {
+            int rank = (int) Math.ceil(pPercentile / 100.0 * pSorted.length);
+            return pSorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void reset() {
+        stages.clear();
+    }
+
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(String pStage, long pStartNanos) {
+        if (!enabled || pStartNanos == 0L)
+            return;
+
+        long elapsedNanos = System.nanoTime() - pStartNanos;
+        stages.computeIfAbsent(pStage, stage -> new StageSamples()).add(elapsedNanos);
+    }
+
+    // The stage name is pStage + "." + pQualifier, e.g. the recognition path,
+    // but the concatenation only takes place if the timer is enabled.
+    public static void stop(String pStage, Object pQualifier, long pStartNanos) {
+        if (!enabled || pStartNanos == 0L)
+            return;
+
+        stop(pStage + "." + pQualifier, pStartNanos);
+    }
+
+    // Returns the summaries in descending order of total time.
+    public static List<StageSummary> getSummaries() {
+        List<StageSummary> summaries = new ArrayList<>();
+        for (Map.Entry<String, StageSamples> oneStage : stages.entrySet()) {
+            StageSummary summary = oneStage.getValue().summarize(oneStage.getKey());
+            if (summary != null)
+                summaries.add(summary);
+        }
+
+        summaries.sort(Comparator.comparingLong((StageSummary summary) -> summary.totalNanos).reversed());
+        return summaries;
+    }
+
+    // Write the per-stage breakdown to the log and, in CSV form with times
+    // in nanoseconds, to the file pCsvFilename. Does nothing if no stage
+    // has been timed.
+    public static void report(String pCsvFilename) {
+        List<StageSummary> summaries = getSummaries();
+        if (summaries.isEmpty())
+            return;
+
+        RobotLogCommon.c(TAG, String.format("%-56s %7s %11s %9s %9s %9s %9s",
+                "Stage", "count", "total ms", "min ms", "p50 ms", "p99 ms", "max ms"));
+        for (StageSummary oneSummary : summaries)
+            RobotLogCommon.c(TAG, String.format("%-56s %7d %11.3f %9.3f %9.3f %9.3f %9.3f",
+                    oneSummary.stage, oneSummary.count, toMs(oneSummary.totalNanos), toMs(oneSummary.minNanos),
+                    toMs(oneSummary.p50Nanos), toMs(oneSummary.p99Nanos), toMs(oneSummary.maxNanos)));
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(pCsvFilename)))) {
+            csv.println("stage,count,total_ns,min_ns,p50_ns,p99_ns,max_ns");
+            for (StageSummary oneSummary : summaries)
+                csv.println(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d",
+                        oneSummary.stage, oneSummary.count, oneSummary.totalNanos, oneSummary.minNanos,
+                        oneSummary.p50Nanos, oneSummary.p99Nanos, oneSummary.maxNanos));
+            RobotLogCommon.c(TAG, "Wrote stage timings to " + pCsvFilename);
+        } catch (IOException iox) {
+            // Don't let a reporting failure mask the results of the run.
+            RobotLogCommon.c(TAG, "Unable to write " + pCsvFilename + ": " + iox.getMessage());
+        }
+    }
+
+    private static double toMs(long pNanos) {
+        return pNanos / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,206 @@
+package org.firstinspires.ftc.teamcode.auto;
+
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageSequence;
+import org.firstinspires.ftc.teamcode.auto.vision.MatWorkspace;
+import org.firstinspires.ftc.teamcode.auto.vision.SharedImage;
+import org.firstinspires.ftc.teamcode.auto.vision.StreamingImageProvider;
+import org.firstinspires.ftc.teamcode.auto.vision.VideoFileImage;
+import org.firstinspires.ftc.teamcode.auto.xml.ConfigWatcher;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs the actions of a test case continuously against a stream of frames
+// in order to see how the recognition holds up at camera frame rates. The
+// parameters for the actions come from the test case's RobotAction.xml as
+// usual; only the source of the images differs. Each frame is taken from
+// the stream once and shared read-only by all of the actions, which run
+// concurrently.
+//
+// Command line: test_case --frames=<directory or glob> [--queue=n] [--alliance=RED|BLUE] [--stage_timing] [--mat_tracking] [--mat_budget=bytes]
+//   [--debug_threads=n] [--debug_queue_mb=n] [--debug_overflow=BLOCK|DROP_OLDEST|DROP_NEWEST]
+//   [--debug_format=PNG|PNM|RAW] [--debug_level_format=level:format,...] [--debug_preview_scale=f]
+//   [--debug_archive=path]
+//           or: test_case --video=<file> [--pacing=REAL_TIME|AS_FAST_AS_POSSIBLE] [--alliance=RED|BLUE]
+//           either form may add [--steady_state_after=n [--assert_no_alloc]] [--hot_reload]
+// A relative --frames or --video path is resolved against the test case directory.
+//
+// --hot_reload watches the parameter files in the test case directory, e.g.
+// DistanceParameters.xml, while the stream runs. A file that is changed and
+// still valid is picked up from the next frame on; see ConfigWatcher.
+//
+// --steady_state_after=n tells the MatWorkspace scratch pool that it should
+// have warmed up after n frames; any scratch Mat allocated after that is
+// counted and reported at the end of the run. With --assert_no_alloc such an
+// allocation fails the action instead. Only the pool's scratch Mats are
+// checked: the Mats that the vision helpers return and the outputs of
+// findContours are still allocated on every frame (see MatWorkspace).
+public class StreamRunner {
+
+    private static final String TAG = StreamRunner.class.getSimpleName();
+
+    public static void main(String[] pArgs) throws Exception {
+        Map<String, String> namedParameters = RecognitionCLI.parseNamedParameters(pArgs);
+
+        String testCase = null;
+        for (String oneArg : pArgs) {
+            if (!oneArg.startsWith("--")) {
+                testCase = oneArg;
+                break;
+            }
+        }
+
+        if (testCase == null) {
+            System.out.println(TAG + " Missing test case name");
+            return;
+        }
+
+        RobotConstants.Alliance alliance = RobotConstants.Alliance.NONE;
+        String allianceParameter = namedParameters.get("alliance"); // optional
+        if (allianceParameter != null)
+            alliance = RobotConstants.Alliance.valueOf(allianceParameter);
+
+        OpenCVLoader.load();
+        String fullTestCaseDir = WorkingDirectory.getWorkingDirectory() + "/" + testCase + "/";
+        RobotLogCommon.initialize(RobotLogCommon.LogIdentifier.TEST_LOG, fullTestCaseDir);
+        DebugImageCommon.initialize((tag, message) -> System.out.println(tag + " " + message),
+                DebugImageCommon.WriterOptions.fromNamedParameters(namedParameters));
+        RobotLogCommon.c(TAG, "Alliance " + alliance);
+
+        // Per-stage latency instrumentation is off unless requested.
+        if (namedParameters.containsKey("stage_timing"))
+            StageTimer.enable();
+
+        // Tracking of native Mat memory is off unless requested. A budget
+        // in bytes per frame fails any action that leaks more than that.
+        if (namedParameters.containsKey("mat_tracking") || namedParameters.containsKey("mat_budget"))
+            MatTracker.enable(Long.parseLong(namedParameters.getOrDefault("mat_budget", String.valueOf(MatTracker.NO_BUDGET))));
+
+        ConfigWatcher configWatcher = null;
+        try {
+            if (namedParameters.containsKey("hot_reload"))
+                configWatcher = new ConfigWatcher(fullTestCaseDir);
+
+            RecognitionRunner.PreparedTestCase preparedTestCase = RecognitionRunner.prepareTestCase(fullTestCaseDir, alliance, configWatcher);
+            RobotLogCommon.setMostDetailedLogLevel(preparedTestCase.logLevel);
+
+            StreamingImageProvider provider = createProvider(fullTestCaseDir, namedParameters);
+            if (provider == null) {
+                System.out.println(TAG + " Missing --frames or --video");
+                return;
+            }
+
+            int steadyStateAfter = -1; // never
+            String steadyStateParameter = namedParameters.get("steady_state_after"); // optional
+            if (steadyStateParameter != null)
+                steadyStateAfter = Integer.parseInt(steadyStateParameter);
+            MatWorkspace.assertNoAllocations(namedParameters.containsKey("assert_no_alloc"));
+
+            runStream(preparedTestCase.actions, provider, steadyStateAfter);
+        } finally {
+            if (configWatcher != null)
+                configWatcher.close();
+            StageTimer.report(fullTestCaseDir + StageTimer.STAGE_TIMING_FILENAME);
+            MatTracker.report(fullTestCaseDir + MatTracker.MAT_TRACKING_FILENAME);
+            RobotLogCommon.closeLog();
+            DebugImageCommon.close(DebugImageCommon.DrainOnClose.ALL);
+        }
+    }
+
+    // Returns null if no stream source is on the command line.
+    public static StreamingImageProvider createProvider(String pFullTestCaseDir, Map<String, String> pNamedParameters) {
+        String framesParameter = pNamedParameters.get("frames");
+        if (framesParameter != null) {
+            int queueCapacity = ImageSequence.DEFAULT_QUEUE_CAPACITY;
+            String queueParameter = pNamedParameters.get("queue"); // optional
+            if (queueParameter != null)
+                queueCapacity = Integer.parseInt(queueParameter);
+
+            return new ImageSequence(resolve(pFullTestCaseDir, framesParameter), queueCapacity);
+        }
+
+        String videoParameter = pNamedParameters.get("video");
+        if (videoParameter != null) {
+            VideoFileImage.PacingMode pacingMode = VideoFileImage.PacingMode.REAL_TIME;
+            String pacingParameter = pNamedParameters.get("pacing"); // optional
+            if (pacingParameter != null)
+                pacingMode = VideoFileImage.PacingMode.valueOf(pacingParameter.toUpperCase());
+
+            return new VideoFileImage(resolve(pFullTestCaseDir, videoParameter), pacingMode);
+        }
+
+        return null;
+    }
+
+    // Run the actions once per frame until the stream is exhausted, then
+    // report the per-action result counts and the throughput and latency
+    // figures. Returns the result counts in the order of the actions.
+    // If pSteadyStateAfter is >= 0 the scratch Mat pool enters its steady
+    // state after that many frames.
+    public static List<Map<RobotConstants.RecognitionResults, Integer>> runStream(List<RecognitionAction> pActions,
+                                                                                  StreamingImageProvider pProvider,
+                                                                                  int pSteadyStateAfter) throws InterruptedException {
+        List<Map<RobotConstants.RecognitionResults, Integer>> resultCounts = new ArrayList<>();
+        for (int i = 0; i < pActions.size(); i++)
+            resultCounts.add(new EnumMap<>(RobotConstants.RecognitionResults.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(pActions.size(),
+                Runtime.getRuntime().availableProcessors())));
+        int frameCount = 0;
+        try {
+            while (pProvider.hasMoreFrames()) {
+                if (frameCount++ == pSteadyStateAfter)
+                    MatWorkspace.beginSteadyState();
+
+                SharedImage frame = new SharedImage(pProvider.getImage());
+                List<Future<ActionResult>> futures = new ArrayList<>();
+                for (RecognitionAction oneAction : pActions)
+                    futures.add(executor.submit(() -> RecognitionRunner.runAction("", oneAction, frame)));
+
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        resultCounts.get(i).merge(futures.get(i).get().recognitionResults, 1, Integer::sum);
+                    } catch (ExecutionException ex) { // runAction catches everything but be safe
+                        resultCounts.get(i).merge(RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR, 1, Integer::sum);
+                    }
+                }
+
+                frame.getImage().first.release();
+            }
+        } finally {
+            executor.shutdownNow();
+            pProvider.close();
+        }
+
+        for (int i = 0; i < pActions.size(); i++) {
+            String actionSummary = "Action " + pActions.get(i).actionName + ", results " + resultCounts.get(i);
+            RobotLogCommon.c(TAG, actionSummary);
+            System.out.println(actionSummary);
+        }
+
+        String summary = pProvider.getFrameStatistics().toString();
+        RobotLogCommon.c(TAG, summary);
+        System.out.println(summary);
+
+        String allocationSummary = "Scratch Mats allocated " + MatWorkspace.getAllocations() +
+                ", after steady state " + MatWorkspace.getSteadyStateAllocations();
+        RobotLogCommon.c(TAG, allocationSummary);
+        System.out.println(allocationSummary);
+        return resultCounts;
+    }
+
+    private static String resolve(String pFullTestCaseDir, String pPath) {
+        if (pPath.startsWith("/") || (pPath.length() > 1 && pPath.charAt(1) == ':'))
+            return pPath;
+        return pFullTestCaseDir + pPath;
+    }
+
+}
@@ -3,11 +3,12 @@ package org.firstinspires.ftc.teamcode.auto.vision;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.TimeStamp;
+import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.time.LocalDateTime;
@@ -33,7 +34,9 @@ public class ColorChannelRecognition {
         RobotLogCommon.d(TAG, "In ColorChannelRecognition.splitColorChannels");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
+        long getImageStart = StageTimer.start();
         Pair<Mat, LocalDateTime> inputImage = pImageProvider.getImage();
+        StageTimer.stop("ColorChannelRecognition.getImage", getImageStart);
         if (inputImage == null)
             return RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR; // don't crash
 
@@ -42,6 +45,7 @@ public class ColorChannelRecognition {
         String outputFilenamePreamble = ImageUtils.createOutputFilePreamble(pImageParameters.image_source, testCaseDirectory, fileDate);
         Mat imageROI = ImageUtils.preProcessImage(inputImage.first, outputFilenamePreamble, pImageParameters);
 
+        long splitStart = StageTimer.start();
         Mat hsvROI = new Mat();
         Imgproc.cvtColor(imageROI, hsvROI, Imgproc.COLOR_BGR2HSV);
         performHSVSplit(hsvROI, outputFilenamePreamble);
@@ -49,6 +53,7 @@ public class ColorChannelRecognition {
         Mat labROI = new Mat();
         Imgproc.cvtColor(imageROI, labROI, Imgproc.COLOR_BGR2Lab);
         performLABSplit(labROI, outputFilenamePreamble);
+        StageTimer.stop("ColorChannelRecognition.splitColorChannels", splitStart);
 
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
@@ -58,25 +63,19 @@ public class ColorChannelRecognition {
         Core.extractChannel(pHSVROI, hueChannel, 0);
 
         // Write out the H channel as grayscale.
-        String hueFilename = pOutputFilenamePreamble + "_HUE.png";
-        Imgcodecs.imwrite(hueFilename, hueChannel);
-        RobotLogCommon.d(TAG, "Writing " + hueFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_HUE.png", hueChannel);
 
         Mat saturationChannel = new Mat();
         Core.extractChannel(pHSVROI, saturationChannel, 1);
 
         // Write out the S channel as grayscale.
-        String satFilename = pOutputFilenamePreamble + "_SAT.png";
-        Imgcodecs.imwrite(satFilename, saturationChannel);
-        RobotLogCommon.d(TAG, "Writing " + satFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_SAT.png", saturationChannel);
 
         Mat valueChannel = new Mat();
         Core.extractChannel(pHSVROI, valueChannel, 2);
 
         // Write out the V channel as grayscale.
-        String valFilename = pOutputFilenamePreamble + "_VAL.png";
-        Imgcodecs.imwrite(valFilename, valueChannel);
-        RobotLogCommon.d(TAG, "Writing " + valFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_VAL.png", valueChannel);
     }
 
     private void performLABSplit(Mat pLABROI, String pOutputFilenamePreamble) {
@@ -84,25 +83,19 @@ public class ColorChannelRecognition {
         Core.extractChannel(pLABROI, lChannel, 0);
 
         // Write out the L channel as grayscale.
-        String lFilename = pOutputFilenamePreamble + "_L.png";
-        Imgcodecs.imwrite(lFilename, lChannel);
-        RobotLogCommon.d(TAG, "Writing " + lFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_L.png", lChannel);
 
         Mat aChannel = new Mat();
         Core.extractChannel(pLABROI, aChannel, 1);
 
         // Write out the A channel as grayscale.
-        String aFilename = pOutputFilenamePreamble + "_A.png";
-        Imgcodecs.imwrite(aFilename, aChannel);
-        RobotLogCommon.d(TAG, "Writing " + aFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_A.png", aChannel);
 
         Mat bChannel = new Mat();
         Core.extractChannel(pLABROI, bChannel, 2);
 
         // Write out the V channel as grayscale.
-        String bFilename = pOutputFilenamePreamble + "_B.png";
-        Imgcodecs.imwrite(bFilename, bChannel);
-        RobotLogCommon.d(TAG, "Writing " + bFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_B.png", bChannel);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.*;
+
+// Compiles an HSV inRange threshold together with the saturation and
+// value median shifts so that the binary mask can be produced directly
+// from the unadjusted HSV image. This replaces the sequence split,
+// convertTo (S), convertTo (V), merge and inRange with a single inRange
+// (two plus a bitwise_or for a hue range that wraps around 180) and gives
+// an identical result.
+//
+// The compilation builds a pass/fail lookup table over the 256 possible
+// raw values of each channel:
+//   hue:        hueLow <= H <= hueHigh, or for wraparound H >= hueLow || H <= hueHigh
+//   saturation: saturate(S + satShift) >= satLow
+//   value:      saturate(V + valShift) >= valLow
+// Because saturate(x + shift) is non-decreasing in x the saturation and
+// value tables always pass a single interval [first, 255] of raw values,
+// or none at all, so the tables reduce to inRange bounds on the raw image.
+// A single inRange is several times faster than a 3-channel Core.LUT.
+//
+// The most recently compiled threshold is cached per thread and reused as
+// long as the thresholds and the shifts are unchanged.
+public class CompiledHSVThreshold {
+
+    private static final String TAG = CompiledHSVThreshold.class.getSimpleName();
+
+    private static final ThreadLocal<CompiledHSVThreshold> lastCompiled = new ThreadLocal<>();
+
+    private final int hueLow;
+    private final int hueHigh;
+    private final int satLow;
+    private final int valLow;
+    private final int satShift;
+    private final int valShift;
+
+    // The compiled bounds on the raw (unadjusted) HSV image.
+    private final boolean hueWraparound;
+    private final int rawSatLow; // -1 if no saturation value passes
+    private final int rawValLow; // -1 if no value passes
+
+    private CompiledHSVThreshold(int pHueLow, int pHueHigh, int pSatLow, int pValLow, int pSatShift, int pValShift) {
+        hueLow = pHueLow;
+        hueHigh = pHueHigh;
+        satLow = pSatLow;
+        valLow = pValLow;
+        satShift = pSatShift;
+        valShift = pValShift;
+
+        hueWraparound = !(pHueLow < pHueHigh); // same test as ImageUtils.applyInRange
+        rawSatLow = firstPassingRawValue(pSatShift, pSatLow);
+        rawValLow = firstPassingRawValue(pValShift, pValLow);
+    }
+
+    // Returns the compiled threshold, compiling it only if it differs
+    // from the last one compiled on this thread.
+    public static CompiledHSVThreshold getCompiled(int pHueLow, int pHueHigh, int pSatLow, int pValLow,
+                                                   int pSatShift, int pValShift) {
+        // Same sanity check as ImageUtils.applyInRange.
+        if (!((pHueLow >= 0 && pHueLow <= 180) && (pHueHigh >= 0 && pHueHigh <= 180)))
+            throw new AutonomousRobotException(TAG, "Hue out of range");
+
+        CompiledHSVThreshold compiled = lastCompiled.get();
+        if (compiled != null && compiled.matches(pHueLow, pHueHigh, pSatLow, pValLow, pSatShift, pValShift))
+            return compiled;
+
+        compiled = new CompiledHSVThreshold(pHueLow, pHueHigh, pSatLow, pValLow, pSatShift, pValShift);
+        lastCompiled.set(compiled);
+        return compiled;
+    }
+
+    // Threshold an unadjusted 8-bit HSV image to a CV_8UC1 binary mask.
+    public Mat apply(Mat pHSVImage) {
+        Mat thresholded = new Mat();
+        if (rawSatLow < 0 || rawValLow < 0) {
+            thresholded.create(pHSVImage.size(), CvType.CV_8UC1);
+            thresholded.setTo(new Scalar(0));
+            return thresholded;
+        }
+
+        if (!hueWraparound) {
+            Core.inRange(pHSVImage, new Scalar(hueLow, rawSatLow, rawValLow), new Scalar(hueHigh, 255, 255), thresholded);
+            return thresholded;
+        }
+
+        // For a hue range of low 170, high 10 the following yields two
+        // ranges: 170 - 180 and 0 - 10.
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat range2 = workspace.borrow(pHSVImage.rows(), pHSVImage.cols(), CvType.CV_8UC1);
+        Core.inRange(pHSVImage, new Scalar(hueLow, rawSatLow, rawValLow), new Scalar(180, 255, 255), thresholded);
+        Core.inRange(pHSVImage, new Scalar(0, rawSatLow, rawValLow), new Scalar(hueHigh, 255, 255), range2);
+        Core.bitwise_or(thresholded, range2, thresholded);
+        workspace.giveBack(range2);
+        return thresholded;
+    }
+
+    private boolean matches(int pHueLow, int pHueHigh, int pSatLow, int pValLow, int pSatShift, int pValShift) {
+        return hueLow == pHueLow && hueHigh == pHueHigh && satLow == pSatLow && valLow == pValLow &&
+                satShift == pSatShift && valShift == pValShift;
+    }
+
+    // Walk the lookup table for one channel and return the first raw value
+    // that passes after the shift, or -1 if none does.
+    private static int firstPassingRawValue(int pShift, int pLowThreshold) {
+        for (int raw = 0; raw < 256; raw++)
+            if (saturate(raw + pShift) >= pLowThreshold)
+                return raw;
+
+        return -1;
+    }
+
+    // Same as OpenCV's saturate_cast<uchar> for an int.
+    private static int saturate(int pValue) {
+        return Math.max(0, Math.min(255, pValue));
+    }
+
+}
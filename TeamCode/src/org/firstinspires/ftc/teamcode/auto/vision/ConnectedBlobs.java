@@ -0,0 +1,196 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Blob analysis of a binary image built on connectedComponentsWithStats.
+// For the common questions - the largest blob, the blobs above a minimum
+// area, their bounding boxes and centroids - this is an alternative to
+// findContours followed by contourArea, boundingRect and moments on a
+// List<MatOfPoint>.
+// The statistics for all of the blobs are copied out of OpenCV in two bulk
+// transfers into flat arrays in OpenCV's own layout so there is no object
+// allocation per blob:
+// stats     - 5 ints per label: left, top, width, height, area
+// centroids - 2 doubles per label: x, y
+// Label 0 is the background; blob i (0 <= i < count) is label i + 1.
+//
+// The blobs are 8-connected, which matches the outer boundaries traced by
+// findContours with RETR_EXTERNAL: the bounding box of a blob is the same
+// as the boundingRect of its external contour. The area of a blob is its
+// pixel count, which is slightly larger than the contourArea of the
+// polygon through its boundary pixels.
+//
+// Use getContour() only when the polygon itself is needed, e.g. for
+// drawing; it runs findContours on the bounding box of a single blob.
+//
+// The labelling pass writes a 32-bit label for every pixel, so on a mask
+// with only a handful of blobs findContours is faster (see the micro
+// benchmarks ImageUtils.getLargestContour and ConnectedBlobs.getLargest);
+// the blob statistics pay off when there are many blobs or when the areas,
+// boxes and centroids of all of them are needed. Of the labelling
+// algorithms Grana's BBDT measured fastest.
+public class ConnectedBlobs {
+
+    private static final String TAG = ConnectedBlobs.class.getSimpleName();
+
+    private static final int STATS_COLUMNS = 5;
+
+    public final int count; // number of blobs, excluding the background
+    private final int[] stats;
+    private final double[] centroids;
+    private final Mat labels; // CV_32S, same size as the binary image
+
+    private ConnectedBlobs(int pCount, int[] pStats, double[] pCentroids, Mat pLabels) {
+        count = pCount;
+        stats = pStats;
+        centroids = pCentroids;
+        labels = pLabels;
+    }
+
+    // pBinaryImage must be CV_8UC1; any non-zero pixel is foreground.
+    public static ConnectedBlobs analyze(Mat pBinaryImage) {
+        if (pBinaryImage.type() != CvType.CV_8UC1)
+            throw new AutonomousRobotException(TAG, "Expected a CV_8UC1 binary image");
+
+        long stageStart = StageTimer.start();
+        Mat labels = new Mat();
+        Mat statsMat = new Mat();
+        Mat centroidsMat = new Mat();
+        int numLabels = Imgproc.connectedComponentsWithStatsWithAlgorithm(pBinaryImage, labels, statsMat, centroidsMat,
+                8, CvType.CV_32S, Imgproc.CCL_GRANA);
+
+        int[] stats = new int[numLabels * STATS_COLUMNS];
+        statsMat.get(0, 0, stats);
+        double[] centroids = new double[numLabels * 2];
+        centroidsMat.get(0, 0, centroids);
+        statsMat.release();
+        centroidsMat.release();
+        StageTimer.stop("ConnectedBlobs.analyze", stageStart);
+
+        return new ConnectedBlobs(numLabels - 1, stats, centroids, labels);
+    }
+
+    public int getArea(int pBlob) {
+        return stat(pBlob, Imgproc.CC_STAT_AREA);
+    }
+
+    public Rect getBoundingRect(int pBlob) {
+        return new Rect(stat(pBlob, Imgproc.CC_STAT_LEFT), stat(pBlob, Imgproc.CC_STAT_TOP),
+                stat(pBlob, Imgproc.CC_STAT_WIDTH), stat(pBlob, Imgproc.CC_STAT_HEIGHT));
+    }
+
+    public double getCentroidX(int pBlob) {
+        return centroids[(pBlob + 1) * 2];
+    }
+
+    public double getCentroidY(int pBlob) {
+        return centroids[(pBlob + 1) * 2 + 1];
+    }
+
+    public Point getCentroid(int pBlob) {
+        return new Point(getCentroidX(pBlob), getCentroidY(pBlob));
+    }
+
+    // Returns the index of the blob with the largest area or -1 if there
+    // are no blobs. Ties go to the first blob in raster order.
+    public int getLargest() {
+        int largest = -1;
+        int largestArea = -1;
+        for (int i = 0; i < count; i++) {
+            int area = getArea(i);
+            if (area > largestArea) {
+                largest = i;
+                largestArea = area;
+            }
+        }
+
+        return largest;
+    }
+
+    // Returns the number of blobs with an area greater than pMinArea.
+    public int countAboveArea(double pMinArea) {
+        int numAbove = 0;
+        for (int i = 0; i < count; i++)
+            if (getArea(i) > pMinArea)
+                numAbove++;
+
+        return numAbove;
+    }
+
+    // Returns the indices of the blobs with an area greater than pMinArea
+    // in descending order of area.
+    public int[] getBlobsAboveArea(double pMinArea) {
+        int[] above = new int[countAboveArea(pMinArea)];
+        int numAbove = 0;
+        for (int i = 0; i < count; i++)
+            if (getArea(i) > pMinArea)
+                above[numAbove++] = i;
+
+        // Insertion sort by descending area; stable and allocation-free.
+        for (int i = 1; i < above.length; i++) {
+            int blob = above[i];
+            int area = getArea(blob);
+            int j = i - 1;
+            while (j >= 0 && getArea(above[j]) < area) {
+                above[j + 1] = above[j];
+                j--;
+            }
+            above[j + 1] = blob;
+        }
+
+        return above;
+    }
+
+    // Returns a binary image in which only the blobs with an area greater
+    // than pMinArea are white. Each blob is compared within its own bounding
+    // box so the cost is proportional to the area of the boxes.
+    public Mat getMask(double pMinArea) {
+        Mat mask = Mat.zeros(labels.size(), CvType.CV_8UC1);
+        Mat blobPixels = new Mat();
+        for (int i = 0; i < count; i++) {
+            if (getArea(i) <= pMinArea)
+                continue;
+
+            Rect box = getBoundingRect(i);
+            Mat maskBox = mask.submat(box);
+            Core.compare(labels.submat(box), new Scalar(i + 1), blobPixels, Core.CMP_EQ);
+            Core.bitwise_or(maskBox, blobPixels, maskBox);
+        }
+
+        blobPixels.release();
+        return mask;
+    }
+
+    // The external contour of one blob in the coordinates of the full image.
+    public MatOfPoint getContour(int pBlob) {
+        Rect box = getBoundingRect(pBlob);
+        Mat blobPixels = new Mat();
+        Core.compare(labels.submat(box), new Scalar(pBlob + 1), blobPixels, Core.CMP_EQ);
+
+        List<MatOfPoint> contours = new ArrayList<>();
+        Mat hierarchy = new Mat();
+        Imgproc.findContours(blobPixels, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE,
+                new Point(box.x, box.y));
+        blobPixels.release();
+        hierarchy.release();
+
+        // An 8-connected blob has exactly one external contour.
+        return contours.get(0);
+    }
+
+    // Release the label image; the statistics remain valid.
+    public void release() {
+        labels.release();
+    }
+
+    private int stat(int pBlob, int pColumn) {
+        return stats[(pBlob + 1) * STATS_COLUMNS + pColumn];
+    }
+
+}
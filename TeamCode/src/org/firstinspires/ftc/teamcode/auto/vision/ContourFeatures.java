@@ -0,0 +1,170 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The geometry of a set of contours computed once, in a single pass over
+// the contours, and stored in parallel primitive arrays indexed in the
+// same order as the contours. Consumers that need the area, bounding box
+// or centroid of a contour read them from here instead of calling
+// contourArea, boundingRect or moments again.
+//
+// The area and the centroid both come from a single call to moments; m00
+// of the moments of a contour is exactly the value returned by
+// contourArea. The centroid of a contour with zero area is NaN.
+//
+// The perimeter and the minimum-area rotated rectangle need the contour
+// as floating point and minAreaRect is several times more expensive than
+// all of the other features together, so they are computed only if the
+// table is created with pIncludeShape; otherwise those arrays are null.
+public class ContourFeatures {
+
+    public final List<MatOfPoint> contours;
+    public final int count;
+
+    public final double[] areas;
+    public final int[] boxX;
+    public final int[] boxY;
+    public final int[] boxWidth;
+    public final int[] boxHeight;
+    public final double[] centroidX;
+    public final double[] centroidY;
+
+    // Only with pIncludeShape.
+    public final double[] perimeters;
+    public final double[] rotatedCenterX;
+    public final double[] rotatedCenterY;
+    public final double[] rotatedWidth;
+    public final double[] rotatedHeight;
+    public final double[] rotatedAngle;
+
+    private int[] byDescendingArea; // created on first use
+
+    public ContourFeatures(List<MatOfPoint> pContours, boolean pIncludeShape) {
+        long stageStart = StageTimer.start();
+        contours = pContours;
+        count = pContours.size();
+
+        areas = new double[count];
+        boxX = new int[count];
+        boxY = new int[count];
+        boxWidth = new int[count];
+        boxHeight = new int[count];
+        centroidX = new double[count];
+        centroidY = new double[count];
+
+        perimeters = pIncludeShape ? new double[count] : null;
+        rotatedCenterX = pIncludeShape ? new double[count] : null;
+        rotatedCenterY = pIncludeShape ? new double[count] : null;
+        rotatedWidth = pIncludeShape ? new double[count] : null;
+        rotatedHeight = pIncludeShape ? new double[count] : null;
+        rotatedAngle = pIncludeShape ? new double[count] : null;
+
+        MatOfPoint2f floatContour = pIncludeShape ? new MatOfPoint2f() : null;
+        for (int i = 0; i < count; i++) {
+            MatOfPoint oneContour = pContours.get(i);
+            Moments moments = Imgproc.moments(oneContour);
+            areas[i] = Math.abs(moments.m00);
+            centroidX[i] = moments.m00 == 0 ? Double.NaN : moments.m10 / moments.m00;
+            centroidY[i] = moments.m00 == 0 ? Double.NaN : moments.m01 / moments.m00;
+
+            Rect box = Imgproc.boundingRect(oneContour);
+            boxX[i] = box.x;
+            boxY[i] = box.y;
+            boxWidth[i] = box.width;
+            boxHeight[i] = box.height;
+
+            if (pIncludeShape) {
+                oneContour.convertTo(floatContour, CvType.CV_32F);
+                perimeters[i] = Imgproc.arcLength(floatContour, true);
+                RotatedRect rotatedRect = Imgproc.minAreaRect(floatContour);
+                rotatedCenterX[i] = rotatedRect.center.x;
+                rotatedCenterY[i] = rotatedRect.center.y;
+                rotatedWidth[i] = rotatedRect.size.width;
+                rotatedHeight[i] = rotatedRect.size.height;
+                rotatedAngle[i] = rotatedRect.angle;
+            }
+        }
+
+        if (floatContour != null)
+            floatContour.release();
+        StageTimer.stop("ContourFeatures", stageStart);
+    }
+
+    public Rect getBoundingRect(int pIndex) {
+        return new Rect(boxX[pIndex], boxY[pIndex], boxWidth[pIndex], boxHeight[pIndex]);
+    }
+
+    public Point getCentroid(int pIndex) {
+        return new Point(centroidX[pIndex], centroidY[pIndex]);
+    }
+
+    // Only if the table was created with pIncludeShape.
+    public RotatedRect getMinAreaRect(int pIndex) {
+        return new RotatedRect(new Point(rotatedCenterX[pIndex], rotatedCenterY[pIndex]),
+                new Size(rotatedWidth[pIndex], rotatedHeight[pIndex]), rotatedAngle[pIndex]);
+    }
+
+    // Returns the index of the contour with the largest area or -1 if there
+    // are no contours. Ties go to the first contour.
+    public int getLargest() {
+        int largest = -1;
+        double largestArea = -1;
+        for (int i = 0; i < count; i++) {
+            if (areas[i] > largestArea) {
+                largest = i;
+                largestArea = areas[i];
+            }
+        }
+
+        return largest;
+    }
+
+    // A view of the contour indices in descending order of area. Contours
+    // of equal area are in the reverse of their original order. The array
+    // is shared; don't modify it.
+    public int[] getIndicesByDescendingArea() {
+        if (byDescendingArea == null) {
+            // Sort primitive keys, not boxed indices: the rank of the area
+            // in the high half and the index in the low half. Equal areas
+            // get the same rank, so in ascending key order they are in
+            // their original order and reading the keys backwards gives
+            // descending area with ties in reverse order.
+            double[] sortedAreas = areas.clone();
+            Arrays.sort(sortedAreas);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++)
+                keys[i] = ((long) Arrays.binarySearch(sortedAreas, areas[i]) << 32) | i;
+            Arrays.sort(keys);
+
+            byDescendingArea = new int[count];
+            for (int i = 0; i < count; i++)
+                byDescendingArea[i] = (int) keys[count - 1 - i];
+        }
+
+        return byDescendingArea;
+    }
+
+    // Returns the indices of the contours with an area greater than
+    // pMinArea in their original order.
+    public int[] getIndicesAboveArea(double pMinArea) {
+        int numAbove = 0;
+        for (int i = 0; i < count; i++)
+            if (areas[i] > pMinArea)
+                numAbove++;
+
+        int[] above = new int[numAbove];
+        numAbove = 0;
+        for (int i = 0; i < count; i++)
+            if (areas[i] > pMinArea)
+                above[numAbove++] = i;
+
+        return above;
+    }
+
+}
@@ -4,12 +4,13 @@ import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.TimeStamp;
+import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.DistanceParameters;
 import org.firstinspires.ftc.teamcode.auto.xml.RecognitionWindowMapping;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.time.LocalDateTime;
@@ -42,7 +43,9 @@ public class DistanceTransformRecognition {
         RobotLogCommon.d(TAG, "In DistanceTransformRecognition.performDistanceTransform");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
+        long getImageStart = StageTimer.start();
         Pair<Mat, LocalDateTime> transformImage = pImageProvider.getImage();
+        StageTimer.stop("DistanceTransformRecognition.getImage", getImageStart);
         if (transformImage == null)
             return RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR; // don't crash
 
@@ -53,30 +56,45 @@ public class DistanceTransformRecognition {
         RobotLogCommon.d(TAG, "Recognition path " + pDistanceRecognitionPath);
 
         // Adapt the standard example to our environment.
-        switch (pDistanceRecognitionPath) {
-            case COLOR_CHANNEL_BRIGHT_SPOT -> {
-                Mat distanceTransformImage = getDistanceTransformImage(imageROI, outputFilenamePreamble,
-                        pDistanceParameters.colorChannelBrightSpotParameters.redGrayParameters,
-                        pDistanceParameters.colorChannelBrightSpotParameters.blueGrayParameters);
-                return colorChannelBrightSpot(imageROI, distanceTransformImage, outputFilenamePreamble,
-                        pDistanceParameters.colorChannelBrightSpotParameters,
-                        pRecognitionWindowMapping);
-
-            }
-            case COLOR_CHANNEL_PIXEL_COUNT -> {
-                Mat distanceTransformImage = getDistanceTransformImage(imageROI, outputFilenamePreamble,
-                        pDistanceParameters.colorChannelPixelCountParameters.redGrayParameters,
-                        pDistanceParameters.colorChannelPixelCountParameters.blueGrayParameters);
-                return colorChannelPixelCount(imageROI, distanceTransformImage, outputFilenamePreamble,
-                        pDistanceParameters.colorChannelPixelCountParameters,
-                        pRecognitionWindowMapping);
+        long pathStart = StageTimer.start();
+        try {
+            switch (pDistanceRecognitionPath) {
+                case COLOR_CHANNEL_BRIGHT_SPOT -> {
+                    Mat distanceTransformImage = getDistanceTransformImage(imageROI, outputFilenamePreamble,
+                            pDistanceParameters.colorChannelBrightSpotParameters.redGrayParameters,
+                            pDistanceParameters.colorChannelBrightSpotParameters.blueGrayParameters);
+                    try {
+                        return colorChannelBrightSpot(imageROI, distanceTransformImage, outputFilenamePreamble,
+                                pDistanceParameters.colorChannelBrightSpotParameters,
+                                pRecognitionWindowMapping);
+                    } finally {
+                        MatWorkspace.get().giveBack(distanceTransformImage);
+                    }
+
+                }
+                case COLOR_CHANNEL_PIXEL_COUNT -> {
+                    Mat distanceTransformImage = getDistanceTransformImage(imageROI, outputFilenamePreamble,
+                            pDistanceParameters.colorChannelPixelCountParameters.redGrayParameters,
+                            pDistanceParameters.colorChannelPixelCountParameters.blueGrayParameters);
+                    try {
+                        return colorChannelPixelCount(imageROI, distanceTransformImage, outputFilenamePreamble,
+                                pDistanceParameters.colorChannelPixelCountParameters,
+                                pRecognitionWindowMapping);
+                    } finally {
+                        MatWorkspace.get().giveBack(distanceTransformImage);
+                    }
+                }
+                default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
             }
-            default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
+        } finally {
+            StageTimer.stop(TAG, pDistanceRecognitionPath, pathStart);
         }
     }
 
     // Based on the OpenCV Python example for watershed:
     // https://docs.opencv.org/4.x/d2/dbd/tutorial_distance_transform.html
+    // The returned image is borrowed from the MatWorkspace of the current
+    // thread; the caller must give it back.
     private Mat getDistanceTransformImage(Mat pImageROI, String pOutputFilenamePreamble,
                                           VisionParameters.GrayParameters pRedGrayParameters,
                                           VisionParameters.GrayParameters pBlueGrayParameters) {
@@ -94,33 +112,37 @@ public class DistanceTransformRecognition {
         //## The inversion of the opposing alliance's channel gives better
         // contrast than the alliance's channel itself.
         Mat invertedChannel = ImageUtils.extractAndInvertOpposingAllianceChannel(sharp, alliance, allianceGrayParameters, pOutputFilenamePreamble);
+        sharp.release();
 
         // Follow the Python example and threshold the grayscale.
         //## Imgproc.THRESH_BINARY works better than OTSU here
         // on bright spot recognition.
-        Mat thresholded = new Mat(); // output binary image
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat thresholded = workspace.borrow(invertedChannel.rows(), invertedChannel.cols(), CvType.CV_8UC1); // output binary image
         Imgproc.threshold(invertedChannel, thresholded,
                 allianceGrayParameters.threshold_low,
                 255,   // white
                 Imgproc.THRESH_BINARY); // Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU); // thresholding type
+        invertedChannel.release();
         RobotLogCommon.v(TAG, "Threshold values: low " + allianceGrayParameters.threshold_low + ", high 255");
 
-        String thrFilename = pOutputFilenamePreamble + "_THR.png";
-        Imgcodecs.imwrite(thrFilename, thresholded);
-        RobotLogCommon.d(TAG, "Writing " + thrFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_THR.png", thresholded);
 
         // Perform the distance transform algorithm. Imgproc.DIST_L2
         // is a flag for Euclidean distance. Output is 32FC1.
-        Mat dist = new Mat();
+        long distanceStart = StageTimer.start();
+        Mat dist = workspace.borrow(thresholded.rows(), thresholded.cols(), CvType.CV_32FC1);
         Imgproc.distanceTransform(thresholded, dist, Imgproc.DIST_L2, 3);
+        StageTimer.stop("DistanceTransformRecognition.distanceTransform", distanceStart);
+        workspace.giveBack(thresholded);
 
         Core.normalize(dist, dist, 0.0, 255.0, Core.NORM_MINMAX);
-        Mat dist_8u = new Mat();
+        Mat dist_8u = workspace.borrow(dist.rows(), dist.cols(), CvType.CV_8UC1);
         dist.convertTo(dist_8u, CvType.CV_8U);
+        workspace.giveBack(dist);
 
         // Output the transformed image.
-        Imgcodecs.imwrite(pOutputFilenamePreamble + "_DIST.png", dist_8u);
-        RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_DIST.png");
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_DIST.png", dist_8u);
         //! [dist]
 
         return dist_8u;
@@ -144,11 +166,13 @@ public class DistanceTransformRecognition {
         Core.MinMaxLocResult brightResult = Core.minMaxLoc(pDistanceImage);
         RobotLogCommon.d(TAG, "Bright spot location " + brightResult.maxLoc + ", value " + brightResult.maxVal);
 
-        Mat brightSpotOut = pImageROI.clone();
-        Imgproc.circle(brightSpotOut, brightResult.maxLoc, 10, new Scalar(0, 255, 0));
-
-        Imgcodecs.imwrite(pOutputFilenamePreamble + "_BRIGHT.png", brightSpotOut);
-        RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_BRIGHT.png");
+        // The bright spot is drawn on a snapshot of the ROI only if the
+        // image is written.
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_BRIGHT.png",
+                pImageROI, brightSpotOut -> {
+                    Imgproc.circle(brightSpotOut, brightResult.maxLoc, 10, new Scalar(0, 255, 0));
+                    return brightSpotOut;
+                });
 
         // If the bright spot is under the threshold then assume no Team Prop is present.
         //## We need a lower threshold for the distance image since it has undergone two
@@ -160,7 +184,7 @@ public class DistanceTransformRecognition {
             return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
         }
 
-        return RecognitionWindowUtils.lookThroughWindowsAtCenterPoint(brightResult.maxLoc, brightSpotOut, pOutputFilenamePreamble,
+        return RecognitionWindowUtils.lookThroughWindowsAtCenterPoint(brightResult.maxLoc, pImageROI, pOutputFilenamePreamble,
                 pRecognitionWindowMapping.recognitionWindows);
     }
 
@@ -181,16 +205,19 @@ public class DistanceTransformRecognition {
         //## The distance transform tends to produce a diffuse result because the
         // values closest to white only occur near the center of an object such as
         // the team prop. But OTSU works fine here.
-        Mat thresholded = new Mat();
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat thresholded = workspace.borrow(pDistanceImage.rows(), pDistanceImage.cols(), CvType.CV_8UC1);
         Imgproc.threshold(pDistanceImage, thresholded, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
 
         // Output post-distance thresholded image.
-        String thrFilename = pOutputFilenamePreamble + "_THR2.png";
-        Imgcodecs.imwrite(thrFilename, thresholded);
-        RobotLogCommon.d(TAG, "Writing " + thrFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_THR2.png", thresholded);
 
-        return RecognitionWindowUtils.lookThroughWindowsAtPixelCount(thresholded, allianceMinWhitePixelCount,
-                pImageROI, pOutputFilenamePreamble, pRecognitionWindowMapping);
+        try {
+            return RecognitionWindowUtils.lookThroughWindowsAtPixelCount(thresholded, allianceMinWhitePixelCount,
+                    pImageROI, pOutputFilenamePreamble, pRecognitionWindowMapping);
+        } finally {
+            workspace.giveBack(thresholded);
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import java.util.concurrent.TimeUnit;
+
+// Throughput and latency figures for a StreamingImageProvider.
+// The latency of a frame runs from the moment the frame finished
+// decoding until the consumer asks for the next frame, i.e. it covers
+// time spent waiting in the hand-off queue plus the recognition itself.
+// The decoder thread and the consumer thread both update this object
+// so all access is synchronized.
+public class FrameStatistics {
+
+    private int framesDecoded;
+    private int framesDelivered;
+    private int framesDropped;
+    private long decodeNanosTotal;
+    private long consumerWaitNanosTotal; // time the consumer spent waiting for the decoder
+
+    private int latencyCount;
+    private long latencyNanosTotal;
+    private long latencyNanosMin = Long.MAX_VALUE;
+    private long latencyNanosMax;
+
+    private long firstDeliveryNanos = -1;
+    private long lastCompletionNanos = -1;
+
+    public synchronized void frameDecoded(long pDecodeNanos) {
+        framesDecoded++;
+        decodeNanosTotal += pDecodeNanos;
+    }
+
+    public synchronized void frameDropped() {
+        framesDropped++;
+    }
+
+    public synchronized void frameDelivered(long pDeliveryNanos, long pConsumerWaitNanos) {
+        if (firstDeliveryNanos < 0)
+            firstDeliveryNanos = pDeliveryNanos;
+        framesDelivered++;
+        consumerWaitNanosTotal += pConsumerWaitNanos;
+    }
+
+    // The consumer is done with a frame that finished decoding at pDecodedNanos.
+    public synchronized void frameCompleted(long pDecodedNanos, long pCompletionNanos) {
+        long latency = pCompletionNanos - pDecodedNanos;
+        latencyCount++;
+        latencyNanosTotal += latency;
+        latencyNanosMin = Math.min(latencyNanosMin, latency);
+        latencyNanosMax = Math.max(latencyNanosMax, latency);
+        lastCompletionNanos = pCompletionNanos;
+    }
+
+    public synchronized int getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public synchronized int getFramesDelivered() {
+        return framesDelivered;
+    }
+
+    public synchronized int getFramesDropped() {
+        return framesDropped;
+    }
+
+    // Sustained throughput from the delivery of the first frame to the
+    // completion of the last.
+    public synchronized double getFramesPerSecond() {
+        if (latencyCount == 0 || lastCompletionNanos <= firstDeliveryNanos)
+            return 0.0;
+        return latencyCount / ((lastCompletionNanos - firstDeliveryNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public synchronized double getMeanLatencyMs() {
+        return latencyCount == 0 ? 0.0 : toMs(latencyNanosTotal) / latencyCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Frames decoded " + framesDecoded + ", delivered " + framesDelivered +
+                ", completed " + latencyCount + ", dropped " + framesDropped +
+                String.format(", %.2f fps", getFramesPerSecond()) +
+                String.format(", latency ms mean %.2f min %.2f max %.2f", getMeanLatencyMs(),
+                        latencyCount == 0 ? 0.0 : toMs(latencyNanosMin), toMs(latencyNanosMax)) +
+                String.format(", mean decode ms %.2f", framesDecoded == 0 ? 0.0 : toMs(decodeNanosTotal) / framesDecoded) +
+                String.format(", mean consumer wait ms %.2f", framesDelivered == 0 ? 0.0 : toMs(consumerWaitNanosTotal) / framesDelivered);
+    }
+
+    private static double toMs(long pNanos) {
+        return pNanos / 1_000_000.0;
+    }
+
+}
@@ -6,14 +6,13 @@ import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.TimeStamp;
 import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.GoldCubeParameters;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
 
 public class GoldCubeRecognition {
 
@@ -47,7 +46,9 @@ public class GoldCubeRecognition {
         RobotLogCommon.d(TAG, "In GoldCubeRecognition.recognizeGoldCubeWebcam");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
+        long getImageStart = StageTimer.start();
         Pair<Mat, LocalDateTime> goldCubeImage = pImageProvider.getImage();
+        StageTimer.stop("GoldCubeRecognition.getImage", getImageStart);
         if (goldCubeImage == null)
             return RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR; // don't crash
 
@@ -57,14 +58,19 @@ public class GoldCubeRecognition {
         Mat imageROI = ImageUtils.preProcessImage(goldCubeImage.first, outputFilenamePreamble, pImageParameters);
 
         RobotLogCommon.d(TAG, "Recognition path " + pGoldCubeRecognitionPath);
-        switch (pGoldCubeRecognitionPath) {
-            case RED_CHANNEL_GRAYSCALE -> {
-                return redChannelPathWebcam(imageROI, outputFilenamePreamble, pGoldCubeParameters);
+        long pathStart = StageTimer.start();
+        try {
+            switch (pGoldCubeRecognitionPath) {
+                case RED_CHANNEL_GRAYSCALE -> {
+                    return redChannelPathWebcam(imageROI, outputFilenamePreamble, pGoldCubeParameters);
+                }
+                case COLOR -> {
+                    return colorPathWebcam(imageROI, outputFilenamePreamble, pGoldCubeParameters);
+                }
+                default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
             }
-            case COLOR -> {
-                return colorPathWebcam(imageROI, outputFilenamePreamble, pGoldCubeParameters);
-            }
-            default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
+        } finally {
+            StageTimer.stop(TAG, pGoldCubeRecognitionPath, pathStart);
         }
     }
 
@@ -76,42 +82,44 @@ public class GoldCubeRecognition {
         Core.extractChannel(pImageROI, selectedChannel, 2);
 
         // Write out the red channel as grayscale.
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            DebugImageCommon.writeImage(pOutputFilenamePreamble + "_RED_CHANNEL.png", selectedChannel);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_RED_CHANNEL.png");
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_RED_CHANNEL.png", selectedChannel);
 
         Mat thresholded = ImageUtils.performThresholdOnGray(selectedChannel,
                 pGoldCubeParameters.grayscaleParameters.median_target,
                 pGoldCubeParameters.grayscaleParameters.threshold_low,
                 pOutputFilenamePreamble, "");
 
-        Optional<Pair<Integer, MatOfPoint>> targetContour = ImageUtils.getLargestContour(pImageROI, thresholded, pOutputFilenamePreamble);
-        if (!targetContour.isPresent()) {
+        ContourFeatures contourFeatures = ImageUtils.getContourFeatures(pImageROI, thresholded, pOutputFilenamePreamble);
+        if (contourFeatures.count == 0) {
             ShapeDrawing.drawX(pImageROI, redXColor, pOutputFilenamePreamble);
             RobotLogCommon.d(TAG, "No contours found");
             return RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL; // don't crash
         }
 
-        Rect contourBoundingRect = Imgproc.boundingRect(targetContour.get().second);
+        Rect contourBoundingRect = contourFeatures.getBoundingRect(contourFeatures.getLargest());
         RobotLogCommon.d(TAG, "Bounding box of largest contour: area " + contourBoundingRect.area());
 
-        // Within the ROI draw a rectangle around the largest contour.
-        Mat drawnRectangle = pImageROI.clone();
-        ShapeDrawing.drawOneRectangle(contourBoundingRect, drawnRectangle, 2);
-
         // Check the size of the largest contour.
         if (contourBoundingRect.area() < pGoldCubeParameters.boundingBoxCriteria.minBoundingBoxArea ||
                 contourBoundingRect.area() > pGoldCubeParameters.boundingBoxCriteria.maxBoundingBoxArea) {
-            ShapeDrawing.drawX(drawnRectangle, redXColor, pOutputFilenamePreamble);
+            // Within a snapshot of the ROI draw a rectangle around the
+            // largest contour and an X through it.
+            DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "NO_BRECT.png",
+                    pImageROI, drawnRectangle -> {
+                        ShapeDrawing.drawOneRectangle(contourBoundingRect, drawnRectangle, 2);
+                        ShapeDrawing.drawX(drawnRectangle, redXColor);
+                        return drawnRectangle;
+                    });
             RobotLogCommon.d(TAG, "The largest contour violates the size criteria");
             return RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL; // don't crash
         }
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.v)) {
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_BRECT.png", drawnRectangle);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_BRECT.png");
-        }
+        // Within a snapshot of the ROI draw a rectangle around the largest contour.
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_BRECT.png",
+                pImageROI, drawnRectangle -> {
+                    ShapeDrawing.drawOneRectangle(contourBoundingRect, drawnRectangle, 2);
+                    return drawnRectangle;
+                });
 
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
@@ -123,36 +131,43 @@ public class GoldCubeRecognition {
         Mat thresholded = ImageUtils.performInRange(pImageROI, pGoldCubeParameters.hsvParameters, pOutputFilenamePreamble, "");
 
         // Clean up the thresholded image via morphological opening.
-        Mat morphed = new Mat();
-        Imgproc.erode(thresholded, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-        Imgproc.dilate(morphed, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-
-        Optional<Pair<Integer, MatOfPoint>> targetContour = ImageUtils.getLargestContour(pImageROI, morphed, pOutputFilenamePreamble);
-        if (!targetContour.isPresent()) {
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat morphed = workspace.borrow(thresholded.rows(), thresholded.cols(), thresholded.type());
+        Imgproc.erode(thresholded, morphed, MatWorkspace.getRectKernel(5));
+        Imgproc.dilate(morphed, morphed, MatWorkspace.getRectKernel(5));
+
+        ContourFeatures contourFeatures = ImageUtils.getContourFeatures(pImageROI, morphed, pOutputFilenamePreamble);
+        workspace.giveBack(morphed);
+        if (contourFeatures.count == 0) {
             ShapeDrawing.drawX(pImageROI, redXColor, pOutputFilenamePreamble);
             RobotLogCommon.d(TAG, "No contours found");
             return RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL; // don't crash
         }
 
-        Rect contourBoundingRect = Imgproc.boundingRect(targetContour.get().second);
+        Rect contourBoundingRect = contourFeatures.getBoundingRect(contourFeatures.getLargest());
         RobotLogCommon.d(TAG, "Bounding box of largest contour: area " + contourBoundingRect.area());
 
-        // Within the ROI draw a rectangle around the largest contour.
-        Mat drawnRectangle = pImageROI.clone();
-        ShapeDrawing.drawOneRectangle(contourBoundingRect, drawnRectangle, 2);
-
         // Check the size of the largest contour.
         if (contourBoundingRect.area() < pGoldCubeParameters.boundingBoxCriteria.minBoundingBoxArea ||
                 contourBoundingRect.area() > pGoldCubeParameters.boundingBoxCriteria.maxBoundingBoxArea) {
-            ShapeDrawing.drawX(drawnRectangle, redXColor, pOutputFilenamePreamble);
+            // Within a snapshot of the ROI draw a rectangle around the
+            // largest contour and an X through it.
+            DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "NO_BRECT.png",
+                    pImageROI, drawnRectangle -> {
+                        ShapeDrawing.drawOneRectangle(contourBoundingRect, drawnRectangle, 2);
+                        ShapeDrawing.drawX(drawnRectangle, redXColor);
+                        return drawnRectangle;
+                    });
             RobotLogCommon.d(TAG, "The largest contour violates the size criteria");
             return RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL; // don't crash
         }
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            DebugImageCommon.writeImage(pOutputFilenamePreamble + "_BRECT.png", drawnRectangle);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_BRECT.png");
-        }
+        // Within a snapshot of the ROI draw a rectangle around the largest contour.
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_BRECT.png",
+                pImageROI, drawnRectangle -> {
+                    ShapeDrawing.drawOneRectangle(contourBoundingRect, drawnRectangle, 2);
+                    return drawnRectangle;
+                });
 
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
@@ -0,0 +1,293 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.Threading;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Delivers the frames in a directory, in file name order, to a recognizer.
+// A separate thread decodes frame N+1 while the consumer is working on
+// frame N; the two are coupled by a bounded queue so that the decoder can
+// get at most pQueueCapacity frames ahead.
+//
+// The source may be a directory, in which case all .png and .jpg files
+// are used whatever the case of the extension, or a glob on the file name
+// such as Files/match_1/frame_*.png. Only the file name may contain glob
+// characters; the source is split at its last / or \ before any Path is
+// built because Windows rejects * and ? in a path. The frames are played
+// in natural order, i.e. runs of digits compare by their numeric value,
+// so frame_2.png comes before frame_10.png without zero padding.
+public class ImageSequence implements StreamingImageProvider {
+
+    private static final String TAG = ImageSequence.class.getSimpleName();
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    // One entry in the hand-off queue. The end of the sequence is marked
+    // by an entry with a null image; a decoding failure by an entry with
+    // a non-null error.
+    private static class DecodedFrame {
+        final Mat image;
+        final LocalDateTime timestamp;
+        final long decodedNanos;
+        final String error;
+
+        DecodedFrame(Mat pImage, LocalDateTime pTimestamp, long pDecodedNanos, String pError) {
+            image = pImage;
+            timestamp = pTimestamp;
+            decodedNanos = pDecodedNanos;
+            error = pError;
+        }
+    }
+
+    private final List<Path> framePaths;
+    private final ArrayBlockingQueue<DecodedFrame> frameQueue;
+    private final FrameStatistics frameStatistics = new FrameStatistics();
+    private final CompletableFuture<Void> decoderFuture;
+    private volatile boolean closed = false;
+
+    private DecodedFrame nextFrame; // consumer side only
+    private long inProgressDecodedNanos = -1; // frame currently with the consumer
+    private boolean endOfSequence = false;
+
+    public ImageSequence(String pSource) {
+        this(pSource, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ImageSequence(String pSource, int pQueueCapacity) {
+        framePaths = collectFramePaths(pSource);
+        if (framePaths.isEmpty())
+            throw new AutonomousRobotException(TAG, "No image files found for " + pSource);
+
+        RobotLogCommon.d(TAG, "Image sequence of " + framePaths.size() + " frames from " + pSource);
+        frameQueue = new ArrayBlockingQueue<>(Math.max(1, pQueueCapacity));
+        decoderFuture = Threading.launchAsync(new FrameDecoder());
+    }
+
+    public int getFrameCount() {
+        return framePaths.size();
+    }
+
+    @Override
+    public boolean hasMoreFrames() throws InterruptedException {
+        completeInProgressFrame();
+        if (endOfSequence)
+            return false;
+
+        if (nextFrame != null)
+            return true; // already waiting for the consumer
+
+        long waitStart = System.nanoTime();
+        nextFrame = frameQueue.take();
+        long waitEnd = System.nanoTime();
+
+        if (nextFrame.error != null) {
+            // The decoder stops after a failure so there is nothing more to deliver.
+            String error = nextFrame.error;
+            nextFrame = null;
+            endOfSequence = true;
+            throw new AutonomousRobotException(TAG, error);
+        }
+
+        if (nextFrame.image == null) {
+            endOfSequence = true;
+            return false;
+        }
+
+        frameStatistics.frameDelivered(waitEnd, waitEnd - waitStart);
+        return true;
+    }
+
+    // Returns null at the end of the sequence.
+    @Override
+    public Pair<Mat, LocalDateTime> getImage() throws InterruptedException {
+        if (!hasMoreFrames())
+            return null;
+
+        DecodedFrame frame = nextFrame;
+        nextFrame = null;
+        inProgressDecodedNanos = frame.decodedNanos;
+        return Pair.create(frame.image, frame.timestamp);
+    }
+
+    @Override
+    public FrameStatistics getFrameStatistics() {
+        return frameStatistics;
+    }
+
+    @Override
+    public void close() {
+        completeInProgressFrame();
+        if (closed)
+            return;
+
+        closed = true;
+        releaseQueuedFrames(); // unblock the decoder
+        try {
+            Threading.getFutureCompletion(decoderFuture);
+        } catch (Throwable t) {
+            RobotLogCommon.d(TAG, "Exception during shutdown of the frame decoder " + t);
+        }
+
+        releaseQueuedFrames();
+        if (nextFrame != null && nextFrame.image != null)
+            nextFrame.image.release(); // never handed to the consumer
+        nextFrame = null;
+    }
+
+    private void releaseQueuedFrames() {
+        DecodedFrame remaining;
+        while ((remaining = frameQueue.poll()) != null)
+            if (remaining.image != null)
+                remaining.image.release();
+    }
+
+    // The consumer has come back for another frame (or closed the sequence)
+    // so it must be finished with the one it had.
+    private void completeInProgressFrame() {
+        if (inProgressDecodedNanos < 0)
+            return;
+
+        frameStatistics.frameCompleted(inProgressDecodedNanos, System.nanoTime());
+        inProgressDecodedNanos = -1;
+    }
+
+    private static List<Path> collectFramePaths(String pSource) {
+        Path directory;
+        PathMatcher matcher;
+        if (!hasGlobCharacters(pSource) && Files.isDirectory(Paths.get(pSource))) {
+            directory = Paths.get(pSource);
+            matcher = FileSystems.getDefault().getPathMatcher("regex:(?i).*\\.(png|jpg)");
+        } else {
+            int separator = Math.max(pSource.lastIndexOf('/'), pSource.lastIndexOf('\\'));
+            String directoryPart = separator < 0 ? "." : pSource.substring(0, separator + 1);
+            String namePattern = pSource.substring(separator + 1);
+            if (hasGlobCharacters(directoryPart))
+                throw new AutonomousRobotException(TAG, "Only the file name may contain glob characters: " + pSource);
+
+            directory = Paths.get(directoryPart).toAbsolutePath();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + namePattern);
+        }
+
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path onePath : stream)
+                if (Files.isRegularFile(onePath) && matcher.matches(onePath.getFileName()))
+                    paths.add(onePath);
+        } catch (IOException e) {
+            throw new AutonomousRobotException(TAG, "Unable to read the directory " + directory + ": " + e.getMessage());
+        }
+
+        paths.sort((path1, path2) -> compareFrameNames(path1.getFileName().toString(), path2.getFileName().toString()));
+        return paths;
+    }
+
+    private static boolean hasGlobCharacters(String pSource) {
+        for (int i = 0; i < pSource.length(); i++)
+            if ("*?[]{}".indexOf(pSource.charAt(i)) >= 0)
+                return true;
+
+        return false;
+    }
+
+    // Natural order: runs of digits compare by value, everything else by
+    // character. Names that are equal by value, e.g. frame_2 and frame_02,
+    // fall back to plain string order so that the order is total.
+    private static int compareFrameNames(String pName1, String pName2) {
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < pName1.length() && i2 < pName2.length()) {
+            char c1 = pName1.charAt(i1);
+            char c2 = pName2.charAt(i2);
+            if (Character.isDigit(c1) && Character.isDigit(c2)) {
+                int end1 = i1;
+                while (end1 < pName1.length() && Character.isDigit(pName1.charAt(end1)))
+                    end1++;
+                int end2 = i2;
+                while (end2 < pName2.length() && Character.isDigit(pName2.charAt(end2)))
+                    end2++;
+
+                // Compare the digit runs without leading zeros by length, then digit by digit.
+                int start1 = i1;
+                while (start1 < end1 - 1 && pName1.charAt(start1) == '0')
+                    start1++;
+                int start2 = i2;
+                while (start2 < end2 - 1 && pName2.charAt(start2) == '0')
+                    start2++;
+
+                int lengthDifference = (end1 - start1) - (end2 - start2);
+                if (lengthDifference != 0)
+                    return lengthDifference;
+
+                for (int d1 = start1, d2 = start2; d1 < end1; d1++, d2++)
+                    if (pName1.charAt(d1) != pName2.charAt(d2))
+                        return pName1.charAt(d1) - pName2.charAt(d2);
+
+                i1 = end1;
+                i2 = end2;
+                continue;
+            }
+
+            if (c1 != c2)
+                return c1 - c2;
+
+            i1++;
+            i2++;
+        }
+
+        int remaining = (pName1.length() - i1) - (pName2.length() - i2);
+        return remaining != 0 ? remaining : pName1.compareTo(pName2);
+    }
+
+    // Separate thread that decodes the frames in order and hands them off
+    // to the consumer.
+    private class FrameDecoder implements Callable<Void> {
+
+        public Void call() throws InterruptedException {
+            for (Path onePath : framePaths) {
+                if (closed)
+                    return null;
+
+                long decodeStart = System.nanoTime();
+                Mat frame = Imgcodecs.imread(onePath.toString(), Imgcodecs.IMREAD_COLOR);
+                if (frame.empty()) {
+                    handOff(new DecodedFrame(null, null, System.nanoTime(), "Could not find or open the image " + onePath));
+                    return null;
+                }
+
+                long decodedNanos = System.nanoTime();
+                frameStatistics.frameDecoded(decodedNanos - decodeStart);
+                if (!handOff(new DecodedFrame(frame, LocalDateTime.now(), decodedNanos, null))) {
+                    frame.release();
+                    return null;
+                }
+            }
+
+            handOff(new DecodedFrame(null, null, System.nanoTime(), null)); // end of sequence
+            return null;
+        }
+
+        // Block while the queue is full but keep checking for close().
+        private boolean handOff(DecodedFrame pFrame) throws InterruptedException {
+            while (!closed) {
+                if (frameQueue.offer(pFrame, 50, TimeUnit.MILLISECONDS))
+                    return true;
+            }
+
+            return false;
+        }
+    }
+
+}
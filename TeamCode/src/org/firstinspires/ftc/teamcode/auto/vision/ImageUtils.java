@@ -5,7 +5,9 @@ import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
+import org.firstinspires.ftc.teamcode.auto.MatTracker;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
@@ -13,6 +15,7 @@ import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 public class ImageUtils {
@@ -57,6 +60,7 @@ public class ImageUtils {
 
     public static Mat preProcessImage(Mat pOriginalImage,
                                       String pPreamble, VisionParameters.ImageParameters pImageParameters) {
+        long stageStart = StageTimer.start();
         if ((pOriginalImage.cols() != pImageParameters.resolution_width) ||
                 (pOriginalImage.rows() != pImageParameters.resolution_height))
             throw new AutonomousRobotException(TAG,
@@ -70,12 +74,9 @@ public class ImageUtils {
                         pImageParameters.image_roi.width,
                         pImageParameters.image_roi.height));
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            String imageFilename = pPreamble + "_ROI.png";
-            DebugImageCommon.writeImage(imageFilename, imageROI);
-            RobotLogCommon.d(TAG, "Writing image ROI " + imageFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pPreamble + "_ROI.png", imageROI);
 
+        StageTimer.stop("ImageUtils.preProcessImage", stageStart);
         return imageROI;
     }
 
@@ -84,8 +85,19 @@ public class ImageUtils {
     // From OpencvTestbed3 (cpp) GrayscaleTechnique
     // From https://stackoverflow.com/questions/27393401/opencv-in-java-for-image-filtering
     public static Mat sharpen(Mat pDullMat, String pOutputFilenamePreamble) {
-        int kernelSize = 3;
-        Mat kernel = new Mat(kernelSize, kernelSize, CvType.CV_32F) {
+        long stageStart = StageTimer.start();
+        Mat sharpMat = new Mat();
+        Imgproc.filter2D(pDullMat, sharpMat, -1, SharpenKernel.KERNEL);
+        StageTimer.stop("ImageUtils.sharpen", stageStart);
+
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_SHARP.png", sharpMat);
+
+        return MatTracker.track(sharpMat);
+    }
+
+    // The kernel for sharpen() is created once, on first use.
+    private static class SharpenKernel {
+        private static final Mat KERNEL = new Mat(3, 3, CvType.CV_32F) {
             {
                 put(0, 0, 0);
                 put(0, 1, -1);
@@ -100,20 +112,11 @@ public class ImageUtils {
                 put(2, 2, 0);
             }
         };
-
-        Mat sharpMat = new Mat();
-        Imgproc.filter2D(pDullMat, sharpMat, -1, kernel);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String sharpFilename = pOutputFilenamePreamble + "_SHARP.png";
-            DebugImageCommon.writeImage(sharpFilename, sharpMat);
-            RobotLogCommon.vv(TAG, "Writing " + sharpFilename);
-        }
-
-        return sharpMat;
     }
 
-    // To invert a grayscale image use subtraction, e.g. c++ 255 - image
+    // To invert a grayscale image use subtraction, e.g. c++ 255 - image,
+    // or, equivalently for 8-bit images and without a full-frame Mat of
+    // 255s, bitwise_not.
     // See https://forum.opencv.org/t/do-we-have-a-function-to-invert-gray-image-values/5902/2
     // Extract the channel for the selected alliance from the original
     // image ROI. For better contrast the RED alliance uses the inversion
@@ -121,7 +124,9 @@ public class ImageUtils {
     // red channel.
     // Logic imported from IJThresholdTester on 9/23/2024.
     public static Mat extractAndInvertOpposingAllianceChannel(Mat pImageROI, RobotConstants.Alliance pAlliance, VisionParameters.GrayParameters pGrayParameters, String pOutputFilenamePreamble) {
-        Mat selectedChannel = new Mat();
+        long stageStart = StageTimer.start();
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat selectedChannel = workspace.borrow(pImageROI.rows(), pImageROI.cols(), CvType.CV_8UC1);
         switch (pAlliance) {
             case RED ->
                 // The inversion of the blue channel gives better contrast
@@ -136,45 +141,34 @@ public class ImageUtils {
 
         // First adjust the selected channel fo lighting.
         Mat adjustedGray = ImageUtils.adjustGrayscaleMedian(selectedChannel, pGrayParameters.median_target);
+        workspace.giveBack(selectedChannel);
 
-        // Now you can invert the channel.
-        Mat invertedChannel = new Mat();
-        Mat xFF = new Mat(pImageROI.rows(), pImageROI.cols(), CvType.CV_8U, new Scalar(255));
-        Core.subtract(xFF, adjustedGray, invertedChannel);
+        // Now you can invert the channel. The adjusted channel belongs to
+        // this method so it can be inverted in place.
+        Mat invertedChannel = adjustedGray;
+        Core.bitwise_not(adjustedGray, invertedChannel);
 
         // Write out the inverted image.
         switch (pAlliance) {
-            case RED -> {
-                if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.v)) {
-                    String fullFileName = pOutputFilenamePreamble + "_BLUE_INVERTED.png";
-                    DebugImageCommon.writeImage(fullFileName, invertedChannel);
-                    RobotLogCommon.v(TAG, "Writing " + fullFileName);
-                }
-            }
-            case BLUE -> {
-                if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.v)) {
-                    String fullFilename = pOutputFilenamePreamble + "_RED_INVERTED.png";
-                    DebugImageCommon.writeImage(fullFilename, invertedChannel);
-                    RobotLogCommon.v(TAG, "Writing " + fullFilename);
-                }
-            }
+            case RED ->
+                    DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_BLUE_INVERTED.png", invertedChannel);
+            case BLUE ->
+                    DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_RED_INVERTED.png", invertedChannel);
             default -> throw new AutonomousRobotException(TAG, "Alliance must be RED or BLUE");
         }
 
         //## You may not want to do the opening here - depends on the client.
         Mat opened = new Mat();
-        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-        Imgproc.morphologyEx(invertedChannel, opened, Imgproc.MORPH_OPEN, kernel, new Point(-1, -1), 2);
+        Imgproc.morphologyEx(invertedChannel, opened, Imgproc.MORPH_OPEN, MatWorkspace.getRectKernel(3), new Point(-1, -1), 2);
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String openFilename = pOutputFilenamePreamble + "_OPEN.png";
-            DebugImageCommon.writeImage(openFilename, opened);
-            RobotLogCommon.vv(TAG, "Writing " + openFilename);
-        }
-        return opened;
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_OPEN.png", opened);
+
+        StageTimer.stop("ImageUtils.extractAndInvertOpposingAllianceChannel", stageStart);
+        return MatTracker.track(opened);
     }
 
     public static Mat adjustGrayscaleMedian(Mat pGray, int pTarget) {
+        long stageStart = StageTimer.start();
         int medianGray = getSingleChannelMedian(pGray);
         RobotLogCommon.d(TAG, "Original image: grayscale median " + medianGray);
         RobotLogCommon.d(TAG, "Grayscale median target " + pTarget);
@@ -185,20 +179,22 @@ public class ImageUtils {
         pGray.convertTo(adjustedGray, -1, 1, adjustment);
         RobotLogCommon.d(TAG, "Grayscale adjustment " + adjustment);
 
-        return adjustedGray;
+        StageTimer.stop("ImageUtils.adjustGrayscaleMedian", stageStart);
+        return MatTracker.track(adjustedGray);
     }
 
     // Adjust image saturation and value levels in the image to match the targets.
     public static Mat adjustSaturationAndValueMedians(Mat pHSVImage, int pSatMedianTarget, int pValMedianTarget) {
+        long stageStart = StageTimer.start();
         // Split the image into its constituent HSV channels
         ArrayList<Mat> channels = new ArrayList<>();
         Core.split(pHSVImage, channels);
 
         // Get the median of the S channel.
-        int medianSaturation = getColorChannelMedian(channels.get(1), new Mat());
+        int medianSaturation = getColorChannelMedian(channels.get(1), null);
 
         // Get the median of the V channel.
-        int medianValue = getColorChannelMedian(channels.get(2), new Mat());
+        int medianValue = getColorChannelMedian(channels.get(2), null);
 
         RobotLogCommon.d(TAG, "HSV saturation channel median " + medianSaturation);
         RobotLogCommon.d(TAG, "HSV value channel median " + medianValue);
@@ -215,11 +211,13 @@ public class ImageUtils {
         // Merge the channels back together.
         Mat adjustedImage = new Mat();
         Core.merge(channels, adjustedImage);
-        return adjustedImage;
+        StageTimer.stop("ImageUtils.adjustSaturationAndValueMedians", stageStart);
+        return MatTracker.track(adjustedImage);
     }
 
     // See https://docs.opencv.org/3.4/d8/dbc/tutorial_histogram_calculation.html
     public static int getDominantHSVHue(Mat pHSVImageIn, Mat pMask) {
+        long stageStart = StageTimer.start();
         List<Mat> channelsHSV = new ArrayList<>();
         Core.split(pHSVImageIn, channelsHSV);
 
@@ -251,6 +249,7 @@ public class ImageUtils {
         int dominantHue = (int) mmlResult.maxLoc.y;
         RobotLogCommon.d(TAG, "HSV dominant hue " + dominantHue);
 
+        StageTimer.stop("ImageUtils.getDominantHSVHue", stageStart);
         return dominantHue;
     }
 
@@ -266,33 +265,50 @@ public class ImageUtils {
     // where performInRange is called multiple times in the same run.
     public static Mat performInRange(Mat pInputROI, VisionParameters.HSVParameters pHSVParameters,
                                      String pOutputFilenamePreamble, String pFilenameSuffix) {
+        long stageStart = StageTimer.start();
+
         // We're on the HSV path.
-        Mat hsvROI = new Mat();
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat hsvROI = workspace.borrow(pInputROI.rows(), pInputROI.cols(), CvType.CV_8UC3);
         Imgproc.cvtColor(pInputROI, hsvROI, Imgproc.COLOR_BGR2HSV);
 
-        // Adjust the HSV saturation and value levels in the image to match the targets.
-        Mat adjusted = adjustSaturationAndValueMedians(hsvROI, pHSVParameters.saturation_median_target, pHSVParameters.value_median_target);
+        // Measure the shifts that would adjust the HSV saturation and value
+        // levels in the image to match the targets but, instead of applying
+        // them to the image, compile them together with the inRange bounds.
+        // The result is identical to that of adjustSaturationAndValueMedians
+        // followed by applyInRange.
+        int medianSaturation = getChannelMedian(hsvROI, 1);
+        int medianValue = getChannelMedian(hsvROI, 2);
+        RobotLogCommon.d(TAG, "HSV saturation channel median " + medianSaturation);
+        RobotLogCommon.d(TAG, "HSV value channel median " + medianValue);
 
-        // Convert back to BGR.
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
+        int satAdjustment = pHSVParameters.saturation_median_target - medianSaturation;
+        int valAdjustment = pHSVParameters.value_median_target - medianValue;
+        RobotLogCommon.d(TAG, "Adjust HSV saturation by " + satAdjustment + " to " + pHSVParameters.saturation_median_target);
+        RobotLogCommon.d(TAG, "Adjust HSV value by " + valAdjustment + " to " + pHSVParameters.value_median_target);
+
+        // Only materialize the adjusted image for the debug output.
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png", () -> {
+            Mat adjusted = adjustSaturationAndValueMedians(hsvROI, pHSVParameters.saturation_median_target, pHSVParameters.value_median_target);
             Mat adjustedBGR = new Mat();
             Imgproc.cvtColor(adjusted, adjustedBGR, Imgproc.COLOR_HSV2BGR);
-
-            String fullFilename = pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, adjustedBGR);
-            RobotLogCommon.vv(TAG, "Writing " + fullFilename);
-        }
-
-        Mat thresholded = applyInRange(adjusted, pHSVParameters.hue_low, pHSVParameters.hue_high,
-                pHSVParameters.saturation_threshold_low, pHSVParameters.value_threshold_low);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            String fullFilename = pOutputFilenamePreamble + "_THR" + pFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, thresholded);
-            RobotLogCommon.d(TAG, "Writing " + fullFilename);
-        }
-
-        return thresholded;
+            adjusted.release();
+            return adjustedBGR;
+        });
+
+        RobotLogCommon.d(TAG, "Actual inRange HSV arguments: hue low " + pHSVParameters.hue_low + ", hue high " + pHSVParameters.hue_high);
+        RobotLogCommon.d(TAG, "Actual inRange HSV arguments: saturation low " + pHSVParameters.saturation_threshold_low + ", value low " + pHSVParameters.value_threshold_low);
+        long thresholdStart = StageTimer.start();
+        Mat thresholded = CompiledHSVThreshold.getCompiled(pHSVParameters.hue_low, pHSVParameters.hue_high,
+                pHSVParameters.saturation_threshold_low, pHSVParameters.value_threshold_low,
+                satAdjustment, valAdjustment).apply(hsvROI);
+        StageTimer.stop("CompiledHSVThreshold.apply", thresholdStart);
+        workspace.giveBack(hsvROI);
+
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_THR" + pFilenameSuffix + ".png", thresholded);
+
+        StageTimer.stop("ImageUtils.performInRange", stageStart);
+        return MatTracker.track(thresholded);
     }
 
     // Use inRange to threshold a median-adjusted HSV image to binary.
@@ -310,6 +326,7 @@ public class ImageUtils {
             throw new AutonomousRobotException(TAG, "Hue out of range");
 
         // Normal hue range.
+        long stageStart = StageTimer.start();
         Mat thresholded = new Mat();
         if (pHueLow < pHueHigh)
             Core.inRange(pAdjustedMedianROI, new Scalar(pHueLow, pSatLowThreshold, pValLowThreshold), new Scalar(pHueHigh, 255, 255), thresholded);
@@ -323,7 +340,8 @@ public class ImageUtils {
             Core.bitwise_or(range1, range2, thresholded);
         }
 
-        return thresholded;
+        StageTimer.stop("ImageUtils.applyInRange", stageStart);
+        return MatTracker.track(thresholded);
     }
 
     // Combine the frequently associated steps of applying inRange to
@@ -334,13 +352,17 @@ public class ImageUtils {
     public static List<MatOfPoint> performInRangeAndFindContours(Mat pInputROI, VisionParameters.HSVParameters pHSVParameters,
                                                                  String pOutputFilenamePreamble, String pOutputFilenameSuffix) {
         Mat thresholded = performInRange(pInputROI, pHSVParameters, pOutputFilenamePreamble, pOutputFilenameSuffix);
-        Mat morphed = new Mat();
-        Imgproc.erode(thresholded, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-        Imgproc.dilate(morphed, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat morphed = workspace.borrow(thresholded.rows(), thresholded.cols(), thresholded.type());
+        Imgproc.erode(thresholded, morphed, MatWorkspace.getRectKernel(5));
+        Imgproc.dilate(morphed, morphed, MatWorkspace.getRectKernel(5));
 
         // Identify the contours
+        long stageStart = StageTimer.start();
         List<MatOfPoint> contours = new ArrayList<>();
         Imgproc.findContours(morphed, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        StageTimer.stop("ImageUtils.findContours", stageStart);
+        workspace.giveBack(morphed);
         return contours;
     }
 
@@ -363,11 +385,7 @@ public class ImageUtils {
                                                String pOutputFilenamePreamble, String pOutputFilenameSuffix) {
         Mat adjustedGray = ImageUtils.adjustGrayscaleMedian(pGrayInputROI, pGrayscaleMedianTarget);
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String fullFilename = pOutputFilenamePreamble + "_ADJ" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, adjustedGray);
-            RobotLogCommon.vv(TAG, "Writing adjusted grayscale image " + fullFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_ADJ" + pOutputFilenameSuffix + ".png", adjustedGray);
 
         Mat thresholded = new Mat(); // output binary image
         Imgproc.threshold(adjustedGray, thresholded,
@@ -375,13 +393,9 @@ public class ImageUtils {
                 255,   // white
                 pLowThreshold >= 0 ? Imgproc.THRESH_BINARY : Imgproc.THRESH_BINARY_INV); // thresholding type);
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            String fullFilename = pOutputFilenamePreamble + "_ADJ_THR" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, thresholded);
-            RobotLogCommon.d(TAG, "Writing " + fullFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_ADJ_THR" + pOutputFilenameSuffix + ".png", thresholded);
 
-        return thresholded;
+        return MatTracker.track(thresholded);
     }
 
     // Common path for converting an OpenCV BGR image to grayscale,
@@ -393,11 +407,7 @@ public class ImageUtils {
         Mat grayROI = new Mat();
         Imgproc.cvtColor(pBGRInputROI, grayROI, Imgproc.COLOR_BGR2GRAY);
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String fullFilename = pOutputFilenamePreamble + "_GRAY" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, grayROI);
-            RobotLogCommon.vv(TAG, "Writing " + fullFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_GRAY" + pOutputFilenameSuffix + ".png", grayROI);
 
         return performThresholdOnGray(grayROI, pGrayscaleMedianTarget, pLowThreshold,
                 pOutputFilenamePreamble, pOutputFilenameSuffix);
@@ -405,22 +415,16 @@ public class ImageUtils {
 
     public static Mat performThresholdOnGray(Mat pGrayInputROI, int pGrayscaleMedianTarget, int pLowThreshold,
                                              String pOutputFilenamePreamble, String pOutputFilenameSuffix) {
+        long stageStart = StageTimer.start();
         Mat adjustedGray = adjustGrayscaleMedian(pGrayInputROI, pGrayscaleMedianTarget);
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String fullFilename = pOutputFilenamePreamble + "_ADJ" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, adjustedGray);
-            RobotLogCommon.vv(TAG, "Writing adjusted grayscale image " + fullFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_ADJ" + pOutputFilenameSuffix + ".png", adjustedGray);
 
         Mat thresholded = applyGrayThreshold(adjustedGray, pLowThreshold);
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            String fullFilename = pOutputFilenamePreamble + "_ADJ_THR" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, thresholded);
-            RobotLogCommon.d(TAG, "Writing " + fullFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_ADJ_THR" + pOutputFilenameSuffix + ".png", thresholded);
 
-        return thresholded;
+        StageTimer.stop("ImageUtils.performThresholdOnGray", stageStart);
+        return MatTracker.track(thresholded);
     }
 
     // Note that pyimagesearch always blurs grayscale images before thresholding:
@@ -430,13 +434,16 @@ public class ImageUtils {
     // But this one does with convincing results:
     // https://docs.opencv.org/4.x/d7/d4d/tutorial_py_thresholding.html
     public static Mat applyGrayThreshold(Mat pGrayInputROI, int pGrayLowThreshold) {
-        Mat morphed = new Mat();
-        Imgproc.erode(pGrayInputROI, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-        Imgproc.dilate(morphed, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
+        long stageStart = StageTimer.start();
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat morphed = workspace.borrow(pGrayInputROI.rows(), pGrayInputROI.cols(), pGrayInputROI.type());
+        Imgproc.erode(pGrayInputROI, morphed, MatWorkspace.getRectKernel(5));
+        Imgproc.dilate(morphed, morphed, MatWorkspace.getRectKernel(5));
 
         // Remove noise by Gaussian blurring.
-        Mat blurred = new Mat();
+        Mat blurred = workspace.borrow(pGrayInputROI.rows(), pGrayInputROI.cols(), pGrayInputROI.type());
         Imgproc.GaussianBlur(morphed, blurred, new Size(5, 5), 0);
+        workspace.giveBack(morphed);
 
         RobotLogCommon.v(TAG, "Threshold values: low " + pGrayLowThreshold + ", high 255");
 
@@ -446,45 +453,169 @@ public class ImageUtils {
                 Math.abs(pGrayLowThreshold),    // threshold value
                 255,   // white
                 pGrayLowThreshold >= 0 ? Imgproc.THRESH_BINARY : Imgproc.THRESH_BINARY_INV); // thresholding type
-        return thresholded;
+        workspace.giveBack(blurred);
+        StageTimer.stop("ImageUtils.applyGrayThreshold", stageStart);
+        return MatTracker.track(thresholded);
     }
 
+    // Returns the median of a single-channel 8-bit image. The median is
+    // taken from a 256-bin histogram so the time is linear in the number
+    // of pixels and there is no per-call allocation. The result is the
+    // same as that of sorting the pixels: for an even number of pixels
+    // it is the (truncated) mean of the two middle values.
     public static int getSingleChannelMedian(Mat pSingleChannelMat) {
-        if ((pSingleChannelMat.dims() != 2) || (!pSingleChannelMat.isContinuous()))
+        return getSingleChannelMedian(pSingleChannelMat, null);
+    }
+
+    // As above but only the pixels for which the 8-bit mask pMask is non-zero
+    // contribute to the median. A null or empty mask means all pixels.
+    public static int getSingleChannelMedian(Mat pSingleChannelMat, Mat pMask) {
+        validateSingleChannel(pSingleChannelMat);
+
+        long stageStart = StageTimer.start();
+        HistogramWorkspace workspace = histogramWorkspace.get();
+        int median = workspace.median(pSingleChannelMat, 0, pMask);
+        StageTimer.stop("ImageUtils.getSingleChannelMedian", stageStart);
+        return median;
+    }
+
+    // Approximate median for very large frames; a stride of 1 is the exact
+    // median. The median is taken from m = ceil(rows / pStride) *
+    // ceil(cols / pStride) pixels drawn uniformly at random, with
+    // replacement, on every call. Because the samples are independent the
+    // result lies, with probability at least 1 - d, between the true
+    // (50 - e) and (50 + e) percentiles of the image, where
+    // e = sqrt(ln(2 / d) / (2 * m)) (the Dvoretzky-Kiefer-Wolfowitz bound).
+    // For a 1920x1080 frame with a stride of 4, m = 129600 and e < 0.6% at
+    // d = 0.001. Unlike a fixed grid the bound holds whatever the content
+    // of the image, including patterns with a period of the stride.
+    public static int getSingleChannelMedian(Mat pSingleChannelMat, int pStride) {
+        validateSingleChannel(pSingleChannelMat);
+        if (pStride < 1)
+            throw new AutonomousRobotException(TAG, "Median sampling stride must be at least 1");
+
+        if (pStride == 1)
+            return getSingleChannelMedian(pSingleChannelMat, null);
+
+        long stageStart = StageTimer.start();
+        long sampledRows = (pSingleChannelMat.rows() + pStride - 1) / pStride;
+        long sampledCols = (pSingleChannelMat.cols() + pStride - 1) / pStride;
+        int median = histogramWorkspace.get().sampledMedian(pSingleChannelMat, (int) (sampledRows * sampledCols));
+        StageTimer.stop("ImageUtils.getSingleChannelMedian.sampled", stageStart);
+        return median;
+    }
+
+    // Returns the median of one channel of an 8-bit image of up to three
+    // channels, e.g. the saturation channel (1) of an HSV image, without
+    // splitting the image.
+    public static int getChannelMedian(Mat pImage, int pChannel) {
+        if ((pImage.dims() != 2) || (pImage.depth() != CvType.CV_8U) || (pChannel < 0) || (pChannel >= Math.min(3, pImage.channels())))
+            throw new AutonomousRobotException(TAG, "Expected an 8-bit Mat with a channel " + pChannel);
+
+        if (pImage.empty())
+            throw new AutonomousRobotException(TAG, "Cannot get the median of an empty Mat");
+
+        long stageStart = StageTimer.start();
+        int median = histogramWorkspace.get().median(pImage, pChannel, null);
+        StageTimer.stop("ImageUtils.getChannelMedian", stageStart);
+        return median;
+    }
+
+    private static void validateSingleChannel(Mat pSingleChannelMat) {
+        if ((pSingleChannelMat.dims() != 2) || (pSingleChannelMat.type() != CvType.CV_8UC1))
             throw new AutonomousRobotException(TAG, "Expected a single-channel Mat");
 
         if (pSingleChannelMat.empty())
             throw new AutonomousRobotException(TAG, "Cannot get the median of an empty Mat");
+    }
+
+    // The histogram and the arguments to calcHist are kept per thread and
+    // reused because recognitions may run concurrently.
+    private static final ThreadLocal<HistogramWorkspace> histogramWorkspace =
+            ThreadLocal.withInitial(HistogramWorkspace::new);
+
+    private static class HistogramWorkspace {
+        private static final int NUM_BINS = 256;
+
+        private final List<Mat> images = new ArrayList<>(1);
+        private final MatOfInt[] channels = {new MatOfInt(0), new MatOfInt(1), new MatOfInt(2)};
+        private final MatOfInt histSize = new MatOfInt(NUM_BINS);
+        private final MatOfFloat ranges = new MatOfFloat(0f, 256f);
+        private final Mat noMask = new Mat();
+        private final Mat hist = new Mat();
+        private final float[] bins = new float[NUM_BINS];
+        private byte[] pixels = new byte[0]; // for sampling; grows to the largest frame
+
+        // The bin counts are floats, which are exact up to 2^24 (about 16.7
+        // million) pixels per bin; that is far larger than any webcam frame.
+        private int median(Mat pImage, int pChannel, Mat pMask) {
+            images.clear();
+            images.add(pImage);
+            Imgproc.calcHist(images, channels[pChannel], (pMask == null || pMask.empty()) ? noMask : pMask,
+                    hist, histSize, ranges, false);
+            images.clear();
+            hist.get(0, 0, bins);
+
+            long count = 0;
+            for (float oneBin : bins)
+                count += (long) oneBin;
+
+            if (count == 0)
+                throw new AutonomousRobotException(TAG, "Cannot get the median of an empty mask");
+
+            // Same definition as the sorted-array median: the middle value for
+            // an odd count, the mean of the two middle values for an even count.
+            if (count % 2 != 0)
+                return valueAtRank(count / 2);
+
+            return (valueAtRank(count / 2) + valueAtRank((count / 2) - 1)) / 2;
+        }
 
-        byte[] byteBuff = new byte[(int) pSingleChannelMat.total()];
-        int[] intBuff = new int[(int) pSingleChannelMat.total()];
-        int buffLength = byteBuff.length;
-        pSingleChannelMat.get(0, 0, byteBuff);
+        // Median of pSamples pixels of a CV_8UC1 image chosen independently
+        // and uniformly at random. The image is copied out of OpenCV in one
+        // transfer; the samples are then read from the copy.
+        private int sampledMedian(Mat pImage, int pSamples) {
+            int total = (int) pImage.total();
+            if (pixels.length < total)
+                pixels = new byte[total];
+            pImage.get(0, 0, pixels);
 
-        // !! Since Java does not have an unsigned char data type, the byte values
-        // may come out as negative. So we have to use a separate array of ints and
-        // copy in the bytes with the lower 8 bytes preserved.
-        // https://stackoverflow.com/questions/9581530/converting-from-byte-to-int-in-java
-        for (int i = 0; i < buffLength; i++)
-            // Requires Android API level 26 = Byte.toUnsignedInt(byteBuff[i]);
-            intBuff[i] = byteBuff[i] & 0xFF;
+            Arrays.fill(bins, 0f);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < pSamples; i++)
+                bins[pixels[random.nextInt(total)] & 0xff]++;
 
-        if (buffLength == 1) // who would do this?
-            return intBuff[0];
+            if (pSamples % 2 != 0)
+                return valueAtRank(pSamples / 2);
 
-        Arrays.sort(intBuff);
-        int median = buffLength % 2 != 0 ? intBuff[buffLength / 2] : (intBuff[buffLength / 2] + (intBuff[(buffLength / 2) - 1])) / 2;
-        return median;
+            return (valueAtRank(pSamples / 2) + valueAtRank((pSamples / 2) - 1)) / 2;
+        }
+
+        // The pixel value at 0-based position pRank in sorted order.
+        private int valueAtRank(long pRank) {
+            long cumulative = 0;
+            for (int value = 0; value < NUM_BINS; value++) {
+                cumulative += (long) bins[value];
+                if (cumulative > pRank)
+                    return value;
+            }
+
+            return NUM_BINS - 1; // not reached
+        }
     }
 
-    // Sort contours by area in descending order.
+    // Sort contours by area in descending order. Contours of equal area
+    // come out in the reverse of their original order, as they did when
+    // the ascending sort was reversed.
     public static List<MatOfPoint> sortContoursByArea(List<MatOfPoint> pContours) {
-        List<MatOfPoint> sortedContours = pContours.stream()
-                .sorted(Comparator.comparing(Imgproc::contourArea))
-                .collect(Collectors.toList());
+        return sortContoursByArea(new ContourFeatures(pContours, false));
+    }
 
-        // .sorted(Comparator.reverseOrder(Imgproc::contourArea)) is ambiguous
-        Collections.reverse(sortedContours);
+    // As above for contours whose features have already been computed.
+    public static List<MatOfPoint> sortContoursByArea(ContourFeatures pContourFeatures) {
+        List<MatOfPoint> sortedContours = new ArrayList<>(pContourFeatures.count);
+        for (int oneIndex : pContourFeatures.getIndicesByDescendingArea())
+            sortedContours.add(pContourFeatures.contours.get(oneIndex));
         return sortedContours;
     }
 
@@ -492,32 +623,45 @@ public class ImageUtils {
     // Pair of the number of contours and the largest contour.
     public static Optional<Pair<Integer, MatOfPoint>> getLargestContour(Mat pImageROI, Mat pThresholded,
                                                                         String pOutputFilenamePreamble) {
+        ContourFeatures contourFeatures = getContourFeatures(pImageROI, pThresholded, pOutputFilenamePreamble);
+        if (contourFeatures.count == 0)
+            return Optional.empty();
+
+        return Optional.of(Pair.create(contourFeatures.count, contourFeatures.contours.get(contourFeatures.getLargest())));
+    }
+
+    // Get the external contours from a thresholded image, optionally draw
+    // them, and return their features. Use ContourFeatures.getLargest() for
+    // the largest contour.
+    public static ContourFeatures getContourFeatures(Mat pImageROI, Mat pThresholded, String pOutputFilenamePreamble) {
         // Identify the contours.
+        long stageStart = StageTimer.start();
         List<MatOfPoint> contours = new ArrayList<>();
         Imgproc.findContours(pThresholded, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-        if (contours.size() == 0)
-            return Optional.empty();
+        StageTimer.stop("ImageUtils.findContours", stageStart);
 
         // Within the ROI draw all of the contours.
         RobotLogCommon.d(TAG, "Number of contours " + contours.size());
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.v)) {
-            Mat contoursDrawn = pImageROI.clone();
-            ShapeDrawing.drawShapeContours(contours, contoursDrawn);
-            String fullFilename = pOutputFilenamePreamble + "_CON.png";
-            DebugImageCommon.writeImage(fullFilename, contoursDrawn);
-            RobotLogCommon.v(TAG, "Writing " + fullFilename);
+        if (!contours.isEmpty() && DebugImageCommon.isWritable(RobotLogCommon.CommonLogLevel.v)) {
+            List<Point[]> contourPoints = ShapeDrawing.snapshotContours(contours);
+            DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_CON.png",
+                    pImageROI, contoursDrawn -> {
+                        ShapeDrawing.drawShapeContourSnapshot(contourPoints, contoursDrawn);
+                        return contoursDrawn;
+                    });
         }
 
-        // See how this works here:
-        // https://docs.oracle.com/javase/8/docs/api/java/util/Optional.html#map-java.util.function.Function-
-        Optional<MatOfPoint> largestContour = getLargestContour(contours);
-        return largestContour.map(matOfPoint -> Pair.create(contours.size(), matOfPoint));
+        return new ContourFeatures(contours, false);
     }
 
     // From https://stackoverflow.com/questions/40669684/opencv-sorting-contours-by-area-in-java
-    // See lambda in https://stackoverflow.com/questions/24378646/finding-max-with-lambda-expression-in-java
+    // Ties go to the first contour.
     public static Optional<MatOfPoint> getLargestContour(List<MatOfPoint> pContours) {
-        return pContours.stream().max(Comparator.comparing(Imgproc::contourArea));
+        ContourFeatures contourFeatures = new ContourFeatures(pContours, false);
+        if (contourFeatures.count == 0)
+            return Optional.empty();
+
+        return Optional.of(pContours.get(contourFeatures.getLargest()));
     }
 
     public static Point getContourCentroid(MatOfPoint pOneContour) {
@@ -532,10 +676,10 @@ public class ImageUtils {
         Core.split(pHSVImage, channels);
 
         // Get the median of the S channel.
-        int medianSaturation = getColorChannelMedian(channels.get(1), new Mat());
+        int medianSaturation = getColorChannelMedian(channels.get(1), null);
 
         // Get the median of the V channel.
-        int medianValue = getColorChannelMedian(channels.get(2), new Mat());
+        int medianValue = getColorChannelMedian(channels.get(2), null);
 
         RobotLogCommon.d(TAG, "HSV saturation channel median " + medianSaturation);
         RobotLogCommon.d(TAG, "HSV value channel median " + medianValue);
@@ -543,14 +687,11 @@ public class ImageUtils {
         return Pair.create(medianSaturation, medianValue);
     }
 
-    // Get the median of a color channel.
+    // Get the median of a color channel. If there is no mask (null or empty)
+    // then we just take the median of all the pixels; otherwise only of the
+    // pixels under the mask.
     private static int getColorChannelMedian(Mat pChannel, Mat pMask) {
-        // If we're dealing with a non-masked image then we just take the median
-        // of all the pixels.
-        if (pMask.total() == 0) {
-            return getSingleChannelMedian(pChannel);
-        } else
-            throw new AutonomousRobotException(TAG, "getColorChannelMedian with mask is not supported at this time");
+        return getSingleChannelMedian(pChannel, pMask);
     }
 
     //**TODO Imported from IJIntoTheDeepVision on 3/11/2025.
@@ -559,38 +700,31 @@ public class ImageUtils {
     // have an area less than a minimum.
     public static FilteredContoursRecord filterContours(Mat pThresholded, int pImageHeight, int pImageWidth, double pMinArea,
                                                         String pOutputFilenamePreamble, String pOutputFilenameSuffix) {
+        long stageStart = StageTimer.start();
         List<MatOfPoint> contours = new ArrayList<>();
         Mat hierarchy = new Mat();
         Imgproc.findContours(pThresholded, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
         RobotLogCommon.d(TAG, "Number of " + pOutputFilenameSuffix + " contours before filtering " + contours.size());
 
-        // Draw on an all-black background; drawContours requires a BGR image.
-        Mat filteredBGR = Mat.zeros(pImageHeight, pImageWidth, CvType.CV_8UC3);
-
-        int numFiltered = 0;
-        List<MatOfPoint> filteredContours = new ArrayList<>();
-        Scalar allWhite = new Scalar(255, 255, 255);
-        for (int i = 0; i < contours.size(); i++) {
-            if (Imgproc.contourArea(contours.get(i)) > pMinArea) {
-                numFiltered++;
-                filteredContours.add(contours.get(i));
-                Imgproc.drawContours(filteredBGR, contours, i, allWhite, Imgproc.FILLED);
-            }
+        // Draw directly on an all-black binary image.
+        Mat filteredBinary = Mat.zeros(pImageHeight, pImageWidth, CvType.CV_8UC1);
+
+        ContourFeatures contourFeatures = new ContourFeatures(contours, false);
+        int[] aboveMinArea = contourFeatures.getIndicesAboveArea(pMinArea);
+        int numFiltered = aboveMinArea.length;
+        List<MatOfPoint> filteredContours = new ArrayList<>(numFiltered);
+        Scalar white = new Scalar(255);
+        for (int oneIndex : aboveMinArea) {
+            filteredContours.add(contours.get(oneIndex));
+            Imgproc.drawContours(filteredBinary, contours, oneIndex, white, Imgproc.FILLED);
         }
 
         RobotLogCommon.d(TAG, "Number of " + pOutputFilenameSuffix + " contours after filtering " + numFiltered);
+        StageTimer.stop("ImageUtils.filterContours", stageStart);
 
-        // Convert the BGR image to grayscale, which in our case should be binary.
-        Mat filteredBinary = new Mat();
-        Imgproc.cvtColor(filteredBGR, filteredBinary, Imgproc.COLOR_BGR2GRAY);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.v)) {
-            String fullFilename = pOutputFilenamePreamble + "_FB" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(fullFilename, filteredBinary);
-            RobotLogCommon.v(TAG, "Writing " + fullFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_FB" + pOutputFilenameSuffix + ".png", filteredBinary);
 
-        return new FilteredContoursRecord(contours.size(), numFiltered, filteredContours, filteredBinary);
+        return new FilteredContoursRecord(contours.size(), numFiltered, filteredContours, MatTracker.track(filteredBinary));
     }
 
     public static class FilteredContoursRecord {
@@ -4,13 +4,14 @@ import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.TimeStamp;
+import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.LABTesterParameters;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.time.LocalDateTime;
@@ -37,7 +38,9 @@ public class LABRecognition {
         RobotLogCommon.d(TAG, "In LABRecognition.testLAB");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
+        long getImageStart = StageTimer.start();
         Pair<Mat, LocalDateTime> originalImage = pImageProvider.getImage();
+        StageTimer.stop("LABRecognition.getImage", getImageStart);
         if (originalImage == null)
             return RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR; // don't crash
 
@@ -50,17 +53,22 @@ public class LABRecognition {
         Mat imageROI = ImageUtils.preProcessImage(labImage, outputFilenamePreamble, pImageParameters);
 
         //**TODO Switch on A_CHANNEL_GRAYSCALE, B_CHANNEL_GRAYSCALE, LAB_COLOR
-        switch (pLABRecognitionPath) {
-            case LAB_COLOR -> {
-                return labColor(imageROI, pLABTesterParameters, outputFilenamePreamble);
+        long pathStart = StageTimer.start();
+        try {
+            switch (pLABRecognitionPath) {
+                case LAB_COLOR -> {
+                    return labColor(imageROI, pLABTesterParameters, outputFilenamePreamble);
+                }
+                case A_CHANNEL_GRAYSCALE -> {
+                    //**TODO
+                }
+                case B_CHANNEL_GRAYSCALE -> {
+                    //**TODO
+                }
+                default -> throw new AutonomousRobotException(TAG, "Unrecognized LAB path " + pLABRecognitionPath);
             }
-            case A_CHANNEL_GRAYSCALE -> {
-                //**TODO
-            }
-            case B_CHANNEL_GRAYSCALE -> {
-                //**TODO
-            }
-            default -> throw new AutonomousRobotException(TAG, "Unrecognized LAB path " + pLABRecognitionPath);
+        } finally {
+            StageTimer.stop(TAG, pLABRecognitionPath, pathStart);
         }
 
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
@@ -80,8 +88,7 @@ public class LABRecognition {
                         pLABTesterParameters.labParameters.b_star_high),
                 thresholded);
 
-        Imgcodecs.imwrite(outputFilenamePreamble + "_THR.png", thresholded);
-        RobotLogCommon.d(TAG, "Writing " + outputFilenamePreamble + "_THR.png");
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, outputFilenamePreamble + "_THR.png", thresholded);
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
 
@@ -0,0 +1,132 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-thread pool of scratch Mats for the temporaries in the hot paths.
+// A Mat is borrowed for the duration of a single method and returned
+// before the method exits:
+// MatWorkspace workspace = MatWorkspace.get();
+// Mat morphed = workspace.borrow(pGray.rows(), pGray.cols(), pGray.type());
+// try {
+//     ... use morphed ...
+// } finally {
+//     workspace.giveBack(morphed);
+// }
+// Scratch Mats are keyed by rows, columns and type so that once the pool
+// has warmed up to the frame size of a stream no native memory is
+// allocated for them. A Mat that escapes from its method - one that is
+// returned to the caller - must not be taken from the pool. A pooled Mat
+// may be passed to DebugImageCommon.writeImage, which queues a copy.
+//
+// For verification the pool can assert that it is in a steady state: after
+// beginSteadyState() every borrow that can't be satisfied from the pool
+// throws an AutonomousRobotException if assertNoAllocations(true) has been
+// called, otherwise it is only counted. The check covers the scratch Mats
+// borrowed from this pool and nothing else. A frame still allocates the
+// Mats that the helpers return to their callers, e.g. the thresholded
+// image from CompiledHSVThreshold.apply, the opened channel from
+// ImageUtils.extractAndInvertOpposingAllianceChannel and the result of
+// ImageUtils.sharpen, and the outputs of OpenCV functions whose size
+// varies from frame to frame, such as the contours and hierarchy from
+// findContours. So a run without steady-state allocations is not a run
+// without native allocation; use MatTracker to follow the returned Mats.
+public class MatWorkspace {
+
+    private static final String TAG = MatWorkspace.class.getSimpleName();
+
+    private static final ThreadLocal<MatWorkspace> workspaces = ThreadLocal.withInitial(MatWorkspace::new);
+
+    // Structuring elements are immutable once created and can be shared by all threads.
+    private static final Map<Integer, Mat> rectKernels = new ConcurrentHashMap<>();
+
+    private static volatile boolean steadyState = false;
+    private static volatile boolean assertNoAllocations = false;
+    private static final AtomicLong allocations = new AtomicLong();
+    private static final AtomicLong steadyStateAllocations = new AtomicLong();
+
+    private final Map<Long, ArrayDeque<Mat>> pool = new HashMap<>();
+
+    private MatWorkspace() {
+    }
+
+    // The workspace for the current thread.
+    public static MatWorkspace get() {
+        return workspaces.get();
+    }
+
+    // A square MORPH_RECT structuring element of the given size, created once.
+    public static Mat getRectKernel(int pSize) {
+        return rectKernels.computeIfAbsent(pSize,
+                size -> Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(size, size)));
+    }
+
+    // Returns a Mat of exactly the given dimensions and type. Its contents
+    // are undefined.
+    public Mat borrow(int pRows, int pCols, int pType) {
+        ArrayDeque<Mat> available = pool.get(key(pRows, pCols, pType));
+        if (available != null && !available.isEmpty())
+            return available.pop();
+
+        allocations.incrementAndGet();
+        if (steadyState) {
+            steadyStateAllocations.incrementAndGet();
+            if (assertNoAllocations)
+                throw new AutonomousRobotException(TAG, "Scratch Mat allocated in the steady state: rows " + pRows +
+                        ", cols " + pCols + ", type " + pType + ", thread " + Thread.currentThread().getName());
+        }
+
+        return new Mat(pRows, pCols, pType);
+    }
+
+    // Return a Mat obtained from borrow() on this thread. OpenCV functions
+    // that write to a Mat may have reallocated it with a different size or
+    // type, so it is filed under its current dimensions.
+    public void giveBack(Mat pMat) {
+        if (pMat.empty())
+            return;
+
+        pool.computeIfAbsent(key(pMat.rows(), pMat.cols(), pMat.type()), k -> new ArrayDeque<>()).push(pMat);
+    }
+
+    // Called once the pool has seen every frame size and path that will
+    // be used, e.g. after the first few frames of a stream.
+    public static void beginSteadyState() {
+        steadyState = true;
+    }
+
+    public static void assertNoAllocations(boolean pAssert) {
+        assertNoAllocations = pAssert;
+    }
+
+    // The total number of scratch Mats allocated by all threads.
+    public static long getAllocations() {
+        return allocations.get();
+    }
+
+    // The number of scratch Mats allocated after beginSteadyState().
+    public static long getSteadyStateAllocations() {
+        return steadyStateAllocations.get();
+    }
+
+    // Release the native memory of every pooled Mat on this thread.
+    public void clear() {
+        for (ArrayDeque<Mat> oneQueue : pool.values())
+            for (Mat oneMat : oneQueue)
+                oneMat.release();
+        pool.clear();
+    }
+
+    private static long key(int pRows, int pCols, int pType) {
+        return ((long) pRows << 40) | ((long) pCols << 16) | pType;
+    }
+
+}
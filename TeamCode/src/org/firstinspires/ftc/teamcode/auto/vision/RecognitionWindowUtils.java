@@ -3,10 +3,11 @@ package org.firstinspires.ftc.teamcode.auto.vision;
 import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.RecognitionWindowMapping;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.EnumMap;
@@ -23,21 +24,21 @@ public class RecognitionWindowUtils {
         Pair<Rect, RobotConstants.ObjectLocation> nposWindowData = pRecognitionWindowMapping.recognitionWindows.get(RobotConstants.RecognitionWindow.WINDOW_NPOS);
         RobotConstants.ObjectLocation foundLocation;
 
+        long countStart = StageTimer.start();
         Mat leftWindowBoundary = pThresholdedObject.submat(leftWindowData.first);
         int leftNonZeroCount = Core.countNonZero(leftWindowBoundary);
+        StageTimer.stop("RecognitionWindowUtils.countNonZero", countStart);
         RobotLogCommon.d(TAG, "Left recognition window white pixel count " + leftNonZeroCount);
 
-        String leftPixelCountFilename = pOutputFilenamePreamble + "_PXCL.png";
-        Imgcodecs.imwrite(leftPixelCountFilename, leftWindowBoundary);
-        RobotLogCommon.d(TAG, "Writing " + leftPixelCountFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_PXCL.png", leftWindowBoundary);
 
+        countStart = StageTimer.start();
         Mat rightWindowBoundary = pThresholdedObject.submat(rightWindowData.first);
         int rightNonZeroCount = Core.countNonZero(rightWindowBoundary);
+        StageTimer.stop("RecognitionWindowUtils.countNonZero", countStart);
         RobotLogCommon.d(TAG, "Right recognition window white pixel count " + rightNonZeroCount);
 
-        String rightPixelCountFilename = pOutputFilenamePreamble + "_PXCR.png";
-        Imgcodecs.imwrite(rightPixelCountFilename, rightWindowBoundary);
-        RobotLogCommon.d(TAG, "Writing " + rightPixelCountFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_PXCR.png", rightWindowBoundary);
 
         // If both counts are less than the minimum then we infer that
         // the object is in the third (non-visible) recognition window.
@@ -45,21 +46,20 @@ public class RecognitionWindowUtils {
                 rightNonZeroCount < pAllianceMinWhitePixelCount) {
             RobotLogCommon.d(TAG, "White pixel counts for the left and right recognition windows were under the threshold");
             RobotLogCommon.d(TAG, "The object location is " + nposWindowData.second);
-            RecognitionWindowUtils.drawRecognitionWindows(pImageROI.clone(), pOutputFilenamePreamble, pRecognitionWindowMapping.recognitionWindows);
+            writeLocationImage(pImageROI, null, pOutputFilenamePreamble, pRecognitionWindowMapping.recognitionWindows);
             return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
         }
 
         // Compare the white pixel count in the left and right recognition
-        // windows against each other.
-        Mat pixelCountOut = pImageROI.clone();
+        // windows against each other. The image with the recognition
+        // windows is only for debugging.
         if (leftNonZeroCount >= rightNonZeroCount) {
             Point leftWindowCentroid = new Point((leftWindowData.first.x + leftWindowData.first.width) / 2.0,
                     (leftWindowData.first.y + leftWindowData.first.height) / 2.0);
             RobotLogCommon.d(TAG, "Center of left recognition window " + leftWindowCentroid);
             RobotLogCommon.d(TAG, "The object location is " + leftWindowData.second);
 
-            Imgproc.circle(pixelCountOut, leftWindowCentroid, 10, new Scalar(0, 255, 0));
-            RecognitionWindowUtils.drawRecognitionWindows(pixelCountOut, pOutputFilenamePreamble, pRecognitionWindowMapping.recognitionWindows);
+            writeLocationImage(pImageROI, leftWindowCentroid, pOutputFilenamePreamble, pRecognitionWindowMapping.recognitionWindows);
             return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
         }
 
@@ -69,9 +69,7 @@ public class RecognitionWindowUtils {
         RobotLogCommon.d(TAG, "The object location is " + rightWindowData.second);
         RobotLogCommon.d(TAG, "Center of right recognition window " + rightWindowCentroid);
 
-        Imgproc.circle(pixelCountOut, rightWindowCentroid, 10, new Scalar(0, 255, 0));
-        RecognitionWindowUtils.drawRecognitionWindows(pixelCountOut, pOutputFilenamePreamble, pRecognitionWindowMapping.recognitionWindows);
-
+        writeLocationImage(pImageROI, rightWindowCentroid, pOutputFilenamePreamble, pRecognitionWindowMapping.recognitionWindows);
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
 
@@ -80,7 +78,7 @@ public class RecognitionWindowUtils {
     // Look through the left and right recognition windows and determine which
     // the selected object is in - or neither. Also draw the boundaries of the
     // windows.
-    public static RobotConstants.RecognitionResults lookThroughWindowsAtCenterPoint(Point pCenterOfObject, Mat pRecognitionObjectOut, String pOutputFilenamePreamble,
+    public static RobotConstants.RecognitionResults lookThroughWindowsAtCenterPoint(Point pCenterOfObject, Mat pImageROI, String pOutputFilenamePreamble,
                                                                                     EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> pRecognitionWindows) {
         Pair<Rect, RobotConstants.ObjectLocation> leftWindowData = pRecognitionWindows.get(RobotConstants.RecognitionWindow.LEFT);
         Pair<Rect, RobotConstants.ObjectLocation> rightWindowData = pRecognitionWindows.get(RobotConstants.RecognitionWindow.RIGHT);
@@ -105,12 +103,23 @@ public class RecognitionWindowUtils {
                 RobotLogCommon.d(TAG, "Object not found in the left or recognition window: assuming location " + foundLocation);
             }
 
-        // Draw the recognition windows on the ROI with the circles.
-        drawRecognitionWindows(pRecognitionObjectOut, pOutputFilenamePreamble, pRecognitionWindows);
-
+        writeLocationImage(pImageROI, pCenterOfObject, pOutputFilenamePreamble, pRecognitionWindows);
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
 
+    // Draw the center of the object, if any, and the recognition windows on
+    // a snapshot of the ROI only if the image is written.
+    private static void writeLocationImage(Mat pImageROI, Point pCenterOfObject, String pOutputFilenamePreamble,
+                                           EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> pRecognitionWindows) {
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_LOC.png",
+                pImageROI, locationOut -> {
+                    if (pCenterOfObject != null)
+                        Imgproc.circle(locationOut, pCenterOfObject, 10, new Scalar(0, 255, 0));
+                    drawWindowBoundaries(locationOut, pRecognitionWindows);
+                    return locationOut;
+                });
+    }
+
     // Returns the ROI from the full image with the recognition windows drawn in.
     //## No usages in FtcCenterStage. One usage IJCenterStageVision:
     // If the switch --spike_windows is present then its argument
@@ -139,6 +148,17 @@ public class RecognitionWindowUtils {
 
     public static void drawRecognitionWindows(Mat pRecognitionObjectOut, String pOutputFilenamePreamble,
                                               EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> pRecognitionWindows) {
+        long stageStart = StageTimer.start();
+        drawWindowBoundaries(pRecognitionObjectOut, pRecognitionWindows);
+
+        if (pOutputFilenamePreamble != null)
+            DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_LOC.png", pRecognitionObjectOut);
+
+        StageTimer.stop("RecognitionWindowUtils.drawRecognitionWindows", stageStart);
+    }
+
+    private static void drawWindowBoundaries(Mat pRecognitionObjectOut,
+                                             EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> pRecognitionWindows) {
         Pair<Rect, RobotConstants.ObjectLocation> leftWindowData = pRecognitionWindows.get(RobotConstants.RecognitionWindow.LEFT);
         Pair<Rect, RobotConstants.ObjectLocation> rightWindowData = pRecognitionWindows.get(RobotConstants.RecognitionWindow.RIGHT);
 
@@ -155,12 +175,6 @@ public class RecognitionWindowUtils {
 
         Imgproc.rectangle(pRecognitionObjectOut, leftWindowUpperLeft, leftWindowLowerRight, new Scalar(0, 255, 0), 3);
         Imgproc.rectangle(pRecognitionObjectOut, rightWindowUpperLeft, rightWindowLowerRight, new Scalar(0, 255, 0), 3);
-
-        if (pOutputFilenamePreamble != null) {
-            String objectFilename = pOutputFilenamePreamble + "_LOC.png";
-            RobotLogCommon.d(TAG, "Writing " + objectFilename);
-            Imgcodecs.imwrite(objectFilename, pRecognitionObjectOut);
-        }
     }
 
 }
\ No newline at end of file
@@ -6,10 +6,10 @@ import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.TimeStamp;
 import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.SampleContoursParameters;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.time.LocalDateTime;
@@ -42,7 +42,9 @@ public class SampleContoursRecognition {
         RobotLogCommon.d(TAG, "In SampleContours.recognizeSampleContours");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
+        long getImageStart = StageTimer.start();
         Pair<Mat, LocalDateTime> sampleImage = pImageProvider.getImage();
+        StageTimer.stop("SampleContoursRecognition.getImage", getImageStart);
         if (sampleImage == null)
             return RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR; // don't crash
 
@@ -52,14 +54,19 @@ public class SampleContoursRecognition {
         Mat imageROI = ImageUtils.preProcessImage(sampleImage.first, outputFilenamePreamble, pImageParameters);
 
         RobotLogCommon.d(TAG, "Recognition path " + pSampleContoursRecognitionPath);
-        switch (pSampleContoursRecognitionPath) {
-            case RED_CHANNEL_GRAYSCALE -> {
-                return redChannelPath(imageROI, outputFilenamePreamble, pSampleContoursParameters);
+        long pathStart = StageTimer.start();
+        try {
+            switch (pSampleContoursRecognitionPath) {
+                case RED_CHANNEL_GRAYSCALE -> {
+                    return redChannelPath(imageROI, outputFilenamePreamble, pSampleContoursParameters);
+                }
+                case COLOR -> {
+                    return colorPath(imageROI, outputFilenamePreamble, pSampleContoursParameters);
+                }
+                default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
             }
-            case COLOR -> {
-                return colorPath(imageROI, outputFilenamePreamble, pSampleContoursParameters);
-            }
-            default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
+        } finally {
+            StageTimer.stop(TAG, pSampleContoursRecognitionPath, pathStart);
         }
     }
 
@@ -67,37 +74,36 @@ public class SampleContoursRecognition {
                                                              SampleContoursParameters pSampleContourParameters) {
 
         // Extract the red channel and then use it as grayscale.
-        Mat selectedChannel = new Mat();
+        MatWorkspace workspace = MatWorkspace.get();
+        Mat selectedChannel = workspace.borrow(pImageROI.rows(), pImageROI.cols(), CvType.CV_8UC1);
         Core.extractChannel(pImageROI, selectedChannel, 2);
 
         // Write out the red channel as grayscale.
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            DebugImageCommon.writeImage(pOutputFilenamePreamble + "_RED_CHANNEL.png", selectedChannel);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_RED_CHANNEL.png");
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_RED_CHANNEL.png", selectedChannel);
 
         Mat thresholded = ImageUtils.performThresholdOnGray(selectedChannel,
                 pSampleContourParameters.rgbChannelGrayscaleParameters.redGrayParameters.median_target,
                 pSampleContourParameters.rgbChannelGrayscaleParameters.redGrayParameters.threshold_low,
                 pOutputFilenamePreamble, "");
+        workspace.giveBack(selectedChannel);
 
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(thresholded, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
+        // The contours are only needed for drawing.
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_CON.png", () -> {
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = new Mat();
+            Imgproc.findContours(thresholded, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
             Mat contoursOut = pImageROI.clone();
             ShapeDrawing.drawShapeContours(contours, contoursOut);
 
             //**TODO color path also Draw the centroid of each contour.
-            for (int i = 0; i < contours.size(); i++) {
-                Point centroid = ImageUtils.getContourCentroid(contours.get(i));
-                Imgproc.circle(contoursOut, centroid, 10, new Scalar(0, 255, 0), 2);
+            ContourFeatures contourFeatures = new ContourFeatures(contours, false);
+            for (int i = 0; i < contourFeatures.count; i++) {
+                if (!Double.isNaN(contourFeatures.centroidX[i]))
+                    Imgproc.circle(contoursOut, contourFeatures.getCentroid(i), 10, new Scalar(0, 255, 0), 2);
             }
 
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_CON.png", contoursOut);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_CON.png");
-        }
+            return contoursOut;
+        });
 
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
@@ -108,16 +114,15 @@ public class SampleContoursRecognition {
 
         Mat thresholded = ImageUtils.performInRange(pImageROI, pSampleContoursParameters.hsvColorParameters.blueHSVParameters, pOutputFilenamePreamble, "");
 
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(thresholded, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
+        // The contours are only needed for drawing.
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_CON.png", () -> {
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = new Mat();
+            Imgproc.findContours(thresholded, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
             Mat contoursOut = pImageROI.clone();
             ShapeDrawing.drawShapeContours(contours, contoursOut);
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_CON.png", contoursOut);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_CON.png");
-        }
+            return contoursOut;
+        });
 
         return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
     }
@@ -6,6 +6,7 @@ import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
+import java.util.ArrayList;
 import java.util.List;
 
 // Subset of the c++ ShapeDrawing class.
@@ -21,6 +22,27 @@ public class ShapeDrawing {
         }
     }
 
+    // A copy of the points of each contour on the Java heap, for a
+    // DebugImageCommon render function that must not use the caller's
+    // contours. Draw the copy with drawShapeContourSnapshot.
+    public static List<Point[]> snapshotContours(List<MatOfPoint> pContours) {
+        List<Point[]> snapshot = new ArrayList<>(pContours.size());
+        for (MatOfPoint oneContour : pContours)
+            snapshot.add(oneContour.toArray());
+        return snapshot;
+    }
+
+    // As drawShapeContours for contours from snapshotContours.
+    public static void drawShapeContourSnapshot(List<Point[]> pContourPoints, Mat pImageOut) {
+        List<MatOfPoint> contours = new ArrayList<>(pContourPoints.size());
+        for (Point[] onePointArray : pContourPoints)
+            contours.add(new MatOfPoint(onePointArray));
+
+        drawShapeContours(contours, pImageOut);
+        for (MatOfPoint oneContour : contours)
+            oneContour.release();
+    }
+
     public static void drawOneContour(List<MatOfPoint> pContours, int pContourIndex,
                                       Mat pImageOut, Scalar pColor) {
         Imgproc.drawContours(pImageOut, pContours, pContourIndex, pColor, 2);
@@ -33,12 +55,21 @@ public class ShapeDrawing {
 
     // Use this to show errors such as no contours or violations of criteria
     // such as size.
+    // The X is drawn on a snapshot of pImageROI, which is not modified,
+    // only if the image is written.
     public static void drawX(Mat pImageROI, Scalar pBGRColor, String pOutputFilenamePreamble) {
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "NO_BRECT.png",
+                pImageROI, xOut -> {
+                    drawX(xOut, pBGRColor);
+                    return xOut;
+                });
+    }
 
+    public static void drawX(Mat pImageOut, Scalar pBGRColor) {
         double DRAWN_X_SIZE_FACTOR = 0.33;
         int drawnXThickness = 2;
-        int roiWidth = pImageROI.cols();
-        int roiHeight = pImageROI.rows();
+        int roiWidth = pImageOut.cols();
+        int roiHeight = pImageOut.rows();
 
         // Set the Points for the X.
         Point xUpperLeft = new Point(roiWidth * DRAWN_X_SIZE_FACTOR, roiHeight * DRAWN_X_SIZE_FACTOR);
@@ -46,13 +77,8 @@ public class ShapeDrawing {
         Point xLowerLeft = new Point(xUpperLeft.x, roiHeight * (1.0 - DRAWN_X_SIZE_FACTOR));
         Point xLowerRight = new Point(xUpperRight.x, xLowerLeft.y);
 
-        Imgproc.line(pImageROI, xUpperLeft, xLowerRight, pBGRColor, drawnXThickness);
-        Imgproc.line(pImageROI, xLowerLeft, xUpperRight, pBGRColor, drawnXThickness);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            DebugImageCommon.writeImage(pOutputFilenamePreamble + "NO_BRECT.png", pImageROI);
-            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "NO_BRECT.png");
-        }
+        Imgproc.line(pImageOut, xUpperLeft, xLowerRight, pBGRColor, drawnXThickness);
+        Imgproc.line(pImageOut, xLowerLeft, xUpperRight, pBGRColor, drawnXThickness);
     }
 
 }
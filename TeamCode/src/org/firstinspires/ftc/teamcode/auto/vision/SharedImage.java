@@ -0,0 +1,24 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.opencv.core.Mat;
+
+import java.time.LocalDateTime;
+
+// Hands the same decoded image to every caller so that several actions
+// can run against one frame without decoding it more than once. The
+// image must be treated as read-only by every recognizer that shares it.
+public class SharedImage implements ImageProvider {
+
+    private final Pair<Mat, LocalDateTime> image;
+
+    public SharedImage(Pair<Mat, LocalDateTime> pImage) {
+        image = pImage;
+    }
+
+    @Override
+    public Pair<Mat, LocalDateTime> getImage() {
+        return image;
+    }
+
+}
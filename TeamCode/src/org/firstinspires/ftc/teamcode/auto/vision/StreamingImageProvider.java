@@ -0,0 +1,22 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+// An ImageProvider that delivers a sequence of frames, e.g. from a
+// directory of images or a video file, instead of a single image.
+// Typical use:
+// while (provider.hasMoreFrames())
+//     recognition.recognize(provider, ...); // calls getImage() once
+// provider.close();
+// RobotLogCommon.c(TAG, provider.getFrameStatistics().toString());
+public interface StreamingImageProvider extends ImageProvider {
+
+    // Blocks until the next frame is available or the end of the
+    // sequence has been reached.
+    boolean hasMoreFrames() throws InterruptedException;
+
+    FrameStatistics getFrameStatistics();
+
+    // Stop any background decoding and release resources. Safe to call
+    // more than once.
+    void close();
+
+}
@@ -0,0 +1,182 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Replays a local video file through a recognizer via OpenCV VideoCapture.
+//
+// In REAL_TIME mode the file's own frame timestamps are mapped onto the
+// wall clock starting with the first frame. When the consumer asks for a
+// frame it gets the most recent frame that is due at that moment; any
+// older frames are grabbed but not decoded and are counted as dropped,
+// just as a camera would overwrite frames that the robot did not get to
+// in time. If the consumer is ahead of the video it waits until the next
+// frame is due. The latency of a frame runs from the moment it was due.
+//
+// In AS_FAST_AS_POSSIBLE mode every frame is delivered, no frames are
+// dropped, and the latency of a frame runs from the end of its decoding.
+//
+// The frames must have the resolution given in the <image_parameters>
+// of the action.
+public class VideoFileImage implements StreamingImageProvider {
+
+    private static final String TAG = VideoFileImage.class.getSimpleName();
+
+    public enum PacingMode {REAL_TIME, AS_FAST_AS_POSSIBLE}
+
+    private final String videoFilename;
+    private final PacingMode pacingMode;
+    private final VideoCapture videoCapture;
+    private final double frameIntervalMs;
+    private final FrameStatistics frameStatistics = new FrameStatistics();
+
+    private int framesGrabbed = 0;
+    private double firstTimestampMs = -1;
+    private long wallClockStartNanos = -1;
+
+    private boolean frameGrabbed = false; // grabbed but not yet retrieved
+    private long grabbedDueNanos; // REAL_TIME only
+    private long grabStartNanos;
+    private long inProgressLatencyStartNanos = -1; // frame currently with the consumer
+    private boolean endOfVideo = false;
+    private boolean closed = false;
+
+    public VideoFileImage(String pVideoFilename, PacingMode pPacingMode) {
+        videoFilename = pVideoFilename;
+        pacingMode = pPacingMode;
+        videoCapture = new VideoCapture(pVideoFilename);
+        if (!videoCapture.isOpened())
+            throw new AutonomousRobotException(TAG, "Could not open the video file " + pVideoFilename);
+
+        double fps = videoCapture.get(Videoio.CAP_PROP_FPS);
+        frameIntervalMs = fps > 0 ? 1000.0 / fps : 0;
+        RobotLogCommon.d(TAG, "Video " + pVideoFilename + ", fps " + fps +
+                ", width " + videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH) +
+                ", height " + videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT) +
+                ", frame count " + videoCapture.get(Videoio.CAP_PROP_FRAME_COUNT) +
+                ", pacing " + pPacingMode);
+    }
+
+    public PacingMode getPacingMode() {
+        return pacingMode;
+    }
+
+    @Override
+    public boolean hasMoreFrames() throws InterruptedException {
+        completeInProgressFrame();
+        if (endOfVideo || closed)
+            return false;
+
+        if (frameGrabbed)
+            return true; // already waiting for the consumer
+
+        if (!grabNextFrame())
+            return false;
+
+        if (pacingMode == PacingMode.AS_FAST_AS_POSSIBLE)
+            return true;
+
+        // Skip over every frame that has been superseded by a newer frame
+        // that is already due.
+        long now = System.nanoTime();
+        while (true) {
+            long nextDueNanos = grabbedDueNanos + TimeUnit.MICROSECONDS.toNanos((long) (frameIntervalMs * 1000));
+            if (frameIntervalMs == 0 || nextDueNanos > now)
+                break;
+
+            // A failed grab at the end of the file leaves the superseded
+            // frame unretrievable, so the video is simply over.
+            if (!grabNextFrame())
+                return false;
+
+            frameStatistics.frameDropped();
+            now = System.nanoTime();
+        }
+
+        // The consumer is ahead of the video; wait for the frame to be due.
+        long waitNanos = grabbedDueNanos - System.nanoTime();
+        if (waitNanos > 0)
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+
+        return true;
+    }
+
+    // Returns null at the end of the video.
+    @Override
+    public Pair<Mat, LocalDateTime> getImage() throws InterruptedException {
+        if (!hasMoreFrames())
+            return null;
+
+        Mat frame = new Mat();
+        boolean retrieved = videoCapture.retrieve(frame);
+        frameGrabbed = false;
+        if (!retrieved || frame.empty()) {
+            frame.release();
+            throw new AutonomousRobotException(TAG, "Could not decode frame " + framesGrabbed + " of " + videoFilename);
+        }
+
+        long retrievedNanos = System.nanoTime();
+        frameStatistics.frameDecoded(retrievedNanos - grabStartNanos);
+        frameStatistics.frameDelivered(retrievedNanos, 0);
+        inProgressLatencyStartNanos = pacingMode == PacingMode.REAL_TIME ? grabbedDueNanos : retrievedNanos;
+        return Pair.create(frame, LocalDateTime.now());
+    }
+
+    @Override
+    public FrameStatistics getFrameStatistics() {
+        return frameStatistics;
+    }
+
+    @Override
+    public void close() {
+        completeInProgressFrame();
+        if (closed)
+            return;
+
+        closed = true;
+        videoCapture.release();
+    }
+
+    // Grab (but do not decode) the next frame and work out when it is due.
+    // Returns false at the end of the video.
+    private boolean grabNextFrame() {
+        grabStartNanos = System.nanoTime();
+        if (!videoCapture.grab()) {
+            endOfVideo = true;
+            frameGrabbed = false;
+            return false;
+        }
+
+        frameGrabbed = true;
+        framesGrabbed++;
+
+        // Not all backends report a timestamp; fall back to the nominal frame rate.
+        double timestampMs = videoCapture.get(Videoio.CAP_PROP_POS_MSEC);
+        if (timestampMs <= 0 && framesGrabbed > 1)
+            timestampMs = (framesGrabbed - 1) * frameIntervalMs;
+
+        if (firstTimestampMs < 0) {
+            firstTimestampMs = timestampMs;
+            wallClockStartNanos = System.nanoTime();
+        }
+
+        grabbedDueNanos = wallClockStartNanos + TimeUnit.MICROSECONDS.toNanos((long) ((timestampMs - firstTimestampMs) * 1000));
+        return true;
+    }
+
+    private void completeInProgressFrame() {
+        if (inProgressLatencyStartNanos < 0)
+            return;
+
+        frameStatistics.frameCompleted(inProgressLatencyStartNanos, System.nanoTime());
+        inProgressLatencyStartNanos = -1;
+    }
+
+}
@@ -1,19 +1,18 @@
 package org.firstinspires.ftc.teamcode.auto.vision;
 
-import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.TimeStamp;
+import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.firstinspires.ftc.teamcode.auto.xml.VisionParameters;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 public class WatershedRecognition {
 
@@ -24,6 +23,17 @@ public class WatershedRecognition {
         WATERSHED_CARDS_HYBRID, WATERSHED_COINS_HYBRID
     }
 
+    // The outcome of a watershed recognition path.
+    public static class WatershedResult {
+        public final RobotConstants.RecognitionResults recognitionResults;
+        public final WatershedRegions regions; // null if there is no segmentation
+
+        public WatershedResult(RobotConstants.RecognitionResults pRecognitionResults, WatershedRegions pRegions) {
+            recognitionResults = pRecognitionResults;
+            regions = pRegions;
+        }
+    }
+
     private final String testCaseDirectory;
 
     public WatershedRecognition(String pTestCaseDirectory) {
@@ -53,16 +63,40 @@ public class WatershedRecognition {
     // The pyimagesearch example is here --
     // https://pyimagesearch.com/2015/11/02/watershed-opencv/
     //
-    // Returns the result of image analysis.
+    // Returns the result of image analysis; the regions of the segmentation
+    // are logged.
     public RobotConstants.RecognitionResults performWatershed(ImageProvider pImageProvider,
                                                               VisionParameters.ImageParameters pImageParameters,
                                                               WatershedRecognitionPath pWatershedRecognitionPath) throws InterruptedException {
-        RobotLogCommon.d(TAG, "In WatershedRecognition.performWatershed");
+        WatershedResult watershedResult = segmentWatershed(pImageProvider, pImageParameters, pWatershedRecognitionPath);
+        if (watershedResult.regions != null) {
+            WatershedRegions regions = watershedResult.regions;
+            RobotLogCommon.d(TAG, "Watershed regions " + regions.count);
+            for (int i = 0; i < regions.count; i++)
+                RobotLogCommon.v(TAG, "Region " + regions.getLabel(i) + " area " + regions.getArea(i) +
+                        ", bounding box " + regions.getBoundingRect(i) + ", centroid " + regions.getCentroid(i) +
+                        ", mean BGR " + regions.getMeanColor(i));
+            regions.release();
+        }
+
+        return watershedResult.recognitionResults;
+    }
+
+    // As above but returns the segmentation itself: the watershed markers
+    // and the area, bounding box, centroid and mean color of each region.
+    // The caller must release the regions. The recognition is unsuccessful
+    // if there are no regions.
+    public WatershedResult segmentWatershed(ImageProvider pImageProvider,
+                                            VisionParameters.ImageParameters pImageParameters,
+                                            WatershedRecognitionPath pWatershedRecognitionPath) throws InterruptedException {
+        RobotLogCommon.d(TAG, "In WatershedRecognition.segmentWatershed");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
+        long getImageStart = StageTimer.start();
         Pair<Mat, LocalDateTime> watershedImage = pImageProvider.getImage();
+        StageTimer.stop("WatershedRecognition.getImage", getImageStart);
         if (watershedImage == null)
-            return RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR; // don't crash
+            return new WatershedResult(RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR, null); // don't crash
 
         // The image is in BGR order (OpenCV imread from a file).
         String fileDate = TimeStamp.getLocalDateTimeStamp(watershedImage.second);
@@ -71,17 +105,18 @@ public class WatershedRecognition {
         RobotLogCommon.d(TAG, "Recognition path " + pWatershedRecognitionPath);
 
         // Adapt the examples to our environment.
-        switch (pWatershedRecognitionPath) {
-            case WATERSHED_CARDS_STD -> {
-                return watershedCardsStd(imageROI, outputFilenamePreamble);
-            }
-            case WATERSHED_CARDS_HYBRID -> {
-                return watershedCardsHybrid(imageROI, outputFilenamePreamble);
-            }
-            case WATERSHED_COINS_HYBRID -> {
-                return watershedCoinsHybrid(imageROI, outputFilenamePreamble);
-            }
-            default -> throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
+        long pathStart = StageTimer.start();
+        try {
+            WatershedRegions regions = switch (pWatershedRecognitionPath) {
+                case WATERSHED_CARDS_STD -> watershedCardsStd(imageROI, outputFilenamePreamble);
+                case WATERSHED_CARDS_HYBRID -> watershedCardsHybrid(imageROI, outputFilenamePreamble);
+                case WATERSHED_COINS_HYBRID -> watershedCoinsHybrid(imageROI, outputFilenamePreamble);
+            };
+
+            return new WatershedResult(regions.count > 0 ? RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL :
+                    RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL, regions);
+        } finally {
+            StageTimer.stop(TAG, pWatershedRecognitionPath, pathStart);
         }
     }
 
@@ -89,7 +124,7 @@ public class WatershedRecognition {
     // https://docs.opencv.org/4.x/d2/dbd/tutorial_distance_transform.html
     // Adapt the standard Java example to our environment.
     //!! Note that the example misses the card in the upper right.
-    private RobotConstants.RecognitionResults watershedCardsStd(Mat pImageROI, String pOutputFilenamePreamble) {
+    private WatershedRegions watershedCardsStd(Mat pImageROI, String pOutputFilenamePreamble) {
         //! [black_bg]
         // Change the background from white to black, since that will help later to
         // extract better results during the use of Distance Transform
@@ -151,28 +186,27 @@ public class WatershedRecognition {
         Imgproc.threshold(bw, bw, 40, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
 
         // Output the thresholded image.
-        String thrFilename = pOutputFilenamePreamble + "_THR.png";
-        Imgcodecs.imwrite(thrFilename, bw);
-        RobotLogCommon.v(TAG, "Writing " + thrFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_THR.png", bw);
         //! [bin]
 
         //! [dist]
         // Perform the distance transform algorithm
+        long distanceStart = StageTimer.start();
         Mat dist = new Mat();
         Imgproc.distanceTransform(bw, dist, Imgproc.DIST_L2, 3);
+        StageTimer.stop("WatershedRecognition.distanceTransform", distanceStart);
 
         // Normalize the distance image for range = {0.0, 1.0}
         // so we can visualize and threshold it
         Core.normalize(dist, dist, 0.0, 1.0, Core.NORM_MINMAX);
-        Mat distDisplayScaled = new Mat();
-        Core.multiply(dist, new Scalar(255), distDisplayScaled);
-        Mat distDisplay = new Mat();
-        distDisplayScaled.convertTo(distDisplay, CvType.CV_8U);
 
         // Output the transformed image.
-        String distFilename = pOutputFilenamePreamble + "_DIST.png";
-        Imgcodecs.imwrite(distFilename, distDisplay);
-        RobotLogCommon.d(TAG, "Writing " + distFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_DIST.png",
+                dist, distSnapshot -> {
+                    Mat distDisplay = new Mat();
+                    distSnapshot.convertTo(distDisplay, CvType.CV_8U, 255.0);
+                    return distDisplay;
+                });
         //! [dist]
 
         //! [peaks]
@@ -183,14 +217,15 @@ public class WatershedRecognition {
         // Dilate a bit the dist image
         Mat kernel1 = Mat.ones(3, 3, CvType.CV_8U);
         Imgproc.dilate(dist, dist, kernel1);
-        Mat distDisplay2 = new Mat();
-        dist.convertTo(distDisplay2, CvType.CV_8U);
-        Core.multiply(distDisplay2, new Scalar(255), distDisplay2);
 
         // Output the foreground peaks.
-        String peakFilename = pOutputFilenamePreamble + "_PEAK.png";
-        Imgcodecs.imwrite(peakFilename, distDisplay2);
-        RobotLogCommon.d(TAG, "Writing " + peakFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_PEAK.png",
+                dist, distSnapshot -> {
+                    Mat distDisplay2 = new Mat();
+                    distSnapshot.convertTo(distDisplay2, CvType.CV_8U);
+                    Core.multiply(distDisplay2, new Scalar(255), distDisplay2);
+                    return distDisplay2;
+                });
         //! [peaks]
 
         //! [seeds]
@@ -205,10 +240,14 @@ public class WatershedRecognition {
         Imgproc.findContours(dist_8u, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
 
         //#PY added - output the contours.
-        Mat contoursOut = pImageROI.clone();
-        ShapeDrawing.drawShapeContours(contours, contoursOut);
-        Imgcodecs.imwrite(pOutputFilenamePreamble + "_CON.png", contoursOut);
-        RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_CON.png");
+        if (DebugImageCommon.isWritable(RobotLogCommon.CommonLogLevel.d)) {
+            List<Point[]> contourPoints = ShapeDrawing.snapshotContours(contours);
+            DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_CON.png",
+                    pImageROI, contoursOut -> {
+                        ShapeDrawing.drawShapeContourSnapshot(contourPoints, contoursOut);
+                        return contoursOut;
+                    });
+        }
 
         // Create the marker image for the watershed algorithm
         Mat markers = Mat.zeros(dist.size(), CvType.CV_32S);
@@ -221,24 +260,31 @@ public class WatershedRecognition {
         // Draw the background marker
         //??PY I don't know why the comment refers to a "background marker"
         // and then draws a small white circle in the upper left.
-        Mat markersScaled = new Mat();
-        markers.convertTo(markersScaled, CvType.CV_32F);
-        Core.normalize(markersScaled, markersScaled, 0.0, 255.0, Core.NORM_MINMAX);
-        Imgproc.circle(markersScaled, new Point(5, 5), 3, new Scalar(255, 255, 255), -1);
-        Mat markersDisplay = new Mat();
-        markersScaled.convertTo(markersDisplay, CvType.CV_8U);
-
+        // The standard example labels it 255, which collides with the
+        // foreground markers once there are 255 contours, so give it the
+        // first label after them.
+        int backgroundLabel = contours.size() + 1;
         // Output the markers.
-        String markFilename = pOutputFilenamePreamble + "_MARK.png";
-        Imgcodecs.imwrite(markFilename, markersDisplay);
-        RobotLogCommon.d(TAG, "Writing " + markFilename);
-
-        Imgproc.circle(markers, new Point(5, 5), 3, new Scalar(255, 255, 255), -1);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_MARK.png",
+                markers, markersSnapshot -> {
+                    Mat markersScaled = new Mat();
+                    markersSnapshot.convertTo(markersScaled, CvType.CV_32F);
+                    Core.normalize(markersScaled, markersScaled, 0.0, 255.0, Core.NORM_MINMAX);
+                    Imgproc.circle(markersScaled, new Point(5, 5), 3, new Scalar(255, 255, 255), -1);
+                    Mat markersDisplay = new Mat();
+                    markersScaled.convertTo(markersDisplay, CvType.CV_8U);
+                    markersScaled.release();
+                    return markersDisplay;
+                });
+
+        Imgproc.circle(markers, new Point(5, 5), 3, new Scalar(backgroundLabel), -1);
         //! [seeds]
 
         //! [watershed]
         // Perform the watershed algorithm
+        long watershedStart = StageTimer.start();
         Imgproc.watershed(imgResult, markers);
+        StageTimer.stop("WatershedRecognition.watershed", watershedStart);
 
         /*
         Mat mark = Mat.zeros(markers.size(), CvType.CV_8U);
@@ -252,10 +298,13 @@ public class WatershedRecognition {
         */
 
         showWatershedColor(markers, pOutputFilenamePreamble);
-        return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
+
+        // The foreground markers are 1 through the number of contours;
+        // the "background marker" is the number of contours + 1.
+        return WatershedRegions.analyze(markers, pImageROI, 1, contours.size());
     }
 
-    private RobotConstants.RecognitionResults watershedCardsHybrid(Mat pImageROI, String pOutputFilenamePreamble) {
+    private WatershedRegions watershedCardsHybrid(Mat pImageROI, String pOutputFilenamePreamble) {
 
         Mat blk = invertCardsBackground(pImageROI, pOutputFilenamePreamble);
 
@@ -271,9 +320,7 @@ public class WatershedRecognition {
         Core.split(sharp, channels); // red or blue channel. B = 0, G = 1, R = 2
         Mat redChannel = channels.get(2);
 
-        String redFilename = pOutputFilenamePreamble + "_RED.png";
-        Imgcodecs.imwrite(redFilename, redChannel);
-        RobotLogCommon.d(TAG, "Writing " + redFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_RED.png", redChannel);
 
         // Both standard examples use OTSU but we get better results
         // (the interiors of the cards go to white) with a binary
@@ -284,17 +331,15 @@ public class WatershedRecognition {
                 255,   // white
                 Imgproc.THRESH_BINARY);
 
-        String thrFilename = pOutputFilenamePreamble + "_THR.png";
-        Imgcodecs.imwrite(thrFilename, thresholded);
-        RobotLogCommon.v(TAG, "Writing " + thrFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.v, TAG, pOutputFilenamePreamble + "_THR.png", thresholded);
 
         Mat watershedMarkers = WatershedUtils.applyWatershedHybrid(thresholded, pImageROI, sharp,
                 100, pOutputFilenamePreamble, "");
         showWatershedColor(watershedMarkers, pOutputFilenamePreamble);
-        return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
+        return WatershedRegions.analyze(watershedMarkers, pImageROI, 2); // object markers start at 2
     }
 
-    private RobotConstants.RecognitionResults watershedCoinsHybrid(Mat pImageROI, String pOutputFilenamePreamble) {
+    private WatershedRegions watershedCoinsHybrid(Mat pImageROI, String pOutputFilenamePreamble) {
 
         Mat sharp = ImageUtils.sharpen(pImageROI, pOutputFilenamePreamble);
 
@@ -306,9 +351,7 @@ public class WatershedRecognition {
         Imgproc.cvtColor(shifted, gray, Imgproc.COLOR_BGR2GRAY);
 
         // Output the grayscale image.
-        String grayFilename = pOutputFilenamePreamble + "_GRAY.png";
-        Imgcodecs.imwrite(grayFilename, gray);
-        RobotLogCommon.d(TAG, "Writing " + grayFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_GRAY.png", gray);
 
         //**TODO Parameterize the thresholding types; default to Imgproc.THRESH_BINARY.
         // Including the type in the XML is better than our current method of negating
@@ -323,14 +366,12 @@ public class WatershedRecognition {
                 255,   // white
                 Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
 
-        String thrFilename = pOutputFilenamePreamble + "_THR.png";
-        Imgcodecs.imwrite(thrFilename, thresholded);
-        RobotLogCommon.d(TAG, "Writing " + thrFilename);
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_THR.png", thresholded);
 
         Mat watershedMarkers = WatershedUtils.applyWatershedHybrid(thresholded, pImageROI, sharp,
                 100, pOutputFilenamePreamble, "");
         showWatershedColor(watershedMarkers, pOutputFilenamePreamble);
-        return RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
+        return WatershedRegions.analyze(watershedMarkers, pImageROI, 2); // object markers start at 2
     }
 
     // Source: standard Java example - specific to the cards image.
@@ -339,69 +380,19 @@ public class WatershedRecognition {
     // extract better results during the use of Distance Transform
     //##PY This works because the cards are R 248, G 245, B 245
     private Mat invertCardsBackground(Mat pImageROI, String pOutputFilenamePreamble) {
-        Mat src = pImageROI.clone();
-        byte[] srcData = new byte[(int) (src.total() * src.channels())];
-        src.get(0, 0, srcData);
-        for (int i = 0; i < src.rows(); i++) {
-            for (int j = 0; j < src.cols(); j++) {
-                if (srcData[(i * src.cols() + j) * 3] == (byte) 255 && srcData[(i * src.cols() + j) * 3 + 1] == (byte) 255
-                        && srcData[(i * src.cols() + j) * 3 + 2] == (byte) 255) {
-                    srcData[(i * src.cols() + j) * 3] = 0;
-                    srcData[(i * src.cols() + j) * 3 + 1] = 0;
-                    srcData[(i * src.cols() + j) * 3 + 2] = 0;
-                }
-            }
-        }
-
-        src.put(0, 0, srcData);
+        Mat src = WatershedUtils.invertWhiteBackground(pImageROI);
 
         // Output the image with a black background.
-        Imgcodecs.imwrite(pOutputFilenamePreamble + "_BLK.png", src);
-        RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_BLK.png");
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_BLK.png", src);
 
         return src;
     }
 
+    // The colored watershed regions are only for display, so they are
+    // rendered by a DebugImageWriter from a snapshot of the markers.
     private void showWatershedColor(Mat pMarkers, String pOutputFilenamePreamble) {
-        // Generate random colors
-        Random rng = new Random(12345);
-        List<Scalar> colors = new ArrayList<>(pMarkers.rows());
-        for (int i = 0; i < pMarkers.rows(); i++) {
-            int b = rng.nextInt(256);
-            int g = rng.nextInt(256);
-            int r = rng.nextInt(256);
-            colors.add(new Scalar(b, g, r));
-        }
-
-        // Create the result image
-        Mat dst = Mat.zeros(pMarkers.size(), CvType.CV_8UC3);
-        byte[] dstData = new byte[(int) (dst.total() * dst.channels())];
-        dst.get(0, 0, dstData);
-
-        // Fill labeled objects with random colors.
-        int[] markersData = new int[(int) (pMarkers.total() * pMarkers.channels())];
-        pMarkers.get(0, 0, markersData);
-        for (int i = 0; i < pMarkers.rows(); i++) {
-            for (int j = 0; j < pMarkers.cols(); j++) {
-                int index = markersData[i * pMarkers.cols() + j];
-                // watershed object markers start at 2
-                if (index >= 2) {
-                    dstData[(((i * dst.cols()) + j) * 3) + 0] = (byte) colors.get(index - 2).val[0];
-                    dstData[(((i * dst.cols()) + j) * 3) + 1] = (byte) colors.get(index - 2).val[1];
-                    dstData[(((i * dst.cols()) + j) * 3) + 2] = (byte) colors.get(index - 2).val[2];
-                } else {
-                    dstData[(((i * dst.cols()) + j) * 3) + 0] = 0;
-                    dstData[(((i * dst.cols()) + j) * 3) + 1] = 0;
-                    dstData[(((i * dst.cols()) + j) * 3) + 2] = 0;
-                }
-            }
-        }
-
-        dst.put(0, 0, dstData);
-
-        // Visualize the final image
-        Imgcodecs.imwrite(pOutputFilenamePreamble + "_WS.png", dst);
-        RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_WS.png");
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_WS.png",
+                pMarkers, WatershedUtils::colorWatershedRegions);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
+import org.opencv.core.*;
+
+// The segmentation produced by Imgproc.watershed: the regions of the
+// watershed markers with the area, bounding box, centroid and mean color
+// of each region. The markers contain one label per pixel; the object
+// labels are a contiguous range (1 to n for the standard Java example,
+// 2 to n + 1 for the hybrid paths) and every other label - the boundaries
+// (-1), the unknown regions (0) and the background - is ignored.
+//
+// All of the statistics are accumulated in a single pass over the markers
+// and the image, after one bulk transfer of each out of OpenCV, into flat
+// arrays of primitives with a fixed number of entries per label, as in
+// ConnectedBlobs:
+// bounds - 4 ints per label: left, top, right, bottom (inclusive)
+// sums   - 6 longs per label: area, x, y, blue, green, red
+// So the cost is the same for 2 regions as for 200, unlike a mask and a
+// mean() per label.
+//
+// A seed may be swallowed by its neighbors during the watershed, so
+// labels without any pixels are dropped: region i (0 <= i < count) has
+// the marker label getLabel(i).
+public class WatershedRegions {
+
+    private static final String TAG = WatershedRegions.class.getSimpleName();
+
+    private static final int BOUNDS_COLUMNS = 4;
+    private static final int SUMS_COLUMNS = 6;
+
+    public final int count; // number of regions with at least one pixel
+    private final int[] labels; // marker label of each region
+    private final int[] bounds;
+    private final long[] sums;
+    private final Mat markers; // CV_32S, as returned by Imgproc.watershed
+
+    private WatershedRegions(int pCount, int[] pLabels, int[] pBounds, long[] pSums, Mat pMarkers) {
+        count = pCount;
+        labels = pLabels;
+        bounds = pBounds;
+        sums = pSums;
+        markers = pMarkers;
+    }
+
+    // The object labels are pFirstLabel up to and including the largest
+    // label in the markers.
+    public static WatershedRegions analyze(Mat pMarkers, Mat pImage, int pFirstLabel) {
+        int lastLabel = (int) Core.minMaxLoc(pMarkers).maxVal;
+        return analyze(pMarkers, pImage, pFirstLabel, lastLabel);
+    }
+
+    // pMarkers must be CV_32SC1 and pImage, from which the mean colors are
+    // taken, CV_8UC3 (BGR) of the same size. The object labels are
+    // pFirstLabel through pLastLabel.
+    public static WatershedRegions analyze(Mat pMarkers, Mat pImage, int pFirstLabel, int pLastLabel) {
+        if (pMarkers.type() != CvType.CV_32SC1)
+            throw new AutonomousRobotException(TAG, "Expected CV_32SC1 watershed markers");
+        if (pImage.type() != CvType.CV_8UC3 || !pImage.size().equals(pMarkers.size()))
+            throw new AutonomousRobotException(TAG, "Expected a CV_8UC3 image the same size as the markers");
+
+        long stageStart = StageTimer.start();
+        int rows = pMarkers.rows();
+        int cols = pMarkers.cols();
+        int[] markerData = new int[rows * cols];
+        pMarkers.get(0, 0, markerData);
+        byte[] imageData = new byte[rows * cols * 3];
+        pImage.get(0, 0, imageData);
+
+        int numLabels = Math.max(0, pLastLabel - pFirstLabel + 1);
+        int[] labelBounds = new int[numLabels * BOUNDS_COLUMNS];
+        long[] labelSums = new long[numLabels * SUMS_COLUMNS];
+        for (int i = 0; i < numLabels; i++) {
+            labelBounds[i * BOUNDS_COLUMNS] = Integer.MAX_VALUE;
+            labelBounds[i * BOUNDS_COLUMNS + 1] = Integer.MAX_VALUE;
+            labelBounds[i * BOUNDS_COLUMNS + 2] = -1;
+            labelBounds[i * BOUNDS_COLUMNS + 3] = -1;
+        }
+
+        int pixel = 0;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++, pixel++) {
+                int label = markerData[pixel] - pFirstLabel;
+                if (label < 0 || label >= numLabels)
+                    continue;
+
+                int b = label * BOUNDS_COLUMNS;
+                if (x < labelBounds[b]) labelBounds[b] = x;
+                if (y < labelBounds[b + 1]) labelBounds[b + 1] = y;
+                if (x > labelBounds[b + 2]) labelBounds[b + 2] = x;
+                if (y > labelBounds[b + 3]) labelBounds[b + 3] = y;
+
+                int s = label * SUMS_COLUMNS;
+                int p = pixel * 3;
+                labelSums[s]++;
+                labelSums[s + 1] += x;
+                labelSums[s + 2] += y;
+                labelSums[s + 3] += imageData[p] & 0xff;
+                labelSums[s + 4] += imageData[p + 1] & 0xff;
+                labelSums[s + 5] += imageData[p + 2] & 0xff;
+            }
+        }
+
+        // Drop the labels that have no pixels.
+        int numRegions = 0;
+        for (int i = 0; i < numLabels; i++)
+            if (labelSums[i * SUMS_COLUMNS] > 0)
+                numRegions++;
+
+        int[] regionLabels = new int[numRegions];
+        int[] regionBounds = new int[numRegions * BOUNDS_COLUMNS];
+        long[] regionSums = new long[numRegions * SUMS_COLUMNS];
+        int region = 0;
+        for (int i = 0; i < numLabels; i++) {
+            if (labelSums[i * SUMS_COLUMNS] == 0)
+                continue;
+
+            regionLabels[region] = pFirstLabel + i;
+            System.arraycopy(labelBounds, i * BOUNDS_COLUMNS, regionBounds, region * BOUNDS_COLUMNS, BOUNDS_COLUMNS);
+            System.arraycopy(labelSums, i * SUMS_COLUMNS, regionSums, region * SUMS_COLUMNS, SUMS_COLUMNS);
+            region++;
+        }
+
+        StageTimer.stop("WatershedRegions.analyze", stageStart);
+        return new WatershedRegions(numRegions, regionLabels, regionBounds, regionSums, pMarkers);
+    }
+
+    public int getLabel(int pRegion) {
+        return labels[pRegion];
+    }
+
+    // The number of pixels in the region.
+    public int getArea(int pRegion) {
+        return (int) sums[pRegion * SUMS_COLUMNS];
+    }
+
+    public Rect getBoundingRect(int pRegion) {
+        int b = pRegion * BOUNDS_COLUMNS;
+        return new Rect(bounds[b], bounds[b + 1], bounds[b + 2] - bounds[b] + 1, bounds[b + 3] - bounds[b + 1] + 1);
+    }
+
+    public Point getCentroid(int pRegion) {
+        int s = pRegion * SUMS_COLUMNS;
+        return new Point((double) sums[s + 1] / sums[s], (double) sums[s + 2] / sums[s]);
+    }
+
+    // The mean color of the region in BGR order.
+    public Scalar getMeanColor(int pRegion) {
+        int s = pRegion * SUMS_COLUMNS;
+        double area = sums[s];
+        return new Scalar(sums[s + 3] / area, sums[s + 4] / area, sums[s + 5] / area);
+    }
+
+    // Returns the index of the region with the largest area or -1 if there
+    // are no regions. Ties go to the region with the lowest label.
+    public int getLargest() {
+        int largest = -1;
+        int largestArea = -1;
+        for (int i = 0; i < count; i++) {
+            int area = getArea(i);
+            if (area > largestArea) {
+                largest = i;
+                largestArea = area;
+            }
+        }
+
+        return largest;
+    }
+
+    // The watershed markers themselves, one label per pixel.
+    public Mat getMarkers() {
+        return markers;
+    }
+
+    // Release the markers; the statistics remain valid.
+    public void release() {
+        markers.release();
+    }
+
+}
@@ -2,11 +2,14 @@ package org.firstinspires.ftc.teamcode.auto.vision;
 
 import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
 import org.firstinspires.ftc.teamcode.auto.DebugImageCommon;
+import org.firstinspires.ftc.teamcode.auto.MatTracker;
+import org.firstinspires.ftc.teamcode.auto.StageTimer;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class WatershedUtils {
     private static final String TAG = WatershedUtils.class.getSimpleName();
@@ -19,6 +22,8 @@ public class WatershedUtils {
                                            int pSureForegroundThresholdLow,
                                            String pOutputFilenamePreamble,
                                            String pOutputFilenameSuffix) {
+        long stageStart = StageTimer.start();
+
         //! [bin]
         // Both Python examples perform two morphological openings but the
         // standard Java example does not.
@@ -36,34 +41,32 @@ public class WatershedUtils {
          */
 
         // Follow the Python example and perform dilation for background identification.
-        Mat sure_bg = new Mat();
-        Mat dilateKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-        Imgproc.dilate(pBinaryImage, sure_bg, dilateKernel, new Point(-1, -1), 3);
-
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String bgFilename = pOutputFilenamePreamble + "_BG" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(bgFilename, sure_bg);
-            RobotLogCommon.vv(TAG, "Writing " + bgFilename);
-        }
+        MatWorkspace workspace = MatWorkspace.get();
+        int rows = pBinaryImage.rows();
+        int cols = pBinaryImage.cols();
+        Mat sure_bg = workspace.borrow(rows, cols, CvType.CV_8UC1);
+        Imgproc.dilate(pBinaryImage, sure_bg, MatWorkspace.getRectKernel(3), new Point(-1, -1), 3);
+
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_BG" + pOutputFilenameSuffix + ".png", sure_bg);
 
         //! [dist]
         // Follow both examples and perform the distance transform
         // algorithm. Imgproc.DIST_L2 is a flag for Euclidean distance.
         // Output is 32FC1.
-        Mat dist = new Mat();
+        long distanceStart = StageTimer.start();
+        Mat dist = workspace.borrow(rows, cols, CvType.CV_32FC1);
         Imgproc.distanceTransform(pBinaryImage, dist, Imgproc.DIST_L2, 3);
+        StageTimer.stop("WatershedUtils.distanceTransform", distanceStart);
 
         //##PY The normalization steps in the c++ example are not necessary
         // - just normalize to the range of 0 - 255.
         Core.normalize(dist, dist, 0.0, 255.0, Core.NORM_MINMAX);
-        Mat dist_8u = new Mat();
+        Mat dist_8u = workspace.borrow(rows, cols, CvType.CV_8UC1);
         dist.convertTo(dist_8u, CvType.CV_8U);
+        workspace.giveBack(dist);
 
         // Output the transformed image.
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.d)) {
-            String distFilename = pOutputFilenamePreamble + "_DIST" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(distFilename, dist_8u);
-            RobotLogCommon.d(TAG, "Writing " + distFilename);        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.d, TAG, pOutputFilenamePreamble + "_DIST" + pOutputFilenameSuffix + ".png", dist_8u);
         //! [dist]
 
         //! [peaks]
@@ -71,19 +74,16 @@ public class WatershedUtils {
         // These will be the markers for the foreground objects.
         //##PY Since we've already normalized to a range of 0 - 255 we can replace this
         // Imgproc.threshold(dist, dist, 0.4, 1.0, Imgproc.THRESH_BINARY);
-        Mat sure_fg = new Mat();
+        Mat sure_fg = workspace.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.threshold(dist_8u, sure_fg, pSureForegroundThresholdLow, 255, Imgproc.THRESH_BINARY);
+        workspace.giveBack(dist_8u);
 
         // From the c++ example. The Python example does not do this.
         // Dilate a bit the thresholded image.
-        Mat dilationKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-        Imgproc.dilate(sure_fg, sure_fg, dilationKernel);
+        Imgproc.dilate(sure_fg, sure_fg, MatWorkspace.getRectKernel(3));
 
         // Output the foreground peaks.
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            DebugImageCommon.writeImage(pOutputFilenamePreamble + "_FG" + pOutputFilenameSuffix + ".png", sure_fg);
-            RobotLogCommon.vv(TAG, "Writing " + pOutputFilenamePreamble + "_FG.png");
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_FG" + pOutputFilenameSuffix + ".png", sure_fg);
         //! [peaks]
 
         //! [seeds]
@@ -95,27 +95,27 @@ public class WatershedUtils {
         List<MatOfPoint> contours = new ArrayList<>();
         Mat hierarchy = new Mat();
         Imgproc.findContours(sure_fg, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        hierarchy.release();
 
         //#PY added - output the contours.
-        Mat contoursOut = pImageROI.clone();
-        ShapeDrawing.drawShapeContours(contours, contoursOut);
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String conFilename = pOutputFilenamePreamble + "_CON" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(conFilename, contoursOut);
-            RobotLogCommon.vv(TAG, "Writing " + conFilename);
+        if (DebugImageCommon.isWritable(RobotLogCommon.CommonLogLevel.vv)) {
+            List<Point[]> contourPoints = ShapeDrawing.snapshotContours(contours);
+            DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_CON" + pOutputFilenameSuffix + ".png",
+                    pImageROI, contoursOut -> {
+                        ShapeDrawing.drawShapeContourSnapshot(contourPoints, contoursOut);
+                        return contoursOut;
+                    });
         }
 
         // Follow the Python example to find the unknown regions
         //  sure_fg = np.uint8(sure_fg)
         //  unknown = cv2.subtract(sure_bg, sure_fg)
-        Mat unknown = new Mat();
+        Mat unknown = workspace.borrow(rows, cols, CvType.CV_8UC1);
         Core.subtract(sure_bg, sure_fg, unknown);
+        workspace.giveBack(sure_bg);
+        workspace.giveBack(sure_fg);
 
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String unkFilename = pOutputFilenamePreamble + "_UNK" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(unkFilename, unknown);
-            RobotLogCommon.vv(TAG, "Writing " + unkFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_UNK" + pOutputFilenameSuffix + ".png", unknown);
 
         // Create the markers for the watershed algorithm. From the comments
         // in the Python example: "The regions we know for sure (whether
@@ -123,7 +123,7 @@ public class WatershedUtils {
         // but different integers, and the areas we don't know for sure are
         // just left as zero." So we'll start with markers initialized to 1
         // for the sure background.
-        Mat markers = Mat.ones(dist.size(), CvType.CV_32S);
+        Mat markers = Mat.ones(rows, cols, CvType.CV_32S);
 
         // Follow the standard Java example and draw the foreground markers.
         for (int i = 0; i < contours.size(); i++) {
@@ -134,48 +134,100 @@ public class WatershedUtils {
         // # Now, mark the region of unknown with zero
         // markers[unknown==255] = 0
 
-        // Since we don't have that nice Python syntax,
-        // we need to iterate through the Mat of unknowns and for every
-        // white (255) value, set the marker at the same location to 0.
-        // See https://answers.opencv.org/question/5/how-to-get-and-modify-the-pixel-of-mat-in-java/?answer=8#post-id-8
-
-        // The number of elements in these two arrays should be the same.
-        byte[] unknownData = new byte[(int) (unknown.total() * unknown.channels())];
-        int[] markerData = new int[(int) (markers.total() * markers.channels())];
-        int numMarkerRows = markers.rows();
-        int numMarkerCols = markers.cols();
-        unknown.get(0, 0, unknownData);
-        markers.get(0, 0, markerData);
-        int sharedIndex;
-        for (int i = 0; i < numMarkerRows; i++) {
-            for (int j = 0; j < numMarkerCols; j++) {
-                sharedIndex = (i * numMarkerCols) + j;
-                if (((int) unknownData[sharedIndex] & 0xff) == 255) // Java doesn't have an unsigned byte!
-                    markerData[sharedIndex] = 0;
-            }
-        }
-
-        markers.put(0, 0, markerData); // back into Mat
+        // A masked setTo is the Java equivalent of that Python syntax.
+        Mat unknownMask = workspace.borrow(rows, cols, CvType.CV_8UC1);
+        Core.compare(unknown, new Scalar(255), unknownMask, Core.CMP_EQ);
+        markers.setTo(new Scalar(0), unknownMask);
+        workspace.giveBack(unknownMask);
+        workspace.giveBack(unknown);
 
         // Draw the markers - scaled so that they show - and with the
         // unknowns merged in. Note that there is only a small difference
         // between the unknown regions (at level 0) and the background.
-        Mat markersScaled = new Mat();
-        markers.convertTo(markersScaled, CvType.CV_32F);
-        Core.normalize(markersScaled, markersScaled, 0.0, 255.0, Core.NORM_MINMAX);
-        Mat markersDisplay = new Mat();
-        markersScaled.convertTo(markersDisplay, CvType.CV_8U);
-
-        // Output the markers.
-        if (RobotLogCommon.isLoggable(RobotLogCommon.CommonLogLevel.vv)) {
-            String markFilename = pOutputFilenamePreamble + "_MARK" + pOutputFilenameSuffix + ".png";
-            DebugImageCommon.writeImage(markFilename, markersDisplay);
-            RobotLogCommon.vv(TAG, "Writing " + markFilename);
-        }
+        DebugImageCommon.writeImage(RobotLogCommon.CommonLogLevel.vv, TAG, pOutputFilenamePreamble + "_MARK" + pOutputFilenameSuffix + ".png",
+                markers, markersSnapshot -> {
+                    Mat markersScaled = new Mat();
+                    markersSnapshot.convertTo(markersScaled, CvType.CV_32F);
+                    Core.normalize(markersScaled, markersScaled, 0.0, 255.0, Core.NORM_MINMAX);
+                    Mat markersDisplay = new Mat();
+                    markersScaled.convertTo(markersDisplay, CvType.CV_8U);
+                    markersScaled.release();
+                    return markersDisplay;
+                });
 
         //! [watershed]
         // Perform the watershed algorithm
+        long watershedStart = StageTimer.start();
         Imgproc.watershed(pSharp, markers);
-        return markers;
+        StageTimer.stop("WatershedUtils.watershed", watershedStart);
+
+        StageTimer.stop("WatershedUtils.applyWatershedHybrid", stageStart);
+        return MatTracker.track(markers);
+    }
+
+    // Returns a copy of a BGR image in which every pure white pixel,
+    // i.e. B, G and R all 255, has been changed to black.
+    public static Mat invertWhiteBackground(Mat pImageROI) {
+        Mat src = pImageROI.clone();
+        Mat white = new Mat();
+        Core.inRange(src, new Scalar(255, 255, 255), new Scalar(255, 255, 255), white);
+        src.setTo(new Scalar(0, 0, 0), white);
+        white.release();
+        return src;
+    }
+
+    // Returns a BGR image in which each object in the watershed markers
+    // has its own random color and the background (1), the unknown
+    // regions (0) and the boundaries (-1) are black. Object markers start
+    // at 2; as in the standard Java example there is one color per row of
+    // the markers and the colors are always the same.
+    public static Mat colorWatershedRegions(Mat pMarkers) {
+        // Generate random colors
+        Random rng = new Random(12345);
+        List<Scalar> colors = new ArrayList<>(pMarkers.rows());
+        for (int i = 0; i < pMarkers.rows(); i++) {
+            int b = rng.nextInt(256);
+            int g = rng.nextInt(256);
+            int r = rng.nextInt(256);
+            colors.add(new Scalar(b, g, r));
+        }
+
+        // Color the markers through a lookup table from marker to color.
+        // Core.LUT needs 8-bit input with the same number of channels as
+        // the table, so saturate the markers to 8 bits, which maps -1 to
+        // 0, and replicate them into 3 channels.
+        byte[] lutData = new byte[256 * 3];
+        for (int marker = 2; marker < 256 && marker - 2 < colors.size(); marker++) {
+            Scalar color = colors.get(marker - 2);
+            lutData[marker * 3] = (byte) color.val[0];
+            lutData[marker * 3 + 1] = (byte) color.val[1];
+            lutData[marker * 3 + 2] = (byte) color.val[2];
+        }
+
+        Mat lut = new Mat(1, 256, CvType.CV_8UC3);
+        lut.put(0, 0, lutData);
+        Mat markers8U = new Mat();
+        pMarkers.convertTo(markers8U, CvType.CV_8U);
+        Mat markersBGR = new Mat();
+        Imgproc.cvtColor(markers8U, markersBGR, Imgproc.COLOR_GRAY2BGR);
+        Mat dst = new Mat();
+        Core.LUT(markersBGR, lut, dst);
+
+        // Markers above 255 have been saturated to 255; there are only
+        // that many objects in a very busy image, so color them one by one.
+        int maxMarker = (int) Core.minMaxLoc(pMarkers).maxVal;
+        if (maxMarker > 255) {
+            Mat markerMask = new Mat();
+            for (int marker = 256; marker <= maxMarker && marker - 2 < colors.size(); marker++) {
+                Core.compare(pMarkers, new Scalar(marker), markerMask, Core.CMP_EQ);
+                dst.setTo(colors.get(marker - 2), markerMask);
+            }
+            markerMask.release();
+        }
+
+        lut.release();
+        markers8U.release();
+        markersBGR.release();
+        return dst;
     }
 }
@@ -0,0 +1,210 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.xml.RobotXMLElement;
+import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Parsing support shared by the *XML classes and a cache of the parameter
+// objects that they build.
+//
+// Finding a DocumentBuilderFactory and an XPathFactory is expensive and
+// neither the DocumentBuilder nor an XPath is thread-safe, so each thread
+// keeps one DocumentBuilder and one XPathFactory for all of its parsing.
+//
+// The parameter objects (GoldCubeParameters, DistanceParameters,
+// RecognitionWindowMapping etc.) have only final fields and are never
+// modified after they have been built, so a single instance is shared by
+// every action and thread that asks for it. Each object is cached under
+// the absolute path of the file it was built from, together with the
+// modification time and the size of the file when it was parsed; the
+// file is parsed again only if either has changed. For example:
+// GoldCubeParameters goldCubeParameters = ConfigCache.getGoldCubeParameters(pFullTestCaseDir);
+// The parameter files are parsed with the streaming parsers in
+// ParametersStAX.
+//
+// A DOM Document is not thread-safe even for reading, so the action
+// elements from RobotAction.xml are not cached: they are read once per
+// test case (see RobotActionStAX) and shared by all of the actions that
+// are prepared from them.
+public class ConfigCache {
+
+    private static final String TAG = ConfigCache.class.getSimpleName();
+
+    // Builds one parameter object from its XML file.
+    @FunctionalInterface
+    public interface ConfigParser<T> {
+        T parse() throws XPathExpressionException;
+    }
+
+    // A parameter object and the state of its file when it was parsed.
+    private static class CachedConfig {
+        private final FileTime lastModified;
+        private final long size;
+        private final Object config; // may be null
+
+        CachedConfig(FileTime pLastModified, long pSize, Object pConfig) {
+            lastModified = pLastModified;
+            size = pSize;
+            config = pConfig;
+        }
+    }
+
+    private static final Map<String, CachedConfig> configs = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = ThreadLocal.withInitial(() -> {
+        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+        dbFactory.setIgnoringComments(true);
+
+        // ONLY works with a validating parser (DTD or schema)
+        // dbFactory.setIgnoringElementContentWhitespace(true);
+        // Not supported in Android Studio dbFactory.setXIncludeAware(true);
+        try {
+            return dbFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException pex) {
+            throw new AutonomousRobotException(TAG, "DOM parser Exception " + pex.getMessage());
+        }
+    });
+
+    private static final ThreadLocal<XPathFactory> xpathFactory = ThreadLocal.withInitial(XPathFactory::newInstance);
+
+    public static Document parse(String pFilename) throws SAXException, IOException {
+        DocumentBuilder builder = documentBuilder.get();
+        builder.reset();
+        return builder.parse(new File(pFilename));
+    }
+
+    // An empty Document for elements that are built from a stream; see
+    // StAXCursor.readElement.
+    public static Document newDocument() {
+        return documentBuilder.get().newDocument();
+    }
+
+    public static XPath newXPath() {
+        return xpathFactory.get().newXPath();
+    }
+
+    // Returns the first element with the given name in document order,
+    // i.e. the result of the XPath expression //name, or null.
+    public static Node findElement(Document pDocument, String pElementName) {
+        NodeList elements = pDocument.getElementsByTagName(pElementName);
+        return elements.getLength() == 0 ? null : elements.item(0);
+    }
+
+    // Returns the first child element of pParent with the given name or null.
+    public static Node findChildElement(Node pParent, String pElementName) {
+        for (Node child = pParent.getFirstChild(); child != null; child = child.getNextSibling())
+            if (child.getNodeType() == Node.ELEMENT_NODE && child.getNodeName().equals(pElementName))
+                return child;
+        return null;
+    }
+
+    // Returns the object that pParser builds from pFilename. If the file
+    // has not changed since the object was cached the cached object is
+    // returned and pParser is not called. pKey distinguishes objects that
+    // are built from different parts of the same file, e.g. the recognition
+    // window mappings of the actions in a RobotAction.xml.
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String pFilename, String pKey, ConfigParser<T> pParser) throws XPathExpressionException {
+        Path path = Paths.get(pFilename).toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException iex) {
+            return pParser.parse(); // let the parser report the missing file
+        }
+
+        // Read the attributes before parsing so that a change to the file
+        // during parsing is picked up on the next call.
+        String cacheKey = path + "#" + pKey;
+        CachedConfig cached = configs.get(cacheKey);
+        if (cached != null && cached.lastModified.equals(attributes.lastModifiedTime()) && cached.size == attributes.size()) {
+            RobotLogCommon.d(TAG, "Using cached " + cacheKey);
+            return (T) cached.config;
+        }
+
+        T config = pParser.parse();
+        configs.put(cacheKey, new CachedConfig(attributes.lastModifiedTime(), attributes.size(), config));
+        return config;
+    }
+
+    // Always parse pFilename with pParser and cache the result, whatever
+    // the cached modification time and size say. For callers that already
+    // know that the file has changed, e.g. ConfigWatcher: an edit that keeps
+    // the size of the file and falls within the granularity of the file
+    // system's modification time would otherwise return the stale object.
+    public static <T> T reload(String pFilename, String pKey, ConfigParser<T> pParser) throws XPathExpressionException {
+        Path path = Paths.get(pFilename).toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException iex) {
+            return pParser.parse(); // let the parser report the missing file
+        }
+
+        T config = pParser.parse();
+        configs.put(path + "#" + pKey, new CachedConfig(attributes.lastModifiedTime(), attributes.size(), config));
+        return config;
+    }
+
+    // Cache an object that was built from pFilename without parsing it, e.g.
+    // one that was read from a ConfigSnapshot. pAttributes must describe the
+    // file from which the object was built.
+    public static void put(String pFilename, String pKey, Object pConfig, BasicFileAttributes pAttributes) {
+        Path path = Paths.get(pFilename).toAbsolutePath().normalize();
+        configs.put(path + "#" + pKey, new CachedConfig(pAttributes.lastModifiedTime(), pAttributes.size(), pConfig));
+    }
+
+    public static void clear() {
+        configs.clear();
+    }
+
+    public static GoldCubeParameters getGoldCubeParameters(String pXMLDir) throws XPathExpressionException {
+        return get(pXMLDir + GoldCubeParametersXML.GCP_FILE_NAME, "",
+                () -> ParametersStAX.getGoldCubeParameters(pXMLDir));
+    }
+
+    public static SampleContoursParameters getSampleContoursParameters(String pXMLDir) throws XPathExpressionException {
+        return get(pXMLDir + SampleContoursParametersXML.SAMPLE_FILE_NAME, "",
+                () -> ParametersStAX.getSampleContoursParameters(pXMLDir));
+    }
+
+    public static LABTesterParameters getLABTesterParameters(String pXMLDir) throws XPathExpressionException {
+        return get(pXMLDir + LABTesterParametersXML.GCP_FILE_NAME, "",
+                () -> ParametersStAX.getLABTesterParameters(pXMLDir));
+    }
+
+    public static DistanceParameters getDistanceParameters(String pXMLDir) throws XPathExpressionException {
+        return get(pXMLDir + DistanceParametersXML.DISTANCE_FILE_NAME, "",
+                () -> ParametersStAX.getDistanceParameters(pXMLDir));
+    }
+
+    // pActionElement must have been read from pRobotActionFilename; it is
+    // only used if the mapping is not already cached.
+    public static RecognitionWindowMapping getRecognitionWindowMapping(String pRobotActionFilename, RobotConstants.OpMode pOpMode,
+                                                                       RobotXMLElement pActionElement) throws XPathExpressionException {
+        return get(pRobotActionFilename, pOpMode + "/" + pActionElement.getRobotXMLElementName(),
+                () -> RecognitionWindowMappingXML.parseRecognitionWindowMapping(pOpMode, pActionElement.getRobotXMLElement()));
+    }
+
+}
@@ -0,0 +1,407 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.xml.RobotXMLElement;
+import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// A precompiled binary form of the configuration of a test case: the TEST
+// OpMode of RobotAction.xml and the parameter objects from those of
+// GoldCubeParameters.xml, SampleContoursParameters.xml,
+// LABTesterParameters.xml and DistanceParameters.xml that are present.
+// The snapshot is written by ConfigSnapshotCompiler to the test case
+// directory. RecognitionRunner.prepareTestCase uses it instead of parsing
+// the XML files as long as it is fresh, i.e. as long as the set of source
+// files and the CRC32 and length of each of them are the same as when the
+// snapshot was compiled. Otherwise the XML files are parsed as usual.
+//
+// Layout, all big-endian as written by DataOutputStream:
+//   int magic, int format version
+//   short source count, then per source: UTF file name, long length, long CRC32
+//   TEST OpMode: optional log level, optional starting position,
+//     short action count, then each action element as a tree
+//   short parameter file count, then per file: UTF file name, parameter fields
+//   long CRC32 of all of the preceding bytes
+// FORMAT_VERSION must be incremented whenever the layout or one of the
+// parameter classes changes; a snapshot with another version is stale.
+public class ConfigSnapshot {
+
+    private static final String TAG = ConfigSnapshot.class.getSimpleName();
+
+    public static final String SNAPSHOT_FILENAME = "ConfigSnapshot.bin";
+    private static final int MAGIC = 0x494A4353; // "IJCS"
+    private static final int FORMAT_VERSION = 1;
+
+    // The parameter files that may be part of a snapshot.
+    private static final List<String> PARAMETER_FILENAMES = List.of(
+            GoldCubeParametersXML.GCP_FILE_NAME,
+            SampleContoursParametersXML.SAMPLE_FILE_NAME,
+            LABTesterParametersXML.GCP_FILE_NAME,
+            DistanceParametersXML.DISTANCE_FILE_NAME);
+
+    private static final byte ELEMENT = 1;
+    private static final byte TEXT = 2;
+
+    public final RobotActionXML.RobotActionData robotActionData; // the TEST OpMode
+    private final String xmlDir;
+    private final Map<String, Object> parameters; // keyed by file name
+    private final Map<String, BasicFileAttributes> sourceAttributes; // keyed by file name
+
+    private ConfigSnapshot(String pXMLDir, RobotActionXML.RobotActionData pRobotActionData,
+                           Map<String, Object> pParameters, Map<String, BasicFileAttributes> pSourceAttributes) {
+        xmlDir = pXMLDir;
+        robotActionData = pRobotActionData;
+        parameters = pParameters;
+        sourceAttributes = pSourceAttributes;
+    }
+
+    // Parse RobotAction.xml and the parameter files in pXMLDir, which must
+    // all be valid, and write the snapshot to the same directory.
+    public static void compile(String pXMLDir) throws IOException {
+        List<String> sources = new ArrayList<>();
+        sources.add(RobotConstants.ACTION_FILENAME);
+        for (String oneFilename : PARAMETER_FILENAMES)
+            if (Files.isRegularFile(Paths.get(pXMLDir + oneFilename)))
+                sources.add(oneFilename);
+
+        // Checksum the sources before they are parsed so that a change
+        // during compilation makes the snapshot stale.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeShort(sources.size());
+        for (String oneSource : sources) {
+            byte[] sourceBytes = Files.readAllBytes(Paths.get(pXMLDir + oneSource));
+            out.writeUTF(oneSource);
+            out.writeLong(sourceBytes.length);
+            out.writeLong(crc32(sourceBytes, sourceBytes.length));
+        }
+
+        RobotActionXML.RobotActionData actionData =
+                RobotActionStAX.getOpModeData(pXMLDir + RobotConstants.ACTION_FILENAME, "TEST");
+        writeRobotActionData(out, actionData);
+
+        out.writeShort(sources.size() - 1);
+        for (String oneSource : sources.subList(1, sources.size())) {
+            out.writeUTF(oneSource);
+            writeParameters(out, oneSource, pXMLDir);
+        }
+
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        // Write to a temporary file first so that a reader never sees
+        // a partial snapshot.
+        Path snapshotPath = Paths.get(pXMLDir + SNAPSHOT_FILENAME);
+        Path tempPath = Paths.get(pXMLDir + SNAPSHOT_FILENAME + ".tmp");
+        Files.write(tempPath, bytes.toByteArray());
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        RobotLogCommon.c(TAG, "Wrote " + snapshotPath + " from " + sources);
+    }
+
+    // Returns the snapshot in pXMLDir or null if there is no snapshot or
+    // it is stale, in which case the caller should parse the XML files.
+    public static ConfigSnapshot load(String pXMLDir) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Paths.get(pXMLDir + SNAPSHOT_FILENAME));
+        } catch (NoSuchFileException nex) {
+            return null;
+        } catch (IOException iex) {
+            RobotLogCommon.c(TAG, "Unable to read " + SNAPSHOT_FILENAME + ": " + iex.getMessage());
+            return null;
+        }
+
+        try {
+            String staleReason = checkSnapshot(bytes);
+            if (staleReason != null) {
+                RobotLogCommon.c(TAG, "Ignoring " + SNAPSHOT_FILENAME + ": " + staleReason);
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 8, bytes.length - 16));
+            Map<String, BasicFileAttributes> sourceAttributes = new LinkedHashMap<>();
+            int sourceCount = in.readUnsignedShort();
+            for (int i = 0; i < sourceCount; i++) {
+                String sourceFilename = in.readUTF();
+                long length = in.readLong();
+                long crc = in.readLong();
+
+                // Read the attributes before the contents so that a change
+                // after the check is seen by the ConfigCache.
+                Path sourcePath = Paths.get(pXMLDir + sourceFilename);
+                BasicFileAttributes attributes;
+                byte[] sourceBytes;
+                try {
+                    attributes = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+                    sourceBytes = Files.readAllBytes(sourcePath);
+                } catch (NoSuchFileException nex) {
+                    RobotLogCommon.c(TAG, "Ignoring " + SNAPSHOT_FILENAME + ": " + sourceFilename + " has been removed");
+                    return null;
+                }
+
+                if (sourceBytes.length != length || crc32(sourceBytes, sourceBytes.length) != crc) {
+                    RobotLogCommon.c(TAG, "Ignoring " + SNAPSHOT_FILENAME + ": " + sourceFilename + " has changed");
+                    return null;
+                }
+                sourceAttributes.put(sourceFilename, attributes);
+            }
+
+            for (String oneFilename : PARAMETER_FILENAMES)
+                if (!sourceAttributes.containsKey(oneFilename) && Files.exists(Paths.get(pXMLDir + oneFilename))) {
+                    RobotLogCommon.c(TAG, "Ignoring " + SNAPSHOT_FILENAME + ": " + oneFilename + " has been added");
+                    return null;
+                }
+
+            RobotActionXML.RobotActionData actionData = readRobotActionData(in);
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            int parameterCount = in.readUnsignedShort();
+            for (int i = 0; i < parameterCount; i++) {
+                String parameterFilename = in.readUTF();
+                parameters.put(parameterFilename, readParameters(in, parameterFilename));
+            }
+
+            RobotLogCommon.c(TAG, "Using " + SNAPSHOT_FILENAME + " for " + sourceAttributes.keySet());
+            return new ConfigSnapshot(pXMLDir, actionData, parameters, sourceAttributes);
+        } catch (IOException iex) {
+            RobotLogCommon.c(TAG, "Ignoring " + SNAPSHOT_FILENAME + ": " + iex);
+            return null;
+        }
+    }
+
+    // Put the parameter objects into the ConfigCache so that the
+    // ConfigCache.get... methods return them without parsing.
+    public void primeConfigCache() {
+        for (Map.Entry<String, Object> oneParameters : parameters.entrySet())
+            ConfigCache.put(xmlDir + oneParameters.getKey(), "", oneParameters.getValue(),
+                    sourceAttributes.get(oneParameters.getKey()));
+    }
+
+    // Returns null if the snapshot is intact and has the current format,
+    // otherwise the reason why it can't be used.
+    private static String checkSnapshot(byte[] pBytes) throws IOException {
+        if (pBytes.length < 16)
+            return "truncated";
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(pBytes));
+        if (in.readInt() != MAGIC)
+            return "not a configuration snapshot";
+
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            return "format version " + version + ", expected " + FORMAT_VERSION;
+
+        long storedCRC = new DataInputStream(new ByteArrayInputStream(pBytes, pBytes.length - 8, 8)).readLong();
+        if (crc32(pBytes, pBytes.length - 8) != storedCRC)
+            return "checksum mismatch";
+
+        return null;
+    }
+
+    private static long crc32(byte[] pBytes, int pLength) {
+        CRC32 crc = new CRC32();
+        crc.update(pBytes, 0, pLength);
+        return crc.getValue();
+    }
+
+    private static void writeRobotActionData(DataOutputStream pOut, RobotActionXML.RobotActionData pActionData) throws IOException {
+        pOut.writeBoolean(pActionData.logLevel != null);
+        if (pActionData.logLevel != null)
+            pOut.writeUTF(pActionData.logLevel.name());
+
+        pOut.writeBoolean(pActionData.startingPositionData != null);
+        if (pActionData.startingPositionData != null) {
+            pOut.writeDouble(pActionData.startingPositionData.startingX);
+            pOut.writeDouble(pActionData.startingPositionData.startingY);
+            pOut.writeDouble(pActionData.startingPositionData.startingAngle);
+        }
+
+        pOut.writeShort(pActionData.actionElements.size());
+        for (RobotXMLElement oneAction : pActionData.actionElements)
+            writeElement(pOut, oneAction.getRobotXMLElement());
+    }
+
+    private static RobotActionXML.RobotActionData readRobotActionData(DataInputStream pIn) throws IOException {
+        RobotLogCommon.CommonLogLevel logLevel = null;
+        if (pIn.readBoolean())
+            logLevel = RobotLogCommon.CommonLogLevel.valueOf(pIn.readUTF());
+
+        RobotActionXML.StartingPositionData startingPositionData = null;
+        if (pIn.readBoolean())
+            startingPositionData = new RobotActionXML.StartingPositionData(pIn.readDouble(), pIn.readDouble(), pIn.readDouble());
+
+        // As with RobotActionStAX the action elements share one Document.
+        Document document = ConfigCache.newDocument();
+        Element actionsElement = document.createElement("actions");
+        document.appendChild(actionsElement);
+        List<RobotXMLElement> actionElements = new ArrayList<>();
+        int actionCount = pIn.readUnsignedShort();
+        for (int i = 0; i < actionCount; i++) {
+            Element actionElement = readElement(pIn, document);
+            actionsElement.appendChild(actionElement);
+            actionElements.add(new RobotXMLElement(actionElement));
+        }
+
+        return new RobotActionXML.RobotActionData(logLevel, startingPositionData, actionElements);
+    }
+
+    // An element with its attributes, text and child elements.
+    private static void writeElement(DataOutputStream pOut, Element pElement) throws IOException {
+        pOut.writeUTF(pElement.getNodeName());
+        NamedNodeMap attributes = pElement.getAttributes();
+        pOut.writeShort(attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            pOut.writeUTF(attributes.item(i).getNodeName());
+            pOut.writeUTF(attributes.item(i).getNodeValue());
+        }
+
+        List<Node> children = new ArrayList<>();
+        for (Node child = pElement.getFirstChild(); child != null; child = child.getNextSibling())
+            if (child.getNodeType() == Node.ELEMENT_NODE || child.getNodeType() == Node.TEXT_NODE ||
+                    child.getNodeType() == Node.CDATA_SECTION_NODE)
+                children.add(child);
+
+        pOut.writeShort(children.size());
+        for (Node oneChild : children) {
+            if (oneChild.getNodeType() == Node.ELEMENT_NODE) {
+                pOut.writeByte(ELEMENT);
+                writeElement(pOut, (Element) oneChild);
+            } else {
+                pOut.writeByte(TEXT);
+                pOut.writeUTF(oneChild.getNodeValue());
+            }
+        }
+    }
+
+    private static Element readElement(DataInputStream pIn, Document pDocument) throws IOException {
+        Element element = pDocument.createElement(pIn.readUTF());
+        int attributeCount = pIn.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++)
+            element.setAttribute(pIn.readUTF(), pIn.readUTF());
+
+        int childCount = pIn.readUnsignedShort();
+        for (int i = 0; i < childCount; i++) {
+            byte childType = pIn.readByte();
+            switch (childType) {
+                case ELEMENT -> element.appendChild(readElement(pIn, pDocument));
+                case TEXT -> element.appendChild(pDocument.createTextNode(pIn.readUTF()));
+                default -> throw new IOException("Invalid node type " + childType);
+            }
+        }
+
+        return element;
+    }
+
+    private static void writeParameters(DataOutputStream pOut, String pFilename, String pXMLDir) throws IOException {
+        switch (pFilename) {
+            case GoldCubeParametersXML.GCP_FILE_NAME -> {
+                GoldCubeParameters goldCubeParameters = ParametersStAX.getGoldCubeParameters(pXMLDir);
+                writeGray(pOut, goldCubeParameters.grayscaleParameters);
+                writeHSV(pOut, goldCubeParameters.hsvParameters);
+                pOut.writeDouble(goldCubeParameters.boundingBoxCriteria.minBoundingBoxArea);
+                pOut.writeDouble(goldCubeParameters.boundingBoxCriteria.maxBoundingBoxArea);
+            }
+            case SampleContoursParametersXML.SAMPLE_FILE_NAME -> {
+                SampleContoursParameters sampleContoursParameters = ParametersStAX.getSampleContoursParameters(pXMLDir);
+                writeGray(pOut, sampleContoursParameters.rgbChannelGrayscaleParameters.redGrayParameters);
+                writeGray(pOut, sampleContoursParameters.rgbChannelGrayscaleParameters.greenGrayParameters);
+                writeHSV(pOut, sampleContoursParameters.hsvColorParameters.blueHSVParameters);
+            }
+            case LABTesterParametersXML.GCP_FILE_NAME -> {
+                LABTesterParameters labTesterParameters = ParametersStAX.getLABTesterParameters(pXMLDir);
+                writeGray(pOut, labTesterParameters.grayscaleParameters);
+                writeLAB(pOut, labTesterParameters.labParameters);
+            }
+            case DistanceParametersXML.DISTANCE_FILE_NAME -> {
+                DistanceParameters distanceParameters = ParametersStAX.getDistanceParameters(pXMLDir);
+                writeGray(pOut, distanceParameters.colorChannelBrightSpotParameters.redGrayParameters);
+                writeGray(pOut, distanceParameters.colorChannelBrightSpotParameters.blueGrayParameters);
+                writeGray(pOut, distanceParameters.colorChannelPixelCountParameters.redGrayParameters);
+                pOut.writeInt(distanceParameters.colorChannelPixelCountParameters.redMinWhitePixelCount);
+                writeGray(pOut, distanceParameters.colorChannelPixelCountParameters.blueGrayParameters);
+                pOut.writeInt(distanceParameters.colorChannelPixelCountParameters.blueMinWhitePixelCount);
+            }
+            default -> throw new AutonomousRobotException(TAG, "Unsupported parameter file " + pFilename);
+        }
+    }
+
+    private static Object readParameters(DataInputStream pIn, String pFilename) throws IOException {
+        return switch (pFilename) {
+            case GoldCubeParametersXML.GCP_FILE_NAME -> new GoldCubeParameters(readGray(pIn), readHSV(pIn),
+                    new GoldCubeParameters.BoundingBoxCriteria(pIn.readDouble(), pIn.readDouble()));
+            case SampleContoursParametersXML.SAMPLE_FILE_NAME -> new SampleContoursParameters(
+                    new SampleContoursParameters.RGBChannelGrayscaleParameters(readGray(pIn), readGray(pIn)),
+                    new SampleContoursParameters.HSVColorParameters(readHSV(pIn)));
+            case LABTesterParametersXML.GCP_FILE_NAME -> new LABTesterParameters(readGray(pIn), readLAB(pIn));
+            case DistanceParametersXML.DISTANCE_FILE_NAME -> new DistanceParameters(
+                    new DistanceParameters.ColorChannelBrightSpotParameters(readGray(pIn), readGray(pIn)),
+                    new DistanceParameters.ColorChannelPixelCountParameters(readGray(pIn), pIn.readInt(), readGray(pIn), pIn.readInt()));
+            default -> throw new IOException("Unsupported parameter file " + pFilename);
+        };
+    }
+
+    private static void writeGray(DataOutputStream pOut, VisionParameters.GrayParameters pGray) throws IOException {
+        pOut.writeInt(pGray.median_target);
+        pOut.writeInt(pGray.threshold_low);
+    }
+
+    private static VisionParameters.GrayParameters readGray(DataInputStream pIn) throws IOException {
+        return new VisionParameters.GrayParameters(pIn.readInt(), pIn.readInt());
+    }
+
+    private static void writeHSV(DataOutputStream pOut, VisionParameters.HSVParameters pHSV) throws IOException {
+        pOut.writeUTF(pHSV.hue_name);
+        pOut.writeInt(pHSV.hue_low);
+        pOut.writeInt(pHSV.hue_high);
+        pOut.writeInt(pHSV.saturation_median_target);
+        pOut.writeInt(pHSV.saturation_threshold_low);
+        pOut.writeInt(pHSV.value_median_target);
+        pOut.writeInt(pHSV.value_threshold_low);
+    }
+
+    private static VisionParameters.HSVParameters readHSV(DataInputStream pIn) throws IOException {
+        return new VisionParameters.HSVParameters(pIn.readUTF(), pIn.readInt(), pIn.readInt(),
+                pIn.readInt(), pIn.readInt(), pIn.readInt(), pIn.readInt());
+    }
+
+    // The L*a*b* values are stored after their adjustment for OpenCV.
+    private static void writeLAB(DataOutputStream pOut, VisionParameters.LABParameters pLAB) throws IOException {
+        pOut.writeDouble(pLAB.L_star_low);
+        pOut.writeDouble(pLAB.L_star_high);
+        pOut.writeDouble(pLAB.a_star_low);
+        pOut.writeDouble(pLAB.a_star_high);
+        pOut.writeDouble(pLAB.b_star_low);
+        pOut.writeDouble(pLAB.b_star_high);
+    }
+
+    private static VisionParameters.LABParameters readLAB(DataInputStream pIn) throws IOException {
+        return VisionParameters.LABParameters.fromOpenCVValues(pIn.readDouble(), pIn.readDouble(),
+                pIn.readDouble(), pIn.readDouble(), pIn.readDouble(), pIn.readDouble());
+    }
+
+}
@@ -0,0 +1,193 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Threading;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Hot reload of the parameter files in a test case directory for long-
+// running modes such as the StreamRunner, so that a file such as
+// DistanceParameters.xml can be tuned while a stream is running.
+//
+// Each watched file is represented by a Supplier that returns the current
+// parameter object for the file. A WatchService on the directory tells a
+// single background thread which files have changed; only those files
+// are parsed again. If the new version of a file is valid its parameter
+// object replaces the old one with a single volatile write; if it is not
+// valid the error is logged and the old object stays in use. For example:
+// Supplier<DistanceParameters> distanceParameters = configWatcher.getDistanceParameters();
+// and once per frame:
+// DistanceParameters current = distanceParameters.get();
+//
+// The parameter objects are immutable, so get() on the recognition path is
+// a single volatile read: no lock, and a frame always sees either the old
+// or the new object in full. A recognition should call get() once per frame
+// and use the same object throughout the frame.
+public class ConfigWatcher implements AutoCloseable {
+
+    private static final String TAG = ConfigWatcher.class.getSimpleName();
+
+    // Editors often write a file in more than one step, e.g. truncate and
+    // then write, so wait for the events to settle before reading the file.
+    private static final long SETTLE_MILLIS = 100;
+
+    // The current parameter object for one file. The first version comes
+    // from the ConfigCache like any other; after that the watcher knows
+    // that the file has changed, so it is parsed again without consulting
+    // the cached modification time and size.
+    private static class LiveConfig<T> implements Supplier<T> {
+        private final String filename;
+        private final String fullFilename;
+        private final ConfigCache.ConfigParser<T> parser;
+        private volatile T config;
+
+        LiveConfig(String pFilename, String pFullFilename, ConfigCache.ConfigParser<T> pParser) throws XPathExpressionException {
+            filename = pFilename;
+            fullFilename = pFullFilename;
+            parser = pParser;
+            config = ConfigCache.get(pFullFilename, "", pParser);
+        }
+
+        @Override
+        public T get() {
+            return config;
+        }
+
+        // Called only from the watcher thread.
+        private void reload() {
+            try {
+                config = ConfigCache.reload(fullFilename, "", parser); // validates the whole file
+                RobotLogCommon.c(TAG, "Reloaded " + filename);
+            } catch (AutonomousRobotException | XPathExpressionException ex) {
+                RobotLogCommon.c(TAG, "Invalid " + filename + ", keeping the previous parameters: " + ex.getMessage());
+            } catch (RuntimeException rex) {
+                RobotLogCommon.c(TAG, "Unable to reload " + filename + ", keeping the previous parameters: " + rex);
+            }
+        }
+    }
+
+    private final String xmlDir;
+    private final WatchService watchService;
+    private final Map<String, LiveConfig<?>> configs = new ConcurrentHashMap<>(); // keyed by file name
+    private final CompletableFuture<Void> watcherFuture;
+    private volatile boolean closed = false;
+
+    // pXMLDir ends with a separator, as for ConfigCache.
+    public ConfigWatcher(String pXMLDir) throws IOException {
+        xmlDir = pXMLDir;
+        Path directory = Paths.get(pXMLDir).toAbsolutePath().normalize();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        RobotLogCommon.c(TAG, "Watching " + directory + " for changes to parameter files");
+        watcherFuture = Threading.launchAsync(new Watcher());
+    }
+
+    // Returns the Supplier for pFilename, a file in the watched directory,
+    // whose parameter object is built by pParser, one of the parsers in
+    // ParametersStAX, and cached in the ConfigCache. The file is parsed now and
+    // any error is thrown to the caller, as it would be without hot reload.
+    // All callers that watch the same file share one Supplier.
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> watch(String pFilename, ConfigCache.ConfigParser<T> pParser) throws XPathExpressionException {
+        LiveConfig<?> liveConfig = configs.get(pFilename);
+        if (liveConfig == null) {
+            LiveConfig<T> newLiveConfig = new LiveConfig<>(pFilename, xmlDir + pFilename, pParser);
+            liveConfig = configs.putIfAbsent(pFilename, newLiveConfig);
+            if (liveConfig == null)
+                liveConfig = newLiveConfig;
+        }
+
+        return (Supplier<T>) liveConfig;
+    }
+
+    public Supplier<GoldCubeParameters> getGoldCubeParameters() throws XPathExpressionException {
+        return watch(GoldCubeParametersXML.GCP_FILE_NAME, () -> ParametersStAX.getGoldCubeParameters(xmlDir));
+    }
+
+    public Supplier<SampleContoursParameters> getSampleContoursParameters() throws XPathExpressionException {
+        return watch(SampleContoursParametersXML.SAMPLE_FILE_NAME, () -> ParametersStAX.getSampleContoursParameters(xmlDir));
+    }
+
+    public Supplier<LABTesterParameters> getLABTesterParameters() throws XPathExpressionException {
+        return watch(LABTesterParametersXML.GCP_FILE_NAME, () -> ParametersStAX.getLABTesterParameters(xmlDir));
+    }
+
+    public Supplier<DistanceParameters> getDistanceParameters() throws XPathExpressionException {
+        return watch(DistanceParametersXML.DISTANCE_FILE_NAME, () -> ParametersStAX.getDistanceParameters(xmlDir));
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            watchService.close(); // unblocks the watcher
+            Threading.getFutureCompletion(watcherFuture);
+        } catch (Throwable t) {
+            RobotLogCommon.d(TAG, "Exception during shutdown of the config watcher " + t);
+        }
+    }
+
+    private class Watcher implements Callable<Void> {
+
+        public Void call() throws InterruptedException {
+            try {
+                while (!closed) {
+                    WatchKey key = watchService.take();
+                    Set<String> changedFiles = new HashSet<>();
+                    boolean overflow = collectEvents(key, changedFiles);
+
+                    // Pick up the rest of the writes to the same files.
+                    while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                        overflow |= collectEvents(key, changedFiles);
+
+                    // Events for files that are not watched, e.g. an editor's
+                    // backup files, are ignored.
+                    for (Map.Entry<String, LiveConfig<?>> oneConfig : configs.entrySet())
+                        if (overflow || changedFiles.contains(oneConfig.getKey()))
+                            oneConfig.getValue().reload();
+                }
+            } catch (ClosedWatchServiceException cwex) {
+                // close() was called
+            }
+
+            return null;
+        }
+
+        // Returns true if events were lost, in which case every file must
+        // be checked.
+        private boolean collectEvents(WatchKey pKey, Set<String> pChangedFiles) {
+            boolean overflow = false;
+            for (WatchEvent<?> oneEvent : pKey.pollEvents()) {
+                if (oneEvent.kind() == StandardWatchEventKinds.OVERFLOW)
+                    overflow = true;
+                else
+                    pChangedFiles.add(((Path) oneEvent.context()).getFileName().toString());
+            }
+
+            pKey.reset();
+            return overflow;
+        }
+    }
+
+}
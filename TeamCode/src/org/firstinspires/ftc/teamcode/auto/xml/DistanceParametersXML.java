@@ -7,18 +7,13 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.*;
-import java.io.File;
 import java.io.IOException;
 
 // Class whose job it is to read an XML file that contains all of the information
 // needed to perform an OpenCV Watershed operation.
 public class DistanceParametersXML {
     public static final String TAG = DistanceParametersXML.class.getSimpleName();
-    private static final String DISTANCE_FILE_NAME = "DistanceParameters.xml";
+    static final String DISTANCE_FILE_NAME = "DistanceParameters.xml";
 
     private final DistanceParameters distanceParameters;
 
@@ -28,32 +23,17 @@ public class DistanceParametersXML {
             String xmlFilePath = pXMLDir + DISTANCE_FILE_NAME;
             RobotLogCommon.c(TAG, "Parsing " + DISTANCE_FILE_NAME);
 
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            dbFactory.setIgnoringComments(true);
-
-            // ONLY works with a validating parser (DTD or schema)
-            // dbFactory.setIgnoringElementContentWhitespace(true);
-            // Not supported in Android Studio dbFactory.setXIncludeAware(true);
-
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document document = dBuilder.parse(new File(xmlFilePath));
-            XPathFactory xpathFactory = XPathFactory.newInstance();
-            XPath xpath = xpathFactory.newXPath();
+            Document document = ConfigCache.parse(xmlFilePath);
 
             // Point to the first node.
-            XPathExpression expr = xpath.compile("//distance_parameters");
-            distance_parameters_node = (Node) expr.evaluate(document, XPathConstants.NODE);
+            distance_parameters_node = ConfigCache.findElement(document, "distance_parameters");
             if (distance_parameters_node == null)
                 throw new AutonomousRobotException(TAG, "Element '//distance_parameters' not found");
 
-        } catch (ParserConfigurationException pex) {
-            throw new AutonomousRobotException(TAG, "DOM parser Exception " + pex.getMessage());
         } catch (SAXException sx) {
             throw new AutonomousRobotException(TAG, "SAX Exception " + sx.getMessage());
         } catch (IOException iex) {
             throw new AutonomousRobotException(TAG, "IOException " + iex.getMessage());
-        } catch (XPathExpressionException xex) {
-            throw new AutonomousRobotException(TAG, "XPath Exception " + xex.getMessage());
         }
 
         // Point to <color_channel_bright_spot>
@@ -7,38 +7,20 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.*;
-import java.io.File;
 import java.io.IOException;
 
 // Class whose job it is to read an XML file that contains all of the information
 // needed for our OpenCV methods to recognize a gold cube during Autonomous.
 public class GoldCubeParametersXML {
     public static final String TAG = GoldCubeParametersXML.class.getSimpleName();
-    private static final String GCP_FILE_NAME = "GoldCubeParameters.xml";
+    static final String GCP_FILE_NAME = "GoldCubeParameters.xml";
 
     private final Document document;
-    private final XPath xpath;
 
     public GoldCubeParametersXML(String pXMLDir) {
         try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            dbFactory.setIgnoringComments(true);
-
-            // ONLY works with a validating parser (DTD or schema)
-            // dbFactory.setIgnoringElementContentWhitespace(true);
-            // Not supported in Android Studio dbFactory.setXIncludeAware(true);
-
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            document = dBuilder.parse(new File(pXMLDir + GCP_FILE_NAME));
-            XPathFactory xpathFactory = XPathFactory.newInstance();
-            xpath = xpathFactory.newXPath();
-
-        } catch (ParserConfigurationException pex) {
-            throw new AutonomousRobotException(TAG, "DOM parser Exception " + pex.getMessage());
+            document = ConfigCache.parse(pXMLDir + GCP_FILE_NAME);
         } catch (SAXException sx) {
             throw new AutonomousRobotException(TAG, "SAX Exception " + sx.getMessage());
         } catch (IOException iex) {
@@ -47,15 +29,13 @@ public class GoldCubeParametersXML {
     }
 
     public GoldCubeParameters getGoldCubeParameters() throws XPathExpressionException {
-        XPathExpression expr;
         VisionParameters.GrayParameters grayParameters;
         VisionParameters.HSVParameters hsvParameters;
 
         // Point to the first node.
         RobotLogCommon.d(TAG, "Parsing XML gold_cube_parameters");
 
-        expr = xpath.compile("//gold_cube_parameters");
-        Node gold_cube_parameters_node = (Node) expr.evaluate(document, XPathConstants.NODE);
+        Node gold_cube_parameters_node = ConfigCache.findElement(document, "gold_cube_parameters");
         if (gold_cube_parameters_node == null)
             throw new AutonomousRobotException(TAG, "Element '//gold_cube_parameters' not found");
 
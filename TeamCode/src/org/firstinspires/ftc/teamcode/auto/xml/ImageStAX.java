@@ -0,0 +1,143 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.opencv.core.Rect;
+
+import javax.xml.stream.XMLStreamException;
+
+// Streaming counterparts of the ImageXML methods. Each method expects the
+// cursor to be on the start of its element and leaves it on the end of the
+// element. The elements and the validation errors are the same as those
+// of ImageXML, including the TAG.
+public class ImageStAX {
+
+    private static final String TAG = ImageXML.TAG;
+
+    // See ImageXML.parseImageParameters.
+    public static VisionParameters.ImageParameters parseImageParameters(StAXCursor pCursor) throws XMLStreamException {
+        if (!pCursor.isStartElement() || !pCursor.getName().equals("image_parameters"))
+            throw new AutonomousRobotException(TAG, "Missing required <image_parameters> element");
+
+        int level = pCursor.getDepth();
+        String image_source = requireText(pCursor, "image_source", "Element 'image_source' not found");
+
+        if (!pCursor.nextElement("resolution"))
+            throw new AutonomousRobotException(TAG, "Element 'resolution' not found");
+
+        int resolutionLevel = pCursor.getDepth();
+        int resolution_width = parseInt(pCursor, "width", "resolution/width");
+        int resolution_height = parseInt(pCursor, "height", "resolution/height");
+        pCursor.finishElement(resolutionLevel);
+
+        if (!pCursor.nextElement("image_roi"))
+            throw new AutonomousRobotException(TAG, "Element 'image_roi' not found");
+
+        Rect image_roi = parseROI(pCursor);
+        pCursor.finishElement(level);
+
+        return new VisionParameters.ImageParameters(image_source, resolution_width, resolution_height, image_roi);
+    }
+
+    // Parse any element that contains the 4 ROI children.
+    private static Rect parseROI(StAXCursor pCursor) throws XMLStreamException {
+        int level = pCursor.getDepth();
+        int roiX = parseInt(pCursor, "x", "x");
+        int roiY = parseInt(pCursor, "y", "y");
+        int roiWidth = parseInt(pCursor, "width", "width");
+        int roiHeight = parseInt(pCursor, "height", "height");
+        pCursor.finishElement(level);
+
+        return new Rect(roiX, roiY, roiWidth, roiHeight);
+    }
+
+    // See ImageXML.parseGrayParameters.
+    public static VisionParameters.GrayParameters parseGrayParameters(StAXCursor pCursor) throws XMLStreamException {
+        if (!pCursor.isStartElement() || !pCursor.getName().equals("gray_parameters"))
+            throw new AutonomousRobotException(TAG, "Missing required <gray_parameters> element");
+
+        int level = pCursor.getDepth();
+        int median_target = parseInt(pCursor, "median_target", "median_target");
+        int threshold_low = parseInt(pCursor, "threshold_low", "threshold_low");
+        pCursor.finishElement(level);
+
+        return new VisionParameters.GrayParameters(median_target, threshold_low);
+    }
+
+    // See ImageXML.parseHSVParameters.
+    public static VisionParameters.HSVParameters parseHSVParameters(StAXCursor pCursor) throws XMLStreamException {
+        if (!pCursor.isStartElement() || !pCursor.getName().equals("hsv_parameters"))
+            throw new AutonomousRobotException(TAG, "Missing required <hsv_parameters> element");
+
+        int level = pCursor.getDepth();
+        String hue_name = requireText(pCursor, "hue_name", "Element 'hue_name' missing or empty");
+        RobotLogCommon.d(TAG, "Parsed XML hsv_parameters; hue name = " + hue_name);
+
+        int hue_low = parseInt(pCursor, "hue_low", "hue_low");
+        int hue_high = parseInt(pCursor, "hue_high", "hue_high");
+        int saturation_median_target = parseInt(pCursor, "saturation_median_target", "saturation_median_target");
+        int saturation_threshold_low = parseInt(pCursor, "saturation_threshold_low", "saturation_threshold_low");
+        int value_median_target = parseInt(pCursor, "value_median_target", "value_median_target");
+        int value_threshold_low = parseInt(pCursor, "value_threshold_low", "value_threshold_low");
+        pCursor.finishElement(level);
+
+        return new VisionParameters.HSVParameters(hue_name, hue_low, hue_high,
+                saturation_median_target, saturation_threshold_low,
+                value_median_target, value_threshold_low);
+    }
+
+    // See ImageXML.parseLABParameters.
+    public static VisionParameters.LABParameters parseLABParameters(StAXCursor pCursor) throws XMLStreamException {
+        if (!pCursor.isStartElement() || !pCursor.getName().equals("lab_parameters"))
+            throw new AutonomousRobotException(TAG, "Missing required <lab_parameters> element");
+
+        int level = pCursor.getDepth();
+        double L_star_low = parseDouble(pCursor, "L_star_low");
+        double L_star_high = parseDouble(pCursor, "L_star_high");
+        double a_star_low = parseDouble(pCursor, "a_star_low");
+        double a_star_high = parseDouble(pCursor, "a_star_high");
+        double b_star_low = parseDouble(pCursor, "b_star_low");
+        double b_star_high = parseDouble(pCursor, "b_star_high");
+        pCursor.finishElement(level);
+
+        return new VisionParameters.LABParameters(L_star_low, L_star_high,
+                a_star_low, a_star_high, b_star_low, b_star_high);
+    }
+
+    // Moves to the next element, which must be pElementName and must not be
+    // empty, and returns its text. The cursor is left on the end of the
+    // element. Package access for ParametersStAX and RobotActionStAX, which
+    // supply their own TAG.
+    static String requireText(StAXCursor pCursor, String pElementName, String pTag, String pMessage) throws XMLStreamException {
+        if (!pCursor.nextElement(pElementName))
+            throw new AutonomousRobotException(pTag, pMessage);
+
+        String text = pCursor.getText();
+        if (text.isEmpty())
+            throw new AutonomousRobotException(pTag, pMessage);
+        return text;
+    }
+
+    private static String requireText(StAXCursor pCursor, String pElementName, String pMessage) throws XMLStreamException {
+        return requireText(pCursor, pElementName, TAG, pMessage);
+    }
+
+    private static int parseInt(StAXCursor pCursor, String pElementName, String pElementPath) throws XMLStreamException {
+        String text = requireText(pCursor, pElementName, "Element '" + pElementPath + "' missing or empty");
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element '" + pElementPath + "'");
+        }
+    }
+
+    private static double parseDouble(StAXCursor pCursor, String pElementName) throws XMLStreamException {
+        String text = requireText(pCursor, pElementName, "Element '" + pElementName + "' missing or empty");
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element '" + pElementName + "'");
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+
+// Streaming counterparts of the *ParametersXML classes that are used by
+// the testbed: GoldCubeParametersXML, SampleContoursParametersXML,
+// LABTesterParametersXML and DistanceParametersXML. Each file is read in a
+// single forward pass with a StAXCursor and no DOM Document is built. The
+// elements, the log messages and the validation errors are the same as
+// those of the DOM classes, including the tag of each class, so the two
+// are interchangeable. The DOM classes remain for Android, where StAX is
+// not available.
+public class ParametersStAX {
+
+    public static GoldCubeParameters getGoldCubeParameters(String pXMLDir) {
+        String tag = GoldCubeParametersXML.TAG;
+        try (StAXCursor cursor = new StAXCursor(pXMLDir + GoldCubeParametersXML.GCP_FILE_NAME)) {
+            RobotLogCommon.d(tag, "Parsing XML gold_cube_parameters");
+
+            if (!cursor.findElement("gold_cube_parameters"))
+                throw new AutonomousRobotException(tag, "Element '//gold_cube_parameters' not found");
+
+            if (!cursor.nextElement("gray_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'gray_parameters' not found");
+
+            VisionParameters.GrayParameters grayParameters = ImageStAX.parseGrayParameters(cursor);
+
+            if (!cursor.nextElement("hsv_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'hsv_parameters' not found");
+
+            VisionParameters.HSVParameters hsvParameters = ImageStAX.parseHSVParameters(cursor);
+
+            // Parse the size criteria for the bounding box.
+            if (!cursor.nextElement())
+                throw new AutonomousRobotException(tag, "Element 'criteria' not found");
+
+            double minArea = parseDouble(cursor, "min_bounding_box_area", tag);
+            double maxArea = parseDouble(cursor, "max_bounding_box_area", tag);
+
+            GoldCubeParameters.BoundingBoxCriteria boundingBoxCriteria = new GoldCubeParameters.BoundingBoxCriteria(minArea, maxArea);
+            return new GoldCubeParameters(grayParameters, hsvParameters, boundingBoxCriteria);
+        } catch (XMLStreamException xex) {
+            throw new AutonomousRobotException(tag, "XML stream exception " + xex.getMessage());
+        } catch (IOException iex) {
+            throw new AutonomousRobotException(tag, "IOException " + iex.getMessage());
+        }
+    }
+
+    public static SampleContoursParameters getSampleContoursParameters(String pXMLDir) {
+        String tag = SampleContoursParametersXML.TAG;
+        try (StAXCursor cursor = new StAXCursor(pXMLDir + SampleContoursParametersXML.SAMPLE_FILE_NAME)) {
+            RobotLogCommon.c(tag, "Parsing " + SampleContoursParametersXML.SAMPLE_FILE_NAME);
+
+            if (!cursor.findElement("sample_contours_parameters"))
+                throw new AutonomousRobotException(tag, "Element '//sample_contours_parameters' not found");
+
+            if (!cursor.nextElement("rgb_channel_grayscale"))
+                throw new AutonomousRobotException(tag, "Element 'rgb_channel_grayscale' not found");
+
+            int rgbLevel = cursor.getDepth();
+            if (!cursor.nextElement("RED"))
+                throw new AutonomousRobotException(tag, "Element 'RED' not found");
+
+            VisionParameters.GrayParameters redGrayParameters =
+                    parseGrayParametersChild(cursor, tag, "Element 'RED/gray_parameters' not found");
+
+            if (!cursor.nextElement("GREEN"))
+                throw new AutonomousRobotException(tag, "Element 'GREEN' not found");
+
+            VisionParameters.GrayParameters greenGrayParameters =
+                    parseGrayParametersChild(cursor, tag, "Element 'GREEN/gray_parameters' not found");
+            cursor.finishElement(rgbLevel);
+
+            SampleContoursParameters.RGBChannelGrayscaleParameters sampleGrayscaleParameters =
+                    new SampleContoursParameters.RGBChannelGrayscaleParameters(redGrayParameters, greenGrayParameters);
+
+            if (!cursor.nextElement("hsv_color"))
+                throw new AutonomousRobotException(tag, "Element 'hsv_color' not found");
+
+            //## At this point we only support blue.
+            if (!cursor.nextElement("BLUE"))
+                throw new AutonomousRobotException(tag, "Element 'hsv_color/BLUE' not found");
+
+            // The message is the same as that of SampleContoursParametersXML.
+            if (!cursor.nextElement("hsv_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'RED/lab_parameters' not found");
+
+            VisionParameters.HSVParameters blueHSVParameters = ImageStAX.parseHSVParameters(cursor);
+            SampleContoursParameters.HSVColorParameters hsvColorParameters =
+                    new SampleContoursParameters.HSVColorParameters(blueHSVParameters);
+
+            return new SampleContoursParameters(sampleGrayscaleParameters, hsvColorParameters);
+        } catch (XMLStreamException xex) {
+            throw new AutonomousRobotException(tag, "XML stream exception " + xex.getMessage());
+        } catch (IOException iex) {
+            throw new AutonomousRobotException(tag, "IOException " + iex.getMessage());
+        }
+    }
+
+    public static LABTesterParameters getLABTesterParameters(String pXMLDir) {
+        String tag = LABTesterParametersXML.TAG;
+        try (StAXCursor cursor = new StAXCursor(pXMLDir + LABTesterParametersXML.GCP_FILE_NAME)) {
+            RobotLogCommon.d(tag, "Parsing XML lab_tester_parameters");
+
+            if (!cursor.findElement("lab_tester_parameters"))
+                throw new AutonomousRobotException(tag, "Element '//lab_tester_parameters' not found");
+
+            if (!cursor.nextElement("gray_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'gray_parameters' not found");
+
+            VisionParameters.GrayParameters grayParameters = ImageStAX.parseGrayParameters(cursor);
+
+            if (!cursor.nextElement("lab_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'lab_parameters' not found");
+
+            VisionParameters.LABParameters labParameters = ImageStAX.parseLABParameters(cursor);
+
+            return new LABTesterParameters(grayParameters, labParameters);
+        } catch (XMLStreamException xex) {
+            throw new AutonomousRobotException(tag, "XML stream exception " + xex.getMessage());
+        } catch (IOException iex) {
+            throw new AutonomousRobotException(tag, "IOException " + iex.getMessage());
+        }
+    }
+
+    public static DistanceParameters getDistanceParameters(String pXMLDir) {
+        String tag = DistanceParametersXML.TAG;
+        try (StAXCursor cursor = new StAXCursor(pXMLDir + DistanceParametersXML.DISTANCE_FILE_NAME)) {
+            RobotLogCommon.c(tag, "Parsing " + DistanceParametersXML.DISTANCE_FILE_NAME);
+
+            if (!cursor.findElement("distance_parameters"))
+                throw new AutonomousRobotException(tag, "Element '//distance_parameters' not found");
+
+            if (!cursor.nextElement("color_channel_bright_spot"))
+                throw new AutonomousRobotException(tag, "Element 'color_channel_bright_spot' not found");
+
+            int brightSpotLevel = cursor.getDepth();
+            if (!cursor.nextElement("RED"))
+                throw new AutonomousRobotException(tag, "Element 'RED' under 'color_channel_bright_spot' not found");
+
+            VisionParameters.GrayParameters redBrightSpotGrayParameters =
+                    parseGrayParametersChild(cursor, tag, "Element 'color_channel_bright_spot/RED/gray_parameters' not found");
+
+            if (!cursor.nextElement("BLUE"))
+                throw new AutonomousRobotException(tag, "Element 'BLUE' under 'color_channel_bright_spot' not found");
+
+            VisionParameters.GrayParameters blueBrightSpotGrayParameters =
+                    parseGrayParametersChild(cursor, tag, "Element 'color_channel_bright_spot/BLUE/gray_parameters' not found");
+            cursor.finishElement(brightSpotLevel);
+
+            DistanceParameters.ColorChannelBrightSpotParameters brightSpotParameters =
+                    new DistanceParameters.ColorChannelBrightSpotParameters(redBrightSpotGrayParameters,
+                            blueBrightSpotGrayParameters);
+
+            if (!cursor.nextElement("color_channel_pixel_count"))
+                throw new AutonomousRobotException(tag, "Element 'color_channel_pixel_count' not found");
+
+            if (!cursor.nextElement("RED"))
+                throw new AutonomousRobotException(tag, "Element 'RED' under 'color_channel_pixel_count' not found");
+
+            int redLevel = cursor.getDepth();
+            if (!cursor.nextElement("gray_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'color_channel_pixel_count/RED/gray_parameters' not found");
+
+            VisionParameters.GrayParameters redPixelCountGrayParameters = ImageStAX.parseGrayParameters(cursor);
+            int redMinPixelCount = parsePixelCountCriteria(cursor, tag, "color_channel_pixel_count/RED/criteria");
+            cursor.finishElement(redLevel);
+
+            if (!cursor.nextElement("BLUE"))
+                throw new AutonomousRobotException(tag, "Element 'BLUE' under 'color_channel_pixel_count' not found");
+
+            if (!cursor.nextElement("gray_parameters"))
+                throw new AutonomousRobotException(tag, "Element 'color_channel_pixel_count/BLUE/gray_parameters' not found");
+
+            VisionParameters.GrayParameters bluePixelCountGrayParameters = ImageStAX.parseGrayParameters(cursor);
+            int blueMinPixelCount = parsePixelCountCriteria(cursor, tag, "color_channel_pixel_count/BLUE/criteria");
+
+            DistanceParameters.ColorChannelPixelCountParameters colorChannelPixelCountParameters =
+                    new DistanceParameters.ColorChannelPixelCountParameters(redPixelCountGrayParameters, redMinPixelCount,
+                            bluePixelCountGrayParameters, blueMinPixelCount);
+
+            return new DistanceParameters(brightSpotParameters, colorChannelPixelCountParameters);
+        } catch (XMLStreamException xex) {
+            throw new AutonomousRobotException(tag, "XML stream exception " + xex.getMessage());
+        } catch (IOException iex) {
+            throw new AutonomousRobotException(tag, "IOException " + iex.getMessage());
+        }
+    }
+
+    // With the cursor on the start of an element such as <RED> whose first
+    // child is <gray_parameters>, parse the gray parameters and move to the
+    // end of the enclosing element.
+    private static VisionParameters.GrayParameters parseGrayParametersChild(StAXCursor pCursor, String pTag, String pMessage) throws XMLStreamException {
+        int level = pCursor.getDepth();
+        if (!pCursor.nextElement("gray_parameters"))
+            throw new AutonomousRobotException(pTag, pMessage);
+
+        VisionParameters.GrayParameters grayParameters = ImageStAX.parseGrayParameters(pCursor);
+        pCursor.finishElement(level);
+        return grayParameters;
+    }
+
+    // Parse the <min_white_pixel_count> child of the criteria element, which
+    // may have any name, that follows the <gray_parameters> element.
+    private static int parsePixelCountCriteria(StAXCursor pCursor, String pTag, String pCriteriaPath) throws XMLStreamException {
+        if (!pCursor.nextElement())
+            throw new AutonomousRobotException(pTag, "Element '" + pCriteriaPath + "' not found");
+
+        int level = pCursor.getDepth();
+        String elementPath = pCriteriaPath + "/min_white_pixel_count";
+        String minPixelsText = ImageStAX.requireText(pCursor, "min_white_pixel_count", pTag,
+                "Element '" + elementPath + "' not found or empty");
+        pCursor.finishElement(level);
+
+        try {
+            return Integer.parseInt(minPixelsText);
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(pTag, "Invalid number format in element '" + elementPath + "'");
+        }
+    }
+
+    private static double parseDouble(StAXCursor pCursor, String pElementName, String pTag) throws XMLStreamException {
+        String text = ImageStAX.requireText(pCursor, pElementName, pTag, "Element '" + pElementName + "' not found or empty");
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(pTag, "Invalid number format in element '" + pElementName + "'");
+        }
+    }
+
+}
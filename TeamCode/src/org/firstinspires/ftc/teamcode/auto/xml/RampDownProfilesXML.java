@@ -8,11 +8,6 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.*;
-import java.io.File;
 import java.io.IOException;
 import java.util.EnumMap;
 
@@ -20,7 +15,7 @@ public class RampDownProfilesXML {
 
     public static final String TAG = RampDownProfilesXML.class.getSimpleName();
 
-    private static final String RAMPDOWN_FILE_NAME = "RampDownProfiles.xml";
+    static final String RAMPDOWN_FILE_NAME = "RampDownProfiles.xml";
 
     private final EnumMap<RampDownProfiles.MovementKey, RampDownProfiles.RampDownProfile> xmlRampDownProfiles = new EnumMap<>(RampDownProfiles.MovementKey.class);
     private final RampDownProfiles rampDownProfiles;
@@ -31,32 +26,17 @@ public class RampDownProfilesXML {
             String xmlFilePath = pXMLDir + RAMPDOWN_FILE_NAME;
             RobotLogCommon.c(TAG, "Parsing " + RAMPDOWN_FILE_NAME);
 
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            dbFactory.setIgnoringComments(true);
-
-            // ONLY works with a validating parser (DTD or schema)
-            // dbFactory.setIgnoringElementContentWhitespace(true);
-            // Not supported in Android Studio dbFactory.setXIncludeAware(true);
-
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document document = dBuilder.parse(new File(xmlFilePath));
-            XPathFactory xpathFactory = XPathFactory.newInstance();
-            XPath xpath = xpathFactory.newXPath();
+            Document document = ConfigCache.parse(xmlFilePath);
 
             // Point to the first node.
-            XPathExpression expr = xpath.compile("//ramp_down_profiles");
-            rampdown_profiles_node = (Node) expr.evaluate(document, XPathConstants.NODE);
+            rampdown_profiles_node = ConfigCache.findElement(document, "ramp_down_profiles");
             if (rampdown_profiles_node == null)
                 throw new AutonomousRobotException(TAG, "Element '//rampdown_profiles' not found");
 
-        } catch (ParserConfigurationException pex) {
-            throw new AutonomousRobotException(TAG, "DOM parser Exception " + pex.getMessage());
         } catch (SAXException sx) {
             throw new AutonomousRobotException(TAG, "SAX Exception " + sx.getMessage());
         } catch (IOException iex) {
             throw new AutonomousRobotException(TAG, "IOException " + iex.getMessage());
-        } catch (XPathExpressionException xex) {
-            throw new AutonomousRobotException(TAG, "XPath Exception " + xex.getMessage());
         }
 
         // Now iterate through the <profile> elements.
@@ -7,18 +7,11 @@ import org.firstinspires.ftc.ftcdevcommon.xml.XMLUtils;
 import org.firstinspires.ftc.teamcode.auto.RobotConstants;
 
 import org.opencv.core.Rect;
-import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import java.io.File;
 import java.io.IOException;
 import java.util.EnumMap;
 
@@ -29,48 +22,15 @@ public class RecognitionWindowMappingXML {
 
     public static final String TAG = RecognitionWindowMappingXML.class.getSimpleName();
 
-    private final Document document;
-    private final XPath xpath;
-
-    /*
-    // IntelliJ only
-    private static final String JAXP_SCHEMA_LANGUAGE =
-            "http://java.sun.com/xml/jaxp/properties/schemaLanguage";
-    private static final String W3C_XML_SCHEMA =
-            "http://www.w3.org/2001/XMLSchema";
-     */
+    private final RobotActionXML robotActionXML;
 
     public RecognitionWindowMappingXML(String pRobotActionFilename) throws ParserConfigurationException, SAXException, IOException {
+        this(new RobotActionXML(pRobotActionFilename));
+    }
 
-    /*
-    // IntelliJ only
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        dbFactory.setIgnoringComments(true);
-        dbFactory.setNamespaceAware(true);
-        dbFactory.setValidating(true);
-        dbFactory.setAttribute(JAXP_SCHEMA_LANGUAGE, W3C_XML_SCHEMA);
-
-        //## ONLY works with a validating parser (DTD or schema),
-        // which the IntelliJ parser is.
-        dbFactory.setIgnoringElementContentWhitespace(true);
-    // End IntelliJ only
-    */
-
-        // Android or IntelliJ
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        dbFactory.setIgnoringComments(true);
-
-        //## ONLY works with a validating parser (DTD or schema),
-        // which the Android Studio parser is not.
-        // dbFactory.setIgnoringElementContentWhitespace(true);
-        //PY 8/17/2019 Android throws UnsupportedOperationException dbFactory.setXIncludeAware(true);
-        // End Android or IntelliJ
-
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        document = dBuilder.parse(new File(pRobotActionFilename));
-
-        XPathFactory xpathFactory = XPathFactory.newInstance();
-        xpath = xpathFactory.newXPath();
+    // Share the document that has already been parsed for the actions.
+    public RecognitionWindowMappingXML(RobotActionXML pRobotActionXML) {
+        robotActionXML = pRobotActionXML;
     }
 
     // Collect data (resolution, ROI, recognition window boundaries)
@@ -116,21 +76,34 @@ public class RecognitionWindowMappingXML {
     // requested action under the OpMode.
     private RecognitionWindowMapping getRecognitionWindowMapping(RobotConstants.OpMode pOpMode,
                                                                  String pAction) throws XPathExpressionException {
-        EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> recognitionWindows =
-                new EnumMap<>(RobotConstants.RecognitionWindow.class);
-
-        // Use XPath to locate the desired OpMode and its child action element.
+        // Locate the desired OpMode and its child action element.
         String actionPath = "/RobotAction/OpMode[@id=" + "'" + pOpMode + "']" + "/actions/" + pAction;
-        Node action_node = (Node) xpath.evaluate(actionPath, document, XPathConstants.NODE);
+        Node action_node = robotActionXML.getActionNode(pOpMode.toString(), pAction);
         if (action_node == null) {
             RobotLogCommon.d(TAG, "No path to " + pOpMode + "/" + pAction);
             return null;
         }
 
-        RobotLogCommon.c(TAG, "Extracting data from RobotAction.xml for " + actionPath);
+        return parseRecognitionWindowMapping(actionPath, action_node);
+    }
+
+    // Parse the children of an action element under the <actions> element
+    // of an OpMode. The action element may come from a complete document,
+    // as above, or from the streaming parser (see RobotActionStAX), which
+    // copies out only the action elements of one OpMode.
+    static RecognitionWindowMapping parseRecognitionWindowMapping(RobotConstants.OpMode pOpMode, Node pActionNode) {
+        String actionPath = "/RobotAction/OpMode[@id=" + "'" + pOpMode + "']" + "/actions/" + pActionNode.getNodeName();
+        return parseRecognitionWindowMapping(actionPath, pActionNode);
+    }
+
+    private static RecognitionWindowMapping parseRecognitionWindowMapping(String pActionPath, Node pActionNode) {
+        EnumMap<RobotConstants.RecognitionWindow, Pair<Rect, RobotConstants.ObjectLocation>> recognitionWindows =
+                new EnumMap<>(RobotConstants.RecognitionWindow.class);
+
+        RobotLogCommon.c(TAG, "Extracting data from RobotAction.xml for " + pActionPath);
 
         // The next element in the XML is required: <image_parameters>
-        Node image_node = action_node.getFirstChild();
+        Node image_node = pActionNode.getFirstChild();
         image_node = XMLUtils.getNextElement(image_node);
         if ((image_node == null) || !image_node.getNodeName().equals("image_parameters"))
             throw new AutonomousRobotException(TAG, "Element 'image_parameters' not found");
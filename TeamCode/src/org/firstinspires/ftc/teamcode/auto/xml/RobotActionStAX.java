@@ -0,0 +1,208 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.intellij.RobotLogCommon;
+import org.firstinspires.ftc.ftcdevcommon.xml.RobotXMLElement;
+import org.firstinspires.ftc.teamcode.auto.RobotConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Streaming counterpart of RobotActionXML and RecognitionWindowMappingXML.
+// RobotAction.xml is read in a single forward pass with a StAXCursor: the
+// OpModes that are not needed are skipped without being kept in memory and
+// reading stops as soon as the requested data has been found. The action
+// elements themselves are still returned as RobotXMLElements because the
+// actions are read with XPathAccess (see RecognitionAction), so the action
+// elements of the selected OpMode, and only those, are copied into a small
+// DOM Document.
+//
+// The log messages and the validation errors are the same as those of
+// RobotActionXML and RecognitionWindowMappingXML, including their TAGs.
+public class RobotActionStAX {
+
+    // Find the requested OpMode in the RobotAction.xml file.
+    // Package and return all data associated with the OpMode.
+    // See RobotActionXML.getOpModeData.
+    public static RobotActionXML.RobotActionData getOpModeData(String pRobotActionFilename, String pOpMode) throws IOException {
+        String tag = RobotActionXML.TAG;
+        RobotLogCommon.CommonLogLevel logLevel = null; // null means use the default lowest logging level
+        RobotActionXML.StartingPositionData startingPositionData = null;
+        List<RobotXMLElement> actionElements = new ArrayList<>();
+
+        // Reading stops at the end of the <actions> element of the selected
+        // OpMode; the rest of the file is not needed.
+        try (StAXCursor cursor = new StAXCursor(pRobotActionFilename)) {
+            // Locate the desired OpMode.
+            if (!findOpMode(cursor, pOpMode))
+                throw new AutonomousRobotException(tag, "Missing OpMode " + pOpMode);
+
+            RobotLogCommon.c(tag, "Extracting data from RobotAction.xml for OpMode " + pOpMode);
+
+            // The next element in the XML is required: <parameters>
+            if (!cursor.nextElement("parameters"))
+                throw new AutonomousRobotException(tag, "Missing required <parameters> element");
+
+            // The optional elements under <parameters> are <log_level> and
+            // <starting_position>, in that order.
+            boolean more = cursor.nextElement();
+            if (more && cursor.getName().equals("log_level")) {
+                logLevel = RobotLogCommon.CommonLogLevel.valueOf(cursor.getText().trim());
+                more = cursor.nextElement();
+            }
+
+            if (more && cursor.getName().equals("starting_position")) {
+                int startingPositionLevel = cursor.getDepth();
+                double x = parseDouble(cursor, "x", tag);
+                double y = parseDouble(cursor, "y", tag);
+                double angle = parseDouble(cursor, "angle", tag);
+                cursor.finishElement(startingPositionLevel);
+
+                startingPositionData = new RobotActionXML.StartingPositionData(x, y, angle);
+                more = cursor.nextElement();
+            }
+
+            // Make sure there are no extraneous elements.
+            if (more)
+                throw new AutonomousRobotException(tag, "Unrecognized element under <parameters>");
+
+            // Now proceed to the <actions> element of the selected OpMode.
+            if (!findChildElement(cursor, "actions"))
+                throw new AutonomousRobotException(tag, "Missing <actions> element");
+
+            // Copy out every child of the <actions> element of the selected OpMode.
+            Document document = ConfigCache.newDocument();
+            Element actionsElement = document.createElement("actions");
+            document.appendChild(actionsElement);
+            while (cursor.nextElement()) {
+                Element actionElement = cursor.readElement(document);
+                actionsElement.appendChild(actionElement);
+                actionElements.add(new RobotXMLElement(actionElement));
+            }
+        } catch (XMLStreamException xex) {
+            throw new AutonomousRobotException(tag, "XML stream exception " + xex.getMessage());
+        }
+
+        return new RobotActionXML.RobotActionData(logLevel, startingPositionData, actionElements);
+    }
+
+    // Collect data (resolution, ROI, recognition window boundaries) for a
+    // selected Autonomous OpMode and a single action under that OpMode.
+    // May return null if the OpMode is not present in the file or does not
+    // contain the requested action.
+    // See RecognitionWindowMappingXML.collectRecognitionWindowMapping.
+    public static RecognitionWindowMapping collectRecognitionWindowMapping(String pRobotActionFilename,
+                                                                           RobotConstants.OpMode pOpMode, String pAction) throws IOException {
+        RobotLogCommon.c(RecognitionWindowMappingXML.TAG, "Collecting recognition window data for Autonomous OpMode " + pOpMode + " and action " + pAction);
+        Element actionElement = readActionElements(pRobotActionFilename, pAction).get(pOpMode.toString());
+        if (actionElement == null) {
+            RobotLogCommon.d(RecognitionWindowMappingXML.TAG, "No path to " + pOpMode + "/" + pAction);
+            return null;
+        }
+
+        return RecognitionWindowMappingXML.parseRecognitionWindowMapping(pOpMode, actionElement);
+    }
+
+    // Collect recognition window data for all Autonomous test or competition
+    // OpModes that contain the selected action; may return an empty EnumMap.
+    // The file is read once for all of the OpModes.
+    public static EnumMap<RobotConstants.OpMode, RecognitionWindowMapping> collectRecognitionWindowMapping(String pRobotActionFilename,
+                                                                                                         String pAction) throws IOException {
+        EnumMap<RobotConstants.OpMode, RecognitionWindowMapping> recognitionWindowMapping =
+                new EnumMap<>(RobotConstants.OpMode.class);
+
+        Map<String, Element> actionElements = readActionElements(pRobotActionFilename, pAction);
+        for (RobotConstants.OpMode oneOpMode : RobotConstants.OpMode.values()) {
+            if (oneOpMode.getOpModeType() == RobotConstants.OpMode.OpModeType.COMPETITION ||
+                    oneOpMode.getOpModeType() == RobotConstants.OpMode.OpModeType.AUTO_TEST) {
+                RobotLogCommon.c(RecognitionWindowMappingXML.TAG, "Collecting recognition window data for Autonomous OpMode " + oneOpMode + " and action " + pAction);
+                Element actionElement = actionElements.get(oneOpMode.toString());
+                if (actionElement == null) {
+                    RobotLogCommon.d(RecognitionWindowMappingXML.TAG, "No path to " + oneOpMode + "/" + pAction);
+                    continue;
+                }
+
+                recognitionWindowMapping.put(oneOpMode, RecognitionWindowMappingXML.parseRecognitionWindowMapping(oneOpMode, actionElement));
+            }
+        }
+
+        return recognitionWindowMapping;
+    }
+
+    // Returns a copy of the element pAction under the <actions> element of
+    // every OpMode in the file, keyed by the id of the OpMode. As with
+    // RobotActionXML the first OpMode with a given id wins.
+    private static Map<String, Element> readActionElements(String pRobotActionFilename, String pAction) throws IOException {
+        Map<String, Element> actionElements = new HashMap<>();
+        Set<String> opModeIds = new HashSet<>();
+        try (StAXCursor cursor = new StAXCursor(pRobotActionFilename)) {
+            if (!cursor.nextElement() || !cursor.getName().equals("RobotAction"))
+                return actionElements;
+
+            Document document = ConfigCache.newDocument();
+            while (cursor.nextElement()) {
+                String opModeId = cursor.getAttribute("id");
+                if (!cursor.getName().equals("OpMode") || !opModeIds.add(opModeId)) {
+                    cursor.skipElement();
+                    continue;
+                }
+
+                int opModeLevel = cursor.getDepth();
+                if (findChildElement(cursor, "actions") && findChildElement(cursor, pAction))
+                    actionElements.put(opModeId, cursor.readElement(document));
+                cursor.finishElement(opModeLevel);
+            }
+        } catch (XMLStreamException xex) {
+            throw new AutonomousRobotException(RecognitionWindowMappingXML.TAG, "XML stream exception " + xex.getMessage());
+        }
+
+        return actionElements;
+    }
+
+    // Position the cursor on the start of the first child of the root
+    // <RobotAction> element that is an <OpMode> with the given id.
+    private static boolean findOpMode(StAXCursor pCursor, String pOpMode) throws XMLStreamException {
+        if (!pCursor.nextElement() || !pCursor.getName().equals("RobotAction"))
+            return false;
+
+        while (pCursor.nextElement()) {
+            if (pCursor.getName().equals("OpMode") && pCursor.getAttribute("id").equals(pOpMode))
+                return true;
+            pCursor.skipElement();
+        }
+
+        return false;
+    }
+
+    // From the start of an element or the end of one of its children, move
+    // to the start of the next child with the given name. Returns false, with
+    // the cursor on the end of the parent, if there is no such child.
+    private static boolean findChildElement(StAXCursor pCursor, String pElementName) throws XMLStreamException {
+        while (pCursor.nextElement()) {
+            if (pCursor.getName().equals(pElementName))
+                return true;
+            pCursor.skipElement();
+        }
+
+        return false;
+    }
+
+    private static double parseDouble(StAXCursor pCursor, String pElementName, String pTag) throws XMLStreamException {
+        String text = ImageStAX.requireText(pCursor, pElementName, pTag, "Element '" + pElementName + "' missing or empty");
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(pTag, "Invalid number format in element '" + pElementName + "'");
+        }
+    }
+
+}
@@ -10,17 +10,15 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 public class RobotActionXML {
@@ -29,6 +27,7 @@ public class RobotActionXML {
 
     private final Document document;
     private final XPath xpath;
+    private final Map<String, Node> opModeNodes = new HashMap<>(); // keyed by the id of the OpMode
 
     /*
     // IntelliJ only
@@ -54,20 +53,17 @@ public class RobotActionXML {
     // End IntelliJ only
     */
 
-    // Android or IntelliJ
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        dbFactory.setIgnoringComments(true);
-        //## ONLY works with a validating parser (DTD or schema),
-        // which the Android Studio parser is not.
-        // dbFactory.setIgnoringElementContentWhitespace(true);
-        //PY 8/17/2019 Android throws UnsupportedOperationException dbFactory.setXIncludeAware(true);
-    // End Android or IntelliJ
-
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        document = dBuilder.parse(new File(pRobotActionFilename));
-
-        XPathFactory xpathFactory = XPathFactory.newInstance();
-        xpath = xpathFactory.newXPath();
+    // Android or IntelliJ - see ConfigCache for the configuration of the parser.
+        document = ConfigCache.parse(pRobotActionFilename);
+        xpath = ConfigCache.newXPath();
+
+        // Index the OpModes once so that finding an OpMode or one of its
+        // actions doesn't need an XPath search of the whole document.
+        Element root = document.getDocumentElement();
+        if (root.getNodeName().equals("RobotAction"))
+            for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling())
+                if (child.getNodeType() == Node.ELEMENT_NODE && child.getNodeName().equals("OpMode"))
+                    opModeNodes.putIfAbsent(((Element) child).getAttribute("id"), child);
     }
 
     // Find the requested opMode in the RobotAction.xml file.
@@ -77,9 +73,8 @@ public class RobotActionXML {
         StartingPositionData startingPositionData = null;
         List<RobotXMLElement> actionElements = new ArrayList<>();
 
-        // Use XPath to locate the desired OpMode.
-        String opModePath = "/RobotAction/OpMode[@id=" + "'" + pOpMode + "']";
-        Node opModeNode = (Node) xpath.evaluate(opModePath, document, XPathConstants.NODE);
+        // Locate the desired OpMode.
+        Node opModeNode = opModeNodes.get(pOpMode);
         if (opModeNode == null)
             throw new AutonomousRobotException(TAG, "Missing OpMode " + pOpMode);
 
@@ -153,8 +148,7 @@ public class RobotActionXML {
                   throw new AutonomousRobotException(TAG, "Unrecognized element under <parameters>");
 
         // Now proceed to the <actions> element of the selected OpMode.
-        String actionsPath = opModePath + "/actions";
-        Node actionsNode = (Node) xpath.evaluate(actionsPath, document, XPathConstants.NODE);
+        Node actionsNode = ConfigCache.findChildElement(opModeNode, "actions");
         if (actionsNode == null)
             throw new AutonomousRobotException(TAG, "Missing <actions> element");
 
@@ -175,6 +169,17 @@ public class RobotActionXML {
         return new RobotActionData(logLevel, startingPositionData, actionElements);
     }
 
+    // Returns the element for an action under the <actions> element of
+    // an OpMode or null if the OpMode or the action is not present.
+    public Node getActionNode(String pOpMode, String pAction) {
+        Node opModeNode = opModeNodes.get(pOpMode);
+        if (opModeNode == null)
+            return null;
+
+        Node actionsNode = ConfigCache.findChildElement(opModeNode, "actions");
+        return actionsNode == null ? null : ConfigCache.findChildElement(actionsNode, pAction);
+    }
+
     // Helper method to convert a nested <image_parameters> element into a class.
     public VisionParameters.ImageParameters
     getImageParametersFromXPath(RobotXMLElement pElement, String pPath) throws XPathExpressionException {
@@ -188,6 +193,16 @@ public class RobotActionXML {
         return ImageXML.parseImageParameters(ipNode);
     }
 
+    // Convert the <image_parameters> child of an action element into a
+    // class. The element may come from this class or from RobotActionStAX.
+    public static VisionParameters.ImageParameters getImageParameters(RobotXMLElement pActionElement) {
+        Node ipNode = ConfigCache.findChildElement(pActionElement.getRobotXMLElement(), "image_parameters");
+        if (ipNode == null)
+            throw new AutonomousRobotException(TAG, "Missing image_parameters element");
+
+        return ImageXML.parseImageParameters(ipNode);
+    }
+
     public static class RobotActionData {
         public final RobotLogCommon.CommonLogLevel logLevel;
         public final StartingPositionData startingPositionData;
@@ -7,18 +7,13 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.*;
-import java.io.File;
 import java.io.IOException;
 
 // Class whose job it is to read an XML file that contains all of the information
 // needed to perform simple sample recognition for the FTC game IntoTheDeep.
 public class SampleContoursParametersXML {
     public static final String TAG = SampleContoursParametersXML.class.getSimpleName();
-    private static final String SAMPLE_FILE_NAME = "SampleContoursParameters.xml";
+    static final String SAMPLE_FILE_NAME = "SampleContoursParameters.xml";
 
     private final SampleContoursParameters sampleContoursParameters;
 
@@ -28,32 +23,17 @@ public class SampleContoursParametersXML {
             String xmlFilePath = pXMLDir + SAMPLE_FILE_NAME;
             RobotLogCommon.c(TAG, "Parsing " + SAMPLE_FILE_NAME);
 
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            dbFactory.setIgnoringComments(true);
-
-            // ONLY works with a validating parser (DTD or schema)
-            // dbFactory.setIgnoringElementContentWhitespace(true);
-            // Not supported in Android Studio dbFactory.setXIncludeAware(true);
-
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document document = dBuilder.parse(new File(xmlFilePath));
-            XPathFactory xpathFactory = XPathFactory.newInstance();
-            XPath xpath = xpathFactory.newXPath();
+            Document document = ConfigCache.parse(xmlFilePath);
 
             // Point to the first node.
-            XPathExpression expr = xpath.compile("//sample_contours_parameters");
-            sample_parameters_node = (Node) expr.evaluate(document, XPathConstants.NODE);
+            sample_parameters_node = ConfigCache.findElement(document, "sample_contours_parameters");
             if (sample_parameters_node == null)
                 throw new AutonomousRobotException(TAG, "Element '//sample_contours_parameters' not found");
 
-        } catch (ParserConfigurationException pex) {
-            throw new AutonomousRobotException(TAG, "DOM parser Exception " + pex.getMessage());
         } catch (SAXException sx) {
             throw new AutonomousRobotException(TAG, "SAX Exception " + sx.getMessage());
         } catch (IOException iex) {
             throw new AutonomousRobotException(TAG, "IOException " + iex.getMessage());
-        } catch (XPathExpressionException xex) {
-            throw new AutonomousRobotException(TAG, "XPath Exception " + xex.getMessage());
         }
 
         // Point to <rgb_channel_grayscale>.
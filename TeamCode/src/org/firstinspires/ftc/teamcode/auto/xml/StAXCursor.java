@@ -0,0 +1,187 @@
+package org.firstinspires.ftc.teamcode.auto.xml;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// A forward-only cursor over the elements of an XML file for the StAX
+// parsers (ImageStAX, ParametersStAX, RobotActionStAX). It follows the
+// same pattern as the DOM parsers and XMLUtils.getNextElement: whitespace,
+// comments and processing instructions between elements are skipped.
+//
+// The cursor is always positioned on the start or on the end of an
+// element. From the start of an element nextElement() moves to its first
+// child; from the end of an element it moves to the next sibling. If there
+// is no such element nextElement() returns false and the cursor is on the
+// end of the parent. For example, to parse
+// <resolution><width>640</width><height>480</height></resolution>
+// with the cursor on the start of <resolution>:
+// int level = cursor.getDepth();
+// if (!cursor.nextElement("width")) throw ...
+// String width = cursor.getText(); // now on </width>
+// if (!cursor.nextElement("height")) throw ...
+// String height = cursor.getText();
+// cursor.finishElement(level); // now on </resolution>
+//
+// Only the current element is held in memory, so the memory needed to read
+// a file does not depend on its size.
+public class StAXCursor implements AutoCloseable {
+
+    // XMLInputFactory.newInstance() is expensive and the factory is not
+    // guaranteed to be thread-safe.
+    private static final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    });
+
+    private final InputStream in;
+    private final XMLStreamReader reader;
+    private int depth = 0; // 1 on the start of the root element, 0 on its end
+
+    public StAXCursor(String pFilename) throws IOException, XMLStreamException {
+        in = new BufferedInputStream(new FileInputStream(pFilename)); // same IOException messages as the DOM parser
+        try {
+            reader = inputFactory.get().createXMLStreamReader(in);
+        } catch (XMLStreamException xex) {
+            in.close();
+            throw xex;
+        }
+    }
+
+    // The name of the element at the cursor.
+    public String getName() {
+        return reader.getLocalName();
+    }
+
+    // The value of an attribute of the element at the cursor or an empty
+    // string if there is no such attribute, as with DOM getAttribute.
+    public String getAttribute(String pName) {
+        String value = reader.getAttributeValue(null, pName);
+        return value == null ? "" : value;
+    }
+
+    // The nesting level of the element whose start is at the cursor.
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isStartElement() {
+        return reader.getEventType() == XMLStreamConstants.START_ELEMENT;
+    }
+
+    // Move to the next element at the current level; see above. Returns
+    // false at the end of the parent or of the document.
+    public boolean nextElement() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                return true;
+            }
+
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    // Move to the next element at the current level and return true only
+    // if it has the given name.
+    public boolean nextElement(String pName) throws XMLStreamException {
+        return nextElement() && getName().equals(pName);
+    }
+
+    // Move forward, at any level, to the start of the next element with
+    // the given name, i.e. the StAX equivalent of the XPath expression
+    // //name when the cursor is at the start of the document. Returns
+    // false at the end of the document.
+    public boolean findElement(String pName) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (reader.getLocalName().equals(pName))
+                    return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+
+        return false;
+    }
+
+    // Returns the text of the element at the cursor, which must not have
+    // any child elements, and moves to its end.
+    public String getText() throws XMLStreamException {
+        String text = reader.getElementText();
+        depth--;
+        return text;
+    }
+
+    // Move to the end of the element at the cursor, skipping its content.
+    public void skipElement() throws XMLStreamException {
+        if (isStartElement())
+            finishElement(depth);
+    }
+
+    // Move to the end of the element at level pLevel, which encloses the
+    // cursor, skipping anything that has not been read yet.
+    public void finishElement(int pLevel) throws XMLStreamException {
+        while (!(reader.getEventType() == XMLStreamConstants.END_ELEMENT && depth == pLevel - 1)) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    // Copy the element at the cursor with its attributes, text and child
+    // elements into a DOM element owned by pDocument and move to its end.
+    // Comments are dropped, as they are by the DOM parsers.
+    public Element readElement(Document pDocument) throws XMLStreamException {
+        Element element = pDocument.createElement(getName());
+        for (int i = 0; i < reader.getAttributeCount(); i++)
+            element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    depth++;
+                    element.appendChild(readElement(pDocument));
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        element.appendChild(pDocument.createTextNode(reader.getText()));
+                case XMLStreamConstants.END_ELEMENT -> {
+                    depth--;
+                    return element;
+                }
+                default -> {
+                    // comments and processing instructions
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException xex) {
+            // the stream itself is closed below
+        }
+        in.close();
+    }
+
+}
@@ -84,6 +84,22 @@ public class VisionParameters {
             b_star_low = pBStarLow + 128;
             b_star_high = pBStarHigh + 128;
         }
+
+        // For values that have already been adjusted, e.g. from a ConfigSnapshot.
+        private LABParameters(double[] pOpenCVValues) {
+            L_star_low = pOpenCVValues[0];
+            L_star_high = pOpenCVValues[1];
+            a_star_low = pOpenCVValues[2];
+            a_star_high = pOpenCVValues[3];
+            b_star_low = pOpenCVValues[4];
+            b_star_high = pOpenCVValues[5];
+        }
+
+        static LABParameters fromOpenCVValues(double pLStarLow, double pLStarHigh,
+                                              double pAStarLow, double pAStarHigh,
+                                              double pBStarLow, double pBStarHigh) {
+            return new LABParameters(new double[]{pLStarLow, pLStarHigh, pAStarLow, pAStarHigh, pBStarLow, pBStarHigh});
+        }
     }
 
 }
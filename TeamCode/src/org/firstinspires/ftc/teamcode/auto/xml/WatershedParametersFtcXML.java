@@ -8,19 +8,14 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.*;
 
-import java.io.File;
 import java.io.IOException;
 
 // Class whose job it is to read an XML file that contains all of the information
 // needed to perform an OpenCV Watershed operation.
 public class WatershedParametersFtcXML {
     public static final String TAG = WatershedParametersFtcXML.class.getSimpleName();
-    private static final String WATERSHED_FTC_FILE_NAME = "WatershedParametersFtc.xml";
+    static final String WATERSHED_FTC_FILE_NAME = "WatershedParametersFtc.xml";
 
     private final WatershedParametersFtc watershedParametersFtc;
 
@@ -31,32 +26,17 @@ public class WatershedParametersFtcXML {
 
             String xmlFilePath = pXMLDir + WATERSHED_FTC_FILE_NAME;
 
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            dbFactory.setIgnoringComments(true);
-
-            // ONLY works with a validating parser (DTD or schema)
-            // dbFactory.setIgnoringElementContentWhitespace(true);
-            // Not supported in Android Studio dbFactory.setXIncludeAware(true);
-
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document document = dBuilder.parse(new File(xmlFilePath));
-            XPathFactory xpathFactory = XPathFactory.newInstance();
-            XPath xpath = xpathFactory.newXPath();
+            Document document = ConfigCache.parse(xmlFilePath);
 
             // Point to the first node.
-            XPathExpression expr = xpath.compile("//watershed_parameters_ftc");
-            watershed_parameters_node = (Node) expr.evaluate(document, XPathConstants.NODE);
+            watershed_parameters_node = ConfigCache.findElement(document, "watershed_parameters_ftc");
             if (watershed_parameters_node == null)
                 throw new AutonomousRobotException(TAG, "Element '//watershed_parameters_ftc' not found");
 
-        } catch (ParserConfigurationException pex) {
-            throw new AutonomousRobotException(TAG, "DOM parser Exception " + pex.getMessage());
         } catch (SAXException sx) {
             throw new AutonomousRobotException(TAG, "SAX Exception " + sx.getMessage());
         } catch (IOException iex) {
             throw new AutonomousRobotException(TAG, "IOException " + iex.getMessage());
-        } catch (XPathExpressionException xex) {
-            throw new AutonomousRobotException(TAG, "XPath Exception " + xex.getMessage());
         }
 
         // Point to <watershed_distance>
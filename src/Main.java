@@ -1,9 +1,10 @@
-import javafx.application.Application;
-import org.firstinspires.ftc.teamcode.auto.RecognitionDispatcher;
+import org.firstinspires.ftc.teamcode.auto.RecognitionCLI;
 
 public class Main {
 
-    public static void main(String[] args) {
-         Application.launch(RecognitionDispatcher.class, args);
+    // Runs headless by default; add --display to the command line to
+    // show the results in a JavaFX window.
+    public static void main(String[] args) throws Exception {
+         RecognitionCLI.main(args);
     }
 }